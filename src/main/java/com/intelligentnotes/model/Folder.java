@@ -1,5 +1,6 @@
 package com.intelligentnotes.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -16,6 +17,10 @@ public class Folder {
     private List<Folder> subFolders;
     private String summary;
 
+    // Own fields or child lists changed since it was last persisted; new folders start out dirty.
+    // Code that edits getNotes()/getSubFolders() directly must call markDirty() itself.
+    private transient boolean dirty = true;
+
     public Folder() {
         this.notes = new ArrayList<>();
         this.subFolders = new ArrayList<>();
@@ -43,6 +48,7 @@ public class Folder {
 
     public void setName(String name) {
         this.name = name;
+        this.dirty = true;
     }
 
     public List<Note> getNotes() {
@@ -51,6 +57,7 @@ public class Folder {
 
     public void setNotes(List<Note> notes) {
         this.notes = notes;
+        this.dirty = true;
     }
 
     public List<Folder> getSubFolders() {
@@ -59,6 +66,7 @@ public class Folder {
 
     public void setSubFolders(List<Folder> subFolders) {
         this.subFolders = subFolders;
+        this.dirty = true;
     }
 
     public String getSummary() {
@@ -67,6 +75,7 @@ public class Folder {
 
     public void setSummary(String summary) {
         this.summary = summary;
+        this.dirty = true;
     }
 
     public void addNote(Note note) {
@@ -74,11 +83,12 @@ public class Folder {
             notes = new ArrayList<>();
         }
         notes.add(note);
+        dirty = true;
     }
 
     public void removeNote(Note note) {
-        if (notes != null) {
-            notes.remove(note);
+        if (notes != null && notes.remove(note)) {
+            dirty = true;
         }
     }
 
@@ -87,14 +97,28 @@ public class Folder {
             subFolders = new ArrayList<>();
         }
         subFolders.add(folder);
+        dirty = true;
     }
 
     public void removeSubFolder(Folder folder) {
-        if (subFolders != null) {
-            subFolders.remove(folder);
+        if (subFolders != null && subFolders.remove(folder)) {
+            dirty = true;
         }
     }
 
+    @JsonIgnore
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void markDirty() {
+        this.dirty = true;
+    }
+
+    public void clearDirty() {
+        this.dirty = false;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
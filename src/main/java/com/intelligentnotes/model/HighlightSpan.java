@@ -0,0 +1,23 @@
+package com.intelligentnotes.model;
+
+/**
+ * A run of characters in a search result's preview text that matched the
+ * query, from start (inclusive) to end (exclusive).
+ */
+public class HighlightSpan {
+    private final int start;
+    private final int end;
+
+    public HighlightSpan(int start, int end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+}
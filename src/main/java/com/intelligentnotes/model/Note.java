@@ -1,7 +1,12 @@
 package com.intelligentnotes.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
 import java.time.LocalDateTime;
 
+// Content is written last so the header fields can be read without parsing the body
+@JsonPropertyOrder({"id", "title", "createdAt", "updatedAt", "summary", "content"})
 public class Note {
     private String id;
     private String title;
@@ -10,6 +15,17 @@ public class Note {
     private LocalDateTime updatedAt;
     private String summary;
 
+    // Set for notes loaded without their body; content is then fetched on demand
+    private transient NoteContentLoader contentLoader;
+    // Changed since it was last persisted; new notes start out dirty. The version counts
+    // changes, so a save of an older state can tell whether it still covers the note.
+    private transient boolean dirty = true;
+    private transient int changeVersion;
+    // Plain text of the content, dropped when it changes. The version tells a text extracted
+    // from an older content apart.
+    private transient String plainText;
+    private transient int contentVersion;
+
     public Note() {
         // Default constructor
     }
@@ -22,6 +38,21 @@ public class Note {
         this.updatedAt = LocalDateTime.now();
     }
 
+    // Detached copy for writing in the background while the original keeps being edited
+    public Note copy() {
+        Note copy = new Note();
+        copy.id = id;
+        copy.title = title;
+        copy.content = content;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        copy.summary = summary;
+        copy.contentLoader = contentLoader;
+        copy.dirty = dirty;
+        copy.plainText = plainText;
+        return copy;
+    }
+
     // Getters and Setters
     public String getId() {
         return id;
@@ -35,16 +66,56 @@ public class Note {
         return title;
     }
 
-    public void setTitle(String title) {
+    public synchronized void setTitle(String title) {
         this.title = title;
+        markDirty();
     }
 
     public String getContent() {
+        // Loaded bodies are not kept on the note, so memory follows what is open, not the vault size
+        if (content == null && contentLoader != null) {
+            return contentLoader.loadContent(this);
+        }
         return content;
     }
 
-    public void setContent(String content) {
+    public synchronized void setContent(String content) {
         this.content = content;
+        markDirty();
+        plainText = null;
+        contentVersion++;
+    }
+
+    @JsonIgnore
+    public synchronized String getPlainText() {
+        return plainText;
+    }
+
+    @JsonIgnore
+    public synchronized int getContentVersion() {
+        return contentVersion;
+    }
+
+    // Ignored if the content changed since version was read. Text of a body loaded on demand
+    // is not kept either, like the body itself; its loader may keep it instead.
+    public synchronized void setPlainText(int version, String plainText) {
+        if (version != contentVersion) return;
+        this.plainText = content != null ? plainText : null;
+    }
+
+    @JsonIgnore
+    public boolean isContentLoaded() {
+        return content != null || contentLoader == null;
+    }
+
+    @JsonIgnore
+    public NoteContentLoader getContentLoader() {
+        return contentLoader;
+    }
+
+    @JsonIgnore
+    public void setContentLoader(NoteContentLoader contentLoader) {
+        this.contentLoader = contentLoader;
     }
 
     public LocalDateTime getCreatedAt() {
@@ -67,8 +138,36 @@ public class Note {
         return summary;
     }
 
-    public void setSummary(String summary) {
+    public synchronized void setSummary(String summary) {
         this.summary = summary;
+        markDirty();
+    }
+
+    @JsonIgnore
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    @JsonIgnore
+    public synchronized int getChangeVersion() {
+        return changeVersion;
+    }
+
+    public synchronized void markDirty() {
+        this.dirty = true;
+        changeVersion++;
+    }
+
+    public synchronized void clearDirty() {
+        this.dirty = false;
+    }
+
+    // Ignored if the note changed since version was read: a save of an older state
+    // does not cover the newer changes
+    public synchronized void clearDirty(int version) {
+        if (version == changeVersion) {
+            this.dirty = false;
+        }
     }
 
     @Override
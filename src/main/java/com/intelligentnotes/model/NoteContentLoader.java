@@ -0,0 +1,17 @@
+package com.intelligentnotes.model;
+
+/**
+ * Supplies the HTML content of a note whose body was not loaded with it.
+ */
+public interface NoteContentLoader {
+    String loadContent(Note note);
+
+    // Plain text extracted earlier from the note's current body, or null if none is kept
+    default String loadPlainText(Note note) {
+        return null;
+    }
+
+    // Keep the plain text extracted from the given body, as long as that body is still the note's
+    default void storePlainText(Note note, String content, String plainText) {
+    }
+}
@@ -0,0 +1,29 @@
+package com.intelligentnotes.model;
+
+import java.util.List;
+
+/**
+ * One page of ranked search results. The next cursor fetches the page after
+ * this one and is null on the last page.
+ */
+public class SearchPage {
+    private final List<SearchResult> results;
+    private final String nextCursor;
+
+    public SearchPage(List<SearchResult> results, String nextCursor) {
+        this.results = results;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<SearchResult> getResults() {
+        return results;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -1,10 +1,18 @@
 package com.intelligentnotes.model;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class SearchResult {
     private Note note;
     private Folder parentFolder;
     private String path;
     private String previewText;
+    // Relevance score (higher is better) and the field that matched best: title, summary or content
+    private double score;
+    private String matchField;
+    // Where the preview text matched the query, in order
+    private List<HighlightSpan> highlights = new ArrayList<>();
 
     public SearchResult(Note note, Folder parentFolder, String path, String previewText) {
         this.note = note;
@@ -13,6 +21,13 @@ public class SearchResult {
         this.previewText = previewText;
     }
 
+    public SearchResult(Note note, Folder parentFolder, String path, String previewText,
+                        double score, String matchField) {
+        this(note, parentFolder, path, previewText);
+        this.score = score;
+        this.matchField = matchField;
+    }
+
     // Getters and Setters
     public Note getNote() {
         return note;
@@ -45,4 +60,28 @@ public class SearchResult {
     public void setPreviewText(String previewText) {
         this.previewText = previewText;
     }
-}
\ No newline at end of file
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public String getMatchField() {
+        return matchField;
+    }
+
+    public void setMatchField(String matchField) {
+        this.matchField = matchField;
+    }
+
+    public List<HighlightSpan> getHighlights() {
+        return highlights;
+    }
+
+    public void setHighlights(List<HighlightSpan> highlights) {
+        this.highlights = highlights;
+    }
+}
@@ -2,9 +2,33 @@ package com.intelligentnotes.service;
 
 import com.intelligentnotes.model.Note;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface AISummaryService {
     String summarizeNoteContent(String content);
     String summarizeFolderContent(List<Note> notes);
-}
\ No newline at end of file
+
+    // Summarize on the shared summary pool without blocking the caller. The future fails with a
+    // TimeoutException after the timeout, or a RejectedExecutionException if too many summaries
+    // are pending; cancelling it stops the request.
+    default CompletableFuture<String> summarizeNoteContentAsync(String content, Duration timeout) {
+        return SummaryExecutor.submit(() -> summarizeNoteContent(content), timeout);
+    }
+
+    default CompletableFuture<String> summarizeNoteContentAsync(String content) {
+        return summarizeNoteContentAsync(content, SummaryExecutor.DEFAULT_TIMEOUT);
+    }
+
+    // The list is copied, so the caller may change it while the summary runs
+    default CompletableFuture<String> summarizeFolderContentAsync(List<Note> notes, Duration timeout) {
+        List<Note> snapshot = new ArrayList<>(notes);
+        return SummaryExecutor.submit(() -> summarizeFolderContent(snapshot), timeout);
+    }
+
+    default CompletableFuture<String> summarizeFolderContentAsync(List<Note> notes) {
+        return summarizeFolderContentAsync(notes, SummaryExecutor.DEFAULT_TIMEOUT);
+    }
+}
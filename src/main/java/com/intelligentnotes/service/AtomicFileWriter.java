@@ -0,0 +1,355 @@
+package com.intelligentnotes.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replaces files by writing a temp file and renaming it over the target, so a
+ * crash never leaves a half-written note or folder file behind.
+ *
+ * With PER_BATCH durability, writes and deletes are staged in order and
+ * applied by whichever caller of awaitDurable() arrives first (the leader): it
+ * optionally waits for the group commit window, syncs every staged temp file,
+ * applies the renames, and syncs each touched directory once for the whole
+ * batch. Saves arriving while a batch commits form the next batch, so even with
+ * a zero window concurrent saves are grouped.
+ */
+public class AtomicFileWriter {
+    private static final String TEMP_SUFFIX = ".tmp";
+    // <target name>.<nanoTime>.tmp, as named by write()
+    private static final Pattern TEMP_NAME = Pattern.compile(".+\\.\\d+\\.tmp");
+
+    private final Durability durability;
+    private final long groupCommitWindowMs;
+
+    // Group commit state, guarded by commitLock
+    private final Object commitLock = new Object();
+    private final List<PendingOp> pending = new ArrayList<>();
+    private long stagedSequence;
+    private long committedSequence;
+    private boolean committing;
+    // Operations the thread staged since its last awaitDurable(); each learns whether its batch failed
+    private final ThreadLocal<List<PendingOp>> stagedByThread = ThreadLocal.withInitial(ArrayList::new);
+
+    // Statistics
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    public AtomicFileWriter(Durability durability) {
+        this(durability, 0);
+    }
+
+    public AtomicFileWriter(Durability durability, long groupCommitWindowMs) {
+        this.durability = durability;
+        this.groupCommitWindowMs = groupCommitWindowMs;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public void writeValue(ObjectMapper objectMapper, File target, Object value) throws IOException {
+        write(target, objectMapper.writeValueAsBytes(value));
+    }
+
+    public void write(File target, byte[] data) throws IOException {
+        Path targetPath = target.toPath();
+        Path tempPath = targetPath.resolveSibling(target.getName() + "." + System.nanoTime() + TEMP_SUFFIX);
+        writeCount.incrementAndGet();
+        byteCount.addAndGet(data.length);
+
+        try (FileChannel channel = FileChannel.open(tempPath,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (durability == Durability.PER_WRITE) {
+                channel.force(true);
+                syncCount.incrementAndGet();
+            }
+        }
+
+        if (durability == Durability.PER_BATCH) {
+            stage(new PendingOp(OpType.RENAME, tempPath, targetPath));
+        } else {
+            rename(tempPath, targetPath);
+            if (durability == Durability.PER_WRITE) {
+                syncDirectory(targetPath.getParent());
+            }
+        }
+    }
+
+    public void delete(File target) throws IOException {
+        if (durability == Durability.PER_BATCH) {
+            stage(new PendingOp(OpType.DELETE, target.toPath(), null));
+        } else {
+            Files.deleteIfExists(target.toPath());
+            if (durability == Durability.PER_WRITE) {
+                syncDirectory(target.toPath().getParent());
+            }
+        }
+    }
+
+    // Delete a directory and every file in it (including temp files staged there)
+    public void deleteDirectory(File directory) throws IOException {
+        if (durability == Durability.PER_BATCH) {
+            stage(new PendingOp(OpType.DELETE_DIRECTORY, directory.toPath(), null));
+        } else {
+            applyDeleteDirectory(directory.toPath());
+        }
+    }
+
+    // Block until everything the calling thread has staged is on disk.
+    // A no-op unless durability is PER_BATCH.
+    public void awaitDurable() throws IOException {
+        if (durability != Durability.PER_BATCH) return;
+
+        List<PendingOp> mine = stagedByThread.get();
+        if (mine.isEmpty()) return;
+        long mySequence = mine.get(mine.size() - 1).sequence;
+        while (true) {
+            synchronized (commitLock) {
+                while (committedSequence < mySequence && committing) {
+                    try {
+                        commitLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for group commit", e);
+                    }
+                }
+                if (committedSequence >= mySequence) {
+                    IOException failure = null;
+                    for (PendingOp op : mine) {
+                        if (op.failure != null) {
+                            failure = op.failure;
+                        }
+                    }
+                    mine.clear();
+                    if (failure != null) {
+                        throw new IOException("Group commit failed: " + failure.getMessage(), failure);
+                    }
+                    return;
+                }
+                // Nobody is committing: this thread leads the next batch
+                committing = true;
+            }
+            // A failure is recorded on the batch's operations, this thread's among them
+            commitAsLeader(true);
+        }
+    }
+
+    // Commit everything staged so far, regardless of which thread staged it
+    public void flush() throws IOException {
+        if (durability != Durability.PER_BATCH) return;
+
+        long target;
+        synchronized (commitLock) {
+            target = stagedSequence;
+        }
+        while (true) {
+            synchronized (commitLock) {
+                while (committing) {
+                    try {
+                        commitLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while flushing", e);
+                    }
+                }
+                if (committedSequence >= target) {
+                    return;
+                }
+                committing = true;
+            }
+            IOException failure = commitAsLeader(false);
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // Delete the temp files a crash left in the directory and the directories below it; their
+    // renames never happened, so nothing refers to them. Call before anything writes there.
+    public static int deleteTempFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) return 0;
+        int deleted = 0;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                deleted += deleteTempFiles(file);
+            } else if (TEMP_NAME.matcher(file.getName()).matches() && file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    public String getStatistics() {
+        return String.format("%s: %d writes (%d KB), %d syncs, %d batches",
+                durability, writeCount.get(), byteCount.get() / 1024, syncCount.get(), batchCount.get());
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    private void stage(PendingOp op) {
+        synchronized (commitLock) {
+            op.sequence = ++stagedSequence;
+            pending.add(op);
+        }
+        stagedByThread.get().add(op);
+    }
+
+    // Returns the batch's failure, if any, after recording it on each of its operations
+    private IOException commitAsLeader(boolean waitForGroup) {
+        // Let concurrent saves join this batch
+        if (waitForGroup && groupCommitWindowMs > 0) {
+            try {
+                Thread.sleep(groupCommitWindowMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        List<PendingOp> batch;
+        synchronized (commitLock) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        IOException failure = null;
+        try {
+            commitBatch(batch);
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        synchronized (commitLock) {
+            if (!batch.isEmpty()) {
+                for (PendingOp op : batch) {
+                    op.failure = failure;
+                }
+                committedSequence = Math.max(committedSequence, batch.get(batch.size() - 1).sequence);
+            }
+            committing = false;
+            commitLock.notifyAll();
+        }
+        return failure;
+    }
+
+    private void commitBatch(List<PendingOp> batch) throws IOException {
+        if (batch.isEmpty()) return;
+        batchCount.incrementAndGet();
+
+        // 1. Make every new file's contents durable before it becomes visible
+        for (PendingOp op : batch) {
+            if (op.type == OpType.RENAME && Files.exists(op.source)) {
+                try (FileChannel channel = FileChannel.open(op.source, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+                syncCount.incrementAndGet();
+            }
+        }
+
+        // 2. Apply renames and deletes in the order they were issued
+        Set<Path> touchedDirectories = new LinkedHashSet<>();
+        for (PendingOp op : batch) {
+            switch (op.type) {
+                case RENAME:
+                    if (Files.exists(op.source)) {
+                        rename(op.source, op.target);
+                        touchedDirectories.add(op.target.getParent());
+                    }
+                    break;
+                case DELETE:
+                    Files.deleteIfExists(op.source);
+                    touchedDirectories.add(op.source.getParent());
+                    break;
+                case DELETE_DIRECTORY:
+                    applyDeleteDirectory(op.source);
+                    touchedDirectories.add(op.source.getParent());
+                    break;
+            }
+        }
+
+        // 3. One directory sync per touched directory for the whole batch
+        for (Path directory : touchedDirectories) {
+            syncDirectory(directory);
+        }
+    }
+
+    private void rename(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void applyDeleteDirectory(Path directory) throws IOException {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    // Persist a rename/creation in the directory entry itself (not supported on every platform)
+    private void syncDirectory(Path directory) {
+        if (directory == null || !Files.isDirectory(directory)) return;
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+            syncCount.incrementAndGet();
+        } catch (IOException e) {
+            // Directories cannot be opened for sync on Windows; the rename is still atomic
+        }
+    }
+
+    private enum OpType {
+        RENAME, DELETE, DELETE_DIRECTORY
+    }
+
+    private static class PendingOp {
+        private final OpType type;
+        private final Path source;
+        private final Path target;
+        private long sequence;
+        // Set under commitLock once the batch holding this operation failed
+        private IOException failure;
+
+        PendingOp(OpType type, Path source, Path target) {
+            this.type = type;
+            this.source = source;
+            this.target = target;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.intelligentnotes.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * BM25F ranking over one or more search segments.
+ *
+ * Each field's term frequency is normalized by the field's length relative
+ * to its average, weighted (title over summary over content) and summed
+ * before the usual BM25 saturation; a phrase counts as one term whose idf is
+ * the sum of its words'. Only notes matching the query (see SearchQuery and
+ * QueryMatcher) are scored, and only the best {@code limit} of them are
+ * kept, in a min-heap, so large result sets never need sorting.
+ *
+ * Each query word may be matched by several indexed terms: the word itself,
+ * terms within a small edit distance of it (weighted down by distance), and
+ * for search-as-you-type the most common terms starting with the last,
+ * unfinished word (titles are indexed as a field, so this covers title
+ * prefixes too). Notes matching every term as typed always rank above notes
+ * that needed a typo correction.
+ *
+ * Date filters are checked against the notes' timestamp index before a
+ * candidate is scored, and so is the folder a search is scoped to, if any.
+ * A query of date filters alone has nothing to score and lists the notes in
+ * the range newest first instead, straight from the timestamp index.
+ */
+final class Bm25Scorer {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Indexed by NoteSearchIndex field number: title, content, summary
+    private static final double[] FIELD_WEIGHTS = {5.0, 1.0, 2.0};
+    private static final String[] FIELD_NAMES = {"title", "content", "summary"};
+
+    // Prefix expansion: terms looked at per segment, and terms kept
+    private static final int PREFIX_SCAN_LIMIT = 512;
+    private static final int PREFIX_EXPANSIONS = 8;
+    // Candidates scored for a prefix query; keeps one-letter prefixes within a frame or two
+    private static final int PREFIX_CANDIDATE_LIMIT = 5000;
+    // Typo expansion: similar terms kept per query term, and their weight by edit distance
+    private static final int FUZZY_EXPANSIONS = 8;
+    private static final double[] FUZZY_WEIGHTS = {1.0, 0.5, 0.25};
+
+    // Worst to best: fuzzy before exact matches, then by score, and on equal scores the larger note id first
+    private static final Comparator<SearchHit> BY_RANK = Comparator.comparing(SearchHit::isExact)
+            .thenComparingDouble(SearchHit::getScore)
+            .thenComparing(SearchHit::getNoteId, Comparator.reverseOrder());
+
+    private Bm25Scorer() {
+    }
+
+    // Best matches first; a limit of zero or less keeps every match. See SearchQuery for the syntax.
+    // Date filters are ignored without a timestamp index.
+    static List<SearchHit> topK(List<? extends SearchSegment> segments, String query, int limit) {
+        return topK(segments, query, limit, null, null);
+    }
+
+    // Like topK, but only matches ranked below the given hit: the page after it
+    static List<SearchHit> topK(List<? extends SearchSegment> segments, String query, int limit, SearchHit after,
+                                NoteTimestampIndex times) {
+        return topK(segments, query, limit, after, times, null);
+    }
+
+    // Only notes in the scope, if there is one
+    static List<SearchHit> topK(List<? extends SearchSegment> segments, String query, int limit, SearchHit after,
+                                NoteTimestampIndex times, FolderTreeIndex.Subtree scope) {
+        return search(segments, SearchQuery.parse(query, false), limit, Integer.MAX_VALUE, after, times, scope);
+    }
+
+    // Like topK, but the last word of the query is a prefix unless the query ends in a separator
+    static List<SearchHit> topKPrefix(List<? extends SearchSegment> segments, String query, int limit) {
+        return topKPrefix(segments, query, limit, null);
+    }
+
+    static List<SearchHit> topKPrefix(List<? extends SearchSegment> segments, String query, int limit,
+                                      NoteTimestampIndex times) {
+        return topKPrefix(segments, query, limit, times, null);
+    }
+
+    static List<SearchHit> topKPrefix(List<? extends SearchSegment> segments, String query, int limit,
+                                      NoteTimestampIndex times, FolderTreeIndex.Subtree scope) {
+        return search(segments, SearchQuery.parse(query, true), limit, PREFIX_CANDIDATE_LIMIT, null, times, scope);
+    }
+
+    // The word itself, then the closest indexed terms within its edit budget, most common first
+    private static void expandFuzzy(List<? extends SearchSegment> segments, SearchQuery.Term term) {
+        int maxEdits = term.literal ? 0 : FuzzyTermMatcher.maxEdits(term.text);
+        Map<String, Integer> distances = new HashMap<>();
+        if (maxEdits > 0) {
+            for (SearchSegment segment : segments) {
+                FuzzyTermMatcher.collect(segment, term.text, maxEdits, distances);
+            }
+            distances.remove(term.text);
+        }
+        Map<String, Long> frequencies = new HashMap<>();
+        for (String similar : distances.keySet()) {
+            frequencies.put(similar, documentFrequency(segments, similar));
+        }
+
+        List<String> similar = new ArrayList<>(distances.keySet());
+        similar.sort((a, b) -> {
+            int byDistance = Integer.compare(distances.get(a), distances.get(b));
+            return byDistance != 0 ? byDistance : Long.compare(frequencies.get(b), frequencies.get(a));
+        });
+        if (similar.size() > FUZZY_EXPANSIONS) {
+            similar = similar.subList(0, FUZZY_EXPANSIONS);
+        }
+
+        term.alternatives = new String[similar.size() + 1];
+        term.fuzzy = new boolean[similar.size() + 1];
+        term.idf = new double[similar.size() + 1];
+        term.alternatives[0] = term.text;
+        term.idf[0] = 1.0;
+        for (int i = 0; i < similar.size(); i++) {
+            term.alternatives[i + 1] = similar.get(i);
+            term.fuzzy[i + 1] = true;
+            term.idf[i + 1] = FUZZY_WEIGHTS[distances.get(similar.get(i))];
+        }
+    }
+
+    // The most common indexed terms starting with the prefix, the prefix itself included if indexed
+    private static void expandPrefix(List<? extends SearchSegment> segments, SearchQuery.Term term) {
+        String prefix = term.text;
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (SearchSegment segment : segments) {
+            segment.collectPrefixTerms(prefix, PREFIX_SCAN_LIMIT, frequencies);
+        }
+
+        List<String> expansions = new ArrayList<>(frequencies.keySet());
+        expansions.sort((a, b) -> {
+            if (a.equals(prefix) != b.equals(prefix)) {
+                return a.equals(prefix) ? -1 : 1;
+            }
+            return Integer.compare(frequencies.get(b), frequencies.get(a));
+        });
+        if (expansions.size() > PREFIX_EXPANSIONS) {
+            expansions = expansions.subList(0, PREFIX_EXPANSIONS);
+        }
+        term.alternatives = expansions.toArray(new String[0]);
+        term.fuzzy = new boolean[expansions.size()];
+        term.idf = new double[expansions.size()];
+        Arrays.fill(term.idf, 1.0);
+    }
+
+    private static long documentFrequency(List<? extends SearchSegment> segments, String term) {
+        long frequency = 0;
+        for (SearchSegment segment : segments) {
+            SearchSegment.Postings postings = segment.postings(term);
+            if (postings != null) {
+                frequency += postings.size();
+            }
+        }
+        return frequency;
+    }
+
+    private static double idf(List<? extends SearchSegment> segments, String term, long documentCount) {
+        long frequency = Math.min(documentFrequency(segments, term), documentCount);
+        return Math.log(1 + (documentCount - frequency + 0.5) / (frequency + 0.5));
+    }
+
+    private static List<SearchHit> search(List<? extends SearchSegment> segments, SearchQuery query,
+                                          int limit, int candidateLimit, SearchHit after,
+                                          NoteTimestampIndex times, FolderTreeIndex.Subtree scope) {
+        List<SearchQuery.DateRange> ranges = times == null ? Collections.emptyList() : query.getDateRanges();
+        if (query.getRoot() == null) {
+            return ranges.isEmpty() ? new ArrayList<>() : times.newest(ranges, scope, after, limit);
+        }
+        int capacity = limit > 0 ? limit : Integer.MAX_VALUE;
+
+        // Collection statistics; document frequencies include retired documents, which only skews idf slightly
+        long documentCount = 0;
+        double[] averageLengths = new double[NoteSearchIndex.FIELD_COUNT];
+        for (SearchSegment segment : segments) {
+            documentCount += segment.liveCount();
+            for (int field = 0; field < NoteSearchIndex.FIELD_COUNT; field++) {
+                averageLengths[field] += segment.totalFieldLength(field);
+            }
+        }
+        if (documentCount == 0) {
+            return new ArrayList<>();
+        }
+        for (int field = 0; field < NoteSearchIndex.FIELD_COUNT; field++) {
+            averageLengths[field] = Math.max(1.0, averageLengths[field] / documentCount);
+        }
+
+        // Expand each word to the indexed terms that may stand in for it, weighted by idf
+        for (SearchQuery.Term term : query.getTerms()) {
+            if (term.prefix) {
+                expandPrefix(segments, term);
+            } else {
+                expandFuzzy(segments, term);
+            }
+            for (int t = 0; t < term.alternatives.length; t++) {
+                term.idf[t] *= idf(segments, term.alternatives[t], documentCount);
+            }
+        }
+        for (SearchQuery.Phrase phrase : query.getPhrases()) {
+            phrase.idf = 0;
+            for (String term : phrase.terms) {
+                phrase.idf += idf(segments, term, documentCount);
+            }
+        }
+
+        PriorityQueue<SearchHit> heap = new PriorityQueue<>(Math.min(capacity, 1024), BY_RANK);
+        DocumentScore score = new DocumentScore(averageLengths);
+        // Newest segments first, so a query that runs out of budget still covers recent notes
+        int[] budget = {candidateLimit};
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (!scoreSegment(segments.get(i), query.getRoot(), ranges, times, scope, score, after, capacity, heap,
+                    budget)) {
+                break;
+            }
+        }
+
+        List<SearchHit> hits = new ArrayList<>(heap);
+        hits.sort(Collections.reverseOrder(BY_RANK));
+        return hits;
+    }
+
+    // False once the candidate budget is used up
+    private static boolean scoreSegment(SearchSegment segment, SearchQuery.Node root,
+                                        List<SearchQuery.DateRange> ranges, NoteTimestampIndex times,
+                                        FolderTreeIndex.Subtree scope, DocumentScore score, SearchHit after,
+                                        int capacity, PriorityQueue<SearchHit> heap, int[] budget) {
+        QueryMatcher matcher = QueryMatcher.create(root, segment);
+        if (matcher == null) {
+            return true;
+        }
+        for (int document = matcher.advance(0); document != QueryMatcher.NO_MORE_DOCUMENTS;
+             document = matcher.advance(document + 1)) {
+            if (!segment.isLive(document)) continue;
+            String noteId = segment.noteId(document);
+            if (!ranges.isEmpty() && !times.matches(noteId, ranges)) continue;
+            if (scope != null && !scope.contains(noteId)) continue;
+            if (--budget[0] < 0) {
+                return false;
+            }
+
+            score.reset(segment, document);
+            matcher.score(score);
+            if (after != null && !score.ranksBelow(noteId, after)) continue;
+            if (heap.size() < capacity) {
+                heap.add(score.toHit(noteId));
+            } else if (score.compareTo(noteId, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(score.toHit(noteId));
+            }
+        }
+        return true;
+    }
+
+    // True if the packed frequencies count any occurrence in the given fields
+    static boolean inFields(int packedFrequencies, int fields) {
+        for (int field = 0; field < NoteSearchIndex.FIELD_COUNT; field++) {
+            if ((fields & (1 << field)) != 0 && NoteSearchIndex.frequency(packedFrequencies, field) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The score of one document, added up term by term as the query's matchers visit it
+    static final class DocumentScore {
+        private final double[] averageLengths;
+        private final double[] norms = new double[NoteSearchIndex.FIELD_COUNT];
+        private final double[] fieldScores = new double[NoteSearchIndex.FIELD_COUNT];
+        private double score;
+        private boolean exact;
+        private final List<String> matchedTerms = new ArrayList<>();
+
+        DocumentScore(double[] averageLengths) {
+            this.averageLengths = averageLengths;
+        }
+
+        void reset(SearchSegment segment, int document) {
+            for (int field = 0; field < norms.length; field++) {
+                norms[field] = 1 - B + B * segment.fieldLength(document, field) / averageLengths[field];
+            }
+            Arrays.fill(fieldScores, 0);
+            score = 0;
+            exact = true;
+            matchedTerms.clear();
+        }
+
+        // Add a term or phrase occurring with the packed frequencies, counting only the given fields;
+        // false if it does not occur in any of them
+        boolean add(double idf, int packedFrequencies, int fields) {
+            double weighted = 0;
+            for (int field = 0; field < norms.length; field++) {
+                if ((fields & (1 << field)) == 0) continue;
+                double fieldTf = FIELD_WEIGHTS[field] * NoteSearchIndex.frequency(packedFrequencies, field) / norms[field];
+                weighted += fieldTf;
+                fieldScores[field] += idf * fieldTf;
+            }
+            if (weighted == 0) {
+                return false;
+            }
+            score += idf * weighted * (K1 + 1) / (weighted + K1);
+            return true;
+        }
+
+        // An indexed term that occurs in the document as part of a match, for highlighting
+        void addMatchedTerm(String term) {
+            matchedTerms.add(term);
+        }
+
+        // A word of the query only matched through a typo correction
+        void markFuzzy() {
+            exact = false;
+        }
+
+        // Same order as BY_RANK, without building a hit
+        int compareTo(String noteId, SearchHit hit) {
+            if (exact != hit.isExact()) {
+                return exact ? 1 : -1;
+            }
+            int byScore = Double.compare(score, hit.getScore());
+            return byScore != 0 ? byScore : hit.getNoteId().compareTo(noteId);
+        }
+
+        boolean ranksBelow(String noteId, SearchHit hit) {
+            return compareTo(noteId, hit) < 0;
+        }
+
+        SearchHit toHit(String noteId) {
+            int best = 0;
+            for (int field = 1; field < fieldScores.length; field++) {
+                if (fieldScores[field] > fieldScores[best]) {
+                    best = field;
+                }
+            }
+            return new SearchHit(noteId, score, FIELD_NAMES[best], exact, matchedTerms.toArray(new String[0]));
+        }
+    }
+}
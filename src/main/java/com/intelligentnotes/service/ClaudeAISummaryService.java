@@ -4,6 +4,8 @@ import com.intelligentnotes.model.Note;
 import okhttp3.*;
 import org.json.JSONArray;
 import org.json.JSONObject;
+
+import java.io.File;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -13,14 +15,34 @@ public class ClaudeAISummaryService implements AISummaryService {
     private final LocalSummaryService fallbackService;
     private final String apiKey;
     private static final String CLAUDE_MODEL = "claude-3-haiku-20240307";
+    // Prompt variants, part of each cached summary's key
+    private static final String NOTE_PROMPT = "note";
+    private static final String FOLDER_PROMPT = "folder";
+    private static final String SUMMARY_CACHE_FILE = "data/summary_cache.json";
+
+    // Shared by every instance, since a new service is created whenever the API key changes
+    private static SummaryCache sharedCache;
+    private final SummaryCache summaryCache;
 
     public ClaudeAISummaryService(String apiKey) {
+        this(apiKey, sharedCache());
+    }
+
+    ClaudeAISummaryService(String apiKey, SummaryCache summaryCache) {
         this.apiKey = apiKey;
         this.client = new OkHttpClient.Builder()
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .build();
         this.fallbackService = new LocalSummaryService();
+        this.summaryCache = summaryCache;
+    }
+
+    private static synchronized SummaryCache sharedCache() {
+        if (sharedCache == null) {
+            sharedCache = new SummaryCache(new File(SUMMARY_CACHE_FILE));
+        }
+        return sharedCache;
     }
 
     @Override
@@ -31,77 +53,22 @@ public class ClaudeAISummaryService implements AISummaryService {
         }
 
         // Strip HTML
-        String plainText = fallbackService.stripHtml(content);
+        String plainText = NoteText.extract(content);
 
         // If text is very short, don't summarize
         if (plainText.length() < 200) {
             return plainText;
         }
 
-        try {
-            // Limit text length to avoid excessive tokens
-            String textToSummarize = plainText.substring(0, Math.min(10000, plainText.length()));
-
-            // Construct the prompt
-            String prompt = "Please summarize the following text in a concise paragraph:\n\n" + textToSummarize;
-
-            // Prepare request
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("model", CLAUDE_MODEL);
-            requestBody.put("max_tokens", 1000);
-
-            JSONArray messages = new JSONArray();
-            JSONObject message = new JSONObject();
-            message.put("role", "user");
-            message.put("content", prompt);
-            messages.put(message);
-
-            requestBody.put("messages", messages);
-
-            RequestBody body = RequestBody.create(
-                    requestBody.toString(),
-                    MediaType.parse("application/json")
-            );
-
-            Request request = new Request.Builder()
-                    .url(API_URL)
-                    .addHeader("x-api-key", apiKey)
-                    .addHeader("anthropic-version", "2023-06-01")
-                    .addHeader("Content-Type", "application/json")
-                    .post(body)
-                    .build();
-
-            // Execute request
-            try (Response response = client.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    System.err.println("Claude API error: " + response.code() + " " + response.message());
-                    System.err.println(response.body().string());
-                    // Fallback to local summarization if API fails
-                    return fallbackService.summarizeNoteContent(content);
-                }
+        // Limit text length to avoid excessive tokens
+        String textToSummarize = plainText.substring(0, Math.min(10000, plainText.length()));
 
-                String responseBody = response.body().string();
-                JSONObject jsonResponse = new JSONObject(responseBody);
-
-                // Extract the summary from Claude's response
-                JSONArray contentArray = jsonResponse.getJSONArray("content");
+        // Construct the prompt
+        String prompt = "Please summarize the following text in a concise paragraph:\n\n" + textToSummarize;
 
-                // Get the first content item
-                if (contentArray.length() > 0) {
-                    JSONObject contentItem = contentArray.getJSONObject(0);
-                    String summary = contentItem.getString("text");
-                    return summary.trim();
-                } else {
-                    System.err.println("Claude API returned empty content array");
-                    return fallbackService.summarizeNoteContent(content);
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error calling Claude API: " + e.getMessage());
-            e.printStackTrace();
-            // Fallback to local summarization
-            return fallbackService.summarizeNoteContent(content);
-        }
+        String summary = requestSummary(NOTE_PROMPT, prompt);
+        // Fallback to local summarization if the API fails
+        return summary != null ? summary : fallbackService.summarizeNoteContent(content);
     }
 
     @Override
@@ -115,28 +82,46 @@ public class ClaudeAISummaryService implements AISummaryService {
             return "This folder is empty.";
         }
 
-        try {
-            // Prepare the content to summarize
-            StringBuilder notesContent = new StringBuilder();
-            for (int i = 0; i < Math.min(10, notes.size()); i++) {
-                Note note = notes.get(i);
-                String plainText = fallbackService.stripHtml(note.getContent());
-
-                notesContent.append("Title: ").append(note.getTitle()).append("\n");
-                notesContent.append("Content: ").append(plainText.substring(0, Math.min(500, plainText.length()))).append("\n\n");
-            }
+        // Prepare the content to summarize
+        StringBuilder notesContent = new StringBuilder();
+        for (int i = 0; i < Math.min(10, notes.size()); i++) {
+            Note note = notes.get(i);
+            String plainText = NoteText.plainText(note);
 
-            if (notes.size() > 10) {
-                notesContent.append("(and ").append(notes.size() - 10).append(" more notes)");
-            }
+            notesContent.append("Title: ").append(note.getTitle()).append("\n");
+            notesContent.append("Content: ").append(plainText.substring(0, Math.min(500, plainText.length()))).append("\n\n");
+        }
+
+        if (notes.size() > 10) {
+            notesContent.append("(and ").append(notes.size() - 10).append(" more notes)");
+        }
 
-            // Limit text length
-            String textToSummarize = notesContent.toString();
-            textToSummarize = textToSummarize.substring(0, Math.min(10000, textToSummarize.length()));
+        // Limit text length
+        String textToSummarize = notesContent.toString();
+        textToSummarize = textToSummarize.substring(0, Math.min(10000, textToSummarize.length()));
 
-            // Construct the prompt
-            String prompt = "Please summarize the following collection of notes. Give an overview of the main themes and topics covered:\n\n" + textToSummarize;
+        // Construct the prompt
+        String prompt = "Please summarize the following collection of notes. Give an overview of the main themes and topics covered:\n\n" + textToSummarize;
 
+        String summary = requestSummary(FOLDER_PROMPT, prompt);
+        // Fallback to local summarization if the API fails
+        return summary != null ? summary : fallbackService.summarizeFolderContent(notes);
+    }
+
+    public String getCacheStatistics() {
+        return summaryCache.getStatistics();
+    }
+
+    // Claude's summary for the prompt, from the cache if the same prompt was sent to the same
+    // model before; null if the API call fails. Fallback summaries are never cached.
+    private String requestSummary(String variant, String prompt) {
+        String cacheKey = SummaryCache.key(CLAUDE_MODEL, variant, prompt);
+        String cached = summaryCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
             // Prepare request
             JSONObject requestBody = new JSONObject();
             requestBody.put("model", CLAUDE_MODEL);
@@ -163,13 +148,14 @@ public class ClaudeAISummaryService implements AISummaryService {
                     .post(body)
                     .build();
 
-            // Execute request
-            try (Response response = client.newCall(request).execute()) {
+            // Execute request; cancelling the summary's future aborts it mid-flight
+            Call call = client.newCall(request);
+            SummaryExecutor.onCancel(call::cancel);
+            try (Response response = call.execute()) {
                 if (!response.isSuccessful()) {
                     System.err.println("Claude API error: " + response.code() + " " + response.message());
                     System.err.println(response.body().string());
-                    // Fallback to local summarization
-                    return fallbackService.summarizeFolderContent(notes);
+                    return null;
                 }
 
                 String responseBody = response.body().string();
@@ -181,18 +167,22 @@ public class ClaudeAISummaryService implements AISummaryService {
                 // Get the first content item
                 if (contentArray.length() > 0) {
                     JSONObject contentItem = contentArray.getJSONObject(0);
-                    String summary = contentItem.getString("text");
-                    return summary.trim();
+                    String summary = contentItem.getString("text").trim();
+                    summaryCache.put(cacheKey, summary);
+                    return summary;
                 } else {
                     System.err.println("Claude API returned empty content array");
-                    return fallbackService.summarizeFolderContent(notes);
+                    return null;
                 }
             }
         } catch (Exception e) {
+            if (SummaryExecutor.isAbandoned()) {
+                System.out.println("Summary request cancelled");
+                return null;
+            }
             System.err.println("Error calling Claude API: " + e.getMessage());
             e.printStackTrace();
-            // Fallback to local summarization
-            return fallbackService.summarizeFolderContent(notes);
+            return null;
         }
     }
-}
\ No newline at end of file
+}
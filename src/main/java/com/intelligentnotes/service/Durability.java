@@ -0,0 +1,29 @@
+package com.intelligentnotes.service;
+
+/**
+ * How hard the storage backends work to make a completed save survive a crash.
+ */
+public enum Durability {
+    // Atomic rename only; data reaches disk whenever the OS flushes it
+    NONE,
+    // Saves issued within a short window are committed together and share the sync
+    PER_BATCH,
+    // Every save is synced to disk before it returns
+    PER_WRITE;
+
+    // Parse a preference value such as "per-batch", falling back to PER_BATCH
+    public static Durability fromPreference(String value) {
+        if (value != null) {
+            for (Durability durability : values()) {
+                if (durability.toPreference().equalsIgnoreCase(value.trim())) {
+                    return durability;
+                }
+            }
+        }
+        return PER_BATCH;
+    }
+
+    public String toPreference() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -1,40 +1,233 @@
 package com.intelligentnotes.service;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.intelligentnotes.model.Folder;
 import com.intelligentnotes.model.Note;
+import com.intelligentnotes.model.NoteContentLoader;
+import com.intelligentnotes.model.SearchPage;
 import com.intelligentnotes.model.SearchResult;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 public class FileSystemStorageService implements StorageService {
-    private static final String BASE_STORAGE_PATH = "data/";
-    private static final String ROOT_FOLDERS_FILE = "root_folders.json";
+    private static final String DEFAULT_STORAGE_PATH = "data/";
+    private static final String ROOT_FOLDER_IDS_FILE = "root_folder_ids.json";
+    private static final String FOLDER_FILE = "folder.json";
+    private static final String PACK_DIRECTORY = "pack";
+    private static final String INDEX_DIRECTORY = "index";
+    private static final String VECTOR_INDEX_FILE = "vectors.idx";
+    // Folders with more notes than this read their note headers in parallel chunks
+    private static final int NOTE_LOAD_CHUNK = 32;
+
+    // Legacy layout: full folder trees (including note bodies) embedded in every file
+    private static final String LEGACY_ROOT_FOLDERS_FILE = "root_folders.json";
+    private static final String LEGACY_METADATA_FILE = "metadata.json";
+    private final String basePath;
     private ObjectMapper objectMapper;
+    private final AtomicFileWriter fileWriter;
+    private final FolderTreeIndex treeIndex = new FolderTreeIndex();
+    private final FolderTreeSearcher searcher = new FolderTreeSearcher();
+    // Opened on the first search, then kept current by every save and delete
+    private PersistentSearchIndex searchIndex;
+    // Opened on the first semantic search, and likewise kept current
+    private NoteVectorIndex vectorIndex;
+    // Notes are loaded without their bodies; content is read on demand through this cache
+    private final NoteContentCache contentCache = new NoteContentCache();
+    private final SearchResultCache resultCache = new SearchResultCache();
+    // Also keeps the plain text extracted from a body next to it in the cache
+    private final NoteContentLoader contentLoader = new NoteContentLoader() {
+        @Override
+        public String loadContent(Note note) {
+            return loadNoteContent(note);
+        }
+
+        @Override
+        public String loadPlainText(Note note) {
+            return contentCache.getPlainText(note.getId());
+        }
+
+        @Override
+        public void storePlainText(Note note, String content, String plainText) {
+            contentCache.putPlainText(note.getId(), content, plainText);
+        }
+    };
+    // Set in packed mode: note records live in segment files instead of note_<id>.json
+    private final NotePackStore packStore;
+    private final List<File> importedNoteFiles = Collections.synchronizedList(new ArrayList<>());
+    // Opened while loading in unpacked mode if notes are only found in an old pack
+    private NotePackStore exportPack;
+    private final Object exportLock = new Object();
+
+    // Startup load statistics
+    private final AtomicInteger loadedFolderCount = new AtomicInteger();
+    private final AtomicInteger loadedNoteCount = new AtomicInteger();
+    private boolean treeLoaded = false;
+
+    // Query timings, printed on close
+    private long searchCount;
+    private long searchLookupNanos;
+    private long searchNanos;
+    private long semanticSearchCount;
+    private long semanticSearchNanos;
 
     public FileSystemStorageService() {
+        this(Durability.PER_BATCH);
+    }
+
+    public FileSystemStorageService(Durability durability) {
+        this(durability, false);
+    }
+
+    public FileSystemStorageService(Durability durability, boolean packedNotes) {
+        this(durability, packedNotes, 0);
+    }
+
+    // With PER_BATCH durability, a commit waits groupCommitWindowMs for more saves to join its batch
+    public FileSystemStorageService(Durability durability, boolean packedNotes, long groupCommitWindowMs) {
+        this(new File(DEFAULT_STORAGE_PATH), durability, packedNotes, groupCommitWindowMs);
+    }
+
+    // Stores everything under the given directory instead of data/
+    FileSystemStorageService(File directory, Durability durability, boolean packedNotes, long groupCommitWindowMs) {
+        this.basePath = directory.getPath() + File.separator;
         this.objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
+        this.fileWriter = new AtomicFileWriter(durability, groupCommitWindowMs);
 
         // Ensure storage directory exists
-        File storageDir = new File(BASE_STORAGE_PATH);
+        File storageDir = new File(basePath);
         if (!storageDir.exists()) {
             storageDir.mkdirs();
         }
+        int staleTempFiles = AtomicFileWriter.deleteTempFiles(storageDir);
+        if (staleTempFiles > 0) {
+            System.out.println("Removed " + staleTempFiles + " temp files left by an interrupted write");
+        }
+
+        NotePackStore pack = null;
+        if (packedNotes) {
+            try {
+                pack = new NotePackStore(new File(basePath + PACK_DIRECTORY), objectMapper, durability);
+            } catch (IOException e) {
+                System.err.println("Error opening note pack, using note files instead: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        this.packStore = pack;
     }
 
+    // Public operations mutate the tree under the service lock and then wait for
+    // durability outside it, so concurrent saves can share one group commit.
+
     @Override
     public void saveNote(Note note, Folder parent) throws IOException {
+        synchronized (this) {
+            storeNote(note, parent);
+        }
+        awaitDurable();
+    }
+
+    @Override
+    public void saveFolder(Folder folder, Folder parent) throws IOException {
+        synchronized (this) {
+            storeFolder(folder, parent);
+        }
+        awaitDurable();
+    }
+
+    @Override
+    public void deleteNote(Note note, Folder parent) {
+        try {
+            synchronized (this) {
+                removeNote(note, parent);
+            }
+            awaitDurable();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void deleteFolder(Folder folder, Folder parent) {
+        try {
+            synchronized (this) {
+                removeFolder(folder, parent);
+            }
+            awaitDurable();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Pack records must be durable before folder files that reference them
+    private void awaitDurable() throws IOException {
+        if (packStore != null) {
+            packStore.sync();
+        }
+        fileWriter.awaitDurable();
+    }
+
+    private void storeNote(Note note, Folder parent) throws IOException {
         if (note == null) {
             throw new IllegalArgumentException("Cannot save null note");
         }
 
+        try {
+            writeNote(note, parent);
+
+            // A new note only changes its parent's note list, nothing further up
+            if (parent != null && !parent.getNotes().contains(note)) {
+                parent.addNote(note);
+            }
+            if (parent != null && parent.isDirty()) {
+                writeFolder(parent);
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving note: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private void storeFolder(Folder folder, Folder parent) throws IOException {
+        // Generate ID if new folder
+        if (folder.getId() == null) {
+            folder.setId(UUID.randomUUID().toString());
+        }
+
+        ensureTreeLoaded();
+
+        boolean newRoot = parent == null && !treeIndex.isRootFolder(folder);
+        boolean newSubFolder = parent != null && !parent.getSubFolders().contains(folder);
+        writeFolder(folder);
+
+        // Attaching a new folder changes the root list or its parent's folder list only
+        if (newRoot) {
+            treeIndex.putFolder(folder, null);
+            saveRootFolders(treeIndex.getRootFolders());
+        } else if (newSubFolder) {
+            parent.addSubFolder(folder);
+            treeIndex.putFolder(folder, parent);
+        }
+        if (parent != null && parent.isDirty()) {
+            writeFolder(parent);
+        }
+    }
+
+    // Write one note record and index it under the given folder
+    private void writeNote(Note note, Folder folder) throws IOException {
         // Generate ID if new note
         if (note.getId() == null) {
             note.setId(UUID.randomUUID().toString());
@@ -47,379 +240,773 @@ public class FileSystemStorageService implements StorageService {
         }
         note.setUpdatedAt(now);
 
-        try {
-            // Save note file
-            String folderPath = getFolderPath(parent);
-            File folderDir = new File(folderPath);
-
-            // Ensure directory exists
-            if (!folderDir.exists()) {
-                boolean created = folderDir.mkdirs();
-                if (!created) {
-                    throw new IOException("Failed to create directory: " + folderPath);
-                }
+        // Ensure directory exists
+        String folderPath = getFolderPath(folder);
+        File folderDir = new File(folderPath);
+        if (!folderDir.exists()) {
+            boolean created = folderDir.mkdirs();
+            if (!created) {
+                throw new IOException("Failed to create directory: " + folderPath);
             }
+        }
 
-            File noteFile = new File(folderPath + "note_" + note.getId() + ".json");
-            objectMapper.writeValue(noteFile, note);
+        String previousFolderId = treeIndex.getNoteFolderId(note.getId());
+        if (packStore != null) {
+            packStore.put(note);
+        } else {
+            String fileName = "note_" + note.getId() + ".json";
+            fileWriter.writeValue(objectMapper, new File(folderPath + fileName), note);
 
-            // Update parent folder structure if this is a new note
-            if (parent != null && !parent.getNotes().contains(note)) {
-                parent.getNotes().add(note);
-                saveFolder(parent, getParentFolder(parent));
+            // Saving a note that was moved in memory also finishes moving its file
+            if (folder != null && previousFolderId != null && !previousFolderId.equals(folder.getId())) {
+                fileWriter.delete(new File(basePath + "folder_" + previousFolderId + "/" + fileName));
             }
-        } catch (IOException e) {
-            System.err.println("Error saving note: " + e.getMessage());
-            throw e;
         }
+        if (note.isContentLoaded()) {
+            contentCache.put(note.getId(), note.getContent());
+        }
+        if (folder != null) {
+            treeIndex.putNote(note, folder);
+        }
+        if (searchIndex != null) {
+            searchIndex.update(note);
+        }
+        if (vectorIndex != null) {
+            vectorIndex.update(note);
+        }
+        note.clearDirty();
+    }
+
+    // Write one folder file (child IDs only, never note bodies)
+    private void writeFolder(Folder folder) throws IOException {
+        // Create folder directory if it doesn't exist
+        String folderPath = getFolderPath(folder);
+        File folderDir = new File(folderPath);
+        if (!folderDir.exists()) {
+            folderDir.mkdirs();
+        }
+
+        // Notes dragged in from another folder bring their note file along
+        relocateMovedNotes(folder);
+
+        File metadataFile = new File(folderPath + FOLDER_FILE);
+        fileWriter.writeValue(objectMapper, metadataFile, FolderMetadata.from(folder));
+        treeIndex.reindexChildren(folder);
+        folder.clearDirty();
     }
 
+    // Write only what changed since the last persist, as one durable batch
     @Override
-    public void saveFolder(Folder folder, Folder parent) {
-        // Generate ID if new folder
+    public void persistChanges() throws IOException {
+        synchronized (this) {
+            ensureTreeLoaded();
+            for (Folder root : new ArrayList<>(treeIndex.getRootFolders())) {
+                persistDirty(root);
+            }
+        }
+        awaitDurable();
+    }
+
+    // Post-order, so notes and subfolders are written before the folder file listing them
+    private void persistDirty(Folder folder) throws IOException {
         if (folder.getId() == null) {
             folder.setId(UUID.randomUUID().toString());
+            folder.markDirty();
+        }
+        for (Note note : folder.getNotes()) {
+            if (note.getId() == null || note.isDirty()) {
+                writeNote(note, folder);
+            }
         }
+        for (Folder subFolder : folder.getSubFolders()) {
+            persistDirty(subFolder);
+        }
+        if (folder.isDirty()) {
+            writeFolder(folder);
+        }
+    }
 
-        try {
-            // Create folder directory if it doesn't exist
-            String folderPath = BASE_STORAGE_PATH + "folder_" + folder.getId() + "/";
-            File folderDir = new File(folderPath);
-            if (!folderDir.exists()) {
-                folderDir.mkdirs();
+    private void removeNote(Note note, Folder parent) throws IOException {
+        // Delete note file
+        if (packStore != null) {
+            packStore.delete(note.getId());
+        } else {
+            String folderPath = getFolderPath(parent);
+            fileWriter.delete(new File(folderPath + "note_" + note.getId() + ".json"));
+        }
+
+        // Update parent folder structure
+        contentCache.invalidate(note.getId());
+        if (searchIndex != null) {
+            searchIndex.remove(note.getId());
+        }
+        if (vectorIndex != null) {
+            vectorIndex.remove(note.getId());
+        }
+        treeIndex.removeNote(note);
+        if (parent != null) {
+            parent.removeNote(note);
+            writeFolder(parent);
+        }
+    }
+
+    private void removeFolder(Folder folder, Folder parent) throws IOException {
+        ensureTreeLoaded();
+
+        // Delete the directories of this folder and all subfolders, notes included
+        deleteFolderDirectories(folder);
+
+        // Update parent folder structure or root folders list
+        if (searchIndex != null) {
+            searchIndex.removeFolder(folder);
+        }
+        if (vectorIndex != null) {
+            vectorIndex.removeFolder(folder);
+        }
+        treeIndex.removeFolder(folder);
+        if (parent != null) {
+            parent.removeSubFolder(folder);
+            writeFolder(parent);
+        } else {
+            saveRootFolders(treeIndex.getRootFolders());
+        }
+    }
+
+    private void deleteFolderDirectories(Folder folder) throws IOException {
+        for (Folder subFolder : folder.getSubFolders()) {
+            deleteFolderDirectories(subFolder);
+        }
+        for (Note note : folder.getNotes()) {
+            contentCache.invalidate(note.getId());
+            if (packStore != null) {
+                packStore.delete(note.getId());
             }
+        }
+        fileWriter.deleteDirectory(new File(basePath + "folder_" + folder.getId()));
+    }
 
-            // Save folder metadata
-            File metadataFile = new File(folderPath + "metadata.json");
-            objectMapper.writeValue(metadataFile, folder);
+    @Override
+    public synchronized List<Folder> getRootFolders() {
+        ensureTreeLoaded();
+        return new ArrayList<>(treeIndex.getRootFolders());
+    }
 
-            // If this is a root folder, update the root folders list
-            if (parent == null) {
-                List<Folder> rootFolders = getRootFolders();
-                if (!rootFolders.contains(folder)) {
-                    rootFolders.add(folder);
-                    saveRootFolders(rootFolders);
-                }
+    // Load the tree from disk once; afterwards the resident index is authoritative
+    private void ensureTreeLoaded() {
+        if (!treeLoaded) {
+            treeIndex.rebuild(loadRootFolders());
+            treeIndex.markAllClean();
+            treeLoaded = true;
+        }
+    }
+
+    private List<Folder> loadRootFolders() {
+        List<Folder> rootFolders = new ArrayList<>();
+
+        File rootIdsFile = new File(basePath + ROOT_FOLDER_IDS_FILE);
+        File legacyRootFile = new File(basePath + LEGACY_ROOT_FOLDERS_FILE);
+        if (!rootIdsFile.exists() && legacyRootFile.exists()) {
+            migrateLegacyLayout();
+        }
+
+        try {
+            if (rootIdsFile.exists()) {
+                List<String> rootIds = objectMapper.readValue(rootIdsFile,
+                        objectMapper.getTypeFactory().constructCollectionType(List.class, String.class));
+
+                // Subtrees are read in parallel; each task only builds its own folders
+                long start = System.nanoTime();
+                ForkJoinPool pool = ForkJoinPool.commonPool();
+                rootFolders.addAll(pool.invoke(new FolderLoadTask(rootIds)));
+                long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+                System.out.println("Loaded " + rootFolders.size() + " root folders from storage ("
+                        + loadedFolderCount.get() + " folders, " + loadedNoteCount.get() + " notes) in "
+                        + elapsedMs + " ms on " + pool.getParallelism() + " threads");
+                finishPackImport();
             } else {
-                // Update parent folder structure if this is a new subfolder
-                if (!parent.getSubFolders().contains(folder)) {
-                    parent.getSubFolders().add(folder);
-                    saveFolder(parent, getParentFolder(parent));
-                }
+                System.out.println("Root folders file does not exist at: " + rootIdsFile.getAbsolutePath());
             }
         } catch (IOException e) {
+            System.err.println("Error loading root folders: " + e.getMessage());
             e.printStackTrace();
         }
+
+        return rootFolders;
     }
 
-    @Override
-    public void deleteNote(Note note, Folder parent) {
+    // Load a folder, its notes and (recursively) its subfolders from the normalized layout.
+    // Runs inside FolderLoadTask on the fork-join pool.
+    private Folder loadFolder(String folderId) {
+        String folderPath = basePath + "folder_" + folderId + "/";
+        File metadataFile = new File(folderPath + FOLDER_FILE);
+
+        if (!metadataFile.exists()) {
+            System.out.println("Warning: Folder metadata does not exist for folder: " + folderId);
+            return null;
+        }
+
         try {
-            // Delete note file
-            String folderPath = getFolderPath(parent);
-            File noteFile = new File(folderPath + "note_" + note.getId() + ".json");
-            if (noteFile.exists()) {
-                noteFile.delete();
+            FolderMetadata metadata = objectMapper.readValue(metadataFile, FolderMetadata.class);
+            Folder folder = metadata.toFolder();
+
+            // Subfolders are forked first so they load while this folder reads its notes
+            FolderLoadTask subFolders = new FolderLoadTask(metadata.getSubFolderIds());
+            subFolders.fork();
+            folder.getNotes().addAll(new NoteLoadTask(folder, folderPath, metadata.getNoteIds()).compute());
+            folder.getSubFolders().addAll(subFolders.join());
+
+            loadedFolderCount.incrementAndGet();
+            return folder;
+        } catch (IOException e) {
+            System.err.println("Error loading folder metadata for folder " + folderId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Loads a list of sibling folders, one subtask per folder, keeping their order
+    private class FolderLoadTask extends RecursiveTask<List<Folder>> {
+        private final List<String> folderIds;
+
+        FolderLoadTask(List<String> folderIds) {
+            this.folderIds = folderIds;
+        }
+
+        @Override
+        protected List<Folder> compute() {
+            List<Folder> folders = new ArrayList<>();
+            if (folderIds.size() == 1) {
+                Folder folder = loadFolder(folderIds.get(0));
+                if (folder != null) {
+                    folders.add(folder);
+                }
+                return folders;
             }
 
-            // Update parent folder structure
-            if (parent != null) {
-                parent.getNotes().remove(note);
-                saveFolder(parent, getParentFolder(parent));
+            List<FolderLoadTask> subtasks = new ArrayList<>();
+            for (String folderId : folderIds) {
+                subtasks.add(new FolderLoadTask(Collections.singletonList(folderId)));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            invokeAll(subtasks);
+            for (FolderLoadTask subtask : subtasks) {
+                folders.addAll(subtask.join());
+            }
+            return folders;
         }
     }
 
-    @Override
-    public void deleteFolder(Folder folder, Folder parent) {
-        try {
-            // Delete all notes in this folder
-            for (Note note : new ArrayList<>(folder.getNotes())) {
-                deleteNote(note, folder);
+    // Reads the note headers of one folder, splitting large folders into chunks
+    private class NoteLoadTask extends RecursiveTask<List<Note>> {
+        private final Folder folder;
+        private final String folderPath;
+        private final List<String> noteIds;
+
+        NoteLoadTask(Folder folder, String folderPath, List<String> noteIds) {
+            this.folder = folder;
+            this.folderPath = folderPath;
+            this.noteIds = noteIds;
+        }
+
+        @Override
+        protected List<Note> compute() {
+            List<Note> notes = new ArrayList<>();
+            if (noteIds.size() > NOTE_LOAD_CHUNK) {
+                int middle = noteIds.size() / 2;
+                NoteLoadTask second = new NoteLoadTask(folder, folderPath, noteIds.subList(middle, noteIds.size()));
+                second.fork();
+                notes.addAll(new NoteLoadTask(folder, folderPath, noteIds.subList(0, middle)).compute());
+                notes.addAll(second.join());
+                return notes;
+            }
+
+            for (String noteId : noteIds) {
+                try {
+                    Note note = loadNoteHeader(folderPath, noteId);
+                    if (note != null) {
+                        notes.add(note);
+                        loadedNoteCount.incrementAndGet();
+                    } else {
+                        System.out.println("Warning: Note file missing for note " + noteId + " in folder " + folder.getName());
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error loading note " + noteId + " in folder " + folder.getName() + ": " + e.getMessage());
+                }
             }
+            return notes;
+        }
+    }
+
+    private Note loadNoteHeader(String folderPath, String noteId) throws IOException {
+        File noteFile = new File(folderPath + "note_" + noteId + ".json");
 
-            // Delete all subfolders recursively
-            for (Folder subFolder : new ArrayList<>(folder.getSubFolders())) {
-                deleteFolder(subFolder, folder);
+        if (packStore != null) {
+            // A note file is newer than the pack: it was written before packed mode was
+            // (re-)enabled, so it replaces the packed record
+            if (noteFile.exists()) {
+                packStore.put(objectMapper.readValue(noteFile, Note.class));
+                importedNoteFiles.add(noteFile);
+            }
+            Note header = packStore.getHeader(noteId);
+            if (header != null) {
+                header.setContentLoader(contentLoader);
             }
+            return header;
+        }
 
-            // Delete folder directory
-            String folderPath = BASE_STORAGE_PATH + "folder_" + folder.getId() + "/";
-            File folderDir = new File(folderPath);
-            if (folderDir.exists()) {
-                File[] files = folderDir.listFiles();
-                if (files != null) {
-                    for (File file : files) {
-                        file.delete();
+        if (!noteFile.exists()) {
+            // Packed mode was switched off: write the note out of the pack again
+            Note packed = readPackedNote(noteId);
+            if (packed == null) {
+                return null;
+            }
+            fileWriter.writeValue(objectMapper, noteFile, packed);
+            contentCache.put(noteId, packed.getContent());
+            packed.setContentLoader(contentLoader);
+            packed.setContent(null);
+            return packed;
+        }
+        return readNoteHeader(noteFile);
+    }
+
+    // Note files are only removed once the pack records replacing them are durable
+    private void finishPackImport() throws IOException {
+        if (exportPack != null) {
+            exportPack.close();
+            exportPack = null;
+            fileWriter.flush();
+        }
+        if (importedNoteFiles.isEmpty()) return;
+
+        packStore.sync();
+        for (File noteFile : importedNoteFiles) {
+            fileWriter.delete(noteFile);
+        }
+        fileWriter.flush();
+        System.out.println("Moved " + importedNoteFiles.size() + " note files into the note pack");
+        importedNoteFiles.clear();
+    }
+
+    private Note readPackedNote(String noteId) {
+        File packDirectory = new File(basePath + PACK_DIRECTORY);
+        try {
+            synchronized (exportLock) {
+                if (exportPack == null) {
+                    if (!NotePackStore.exists(packDirectory)) {
+                        return null;
                     }
+                    exportPack = new NotePackStore(packDirectory, objectMapper, Durability.NONE);
                 }
-                folderDir.delete();
             }
+            Note note = exportPack.getHeader(noteId);
+            if (note != null) {
+                note.setContent(exportPack.readContent(noteId));
+            }
+            return note;
+        } catch (IOException e) {
+            System.err.println("Error reading note " + noteId + " from note pack: " + e.getMessage());
+            return null;
+        }
+    }
 
-            // Update parent folder structure or root folders list
-            if (parent != null) {
-                parent.getSubFolders().remove(folder);
-                saveFolder(parent, getParentFolder(parent));
-            } else {
-                List<Folder> rootFolders = getRootFolders();
-                rootFolders.remove(folder);
-                saveRootFolders(rootFolders);
+    // Read a note's fields without its content. Content is written last, so parsing
+    // stops before the body; files from older versions may still list it earlier.
+    private Note readNoteHeader(File noteFile) throws IOException {
+        Note note = new Note();
+        try (JsonParser parser = objectMapper.getFactory().createParser(noteFile)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Note file is not a JSON object: " + noteFile);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "id":
+                        note.setId(parser.getValueAsString());
+                        break;
+                    case "title":
+                        note.setTitle(parser.getValueAsString());
+                        break;
+                    case "summary":
+                        note.setSummary(parser.getValueAsString());
+                        break;
+                    case "createdAt":
+                        note.setCreatedAt(value == JsonToken.VALUE_NULL ? null : objectMapper.readValue(parser, LocalDateTime.class));
+                        break;
+                    case "updatedAt":
+                        note.setUpdatedAt(value == JsonToken.VALUE_NULL ? null : objectMapper.readValue(parser, LocalDateTime.class));
+                        break;
+                    case "content":
+                        if (note.getUpdatedAt() != null) {
+                            // Everything before the body is known, leave the rest unparsed
+                            note.setContentLoader(contentLoader);
+                            return note;
+                        }
+                        // Older field order: skip the body without building a String from it
+                        break;
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        note.setContentLoader(contentLoader);
+        return note;
     }
 
-    @Override
-    public List<Folder> getRootFolders() {
-        List<Folder> rootFolders = new ArrayList<>();
+    // Fetch the body of a note loaded by readNoteHeader, from the cache or its note file
+    // Runs on scan workers and UI threads alike, so it takes no lock of the service's:
+    // the cache, the folder lookup and the pack store are safe to use concurrently
+    private String loadNoteContent(Note note) {
+        String content = contentCache.get(note.getId());
+        if (content != null) {
+            return content;
+        }
+        long cacheVersion = contentCache.getVersion();
 
+        String folderId = treeIndex.getNoteFolderId(note.getId());
+        if (folderId == null) {
+            return null;
+        }
+        File noteFile = new File(basePath + "folder_" + folderId + "/note_" + note.getId() + ".json");
         try {
-            File rootFoldersFile = new File(BASE_STORAGE_PATH + ROOT_FOLDERS_FILE);
-            if (rootFoldersFile.exists()) {
-                rootFolders = objectMapper.readValue(rootFoldersFile,
-                        objectMapper.getTypeFactory().constructCollectionType(List.class, Folder.class));
+            content = packStore != null
+                    ? packStore.readContent(note.getId())
+                    : objectMapper.readValue(noteFile, Note.class).getContent();
+            contentCache.putLoaded(note.getId(), content, cacheVersion);
+            return content;
+        } catch (IOException e) {
+            System.err.println("Error loading content for note " + note.getId() + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-                // Log information about loaded root folders
-                System.out.println("Loaded " + rootFolders.size() + " root folders from storage");
+    // Convert a data/ directory written by the old embedded-tree format.
+    // Legacy files are only removed once the new root IDs file exists, so an
+    // interrupted migration simply runs again on the next start.
+    private void migrateLegacyLayout() {
+        System.out.println("Migrating legacy storage layout in " + new File(basePath).getAbsolutePath());
 
-                // Ensure each folder's notes and subfolders are fully loaded
-                for (Folder folder : rootFolders) {
-                    ensureFolderFullyLoaded(folder);
-                }
-            } else {
-                System.out.println("Root folders file does not exist at: " + rootFoldersFile.getAbsolutePath());
+        List<Folder> legacyRoots = loadLegacyRootFolders();
+        List<String> rootIds = new ArrayList<>();
+        try {
+            for (Folder folder : legacyRoots) {
+                migrateLegacyFolder(folder);
+                rootIds.add(folder.getId());
             }
+            fileWriter.flush();
+            fileWriter.writeValue(objectMapper, new File(basePath + ROOT_FOLDER_IDS_FILE), rootIds);
+            fileWriter.flush();
         } catch (IOException e) {
-            System.err.println("Error loading root folders: " + e.getMessage());
+            System.err.println("Error migrating legacy storage: " + e.getMessage());
             e.printStackTrace();
+            return;
         }
 
-        return rootFolders;
+        // The new layout is complete; retire the legacy files
+        for (Folder folder : legacyRoots) {
+            deleteLegacyMetadata(folder);
+        }
+        File legacyRootFile = new File(basePath + LEGACY_ROOT_FOLDERS_FILE);
+        File backupFile = new File(basePath + LEGACY_ROOT_FOLDERS_FILE + ".bak");
+        if (!legacyRootFile.renameTo(backupFile)) {
+            System.err.println("Could not rename legacy root folders file: " + legacyRootFile.getAbsolutePath());
+        }
+        System.out.println("Migrated " + rootIds.size() + " root folders to the normalized layout");
     }
 
-    // helper method to ensure folders are fully loaded
-    private void ensureFolderFullyLoaded(Folder folder) {
-        if (folder == null) return;
-
-        // Check folder path
-        String folderPath = BASE_STORAGE_PATH + "folder_" + folder.getId() + "/";
+    private void migrateLegacyFolder(Folder folder) throws IOException {
+        String folderPath = basePath + "folder_" + folder.getId() + "/";
         File folderDir = new File(folderPath);
-
         if (!folderDir.exists()) {
-            System.out.println("Warning: Folder directory does not exist for folder: " + folder.getName());
-            return;
+            folderDir.mkdirs();
+        }
+
+        // saveNote always wrote the note file first, so an existing file is the newest copy
+        for (Note note : folder.getNotes()) {
+            File noteFile = new File(folderPath + "note_" + note.getId() + ".json");
+            if (!noteFile.exists()) {
+                fileWriter.writeValue(objectMapper, noteFile, note);
+            }
+        }
+
+        fileWriter.writeValue(objectMapper, new File(folderPath + FOLDER_FILE), FolderMetadata.from(folder));
+
+        for (Folder subFolder : folder.getSubFolders()) {
+            migrateLegacyFolder(subFolder);
+        }
+    }
+
+    private void deleteLegacyMetadata(Folder folder) {
+        File legacyMetadata = new File(basePath + "folder_" + folder.getId() + "/" + LEGACY_METADATA_FILE);
+        if (legacyMetadata.exists()) {
+            legacyMetadata.delete();
+        }
+        for (Folder subFolder : folder.getSubFolders()) {
+            deleteLegacyMetadata(subFolder);
+        }
+    }
+
+    private List<Folder> loadLegacyRootFolders() {
+        List<Folder> rootFolders = new ArrayList<>();
+
+        try {
+            File rootFoldersFile = new File(basePath + LEGACY_ROOT_FOLDERS_FILE);
+            rootFolders = objectMapper.readValue(rootFoldersFile,
+                    objectMapper.getTypeFactory().constructCollectionType(List.class, Folder.class));
+
+            // Ensure each folder's notes and subfolders are fully loaded
+            for (Folder folder : rootFolders) {
+                ensureLegacyFolderFullyLoaded(folder);
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading legacy root folders: " + e.getMessage());
+            e.printStackTrace();
         }
 
-        // Ensure notes list exists
+        return rootFolders;
+    }
+
+    // helper method to ensure legacy folders are fully loaded
+    private void ensureLegacyFolderFullyLoaded(Folder folder) {
+        if (folder == null) return;
+
+        // Ensure notes and subfolder lists exist
         if (folder.getNotes() == null) {
             folder.setNotes(new ArrayList<>());
         }
-
-        // Ensure subfolders list exists
         if (folder.getSubFolders() == null) {
             folder.setSubFolders(new ArrayList<>());
         }
 
         // Load folder metadata file to get the most up-to-date info
+        File metadataFile = new File(basePath + "folder_" + folder.getId() + "/" + LEGACY_METADATA_FILE);
         try {
-            File metadataFile = new File(folderPath + "metadata.json");
             if (metadataFile.exists()) {
                 Folder updatedFolder = objectMapper.readValue(metadataFile, Folder.class);
 
                 // Update folder with the latest data
                 folder.setName(updatedFolder.getName());
-                folder.setNotes(updatedFolder.getNotes());
-                folder.setSubFolders(updatedFolder.getSubFolders());
+                folder.setNotes(updatedFolder.getNotes() != null ? updatedFolder.getNotes() : new ArrayList<>());
+                folder.setSubFolders(updatedFolder.getSubFolders() != null ? updatedFolder.getSubFolders() : new ArrayList<>());
                 folder.setSummary(updatedFolder.getSummary());
-
-                System.out.println("Loaded folder '" + folder.getName() + "' with " +
-                        folder.getNotes().size() + " notes and " +
-                        folder.getSubFolders().size() + " subfolders");
             }
         } catch (IOException e) {
-            System.err.println("Error loading folder metadata for folder " + folder.getName() + ": " + e.getMessage());
+            System.err.println("Error loading legacy metadata for folder " + folder.getName() + ": " + e.getMessage());
         }
 
         // Recursively ensure all subfolders are loaded
         for (Folder subFolder : folder.getSubFolders()) {
-            ensureFolderFullyLoaded(subFolder);
+            ensureLegacyFolderFullyLoaded(subFolder);
         }
     }
+
     @Override
     public void removeRootFolder(Folder folder) {
-        List<Folder> rootFolders = getRootFolders();
-        rootFolders.remove(folder);
-        saveRootFolders(rootFolders);
-    }
-
-    private void saveRootFolders(List<Folder> rootFolders) {
+        synchronized (this) {
+            ensureTreeLoaded();
+            treeIndex.removeRootFolder(folder);
+            saveRootFolders(treeIndex.getRootFolders());
+        }
         try {
-            File rootFoldersFile = new File(BASE_STORAGE_PATH + ROOT_FOLDERS_FILE);
-            objectMapper.writeValue(rootFoldersFile, rootFolders);
+            awaitDurable();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private String getFolderPath(Folder folder) {
-        if (folder == null) {
-            return BASE_STORAGE_PATH;
+    private void saveRootFolders(List<Folder> rootFolders) {
+        try {
+            List<String> rootIds = new ArrayList<>();
+            for (Folder folder : rootFolders) {
+                rootIds.add(folder.getId());
+            }
+            File rootIdsFile = new File(basePath + ROOT_FOLDER_IDS_FILE);
+            fileWriter.writeValue(objectMapper, rootIdsFile, rootIds);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        return BASE_STORAGE_PATH + "folder_" + folder.getId() + "/";
     }
 
-    private Folder getParentFolder(Folder folder) {
-        List<Folder> allFolders = getAllFolders();
+    // Move the note file of any note whose indexed folder differs from this one
+    private void relocateMovedNotes(Folder folder) throws IOException {
+        for (Note note : folder.getNotes()) {
+            String previousFolderId = treeIndex.getNoteFolderId(note.getId());
+            if (previousFolderId == null || previousFolderId.equals(folder.getId())) {
+                continue;
+            }
 
-        for (Folder potentialParent : allFolders) {
-            if (potentialParent.getSubFolders().contains(folder)) {
-                return potentialParent;
+            // Packed records do not depend on the folder, only the index changes
+            if (packStore != null) {
+                treeIndex.putNote(note, folder);
+                continue;
             }
-        }
 
-        return null;
+            // The in-memory note is authoritative, so write it in the new place
+            // and drop the old file rather than depending on what is on disk yet
+            String fileName = "note_" + note.getId() + ".json";
+            fileWriter.writeValue(objectMapper, new File(getFolderPath(folder) + fileName), note);
+            fileWriter.delete(new File(basePath + "folder_" + previousFolderId + "/" + fileName));
+            treeIndex.putNote(note, folder);
+        }
     }
 
-    private List<Folder> getAllFolders() {
-        List<Folder> allFolders = new ArrayList<>(getRootFolders());
-
-        for (Folder rootFolder : getRootFolders()) {
-            collectSubfolders(rootFolder, allFolders);
+    private String getFolderPath(Folder folder) {
+        if (folder == null) {
+            return basePath;
         }
-
-        return allFolders;
+        return basePath + "folder_" + folder.getId() + "/";
     }
 
-    private void collectSubfolders(Folder folder, List<Folder> allFolders) {
-        for (Folder subFolder : folder.getSubFolders()) {
-            allFolders.add(subFolder);
-            collectSubfolders(subFolder, allFolders);
+    @Override
+    public void close() {
+        try {
+            fileWriter.flush();
+        } catch (IOException e) {
+            System.err.println("Error flushing pending writes: " + e.getMessage());
+            e.printStackTrace();
+        }
+        System.out.println("Storage writer " + fileWriter.getStatistics());
+        System.out.println("Note content cache: " + contentCache.getStatistics());
+        if (packStore != null) {
+            System.out.println("Note pack: " + packStore.getStatistics());
+            packStore.close();
         }
+        if (searchIndex != null) {
+            searchIndex.close();
+            System.out.println("Search index: " + searchIndex.getStatistics());
+            System.out.println("Search result cache: " + resultCache.getStatistics());
+        }
+        if (vectorIndex != null) {
+            try {
+                vectorIndex.save(new File(basePath + VECTOR_INDEX_FILE));
+            } catch (IOException e) {
+                System.err.println("Error writing vector index: " + e.getMessage());
+                e.printStackTrace();
+            }
+            System.out.println("Vector index: " + vectorIndex.getStatistics());
+        }
+        System.out.println("Searches: " + getSearchStatistics());
     }
 
     @Override
     public List<SearchResult> searchNotes(String query) {
-        List<SearchResult> results = new ArrayList<>();
-
-        // First ensure we have the most up-to-date data
-        List<Folder> rootFolders = getRootFolders();
-
-        // Log the search operation
-        System.out.println("Searching for \"" + query + "\" in " + rootFolders.size() + " root folders");
-
-        if (rootFolders.isEmpty()) {
-            System.out.println("No root folders found.");
-            return results; // Return empty list if no folders
-        }
-
-        // Now perform the search
-        searchInFolder(null, rootFolders, query, "", results);
-
-        // Log the results
-        System.out.println("Found " + results.size() + " results for \"" + query + "\"");
-
-        return results;
+        return searchNotes(query, 0);
     }
 
-    private void searchInFolder(Folder parent, List<Folder> folders, String query,
-                                String pathPrefix, List<SearchResult> results) {
-        for (Folder folder : folders) {
-            String currentPath = pathPrefix.isEmpty() ?
-                    folder.getName() : pathPrefix + " > " + folder.getName();
-
-            System.out.println("Searching in folder: " + currentPath);
+    // A limit of zero or less returns every match
+    @Override
+    public List<SearchResult> searchNotes(String query, int limit) {
+        return search(query, null, limit, false);
+    }
 
-            // Ensure folder notes are loaded correctly
-            if (folder.getNotes() == null) {
-                System.out.println("Warning: Notes list is null for folder: " + folder.getName());
-                folder.setNotes(new ArrayList<>());
-            } else {
-                System.out.println("Folder has " + folder.getNotes().size() + " notes");
-
-                // Search in notes
-                for (Note note : folder.getNotes()) {
-                    if (matchesQuery(note, query)) {
-                        String previewText = generatePreview(note.getContent(), query);
-                        System.out.println("Match found in note: " + note.getTitle());
-                        results.add(new SearchResult(note, folder, currentPath, previewText));
-                    }
-                }
-            }
+    @Override
+    public List<SearchResult> searchNotesByPrefix(String query, int limit) {
+        return search(query, null, limit, true);
+    }
 
-            // Ensure subfolder list is loaded correctly
-            if (folder.getSubFolders() == null) {
-                System.out.println("Warning: Subfolders list is null for folder: " + folder.getName());
-                folder.setSubFolders(new ArrayList<>());
-            } else {
-                System.out.println("Folder has " + folder.getSubFolders().size() + " subfolders");
+    @Override
+    public List<SearchResult> searchNotesByPrefix(String query, Folder scope, int limit) {
+        return search(query, scope, limit, true);
+    }
 
-                // Recursively search in subfolders
-                searchInFolder(folder, folder.getSubFolders(), query, currentPath, results);
-            }
-        }
+    @Override
+    public SearchPage searchNotesPage(String query, String cursor, int pageSize) {
+        return searchNotesPage(query, null, cursor, pageSize);
     }
 
-    private boolean matchesQuery(Note note, String query) {
-        if (note == null) {
-            System.out.println("Warning: Note is null during search");
-            return false;
+    @Override
+    public synchronized SearchPage searchNotesPage(String query, Folder scope, String cursor, int pageSize) {
+        ensureTreeLoaded();
+        ensureSearchIndexOpen();
+        FolderTreeIndex.Subtree subtree = treeIndex.subtree(scope);
+        if (scope != null && subtree == null) {
+            return new SearchPage(new ArrayList<>(), null);
         }
+        SearchHit after = cursor == null ? null : SearchHit.fromCursor(cursor);
+        NoteTimestampIndex times = treeIndex.getTimestamps();
+        List<SearchHit> hits = resultCache.get(SearchResultCache.FULL, query, scopeId(subtree), pageSize + 1, after,
+                cacheGeneration(), () -> searchIndex.search(query, pageSize + 1, after, times, subtree));
+        return searcher.toPage(hits, pageSize, treeIndex);
+    }
 
-        String lowerQuery = query.toLowerCase();
-
-        // Check title
-        if (note.getTitle() != null && note.getTitle().toLowerCase().contains(lowerQuery)) {
-            return true;
-        }
+    @Override
+    public synchronized SearchPage recentNotes(String cursor, int pageSize) {
+        ensureTreeLoaded();
+        return searcher.recent(treeIndex, cursor, pageSize);
+    }
 
-        // Check content (strip HTML for text search)
-        if (note.getContent() != null) {
-            String plainContent = stripHtml(note.getContent()).toLowerCase();
-            return plainContent.contains(lowerQuery);
+    @Override
+    public synchronized List<SearchResult> semanticSearch(String query, int limit) {
+        ensureTreeLoaded();
+        if (vectorIndex == null) {
+            NoteVectorIndex index = NoteVectorIndex.open(new File(basePath + VECTOR_INDEX_FILE));
+            index.validate(treeIndex.getRootFolders());
+            vectorIndex = index;
         }
+        long start = System.nanoTime();
+        List<SearchResult> results = searcher.toResults(vectorIndex.search(query, limit), treeIndex);
+        semanticSearchCount++;
+        semanticSearchNanos += System.nanoTime() - start;
+        return results;
+    }
 
-        return false;
+    // Runs without the lock; the scan's workers load note bodies concurrently
+    @Override
+    public List<SearchResult> scanNotes(Pattern pattern, int limit, int parallelism) {
+        return searcher.scan(getRootFolders(), pattern, limit, parallelism);
     }
 
-    private String generatePreview(String content, String query) {
-        if (content == null) {
-            return "No content available";
+    private synchronized List<SearchResult> search(String query, Folder scope, int limit, boolean prefix) {
+        // The resident tree and search index are kept in sync with every save, so no reload is needed
+        ensureTreeLoaded();
+        ensureSearchIndexOpen();
+        FolderTreeIndex.Subtree subtree = treeIndex.subtree(scope);
+        if (scope != null && subtree == null) {
+            return new ArrayList<>();
         }
 
-        // Generate a preview with context around the match
-        String plainContent = stripHtml(content);
-        String lowerContent = plainContent.toLowerCase();
-        String lowerQuery = query.toLowerCase();
-
-        int matchPos = lowerContent.indexOf(lowerQuery);
-        if (matchPos == -1) {
-            // If no exact match found, return the beginning
-            return plainContent.substring(0, Math.min(100, plainContent.length())) + "...";
-        }
+        long start = System.nanoTime();
+        NoteTimestampIndex times = treeIndex.getTimestamps();
+        List<SearchHit> hits = resultCache.get(prefix ? SearchResultCache.PREFIX : SearchResultCache.FULL, query,
+                scopeId(subtree), limit, null, cacheGeneration(),
+                () -> prefix ? searchIndex.searchPrefix(query, limit, times, subtree)
+                        : searchIndex.search(query, limit, null, times, subtree));
+        long lookupNanos = System.nanoTime() - start;
+
+        // Previews need the content of each match, which may have to be read from disk
+        List<SearchResult> results = searcher.toResults(hits, treeIndex);
+        searchCount++;
+        searchLookupNanos += lookupNanos;
+        searchNanos += System.nanoTime() - start;
+        return results;
+    }
 
-        // Get some context around the match
-        int previewStart = Math.max(0, matchPos - 50);
-        int previewEnd = Math.min(plainContent.length(), matchPos + query.length() + 50);
+    private synchronized String getSearchStatistics() {
+        return String.format("%d keyword searches, %.1f ms average (index lookup %.0f us), "
+                        + "%d semantic searches, %.1f ms average",
+                searchCount, average(searchNanos, searchCount) / 1e6, average(searchLookupNanos, searchCount) / 1e3,
+                semanticSearchCount, average(semanticSearchNanos, semanticSearchCount) / 1e6);
+    }
 
-        String preview = plainContent.substring(previewStart, previewEnd);
+    private static double average(long total, long count) {
+        return count == 0 ? 0 : (double) total / count;
+    }
 
-        // Add ellipsis if needed
-        if (previewStart > 0) preview = "..." + preview;
-        if (previewEnd < plainContent.length()) preview = preview + "...";
+    // Moving notes or folders changes scoped results without touching the search index
+    private long cacheGeneration() {
+        return searchIndex.getGeneration() + treeIndex.getVersion();
+    }
 
-        return preview;
+    private static String scopeId(FolderTreeIndex.Subtree subtree) {
+        return subtree == null ? null : subtree.getFolderId();
     }
 
+    // Segments written by earlier runs are reused; only notes saved since then are re-tokenized
+    private void ensureSearchIndexOpen() {
+        if (searchIndex != null) return;
 
-    private String stripHtml(String html) {
-        // Simple HTML stripping for search
-        return html.replaceAll("<[^>]*>", " ")
-                .replaceAll("&nbsp;", " ")
-                .replaceAll("\\s+", " ")
-                .trim();
+        PersistentSearchIndex index = new PersistentSearchIndex(new File(basePath + INDEX_DIRECTORY), objectMapper);
+        index.validate(treeIndex.getRootFolders());
+        searchIndex = index;
     }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Normalized on-disk form of a folder: only its own fields plus the ordered
+ * IDs of its notes and subfolders. Note bodies live in their own note files.
+ */
+public class FolderMetadata {
+    private String id;
+    private String name;
+    private String summary;
+    private List<String> noteIds = new ArrayList<>();
+    private List<String> subFolderIds = new ArrayList<>();
+
+    public FolderMetadata() {
+        // Default constructor for Jackson
+    }
+
+    public static FolderMetadata from(Folder folder) {
+        FolderMetadata metadata = new FolderMetadata();
+        metadata.setId(folder.getId());
+        metadata.setName(folder.getName());
+        metadata.setSummary(folder.getSummary());
+
+        if (folder.getNotes() != null) {
+            for (Note note : folder.getNotes()) {
+                metadata.getNoteIds().add(note.getId());
+            }
+        }
+        if (folder.getSubFolders() != null) {
+            for (Folder subFolder : folder.getSubFolders()) {
+                metadata.getSubFolderIds().add(subFolder.getId());
+            }
+        }
+        return metadata;
+    }
+
+    // Creates a folder with this metadata's own fields; children are filled in by the loader
+    public Folder toFolder() {
+        Folder folder = new Folder(id, name);
+        folder.setSummary(summary);
+        return folder;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    public List<String> getNoteIds() {
+        return noteIds;
+    }
+
+    public void setNoteIds(List<String> noteIds) {
+        this.noteIds = noteIds;
+    }
+
+    public List<String> getSubFolderIds() {
+        return subFolderIds;
+    }
+
+    public void setSubFolderIds(List<String> subFolderIds) {
+        this.subFolderIds = subFolderIds;
+    }
+}
@@ -0,0 +1,309 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resident index over the folder tree so that parent and folder lookups
+ * never need to reload the tree from disk.
+ * Maps folder id -> Folder, folder id -> parent folder id, note id -> folder id
+ * and note id -> Note, and keeps the notes' timestamps sorted for date queries.
+ *
+ * Folders are also numbered in pre-order, each with the last number in its
+ * subtree, so "is this note under that folder" is two lookups and a range
+ * check (see Subtree). Numbers are assigned again on the first scoped lookup
+ * after folders are added, removed or moved; saving notes leaves them be.
+ */
+class FolderTreeIndex {
+    private final List<Folder> rootFolders = new ArrayList<>();
+    private final Map<String, Folder> foldersById = new HashMap<>();
+    private final Map<String, String> parentIds = new HashMap<>();
+    // Read without the storage service's lock when bodies are loaded on demand
+    private final Map<String, String> noteFolderIds = new ConcurrentHashMap<>();
+    private final Map<String, Note> notesById = new HashMap<>();
+    private final NoteTimestampIndex timestamps = new NoteTimestampIndex();
+    // Folder id -> {pre-order number, last number in its subtree}; null until needed again
+    private Map<String, int[]> intervals;
+    // Bumped whenever a folder or note changes place, for caches of scoped results
+    private long version;
+
+    /**
+     * A folder and everything below it. Only valid until the tree changes
+     * again, so callers hold the storage service's lock while using it.
+     */
+    final class Subtree {
+        private final String folderId;
+        private final int first;
+        private final int last;
+
+        private Subtree(String folderId, int first, int last) {
+            this.folderId = folderId;
+            this.first = first;
+            this.last = last;
+        }
+
+        String getFolderId() {
+            return folderId;
+        }
+
+        boolean contains(String noteId) {
+            String noteFolderId = noteFolderIds.get(noteId);
+            int[] interval = noteFolderId == null ? null : intervals.get(noteFolderId);
+            return interval != null && interval[0] >= first && interval[0] <= last;
+        }
+    }
+
+    // Replace the whole index with the given tree
+    void rebuild(List<Folder> roots) {
+        rootFolders.clear();
+        foldersById.clear();
+        parentIds.clear();
+        noteFolderIds.clear();
+        notesById.clear();
+        timestamps.clear();
+        treeChanged();
+
+        for (Folder root : roots) {
+            rootFolders.add(root);
+            indexSubtree(root, null);
+        }
+    }
+
+    List<Folder> getRootFolders() {
+        return rootFolders;
+    }
+
+    boolean isRootFolder(Folder folder) {
+        return folder != null && rootFolders.contains(folder);
+    }
+
+    boolean containsFolder(String folderId) {
+        return foldersById.containsKey(folderId);
+    }
+
+    Folder getFolder(String folderId) {
+        return foldersById.get(folderId);
+    }
+
+    Folder getParent(Folder folder) {
+        if (folder == null) return null;
+        String parentId = parentIds.get(folder.getId());
+        return parentId == null ? null : foldersById.get(parentId);
+    }
+
+    String getNoteFolderId(String noteId) {
+        return noteFolderIds.get(noteId);
+    }
+
+    Folder getNoteFolder(String noteId) {
+        String folderId = noteFolderIds.get(noteId);
+        return folderId == null ? null : foldersById.get(folderId);
+    }
+
+    Note getNote(String noteId) {
+        return notesById.get(noteId);
+    }
+
+    // Notes are re-indexed whenever they are put, so saves must set their times first
+    NoteTimestampIndex getTimestamps() {
+        return timestamps;
+    }
+
+    // The folder's subtree, or null if the folder is not in the tree
+    Subtree subtree(Folder folder) {
+        if (folder == null) {
+            return null;
+        }
+        if (intervals == null) {
+            numberFolders();
+        }
+        int[] interval = intervals.get(folder.getId());
+        return interval == null ? null : new Subtree(folder.getId(), interval[0], interval[1]);
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    List<Folder> getAllFolders() {
+        return new ArrayList<>(foldersById.values());
+    }
+
+    int getFolderCount() {
+        return foldersById.size();
+    }
+
+    // Register a folder (and everything below it) under the given parent
+    void putFolder(Folder folder, Folder parent) {
+        if (parent == null) {
+            if (!rootFolders.contains(folder)) {
+                rootFolders.add(folder);
+            }
+        }
+        indexSubtree(folder, parent);
+        treeChanged();
+    }
+
+    // Re-read the direct children of a folder after its lists were changed
+    void reindexChildren(Folder folder) {
+        foldersById.put(folder.getId(), folder);
+
+        if (folder.getNotes() != null) {
+            for (Note note : folder.getNotes()) {
+                indexNote(note, note, folder);
+            }
+        }
+        if (folder.getSubFolders() != null) {
+            for (Folder subFolder : folder.getSubFolders()) {
+                if (!foldersById.containsKey(subFolder.getId())) {
+                    indexSubtree(subFolder, folder);
+                    treeChanged();
+                } else if (!folder.getId().equals(parentIds.put(subFolder.getId(), folder.getId()))) {
+                    // Moved here from another folder or from the top level
+                    rootFolders.remove(subFolder);
+                    treeChanged();
+                }
+            }
+        }
+    }
+
+    // The note may be a detached copy (write-behind saves snapshots); a note already indexed
+    // keeps its instance, so lookups hand out the note the tree shows. Its times come from
+    // the saved note, which carries the ones just stamped.
+    void putNote(Note note, Folder folder) {
+        indexNote(notesById.getOrDefault(note.getId(), note), note, folder);
+    }
+
+    private void indexNote(Note instance, Note saved, Folder folder) {
+        if (!folder.getId().equals(noteFolderIds.put(saved.getId(), folder.getId()))) {
+            version++;
+        }
+        notesById.put(saved.getId(), instance);
+        timestamps.put(saved);
+    }
+
+    void removeNote(Note note) {
+        noteFolderIds.remove(note.getId());
+        notesById.remove(note.getId());
+        timestamps.remove(note.getId());
+        version++;
+    }
+
+    // Drop a folder and everything below it
+    void removeFolder(Folder folder) {
+        rootFolders.remove(folder);
+        removeSubtree(folder);
+        treeChanged();
+    }
+
+    void removeRootFolder(Folder folder) {
+        rootFolders.remove(folder);
+        parentIds.remove(folder.getId());
+        treeChanged();
+    }
+
+    // Freshly loaded objects match what is on disk
+    void markAllClean() {
+        for (Folder folder : foldersById.values()) {
+            folder.clearDirty();
+            if (folder.getNotes() != null) {
+                for (Note note : folder.getNotes()) {
+                    note.clearDirty();
+                }
+            }
+        }
+    }
+
+    // Folder names from the root down to (and including) the given folder
+    String getPath(Folder folder) {
+        List<String> names = new ArrayList<>();
+        for (Folder current = folder; current != null; current = getParent(current)) {
+            names.add(0, current.getName());
+        }
+        return String.join(" > ", names);
+    }
+
+    private void treeChanged() {
+        intervals = null;
+        version++;
+    }
+
+    // Number the folders in pre-order from the index's own parent links, which change with the
+    // notes' folder ids as moves are saved, so numbers and note lookups always agree
+    private void numberFolders() {
+        Map<String, List<String>> children = new HashMap<>();
+        for (Map.Entry<String, String> link : parentIds.entrySet()) {
+            children.computeIfAbsent(link.getValue(), id -> new ArrayList<>()).add(link.getKey());
+        }
+        intervals = new HashMap<>();
+        Set<String> visited = new HashSet<>();
+        int next = 0;
+        for (Folder root : rootFolders) {
+            next = numberSubtree(root.getId(), children, visited, next);
+        }
+    }
+
+    // Returns the next free number; the visited set guards against a folder listed twice
+    private int numberSubtree(String folderId, Map<String, List<String>> children, Set<String> visited, int next) {
+        if (!visited.add(folderId)) {
+            return next;
+        }
+        int[] interval = {next++, 0};
+        intervals.put(folderId, interval);
+        for (String childId : children.getOrDefault(folderId, new ArrayList<>())) {
+            next = numberSubtree(childId, children, visited, next);
+        }
+        interval[1] = next - 1;
+        return next;
+    }
+
+    private void indexSubtree(Folder folder, Folder parent) {
+        foldersById.put(folder.getId(), folder);
+        if (parent != null) {
+            parentIds.put(folder.getId(), parent.getId());
+        } else {
+            parentIds.remove(folder.getId());
+        }
+
+        if (folder.getNotes() != null) {
+            for (Note note : folder.getNotes()) {
+                noteFolderIds.put(note.getId(), folder.getId());
+                notesById.put(note.getId(), note);
+                timestamps.put(note);
+            }
+        }
+        if (folder.getSubFolders() != null) {
+            for (Folder subFolder : folder.getSubFolders()) {
+                indexSubtree(subFolder, folder);
+            }
+        }
+    }
+
+    private void removeSubtree(Folder folder) {
+        foldersById.remove(folder.getId());
+        parentIds.remove(folder.getId());
+
+        if (folder.getNotes() != null) {
+            for (Note note : folder.getNotes()) {
+                if (folder.getId().equals(noteFolderIds.get(note.getId()))) {
+                    noteFolderIds.remove(note.getId());
+                    notesById.remove(note.getId());
+                    timestamps.remove(note.getId());
+                }
+            }
+        }
+        if (folder.getSubFolders() != null) {
+            for (Folder subFolder : folder.getSubFolders()) {
+                removeSubtree(subFolder);
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.HighlightSpan;
+import com.intelligentnotes.model.Note;
+import com.intelligentnotes.model.SearchPage;
+import com.intelligentnotes.model.SearchResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Linear search over an in-memory folder tree, shared by the storage backends,
+ * for queries the term index cannot answer, plus the result building used for
+ * notes found through NoteSearchIndex.
+ */
+class FolderTreeSearcher {
+
+    // Notes split off into a separate scan task once a folder holds more than this
+    private static final int NOTE_SCAN_CHUNK = 64;
+    // Characters of text shown either side of the first match in a preview
+    private static final int PREVIEW_CONTEXT = 50;
+
+    // Notes whose title or text contains the query, ignoring case, in tree order
+    List<SearchResult> search(List<Folder> rootFolders, String query) {
+        return scan(rootFolders, Pattern.compile(Pattern.quote(query), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE),
+                0, 0);
+    }
+
+    // Notes whose title or text contains a match of the pattern, in tree order. Folders and large
+    // folders' notes are scanned as fork-join tasks on a pool of the given parallelism (the common
+    // pool if zero or less). With a limit, scanning stops once that many matches are found, so which
+    // matches are returned depends on how the tasks were scheduled.
+    List<SearchResult> scan(List<Folder> rootFolders, Pattern pattern, int limit, int parallelism) {
+        long start = System.nanoTime();
+        AtomicInteger remaining = new AtomicInteger(limit > 0 ? limit : Integer.MAX_VALUE);
+        FolderScanTask task = new FolderScanTask(rootFolders, "", pattern, remaining);
+        List<SearchResult> results;
+        if (parallelism <= 0) {
+            results = ForkJoinPool.commonPool().invoke(task);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                results = pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        if (limit > 0 && results.size() > limit) {
+            results = new ArrayList<>(results.subList(0, limit));
+        }
+        return results;
+    }
+
+    // Results for notes found through the search index, located through the tree index
+    List<SearchResult> toResults(List<SearchHit> hits, FolderTreeIndex treeIndex) {
+        List<SearchResult> results = new ArrayList<>(hits.size());
+        for (SearchHit hit : hits) {
+            Note note = treeIndex.getNote(hit.getNoteId());
+            if (note == null) continue;
+            Folder folder = treeIndex.getNoteFolder(note.getId());
+            String path = folder == null ? "" : treeIndex.getPath(folder);
+            SearchResult result = new SearchResult(note, folder, path, null, hit.getScore(), hit.getMatchField());
+            String text = NoteText.plainText(note);
+            results.add(withPreview(result, text, termMatches(text, hit.getTerms())));
+        }
+        return results;
+    }
+
+    // The results for notes in the folder or any folder below it, in their order
+    List<SearchResult> within(List<SearchResult> results, Folder scope) {
+        Set<String> noteIds = new HashSet<>();
+        collectNoteIds(scope, noteIds);
+        List<SearchResult> inScope = new ArrayList<>();
+        for (SearchResult result : results) {
+            if (noteIds.contains(result.getNote().getId())) {
+                inScope.add(result);
+            }
+        }
+        return inScope;
+    }
+
+    private static void collectNoteIds(Folder folder, Set<String> noteIds) {
+        for (Note note : folder.getNotes()) {
+            noteIds.add(note.getId());
+        }
+        for (Folder subFolder : folder.getSubFolders()) {
+            collectNoteIds(subFolder, noteIds);
+        }
+    }
+
+    // One page of results from up to pageSize + 1 hits; the extra hit only tells whether more follow
+    SearchPage toPage(List<SearchHit> hits, int pageSize, FolderTreeIndex treeIndex) {
+        if (hits.size() <= pageSize) {
+            return new SearchPage(toResults(hits, treeIndex), null);
+        }
+        List<SearchHit> page = hits.subList(0, pageSize);
+        return new SearchPage(toResults(page, treeIndex), page.get(pageSize - 1).toCursor());
+    }
+
+    // One page of the indexed notes, most recently updated first, read from the timestamp index.
+    // Cursors are those of search pages, the score being the update time.
+    SearchPage recent(FolderTreeIndex treeIndex, String cursor, int pageSize) {
+        SearchHit after = cursor == null ? null : SearchHit.fromCursor(cursor);
+        List<SearchHit> hits = treeIndex.getTimestamps().newest(Collections.emptyList(), after, pageSize + 1);
+        return toPage(hits, pageSize, treeIndex);
+    }
+
+    // The same for a tree without a resident index, which is built for the one page
+    SearchPage recent(List<Folder> rootFolders, String cursor, int pageSize) {
+        FolderTreeIndex treeIndex = new FolderTreeIndex();
+        treeIndex.rebuild(rootFolders);
+        return recent(treeIndex, cursor, pageSize);
+    }
+
+    // Notes closest in meaning to the query, closest first, compared one by one with the query's
+    // vector; for trees without a NoteVectorIndex
+    List<SearchResult> similar(List<Folder> rootFolders, String query, int limit) {
+        FolderTreeIndex treeIndex = new FolderTreeIndex();
+        treeIndex.rebuild(rootFolders);
+        float[] vector = NoteEmbedder.embed(query);
+        if (vector == null) {
+            return new ArrayList<>();
+        }
+        String[] terms = NoteEmbedder.queryTerms(query);
+        List<SearchHit> hits = new ArrayList<>();
+        for (Folder folder : treeIndex.getAllFolders()) {
+            for (Note note : folder.getNotes()) {
+                float[] noteVector = NoteEmbedder.embed(note);
+                float similarity = noteVector == null ? 0 : NoteEmbedder.dot(vector, noteVector);
+                if (similarity >= NoteVectorIndex.MIN_SIMILARITY) {
+                    hits.add(new SearchHit(note.getId(), similarity, null, true, terms));
+                }
+            }
+        }
+        hits.sort(Comparator.comparingDouble(SearchHit::getScore).reversed());
+        return toResults(limit > 0 && hits.size() > limit ? hits.subList(0, limit) : hits, treeIndex);
+    }
+
+    // Scans a list of sibling folders: each folder's notes, then its subfolders, one subtask per subtree
+    private static class FolderScanTask extends RecursiveTask<List<SearchResult>> {
+        private final List<Folder> folders;
+        private final String pathPrefix;
+        private final Pattern pattern;
+        private final AtomicInteger remaining;
+
+        FolderScanTask(List<Folder> folders, String pathPrefix, Pattern pattern, AtomicInteger remaining) {
+            this.folders = folders;
+            this.pathPrefix = pathPrefix;
+            this.pattern = pattern;
+            this.remaining = remaining;
+        }
+
+        @Override
+        protected List<SearchResult> compute() {
+            List<SearchResult> results = new ArrayList<>();
+            if (folders == null || remaining.get() <= 0) {
+                return results;
+            }
+            List<RecursiveTask<List<SearchResult>>> subtasks = new ArrayList<>();
+            for (Folder folder : folders) {
+                String path = pathPrefix.isEmpty() ? folder.getName() : pathPrefix + " > " + folder.getName();
+                // Copied, so the scan does not trip over saves made while it runs
+                List<Note> notes = folder.getNotes() == null ? new ArrayList<>() : new ArrayList<>(folder.getNotes());
+                subtasks.add(new NoteScanTask(folder, notes, path, pattern, remaining));
+                if (folder.getSubFolders() != null && !folder.getSubFolders().isEmpty()) {
+                    subtasks.add(new FolderScanTask(new ArrayList<>(folder.getSubFolders()), path, pattern, remaining));
+                }
+            }
+            invokeAll(subtasks);
+            for (RecursiveTask<List<SearchResult>> subtask : subtasks) {
+                results.addAll(subtask.join());
+            }
+            return results;
+        }
+    }
+
+    // Scans the notes of one folder, splitting large folders into chunks
+    private static class NoteScanTask extends RecursiveTask<List<SearchResult>> {
+        private final Folder folder;
+        private final List<Note> notes;
+        private final String path;
+        private final Pattern pattern;
+        private final AtomicInteger remaining;
+
+        NoteScanTask(Folder folder, List<Note> notes, String path, Pattern pattern, AtomicInteger remaining) {
+            this.folder = folder;
+            this.notes = notes;
+            this.path = path;
+            this.pattern = pattern;
+            this.remaining = remaining;
+        }
+
+        @Override
+        protected List<SearchResult> compute() {
+            List<SearchResult> results = new ArrayList<>();
+            if (notes.size() > NOTE_SCAN_CHUNK) {
+                int middle = notes.size() / 2;
+                NoteScanTask second = new NoteScanTask(folder, notes.subList(middle, notes.size()), path, pattern, remaining);
+                second.fork();
+                results.addAll(new NoteScanTask(folder, notes.subList(0, middle), path, pattern, remaining).compute());
+                results.addAll(second.join());
+                return results;
+            }
+
+            for (Note note : notes) {
+                if (remaining.get() <= 0) break;
+                if (note == null) continue;
+                String text = NoteText.plainText(note);
+                List<int[]> matches = patternMatches(pattern.matcher(text));
+                if (!matches.isEmpty() || (note.getTitle() != null && pattern.matcher(note.getTitle()).find())) {
+                    results.add(withPreview(new SearchResult(note, folder, path, null), text, matches));
+                    remaining.decrementAndGet();
+                }
+            }
+            return results;
+        }
+    }
+
+    // Where the hit's terms occur as words of the text, as [start, end) pairs: the first occurrence
+    // and any others close enough to share its preview
+    private static List<int[]> termMatches(String text, String[] terms) {
+        List<int[]> matches = new ArrayList<>();
+        if (terms.length == 0) {
+            return matches;
+        }
+        Set<String> wanted = new HashSet<>(Arrays.asList(terms));
+        BitSet lengths = new BitSet();
+        for (String term : terms) {
+            lengths.set(term.length());
+        }
+
+        // Words are found the way SearchTokenizer splits them; only those of a matching length are compared
+        int limit = text.length();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                if (i >= limit) break;
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (lengths.get(i - start) && i <= limit && wanted.contains(text.substring(start, i).toLowerCase())) {
+                    if (matches.isEmpty()) {
+                        limit = Math.min(text.length(), i + PREVIEW_CONTEXT);
+                    }
+                    matches.add(new int[]{start, i});
+                }
+                start = -1;
+            }
+        }
+        return matches;
+    }
+
+    // Non-empty matches of the pattern: the first and any others close enough to share its preview
+    private static List<int[]> patternMatches(Matcher matcher) {
+        List<int[]> matches = new ArrayList<>();
+        int limit = Integer.MAX_VALUE;
+        while (matcher.find() && matcher.end() <= limit) {
+            if (matcher.end() == matcher.start()) continue;
+            if (matches.isEmpty()) {
+                limit = matcher.end() + PREVIEW_CONTEXT;
+            }
+            matches.add(new int[]{matcher.start(), matcher.end()});
+        }
+        return matches;
+    }
+
+    // Up to PREVIEW_CONTEXT characters either side of the first match, with the matches inside it
+    // highlighted, or the beginning of the text if there is no match
+    private static SearchResult withPreview(SearchResult result, String plainContent, List<int[]> matches) {
+        if (plainContent.isEmpty() && result.getNote().getContent() == null) {
+            result.setPreviewText("No content available");
+            return result;
+        }
+        if (matches.isEmpty()) {
+            result.setPreviewText(plainContent.substring(0, Math.min(2 * PREVIEW_CONTEXT, plainContent.length())) + "...");
+            return result;
+        }
+
+        // Get some context around the match
+        int previewStart = Math.max(0, matches.get(0)[0] - PREVIEW_CONTEXT);
+        int previewEnd = Math.min(plainContent.length(), matches.get(0)[1] + PREVIEW_CONTEXT);
+        String preview = plainContent.substring(previewStart, previewEnd);
+
+        // Add ellipsis if needed, and shift the highlights to match
+        int shift = -previewStart;
+        if (previewStart > 0) {
+            preview = "..." + preview;
+            shift += 3;
+        }
+        if (previewEnd < plainContent.length()) preview = preview + "...";
+
+        List<HighlightSpan> highlights = new ArrayList<>(matches.size());
+        for (int[] match : matches) {
+            highlights.add(new HighlightSpan(match[0] + shift, match[1] + shift));
+        }
+        result.setPreviewText(preview);
+        result.setHighlights(highlights);
+        return result;
+    }
+}
@@ -0,0 +1,136 @@
+package com.intelligentnotes.service;
+
+import java.util.Map;
+
+/**
+ * Finds the indexed terms within a small edit distance of a query term.
+ *
+ * The sorted term dictionary of a segment is walked like a trie: the edit
+ * distance table is extended one character at a time, reusing the rows of
+ * the prefix shared with the previous term. As soon as every cell of a row
+ * exceeds the allowed distance, no term with that prefix can match, and the
+ * walk seeks straight past all of them. Only prefixes that can still match
+ * are visited, so the cost depends on the query, not on the dictionary size.
+ *
+ * Distances count insertions, deletions, substitutions and transpositions
+ * of adjacent characters (optimal string alignment).
+ */
+final class FuzzyTermMatcher {
+
+    private FuzzyTermMatcher() {
+    }
+
+    // Edits allowed for a term: none for very short terms or ones with digits (dates, versions, ids), two for long ones
+    static int maxEdits(String term) {
+        if (term.length() < 3 || term.chars().anyMatch(Character::isDigit)) {
+            return 0;
+        }
+        return term.length() < 6 ? 1 : 2;
+    }
+
+    // Add every term of the segment within maxEdits of the target, keeping the smallest distance seen
+    static void collect(SearchSegment segment, String target, int maxEdits, Map<String, Integer> distances) {
+        int width = target.length() + 1;
+        // rows[i] is the distance row after the first i characters of the current term
+        int[][] rows = new int[target.length() + maxEdits + 2][width];
+        for (int j = 0; j < width; j++) {
+            rows[0][j] = j;
+        }
+
+        String previous = "";
+        int validRows = 0;
+        String term = segment.ceilingTerm("");
+        while (term != null) {
+            int common = Math.min(commonPrefix(previous, term), validRows);
+            int dead = -1;
+            int length = term.length();
+            for (int i = common + 1; i <= length; i++) {
+                if (i >= rows.length || !fillRow(rows, i, term, target, maxEdits)) {
+                    dead = i;
+                    break;
+                }
+            }
+
+            previous = term;
+            if (dead > 0) {
+                // No term starting with these characters can match
+                validRows = dead - 1;
+                String next = nextCandidate(rows, term, dead, target, maxEdits);
+                term = next == null ? null : segment.ceilingTerm(next);
+            } else {
+                validRows = length;
+                int distance = rows[length][target.length()];
+                if (distance <= maxEdits) {
+                    distances.merge(term, distance, Math::min);
+                }
+                term = segment.ceilingTerm(term + '\0');
+            }
+        }
+    }
+
+    // Fill row i; false if every cell is above the limit
+    private static boolean fillRow(int[][] rows, int i, String term, String target, int maxEdits) {
+        int[] row = rows[i];
+        int[] above = rows[i - 1];
+        char c = term.charAt(i - 1);
+        row[0] = i;
+        int min = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int cost = target.charAt(j - 1) == c ? 0 : 1;
+            int value = Math.min(Math.min(above[j] + 1, row[j - 1] + 1), above[j - 1] + cost);
+            if (i > 1 && j > 1 && c == target.charAt(j - 2) && term.charAt(i - 2) == target.charAt(j - 1)) {
+                value = Math.min(value, rows[i - 2][j - 2] + 1);
+            }
+            row[j] = value;
+            min = Math.min(min, value);
+        }
+        return min <= maxEdits;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /*
+     * Smallest string that can still match after the first `dead` characters of
+     * term proved hopeless. A parent row already at the limit only survives a
+     * character that matches the target, so siblings are skipped straight to the
+     * next such character; a parent with no viable sibling left is itself done.
+     */
+    private static String nextCandidate(int[][] rows, String term, int dead, String target, int maxEdits) {
+        for (int depth = dead; depth > 0; depth--) {
+            char c = term.charAt(depth - 1);
+            int next = -1;
+            if (min(rows[depth - 1]) < maxEdits) {
+                next = c == Character.MAX_VALUE ? -1 : c + 1;
+            } else {
+                int[] parent = rows[depth - 1];
+                for (int j = 1; j <= target.length(); j++) {
+                    char candidate = target.charAt(j - 1);
+                    boolean viable = parent[j - 1] <= maxEdits
+                            || depth > 1 && j < target.length() && rows[depth - 2][j - 1] < maxEdits;
+                    if (viable && candidate > c && (next < 0 || candidate < next)) {
+                        next = candidate;
+                    }
+                }
+            }
+            if (next >= 0) {
+                return term.substring(0, depth - 1) + (char) next;
+            }
+        }
+        return null;
+    }
+
+    private static int min(int[] row) {
+        int min = row[0];
+        for (int value : row) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+}
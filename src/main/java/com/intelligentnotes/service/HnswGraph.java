@@ -0,0 +1,359 @@
+package com.intelligentnotes.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Hierarchical navigable small world graph over unit vectors, for
+ * approximate nearest neighbour search by cosine similarity.
+ *
+ * Every vector is a node on level 0 and, with exponentially falling odds,
+ * on a few levels above it. A search walks greedily down the sparse upper
+ * levels to a good starting point and then explores level 0 best first,
+ * keeping the ef most similar nodes seen. Inserting a node searches for its
+ * neighbours the same way and links it to a diverse subset of them.
+ *
+ * Nodes are never unlinked: a deleted node still routes searches but is
+ * left out of their results, and the owner rebuilds the graph once deleted
+ * nodes pile up. Not thread safe; callers hold their own lock.
+ */
+class HnswGraph {
+    private static final int FORMAT = 1;
+    // Links a node may gather beyond its capacity before they are pruned
+    private static final int LINK_SLACK = 8;
+
+    private final int dimensions;
+    // Links per node on the upper levels; level 0 allows twice as many
+    private final int maxLinks;
+    private final int efConstruction;
+    private final double levelFactor;
+    private final Random random = new Random(42);
+
+    private float[] vectors;
+    // links[node][level] holds the neighbour count followed by the neighbours
+    private int[][][] links;
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int topLevel = -1;
+
+    // Visit marks for the current search, renewed by bumping the epoch instead of clearing
+    private int[] visited = new int[0];
+    private int epoch;
+
+    static final class Neighbor {
+        final int node;
+        final float similarity;
+
+        Neighbor(int node, float similarity) {
+            this.node = node;
+            this.similarity = similarity;
+        }
+    }
+
+    private static final Comparator<Neighbor> MOST_SIMILAR = (a, b) -> Float.compare(b.similarity, a.similarity);
+    private static final Comparator<Neighbor> LEAST_SIMILAR = (a, b) -> Float.compare(a.similarity, b.similarity);
+
+    HnswGraph(int dimensions, int maxLinks, int efConstruction) {
+        if (dimensions % 4 != 0) {
+            throw new IllegalArgumentException("Dimensions must be a multiple of 4: " + dimensions);
+        }
+        this.dimensions = dimensions;
+        this.maxLinks = maxLinks;
+        this.efConstruction = efConstruction;
+        levelFactor = 1 / Math.log(maxLinks);
+        vectors = new float[dimensions * 64];
+        links = new int[64][][];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int liveCount() {
+        return size - deletedCount;
+    }
+
+    int deletedCount() {
+        return deletedCount;
+    }
+
+    boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    float[] vector(int node) {
+        return Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions);
+    }
+
+    void delete(int node) {
+        if (!deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+        }
+    }
+
+    // Insert a unit vector and return its node number
+    int add(float[] vector) {
+        int node = size;
+        ensureCapacity(node + 1);
+        System.arraycopy(vector, 0, vectors, node * dimensions, dimensions);
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelFactor);
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[linkCapacity(l) + LINK_SLACK + 1];
+        }
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            topLevel = level;
+            return node;
+        }
+        int current = greedyDescent(vector, level);
+        for (int l = Math.min(level, topLevel); l >= 0; l--) {
+            List<Neighbor> found = searchLevel(vector, current, efConstruction, l);
+            // A new node starts with maxLinks links on every level; level 0 leaves room for more to come
+            List<Neighbor> selected = selectDiverse(found, maxLinks);
+            int[] own = links[node][l];
+            for (Neighbor neighbor : selected) {
+                own[++own[0]] = neighbor.node;
+                link(neighbor.node, node, l);
+            }
+            current = found.get(0).node;
+        }
+        if (level > topLevel) {
+            topLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    // The k live nodes most similar to the query, most similar first, exploring ef candidates on level 0
+    List<Neighbor> search(float[] query, int k, int ef) {
+        List<Neighbor> results = new ArrayList<>();
+        if (entryPoint < 0 || k <= 0) {
+            return results;
+        }
+        int start = greedyDescent(query, 0);
+        for (Neighbor neighbor : searchLevel(query, start, Math.max(ef, k), 0)) {
+            if (deleted.get(neighbor.node)) continue;
+            results.add(neighbor);
+            if (results.size() == k) break;
+        }
+        return results;
+    }
+
+    // Walk the levels above the given one, always moving to the most similar neighbour
+    private int greedyDescent(float[] query, int level) {
+        int current = entryPoint;
+        float similarity = similarity(query, current);
+        for (int l = topLevel; l > level; l--) {
+            boolean moved = true;
+            while (moved) {
+                moved = false;
+                int[] neighbors = links[current][l];
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    float candidate = similarity(query, neighbors[i]);
+                    if (candidate > similarity) {
+                        similarity = candidate;
+                        current = neighbors[i];
+                        moved = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    // Best-first search of one level from the entry node, returning up to ef nodes, most similar first
+    private List<Neighbor> searchLevel(float[] query, int entry, int ef, int level) {
+        if (++epoch == 0) {
+            Arrays.fill(visited, 0);
+            epoch = 1;
+        }
+        PriorityQueue<Neighbor> candidates = new PriorityQueue<>(MOST_SIMILAR);
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(LEAST_SIMILAR);
+        Neighbor first = new Neighbor(entry, similarity(query, entry));
+        candidates.add(first);
+        best.add(first);
+        visited[entry] = epoch;
+
+        while (!candidates.isEmpty()) {
+            Neighbor closest = candidates.poll();
+            if (best.size() >= ef && closest.similarity < best.peek().similarity) break;
+            int[] neighbors = links[closest.node][level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int node = neighbors[i];
+                if (visited[node] == epoch) continue;
+                visited[node] = epoch;
+                float similarity = similarity(query, node);
+                if (best.size() < ef || similarity > best.peek().similarity) {
+                    Neighbor neighbor = new Neighbor(node, similarity);
+                    candidates.add(neighbor);
+                    best.add(neighbor);
+                    if (best.size() > ef) {
+                        best.poll();
+                    }
+                }
+            }
+        }
+        List<Neighbor> found = new ArrayList<>(best);
+        found.sort(MOST_SIMILAR);
+        return found;
+    }
+
+    // Keep a candidate only if it is closer to the base than to any neighbour kept so far, so links
+    // point in different directions; then fill any room left with the closest of the rest
+    private List<Neighbor> selectDiverse(List<Neighbor> candidates, int limit) {
+        List<Neighbor> selected = new ArrayList<>(limit);
+        List<Neighbor> skipped = new ArrayList<>();
+        for (Neighbor candidate : candidates) {
+            if (selected.size() == limit) break;
+            boolean diverse = true;
+            for (Neighbor kept : selected) {
+                if (similarity(candidate.node, kept.node) > candidate.similarity) {
+                    diverse = false;
+                    break;
+                }
+            }
+            (diverse ? selected : skipped).add(candidate);
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < limit; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    // Link from to the new node. A full list is cut back to its capacity by the diversity selection,
+    // which compares every pair of links; the slack above the capacity means that happens once per
+    // several new links rather than for each.
+    private void link(int from, int to, int level) {
+        int[] neighbors = links[from][level];
+        neighbors[++neighbors[0]] = to;
+        if (neighbors[0] < neighbors.length - 1) {
+            return;
+        }
+        List<Neighbor> candidates = new ArrayList<>(neighbors[0]);
+        for (int i = 1; i <= neighbors[0]; i++) {
+            candidates.add(new Neighbor(neighbors[i], similarity(from, neighbors[i])));
+        }
+        candidates.sort(MOST_SIMILAR);
+        List<Neighbor> selected = selectDiverse(candidates, linkCapacity(level));
+        neighbors[0] = selected.size();
+        for (int i = 0; i < selected.size(); i++) {
+            neighbors[i + 1] = selected.get(i).node;
+        }
+    }
+
+    private int linkCapacity(int level) {
+        return level == 0 ? 2 * maxLinks : maxLinks;
+    }
+
+    private float similarity(float[] query, int node) {
+        return dot(query, 0, vectors, node * dimensions);
+    }
+
+    private float similarity(int a, int b) {
+        return dot(vectors, a * dimensions, vectors, b * dimensions);
+    }
+
+    // Four running sums, so the additions do not wait on each other; dimensions are a multiple of four
+    private float dot(float[] a, int offsetA, float[] b, int offsetB) {
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        for (int i = 0; i < dimensions; i += 4) {
+            sum0 += a[offsetA + i] * b[offsetB + i];
+            sum1 += a[offsetA + i + 1] * b[offsetB + i + 1];
+            sum2 += a[offsetA + i + 2] * b[offsetB + i + 2];
+            sum3 += a[offsetA + i + 3] * b[offsetB + i + 3];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    private void ensureCapacity(int nodes) {
+        if (nodes > links.length) {
+            int capacity = Math.max(nodes, links.length * 2);
+            links = Arrays.copyOf(links, capacity);
+            vectors = Arrays.copyOf(vectors, capacity * dimensions);
+        }
+        if (nodes > visited.length) {
+            visited = Arrays.copyOf(visited, links.length);
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT);
+        out.writeInt(dimensions);
+        out.writeInt(maxLinks);
+        out.writeInt(efConstruction);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(topLevel);
+        for (int node = 0; node < size; node++) {
+            out.writeBoolean(deleted.get(node));
+            for (int i = node * dimensions; i < (node + 1) * dimensions; i++) {
+                out.writeFloat(vectors[i]);
+            }
+            out.writeByte(links[node].length);
+            for (int[] neighbors : links[node]) {
+                out.writeShort(neighbors[0]);
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    out.writeInt(neighbors[i]);
+                }
+            }
+        }
+    }
+
+    static HnswGraph read(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT) {
+            throw new IOException("Unsupported vector index format");
+        }
+        HnswGraph graph = new HnswGraph(in.readInt(), in.readInt(), in.readInt());
+        int size = in.readInt();
+        graph.ensureCapacity(size);
+        graph.size = size;
+        graph.entryPoint = in.readInt();
+        graph.topLevel = in.readInt();
+        for (int node = 0; node < size; node++) {
+            if (in.readBoolean()) {
+                graph.delete(node);
+            }
+            for (int i = node * graph.dimensions; i < (node + 1) * graph.dimensions; i++) {
+                graph.vectors[i] = in.readFloat();
+            }
+            int levels = in.readUnsignedByte();
+            graph.links[node] = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int[] neighbors = new int[graph.linkCapacity(l) + LINK_SLACK + 1];
+                neighbors[0] = in.readUnsignedShort();
+                if (neighbors[0] >= neighbors.length) {
+                    throw new IOException("Corrupt vector index: too many links");
+                }
+                for (int i = 1; i <= neighbors[0]; i++) {
+                    neighbors[i] = in.readInt();
+                    if (neighbors[i] < 0 || neighbors[i] >= size) {
+                        throw new IOException("Corrupt vector index: link out of range");
+                    }
+                }
+                graph.links[node][l] = neighbors;
+            }
+        }
+        if (size > 0 && (graph.entryPoint < 0 || graph.entryPoint >= size
+                || graph.links[graph.entryPoint].length != graph.topLevel + 1)) {
+            throw new IOException("Corrupt vector index: bad entry point");
+        }
+        return graph;
+    }
+}
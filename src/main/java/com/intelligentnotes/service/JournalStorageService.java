@@ -0,0 +1,773 @@
+package com.intelligentnotes.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import com.intelligentnotes.model.SearchPage;
+import com.intelligentnotes.model.SearchResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Storage backend that appends every change to a log instead of rewriting
+ * JSON files in place. The log is folded into a checkpoint every
+ * CHECKPOINT_INTERVAL records; on startup the last checkpoint is loaded and
+ * the records written after it are replayed.
+ * Log syncing follows the configured Durability (see awaitLogDurable).
+ */
+public class JournalStorageService implements StorageService {
+    private static final String DEFAULT_JOURNAL_PATH = "data/journal/";
+    private static final String LOG_FILE = "journal.log";
+    private static final String CHECKPOINT_FILE = "checkpoint.json";
+    static final int CHECKPOINT_INTERVAL = 500;
+
+    private final ObjectMapper objectMapper;
+    private final FolderTreeIndex treeIndex = new FolderTreeIndex();
+    private final FolderTreeSearcher searcher = new FolderTreeSearcher();
+    // Built on the first search, then kept current by every save and delete
+    private final NoteSearchIndex searchIndex = new NoteSearchIndex();
+    private boolean searchIndexBuilt = false;
+    // Built on the first semantic search; not persisted, like the term index
+    private NoteVectorIndex vectorIndex;
+    private final SearchResultCache resultCache = new SearchResultCache();
+    private final Durability durability;
+    private final AtomicFileWriter checkpointWriter;
+    private final File logFile;
+    private final File checkpointFile;
+    private FileChannel logChannel;
+    private long sequence;
+    private int recordsSinceCheckpoint;
+
+    // Group commit state for the log, guarded by syncLock
+    private final Object syncLock = new Object();
+    private long syncedSequence;
+    private boolean syncing;
+    private final AtomicLong appendCount = new AtomicLong();
+    private final AtomicLong syncCount = new AtomicLong();
+
+    public JournalStorageService() {
+        this(Durability.PER_BATCH);
+    }
+
+    public JournalStorageService(Durability durability) {
+        this(new File(DEFAULT_JOURNAL_PATH), durability);
+    }
+
+    // Keeps the log and checkpoint in the given directory instead of data/journal/
+    JournalStorageService(File directory, Durability durability) {
+        this.objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        this.durability = durability;
+        // The log is only truncated after a checkpoint, so the checkpoint itself must be synced
+        this.checkpointWriter = new AtomicFileWriter(
+                durability == Durability.NONE ? Durability.NONE : Durability.PER_WRITE);
+
+        // Ensure storage directory exists
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        int staleTempFiles = AtomicFileWriter.deleteTempFiles(directory);
+        if (staleTempFiles > 0) {
+            System.out.println("Removed " + staleTempFiles + " temp files left by an interrupted checkpoint");
+        }
+        this.logFile = new File(directory, LOG_FILE);
+        this.checkpointFile = new File(directory, CHECKPOINT_FILE);
+
+        recover();
+    }
+
+    // Public operations append under the service lock and wait for the log sync
+    // outside it, so saves issued while a sync is in flight share the next fsync.
+
+    @Override
+    public void saveNote(Note note, Folder parent) throws IOException {
+        long upTo;
+        synchronized (this) {
+            storeNote(note, parent);
+            checkpointIfDue();
+            upTo = sequence;
+        }
+        awaitLogDurable(upTo);
+    }
+
+    @Override
+    public void saveFolder(Folder folder, Folder parent) throws IOException {
+        long upTo;
+        synchronized (this) {
+            storeFolder(folder, parent);
+            checkpointIfDue();
+            upTo = sequence;
+        }
+        awaitLogDurable(upTo);
+    }
+
+    @Override
+    public void deleteNote(Note note, Folder parent) {
+        try {
+            long upTo;
+            synchronized (this) {
+                JournalRecord record = new JournalRecord(RecordType.DELETE_NOTE);
+                record.setNoteId(note.getId());
+                append(record);
+
+                // Update parent folder structure
+                searchIndex.remove(note.getId());
+                if (vectorIndex != null) {
+                    vectorIndex.remove(note.getId());
+                }
+                treeIndex.removeNote(note);
+                if (parent != null) {
+                    parent.getNotes().remove(note);
+                    storeFolder(parent, treeIndex.getParent(parent));
+                }
+                checkpointIfDue();
+                upTo = sequence;
+            }
+            awaitLogDurable(upTo);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void deleteFolder(Folder folder, Folder parent) {
+        try {
+            long upTo;
+            synchronized (this) {
+                // A single record covers the folder, its notes and all subfolders
+                JournalRecord record = new JournalRecord(RecordType.DELETE_FOLDER);
+                record.setFolderId(folder.getId());
+                append(record);
+
+                searchIndex.removeFolder(folder);
+                if (vectorIndex != null) {
+                    vectorIndex.removeFolder(folder);
+                }
+                treeIndex.removeFolder(folder);
+                if (parent != null) {
+                    parent.getSubFolders().remove(folder);
+                    storeFolder(parent, treeIndex.getParent(parent));
+                }
+                checkpointIfDue();
+                upTo = sequence;
+            }
+            awaitLogDurable(upTo);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized List<Folder> getRootFolders() {
+        return new ArrayList<>(treeIndex.getRootFolders());
+    }
+
+    @Override
+    public void removeRootFolder(Folder folder) {
+        try {
+            long upTo;
+            synchronized (this) {
+                JournalRecord record = new JournalRecord(RecordType.REMOVE_ROOT);
+                record.setFolderId(folder.getId());
+                append(record);
+                treeIndex.removeRootFolder(folder);
+                checkpointIfDue();
+                upTo = sequence;
+            }
+            awaitLogDurable(upTo);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public List<SearchResult> searchNotes(String query) {
+        return searchNotes(query, 0);
+    }
+
+    @Override
+    public List<SearchResult> searchNotes(String query, int limit) {
+        return search(query, null, limit, false);
+    }
+
+    @Override
+    public List<SearchResult> searchNotesByPrefix(String query, int limit) {
+        return search(query, null, limit, true);
+    }
+
+    @Override
+    public List<SearchResult> searchNotesByPrefix(String query, Folder scope, int limit) {
+        return search(query, scope, limit, true);
+    }
+
+    @Override
+    public SearchPage searchNotesPage(String query, String cursor, int pageSize) {
+        return searchNotesPage(query, null, cursor, pageSize);
+    }
+
+    @Override
+    public synchronized SearchPage searchNotesPage(String query, Folder scope, String cursor, int pageSize) {
+        ensureSearchIndexBuilt();
+        FolderTreeIndex.Subtree subtree = treeIndex.subtree(scope);
+        if (scope != null && subtree == null) {
+            return new SearchPage(new ArrayList<>(), null);
+        }
+        SearchHit after = cursor == null ? null : SearchHit.fromCursor(cursor);
+        NoteTimestampIndex times = treeIndex.getTimestamps();
+        List<SearchHit> hits = resultCache.get(SearchResultCache.FULL, query, scopeId(subtree), pageSize + 1, after,
+                cacheGeneration(), () -> searchIndex.search(query, pageSize + 1, after, times, subtree));
+        return searcher.toPage(hits, pageSize, treeIndex);
+    }
+
+    @Override
+    public synchronized SearchPage recentNotes(String cursor, int pageSize) {
+        return searcher.recent(treeIndex, cursor, pageSize);
+    }
+
+    @Override
+    public synchronized List<SearchResult> semanticSearch(String query, int limit) {
+        if (vectorIndex == null) {
+            NoteVectorIndex index = new NoteVectorIndex();
+            index.validate(treeIndex.getRootFolders());
+            vectorIndex = index;
+        }
+        return searcher.toResults(vectorIndex.search(query, limit), treeIndex);
+    }
+
+    private synchronized List<SearchResult> search(String query, Folder scope, int limit, boolean prefix) {
+        ensureSearchIndexBuilt();
+        FolderTreeIndex.Subtree subtree = treeIndex.subtree(scope);
+        if (scope != null && subtree == null) {
+            return new ArrayList<>();
+        }
+        NoteTimestampIndex times = treeIndex.getTimestamps();
+        List<SearchHit> hits = resultCache.get(prefix ? SearchResultCache.PREFIX : SearchResultCache.FULL, query,
+                scopeId(subtree), limit, null, cacheGeneration(),
+                () -> prefix ? searchIndex.searchPrefix(query, limit, times, subtree)
+                        : searchIndex.search(query, limit, null, times, subtree));
+        return searcher.toResults(hits, treeIndex);
+    }
+
+    // Moving notes or folders changes scoped results without touching the search index
+    private long cacheGeneration() {
+        return searchIndex.getGeneration() + treeIndex.getVersion();
+    }
+
+    private static String scopeId(FolderTreeIndex.Subtree subtree) {
+        return subtree == null ? null : subtree.getFolderId();
+    }
+
+    private void ensureSearchIndexBuilt() {
+        if (!searchIndexBuilt) {
+            searchIndex.rebuild(treeIndex.getRootFolders());
+            searchIndexBuilt = true;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            checkpoint();
+            closeLog();
+        } catch (IOException e) {
+            System.err.println("Error writing journal checkpoint: " + e.getMessage());
+            e.printStackTrace();
+        }
+        System.out.println("Journal " + durability + ": " + appendCount.get() + " records, "
+                + syncCount.get() + " log syncs");
+        System.out.println("Search result cache: " + resultCache.getStatistics());
+    }
+
+    private void storeNote(Note note, Folder parent) throws IOException {
+        if (note == null) {
+            throw new IllegalArgumentException("Cannot save null note");
+        }
+
+        // Generate ID if new note
+        if (note.getId() == null) {
+            note.setId(UUID.randomUUID().toString());
+        }
+
+        // Update timestamps
+        LocalDateTime now = LocalDateTime.now();
+        if (note.getCreatedAt() == null) {
+            note.setCreatedAt(now);
+        }
+        note.setUpdatedAt(now);
+
+        JournalRecord record = new JournalRecord(RecordType.SAVE_NOTE);
+        record.setNote(note);
+        append(record);
+        note.clearDirty();
+        if (searchIndexBuilt) {
+            searchIndex.update(note);
+        }
+        if (vectorIndex != null) {
+            vectorIndex.update(note);
+        }
+
+        // Update parent folder structure if this is a new note
+        if (parent != null && !parent.getNotes().contains(note)) {
+            parent.getNotes().add(note);
+            storeFolder(parent, treeIndex.getParent(parent));
+        } else if (parent != null) {
+            treeIndex.putNote(note, parent);
+        }
+    }
+
+    private void storeFolder(Folder folder, Folder parent) throws IOException {
+        // Generate ID if new folder
+        if (folder.getId() == null) {
+            folder.setId(UUID.randomUUID().toString());
+        }
+
+        JournalRecord record = new JournalRecord(RecordType.SAVE_FOLDER);
+        record.setFolder(FolderMetadata.from(folder));
+        record.setParentId(parent == null ? null : parent.getId());
+        append(record);
+        folder.clearDirty();
+
+        if (parent == null) {
+            if (!treeIndex.isRootFolder(folder)) {
+                treeIndex.putFolder(folder, null);
+            } else {
+                treeIndex.reindexChildren(folder);
+            }
+        } else {
+            // Update parent folder structure if this is a new subfolder
+            if (!parent.getSubFolders().contains(folder)) {
+                parent.getSubFolders().add(folder);
+                treeIndex.putFolder(folder, parent);
+                storeFolder(parent, treeIndex.getParent(parent));
+            } else {
+                treeIndex.reindexChildren(folder);
+            }
+        }
+    }
+
+    private void append(JournalRecord record) throws IOException {
+        record.setSequence(++sequence);
+
+        if (logChannel == null) {
+            logChannel = FileChannel.open(logFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        byte[] line = (objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            logChannel.write(buffer);
+        }
+        appendCount.incrementAndGet();
+
+        if (durability == Durability.PER_WRITE) {
+            logChannel.force(false);
+            syncCount.incrementAndGet();
+        }
+
+        recordsSinceCheckpoint++;
+    }
+
+    // Called by each public operation once it has finished changing the tree, so a checkpoint
+    // never captures an operation halfway (a note logged but not yet in its folder)
+    private void checkpointIfDue() throws IOException {
+        if (recordsSinceCheckpoint >= CHECKPOINT_INTERVAL) {
+            checkpoint();
+        }
+    }
+
+    // Wait until the log is synced up to the given sequence. The first waiter
+    // becomes the leader and issues one fsync covering every record written so
+    // far; records appended meanwhile are covered by the next leader's fsync.
+    private void awaitLogDurable(long upTo) throws IOException {
+        if (durability != Durability.PER_BATCH) return;
+
+        while (true) {
+            synchronized (syncLock) {
+                while (syncedSequence < upTo && syncing) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for journal sync", e);
+                    }
+                }
+                if (syncedSequence >= upTo) {
+                    return;
+                }
+                syncing = true;
+            }
+
+            // Only which records to sync is read under the service lock; appends go on during the fsync
+            long synced = -1;
+            try {
+                FileChannel channel;
+                long upToSequence;
+                synchronized (this) {
+                    channel = logChannel;
+                    upToSequence = sequence;
+                }
+                if (channel != null) {
+                    try {
+                        channel.force(false);
+                        syncCount.incrementAndGet();
+                    } catch (ClosedChannelException e) {
+                        // A checkpoint closed the log after syncing a snapshot of these records
+                    }
+                }
+                synced = upToSequence;
+            } finally {
+                synchronized (syncLock) {
+                    syncedSequence = Math.max(syncedSequence, synced);
+                    syncing = false;
+                    syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    // Write the whole current state to a new checkpoint, then start an empty log.
+    // Records carry sequence numbers, so a crash between the two steps only
+    // means already-checkpointed records are skipped on replay.
+    private void checkpoint() throws IOException {
+        JournalCheckpoint snapshot = new JournalCheckpoint();
+        snapshot.setSequence(sequence);
+        for (Folder root : treeIndex.getRootFolders()) {
+            snapshot.getRootFolderIds().add(root.getId());
+            collectSnapshot(root, snapshot);
+        }
+
+        checkpointWriter.writeValue(objectMapper, checkpointFile, snapshot);
+
+        closeLog();
+        Files.write(logFile.toPath(), new byte[0]);
+        recordsSinceCheckpoint = 0;
+
+        // Everything up to this sequence is now in the synced checkpoint
+        synchronized (syncLock) {
+            syncedSequence = Math.max(syncedSequence, sequence);
+            syncLock.notifyAll();
+        }
+    }
+
+    private void collectSnapshot(Folder folder, JournalCheckpoint snapshot) {
+        snapshot.getFolders().add(FolderMetadata.from(folder));
+        snapshot.getNotes().addAll(folder.getNotes());
+        for (Folder subFolder : folder.getSubFolders()) {
+            collectSnapshot(subFolder, snapshot);
+        }
+    }
+
+    private void closeLog() throws IOException {
+        if (logChannel != null) {
+            logChannel.close();
+            logChannel = null;
+        }
+    }
+
+    // Load the last checkpoint and replay every newer record from the log
+    private void recover() {
+        ReplayState state = new ReplayState();
+
+        try {
+            if (checkpointFile.exists()) {
+                JournalCheckpoint snapshot = objectMapper.readValue(checkpointFile, JournalCheckpoint.class);
+                state.load(snapshot);
+                sequence = snapshot.getSequence();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading journal checkpoint: " + e.getMessage());
+            e.printStackTrace();
+        }
+
+        long checkpointSequence = sequence;
+        int replayed = 0;
+        int skipped = 0;
+        if (logFile.exists()) {
+            try {
+                byte[] log = Files.readAllBytes(logFile.toPath());
+                // Records end with a newline, written along with them before any sync
+                int validLength = 0;
+                int end;
+                while ((end = indexOf(log, (byte) '\n', validLength)) >= 0) {
+                    String line = new String(log, validLength, end - validLength, StandardCharsets.UTF_8);
+                    validLength = end + 1;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    JournalRecord record;
+                    try {
+                        record = objectMapper.readValue(line, JournalRecord.class);
+                    } catch (IOException e) {
+                        // A complete but damaged record: skip only it, the records after it were acknowledged
+                        System.err.println("Skipping unreadable journal record ending at byte " + end + ": "
+                                + e.getMessage());
+                        skipped++;
+                        continue;
+                    }
+                    if (record.getSequence() > checkpointSequence) {
+                        state.apply(record);
+                        sequence = record.getSequence();
+                        replayed++;
+                    }
+                }
+                // A torn final record from a crash mid-append; nothing after it was acknowledged.
+                // Cut it off, or the next record appended would be glued to it and lost as well.
+                if (validLength < log.length) {
+                    try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                        channel.truncate(validLength);
+                        channel.force(false);
+                    }
+                    System.out.println("Cut " + (log.length - validLength) + " bytes of a torn record off the journal");
+                }
+            } catch (IOException e) {
+                System.err.println("Error replaying journal: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+
+        treeIndex.rebuild(state.buildTree());
+        treeIndex.markAllClean();
+        recordsSinceCheckpoint = replayed;
+        syncedSequence = sequence;
+        System.out.println("Recovered journal at sequence " + sequence + " (" + replayed + " records replayed"
+                + (skipped > 0 ? ", " + skipped + " unreadable records skipped)" : ")"));
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    enum RecordType {
+        SAVE_NOTE, SAVE_FOLDER, DELETE_NOTE, DELETE_FOLDER, REMOVE_ROOT
+    }
+
+    // One log line; only the fields relevant to its type are set
+    public static class JournalRecord {
+        private long sequence;
+        private RecordType type;
+        private Note note;
+        private FolderMetadata folder;
+        private String parentId;
+        private String noteId;
+        private String folderId;
+
+        public JournalRecord() {
+            // Default constructor for Jackson
+        }
+
+        JournalRecord(RecordType type) {
+            this.type = type;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public void setSequence(long sequence) {
+            this.sequence = sequence;
+        }
+
+        public RecordType getType() {
+            return type;
+        }
+
+        public void setType(RecordType type) {
+            this.type = type;
+        }
+
+        public Note getNote() {
+            return note;
+        }
+
+        public void setNote(Note note) {
+            this.note = note;
+        }
+
+        public FolderMetadata getFolder() {
+            return folder;
+        }
+
+        public void setFolder(FolderMetadata folder) {
+            this.folder = folder;
+        }
+
+        public String getParentId() {
+            return parentId;
+        }
+
+        public void setParentId(String parentId) {
+            this.parentId = parentId;
+        }
+
+        public String getNoteId() {
+            return noteId;
+        }
+
+        public void setNoteId(String noteId) {
+            this.noteId = noteId;
+        }
+
+        public String getFolderId() {
+            return folderId;
+        }
+
+        public void setFolderId(String folderId) {
+            this.folderId = folderId;
+        }
+    }
+
+    // Full state as of a sequence number, in the same normalized form as FileSystemStorageService
+    public static class JournalCheckpoint {
+        private long sequence;
+        private List<String> rootFolderIds = new ArrayList<>();
+        private List<FolderMetadata> folders = new ArrayList<>();
+        private List<Note> notes = new ArrayList<>();
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public void setSequence(long sequence) {
+            this.sequence = sequence;
+        }
+
+        public List<String> getRootFolderIds() {
+            return rootFolderIds;
+        }
+
+        public void setRootFolderIds(List<String> rootFolderIds) {
+            this.rootFolderIds = rootFolderIds;
+        }
+
+        public List<FolderMetadata> getFolders() {
+            return folders;
+        }
+
+        public void setFolders(List<FolderMetadata> folders) {
+            this.folders = folders;
+        }
+
+        public List<Note> getNotes() {
+            return notes;
+        }
+
+        public void setNotes(List<Note> notes) {
+            this.notes = notes;
+        }
+    }
+
+    // Flat maps the log is replayed into before the tree is assembled
+    private static class ReplayState {
+        private final Map<String, FolderMetadata> folders = new HashMap<>();
+        private final Map<String, Note> notes = new HashMap<>();
+        private final Map<String, Boolean> rootFolderIds = new LinkedHashMap<>();
+
+        void load(JournalCheckpoint snapshot) {
+            for (FolderMetadata folder : snapshot.getFolders()) {
+                folders.put(folder.getId(), folder);
+            }
+            for (Note note : snapshot.getNotes()) {
+                notes.put(note.getId(), note);
+            }
+            for (String rootId : snapshot.getRootFolderIds()) {
+                rootFolderIds.put(rootId, Boolean.TRUE);
+            }
+        }
+
+        void apply(JournalRecord record) {
+            switch (record.getType()) {
+                case SAVE_NOTE:
+                    notes.put(record.getNote().getId(), record.getNote());
+                    break;
+                case SAVE_FOLDER:
+                    FolderMetadata folder = record.getFolder();
+                    folders.put(folder.getId(), folder);
+                    if (record.getParentId() == null) {
+                        rootFolderIds.putIfAbsent(folder.getId(), Boolean.TRUE);
+                    } else {
+                        rootFolderIds.remove(folder.getId());
+                    }
+                    break;
+                case DELETE_NOTE:
+                    notes.remove(record.getNoteId());
+                    break;
+                case DELETE_FOLDER:
+                    removeFolder(record.getFolderId());
+                    break;
+                case REMOVE_ROOT:
+                    rootFolderIds.remove(record.getFolderId());
+                    break;
+            }
+        }
+
+        private void removeFolder(String folderId) {
+            rootFolderIds.remove(folderId);
+            FolderMetadata folder = folders.remove(folderId);
+            if (folder == null) return;
+
+            for (String noteId : folder.getNoteIds()) {
+                notes.remove(noteId);
+            }
+            for (String subFolderId : folder.getSubFolderIds()) {
+                removeFolder(subFolderId);
+            }
+        }
+
+        List<Folder> buildTree() {
+            List<Folder> roots = new ArrayList<>();
+            Set<String> visited = new HashSet<>();
+            for (String rootId : rootFolderIds.keySet()) {
+                Folder root = buildFolder(rootId, visited);
+                if (root != null) {
+                    roots.add(root);
+                }
+            }
+            return roots;
+        }
+
+        private Folder buildFolder(String folderId, Set<String> visited) {
+            FolderMetadata metadata = folders.get(folderId);
+            if (metadata == null || !visited.add(folderId)) return null;
+
+            Folder folder = metadata.toFolder();
+            for (String noteId : metadata.getNoteIds()) {
+                Note note = notes.get(noteId);
+                if (note != null) {
+                    folder.getNotes().add(note);
+                }
+            }
+            for (String subFolderId : metadata.getSubFolderIds()) {
+                Folder subFolder = buildFolder(subFolderId, visited);
+                if (subFolder != null) {
+                    folder.getSubFolders().add(subFolder);
+                }
+            }
+            return folder;
+        }
+    }
+}
@@ -12,7 +12,7 @@ public class LocalSummaryService implements AISummaryService {
     @Override
     public String summarizeNoteContent(String content) {
         // Strip HTML tags
-        String plainText = stripHtml(content);
+        String plainText = NoteText.extract(content);
 
         // If content is very short, don't summarize
         if (plainText.length() < 200) {
@@ -39,7 +39,7 @@ public class LocalSummaryService implements AISummaryService {
         // Get top 3 most common words across all notes
         Map<String, Integer> wordFrequency = new HashMap<>();
         for (Note note : notes) {
-            String plainText = stripHtml(note.getContent());
+            String plainText = NoteText.plainText(note);
             for (String word : plainText.split("\\s+")) {
                 word = word.toLowerCase().replaceAll("[^a-z]", "");
                 if (word.length() > 4 && !isStopWord(word)) {
@@ -78,16 +78,6 @@ public class LocalSummaryService implements AISummaryService {
         return summary.toString();
     }
 
-    public String stripHtml(String html) {
-        if (html == null) {
-            return "";
-        }
-        return html.replaceAll("<[^>]*>", " ")
-                .replaceAll("&nbsp;", " ")
-                .replaceAll("\\s+", " ")
-                .trim();
-    }
-
     private List<String> splitIntoSentences(String text) {
         List<String> sentences = new ArrayList<>();
         Matcher matcher = Pattern.compile("[^.!?\\s][^.!?]*(?:[.!?](?!['\"]?\\s|$)[^.!?]*)*[.!?]?['\"]?(?=\\s|$)")
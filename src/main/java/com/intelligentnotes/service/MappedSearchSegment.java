@@ -0,0 +1,313 @@
+package com.intelligentnotes.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Immutable search index segment read through a memory mapping.
+ *
+ * Layout (written by SearchSegmentWriter):
+ * header | document offsets | documents | term offsets | terms | postings
+ *
+ * A document is: long stamp, int[3] field lengths, short idLength, id.
+ * A term is: short length, UTF-8 bytes, int postingCount, long postingsOffset,
+ * with terms sorted by their UTF-8 bytes. A posting list is its document
+ * numbers, their packed field frequencies, count + 1 position starts and
+ * then all the positions, each document's in ascending order.
+ *
+ * The header and the document and term sections are checksummed; postings are
+ * only bounds-checked, so opening a segment never reads the whole file.
+ */
+class MappedSearchSegment implements SearchSegment {
+    static final int MAGIC = 0x4E534958; // "NSIX"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 48;
+    static final int DOCUMENT_FIXED_SIZE = 8 + 4 * NoteSearchIndex.FIELD_COUNT + 2;
+
+    private final Path path;
+    private final MappedByteBuffer map;
+    private final int documentCount;
+    private final int termCount;
+    private final long termsOffset;
+    private final long postingsOffset;
+    private final String[] noteIds;
+    private final BitSet live;
+    private final long[] totalFieldLengths = new long[NoteSearchIndex.FIELD_COUNT];
+    private List<String> terms;
+
+    private MappedSearchSegment(Path path, MappedByteBuffer map) throws IOException {
+        this.path = path;
+        this.map = map;
+
+        if (map.capacity() < HEADER_SIZE || map.getInt(0) != MAGIC) {
+            throw new IOException("Not a search index segment: " + path);
+        }
+        if (map.getInt(4) != VERSION) {
+            throw new IOException("Unsupported search index segment version " + map.getInt(4) + ": " + path);
+        }
+        documentCount = map.getInt(8);
+        termCount = map.getInt(12);
+        termsOffset = map.getLong(16);
+        postingsOffset = map.getLong(24);
+        long fileLength = map.getLong(32);
+        int checksum = map.getInt(40);
+
+        if (fileLength != map.capacity() || documentCount < 0 || termCount < 0
+                || termsOffset < HEADER_SIZE || postingsOffset < termsOffset || postingsOffset > fileLength) {
+            throw new IOException("Truncated or inconsistent search index segment: " + path);
+        }
+
+        ByteBuffer checked = map.duplicate();
+        checked.position(HEADER_SIZE);
+        checked.limit((int) postingsOffset);
+        CRC32 crc = new CRC32();
+        crc.update(checked);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Search index segment checksum mismatch: " + path);
+        }
+
+        noteIds = new String[documentCount];
+        for (int document = 0; document < documentCount; document++) {
+            int offset = documentOffset(document);
+            byte[] id = new byte[map.getShort(offset + DOCUMENT_FIXED_SIZE - 2)];
+            ByteBuffer source = map.duplicate();
+            source.position(offset + DOCUMENT_FIXED_SIZE);
+            source.get(id);
+            noteIds[document] = new String(id, StandardCharsets.UTF_8);
+            for (int field = 0; field < NoteSearchIndex.FIELD_COUNT; field++) {
+                totalFieldLengths[field] += fieldLength(document, field);
+            }
+        }
+        live = new BitSet(documentCount);
+        live.set(0, documentCount);
+    }
+
+    static MappedSearchSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedSearchSegment(path, map);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt search index segment: " + path, e);
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getFileLength() {
+        return map.capacity();
+    }
+
+    @Override
+    public synchronized int liveCount() {
+        return live.cardinality();
+    }
+
+    @Override
+    public int documentCount() {
+        return documentCount;
+    }
+
+    @Override
+    public String noteId(int document) {
+        return noteIds[document];
+    }
+
+    @Override
+    public long stamp(int document) {
+        return map.getLong(documentOffset(document));
+    }
+
+    @Override
+    public int fieldLength(int document, int field) {
+        return map.getInt(documentOffset(document) + 8 + 4 * field);
+    }
+
+    @Override
+    public synchronized long totalFieldLength(int field) {
+        return totalFieldLengths[field];
+    }
+
+    @Override
+    public synchronized boolean isLive(int document) {
+        return live.get(document);
+    }
+
+    @Override
+    public synchronized void retire(int document) {
+        if (live.get(document)) {
+            live.clear(document);
+            for (int field = 0; field < NoteSearchIndex.FIELD_COUNT; field++) {
+                totalFieldLengths[field] -= fieldLength(document, field);
+            }
+        }
+    }
+
+    @Override
+    public Postings postings(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int index = lowerBound(key);
+        if (index == termCount) {
+            return null;
+        }
+        int offset = termOffset(index);
+        if (compareTerm(offset, key) != 0) {
+            return null;
+        }
+
+        int length = map.getShort(offset);
+        int count = map.getInt(offset + 2 + length);
+        long position = map.getLong(offset + 2 + length + 4);
+        long positionsStart = position + 4L * (3 * count + 1);
+        if (position < postingsOffset || positionsStart > map.capacity()
+                || positionsStart + 4L * map.getInt((int) positionsStart - 4) > map.capacity()) {
+            throw new IllegalStateException("Posting list out of bounds in " + path);
+        }
+        return new MappedPostings((int) position, count);
+    }
+
+    @Override
+    public String ceilingTerm(String term) {
+        int index = lowerBound(term.getBytes(StandardCharsets.UTF_8));
+        return index == termCount ? null : termAt(termOffset(index));
+    }
+
+    // Terms are sorted, so the ones with a given prefix form one run starting at its lower bound
+    @Override
+    public void collectPrefixTerms(String prefix, int limit, Map<String, Integer> frequencies) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        int added = 0;
+        for (int index = lowerBound(key); index < termCount && added < limit; index++) {
+            int offset = termOffset(index);
+            if (!startsWith(offset, key)) break;
+            int count = map.getInt(offset + 2 + map.getShort(offset));
+            frequencies.merge(termAt(offset), count, Integer::sum);
+            added++;
+        }
+    }
+
+    @Override
+    public Collection<String> terms() {
+        if (terms == null) {
+            List<String> all = new ArrayList<>(termCount);
+            for (int i = 0; i < termCount; i++) {
+                all.add(termAt(termOffset(i)));
+            }
+            terms = all;
+        }
+        return terms;
+    }
+
+    private int documentOffset(int document) {
+        return map.getInt(HEADER_SIZE + 4 * document);
+    }
+
+    private int termOffset(int index) {
+        return map.getInt((int) termsOffset + 4 * index);
+    }
+
+    private String termAt(int offset) {
+        byte[] bytes = new byte[map.getShort(offset)];
+        ByteBuffer source = map.duplicate();
+        source.position(offset + 2);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Index of the first term not less than the key
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = termCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareTerm(termOffset(middle), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private boolean startsWith(int offset, byte[] prefix) {
+        if (map.getShort(offset) < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (map.get(offset + 2 + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Unsigned byte comparison, matching the order the writer sorted terms in
+    private int compareTerm(int offset, byte[] key) {
+        int length = map.getShort(offset);
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (map.get(offset + 2 + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    private class MappedPostings implements Postings {
+        private final int position;
+        private final int count;
+        private final int startsPosition;
+        private final int positionsPosition;
+
+        MappedPostings(int position, int count) {
+            this.position = position;
+            this.count = count;
+            startsPosition = position + 8 * count;
+            positionsPosition = startsPosition + 4 * (count + 1);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public int document(int index) {
+            return map.getInt(position + 4 * index);
+        }
+
+        @Override
+        public int frequencies(int index) {
+            return map.getInt(position + 4 * count + 4 * index);
+        }
+
+        @Override
+        public int positionCount(int index) {
+            return map.getInt(startsPosition + 4 * index + 4) - map.getInt(startsPosition + 4 * index);
+        }
+
+        @Override
+        public int position(int index, int n) {
+            return map.getInt(positionsPosition + 4 * (map.getInt(startsPosition + 4 * index) + n));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName() + " (" + liveCount() + "/" + documentCount + " live, "
+                + getFileLength() / 1024 + " KB)";
+    }
+}
@@ -0,0 +1,140 @@
+package com.intelligentnotes.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of note bodies, bounded by the total number of
+ * characters held rather than by entry count, since note sizes vary widely.
+ * A body's plain text can be kept in its entry, so a body loaded on demand
+ * is only stripped once while it stays cached; it goes with the body.
+ *
+ * Safe to use from several threads. A body read from disk is added with
+ * putLoaded, which drops it if the note was saved or deleted meanwhile.
+ */
+public class NoteContentCache {
+    // About 32 MB of heap for UTF-16 strings
+    public static final long DEFAULT_MAX_CHARS = 16L * 1024 * 1024;
+
+    private final long maxChars;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentChars;
+    // Bumped by every put, invalidate and clear
+    private long version;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static final class Entry {
+        final String content;
+        String plainText;
+
+        Entry(String content) {
+            this.content = content;
+        }
+
+        long length() {
+            return content.length() + (plainText == null ? 0 : plainText.length());
+        }
+    }
+
+    public NoteContentCache() {
+        this(DEFAULT_MAX_CHARS);
+    }
+
+    public NoteContentCache(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    // Returns null (and counts a miss) if the note's content is not cached
+    public synchronized String get(String noteId) {
+        Entry entry = entries.get(noteId);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.content;
+    }
+
+    // The plain text kept with the note's cached body, or null
+    public synchronized String getPlainText(String noteId) {
+        Entry entry = entries.get(noteId);
+        return entry == null ? null : entry.plainText;
+    }
+
+    // Keep the plain text with the body it was extracted from, unless that body has been
+    // replaced or evicted since
+    public synchronized void putPlainText(String noteId, String content, String plainText) {
+        Entry entry = entries.get(noteId);
+        if (entry == null || entry.content != content || entry.plainText != null || plainText == null) return;
+        entry.plainText = plainText;
+        currentChars += plainText.length();
+        evict();
+    }
+
+    // Taken before reading a body from disk, to be handed to putLoaded
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    // Add a body read from disk, unless the cache changed since version was taken: the body read
+    // may already be older than one a save put here meanwhile
+    public synchronized void putLoaded(String noteId, String content, long version) {
+        if (version == this.version) {
+            put(noteId, content);
+        }
+    }
+
+    public synchronized void put(String noteId, String content) {
+        if (noteId == null || content == null) return;
+
+        invalidate(noteId);
+        // A body larger than the whole cache would only evict everything else
+        if (content.length() > maxChars) return;
+
+        entries.put(noteId, new Entry(content));
+        currentChars += content.length();
+        evict();
+    }
+
+    public synchronized void invalidate(String noteId) {
+        version++;
+        Entry previous = entries.remove(noteId);
+        if (previous != null) {
+            currentChars -= previous.length();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (currentChars > maxChars && eldest.hasNext()) {
+            currentChars -= eldest.next().getValue().length();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentChars = 0;
+        version++;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized String getStatistics() {
+        long lookups = hits + misses;
+        double hitRate = lookups == 0 ? 0 : 100.0 * hits / lookups;
+        return String.format("%d notes (%d KB of %d KB), %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                entries.size(), currentChars * 2 / 1024, maxChars * 2 / 1024, hits, misses, hitRate, evictions);
+    }
+}
@@ -0,0 +1,183 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Note;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Offline text vectors for semantic search, computed on the CPU from the
+ * note alone: no model, no network.
+ *
+ * Words, reduced to a rough stem, pairs of adjacent words and the
+ * character trigrams of each word are hashed into a fixed number of signed
+ * dimensions, with sublinear term frequencies, and the vector is scaled to
+ * unit length so that the dot product of two vectors is their cosine
+ * similarity. Stems let different forms of a word ("plans", "planning")
+ * count as one, and trigrams let related words and near spellings share
+ * part of their weight. Numbers and common English words are skipped, and
+ * that stands in for weighting words by inverse document frequency, so a
+ * stored vector never has to change as the rest of the vault does.
+ */
+final class NoteEmbedder {
+    static final int DIMENSIONS = 256;
+
+    private static final float WORD_WEIGHT = 1.0f;
+    private static final float PAIR_WEIGHT = 0.5f;
+    // Shared between a word's trigrams, so long words do not outweigh short ones
+    private static final float TRIGRAMS_WEIGHT = 1.0f;
+    private static final float TITLE_WEIGHT = 2.0f;
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "about", "after", "all", "also", "an", "and", "any", "are", "as", "at", "be", "because",
+            "been", "but", "by", "can", "could", "did", "do", "does", "for", "from", "had", "has", "have",
+            "he", "her", "his", "how", "i", "if", "in", "into", "is", "it", "its", "just", "me", "more",
+            "my", "no", "not", "of", "on", "one", "or", "our", "out", "she", "so", "some", "than", "that",
+            "the", "their", "them", "then", "there", "these", "they", "this", "to", "up", "us", "was", "we",
+            "were", "what", "when", "which", "who", "will", "with", "would", "you", "your"));
+
+    private NoteEmbedder() {
+    }
+
+    // Title, summary and text of the note; null if none of them has a word worth embedding
+    static float[] embed(Note note) {
+        float[] vector = new float[DIMENSIONS];
+        boolean any = add(vector, note.getTitle(), TITLE_WEIGHT);
+        any |= add(vector, note.getSummary(), 1.0f);
+        any |= add(vector, NoteText.plainText(note), 1.0f);
+        return any ? normalize(vector) : null;
+    }
+
+    // Null if the text has no word worth embedding
+    static float[] embed(String text) {
+        float[] vector = new float[DIMENSIONS];
+        return add(vector, text, 1.0f) ? normalize(vector) : null;
+    }
+
+    // The words a query's vector was built from, for highlighting the results
+    static String[] queryTerms(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String word : SearchTokenizer.tokenize(text)) {
+            if (isMeaningful(word) && !terms.contains(word)) {
+                terms.add(word);
+            }
+        }
+        return terms.toArray(new String[0]);
+    }
+
+    static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static boolean add(float[] vector, String text, float weight) {
+        if (text == null || text.isEmpty()) {
+            return false;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        String previous = null;
+        for (String word : SearchTokenizer.tokenize(text)) {
+            if (!isMeaningful(word)) {
+                previous = null;
+                continue;
+            }
+            word = stem(word);
+            counts.merge(word, 1, Integer::sum);
+            if (previous != null) {
+                counts.merge(previous + ' ' + word, 1, Integer::sum);
+            }
+            previous = word;
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            String feature = entry.getKey();
+            float tf = weight * (float) (1 + Math.log(entry.getValue()));
+            if (feature.indexOf(' ') >= 0) {
+                addFeature(vector, feature, tf * PAIR_WEIGHT);
+            } else {
+                addFeature(vector, feature, tf * WORD_WEIGHT);
+                addTrigrams(vector, feature, tf * TRIGRAMS_WEIGHT);
+            }
+        }
+        return !counts.isEmpty();
+    }
+
+    // Common words and numbers say little about what a note is about, and numbers' trigrams
+    // would only add hash collisions
+    private static boolean isMeaningful(String word) {
+        if (STOP_WORDS.contains(word)) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isLetter(word.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Strips the commonest English endings: plurals, -ing, -ed and -ly, undoubling a final consonant
+    // ("planning" -> "plan"). Crude, but the same on both sides of a comparison.
+    static String stem(String word) {
+        int length = word.length();
+        String stem = word;
+        if (length > 4 && word.endsWith("ies")) {
+            return word.substring(0, length - 3) + 'y';
+        } else if (length > 5 && word.endsWith("ing")) {
+            stem = word.substring(0, length - 3);
+        } else if (length > 4 && (word.endsWith("ed") || word.endsWith("ly"))) {
+            stem = word.substring(0, length - 2);
+        } else if (length > 3 && word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us")) {
+            return word.substring(0, length - 1);
+        }
+        int end = stem.length();
+        if (stem != word && end > 2 && stem.charAt(end - 1) == stem.charAt(end - 2)
+                && "aeiouls".indexOf(stem.charAt(end - 1)) < 0) {
+            return stem.substring(0, end - 1);
+        }
+        return stem;
+    }
+
+    // Trigrams of the word with its boundaries marked, so "<pl" tells a start from a middle
+    private static void addTrigrams(float[] vector, String word, float weight) {
+        String marked = '<' + word + '>';
+        int count = marked.length() - 2;
+        for (int i = 0; i < count; i++) {
+            addFeature(vector, marked.substring(i, i + 3), weight / count);
+        }
+    }
+
+    private static void addFeature(float[] vector, String feature, float weight) {
+        int hash = mix(feature.hashCode());
+        // The sign bit spreads collisions so they cancel out instead of piling up
+        vector[(hash >>> 1) % DIMENSIONS] += (hash & 1) == 0 ? weight : -weight;
+    }
+
+    // Murmur3's finalizer, since String.hashCode leaves similar strings in similar buckets
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        if (norm == 0) {
+            return null;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] /= norm;
+        }
+        return vector;
+    }
+}
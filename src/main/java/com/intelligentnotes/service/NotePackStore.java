@@ -0,0 +1,478 @@
+package com.intelligentnotes.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligentnotes.model.Note;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Stores notes as records appended to a few large segment files instead of
+ * one JSON file per note.
+ *
+ * Each record holds the note's header (every field except content, as JSON)
+ * and its content as raw UTF-8. Segments are read through FileChannel.map and
+ * an in-memory index maps each note ID to the offset of its latest record, so
+ * loading a header or a body is a lookup and a slice of the mapping.
+ *
+ * Saving a note appends a new record; deleting appends a tombstone. When a
+ * sealed segment is mostly dead records, a background thread copies its live
+ * records to the active segment and deletes it.
+ *
+ * Record layout: int length | int crc32 | byte type | short idLength | id |
+ * int headerLength | header | int contentLength (-1 for null) | content
+ */
+public class NotePackStore {
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_SUFFIX = ".pack";
+    private static final long SEGMENT_SIZE = 32L * 1024 * 1024;
+    private static final double COMPACTION_THRESHOLD = 0.5;
+    private static final byte TYPE_PUT = 0;
+    private static final byte TYPE_DELETE = 1;
+
+    private final File directory;
+    private final ObjectMapper objectMapper;
+    private final Durability durability;
+
+    // Segments by number; the highest one is the active segment that receives appends
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<String, PackEntry> index = new HashMap<>();
+    // Segment holding the latest tombstone of each deleted note
+    private final Map<String, Integer> tombstones = new HashMap<>();
+    private final ExecutorService compactor;
+    private boolean compactionScheduled;
+    private long appendedSequence;
+    private long syncedSequence;
+    private boolean closed;
+
+    // Statistics
+    private long appendCount;
+    private long compactionCount;
+    private long reclaimedBytes;
+
+    public NotePackStore(File directory, ObjectMapper objectMapper, Durability durability) throws IOException {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.durability = durability;
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "note-pack-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory: " + directory);
+        }
+        recover();
+    }
+
+    public static boolean exists(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        return files != null && files.length > 0;
+    }
+
+    public synchronized boolean contains(String noteId) {
+        return index.containsKey(noteId);
+    }
+
+    // The note without its content, or null if the store has no live record for it
+    public synchronized Note getHeader(String noteId) {
+        PackEntry entry = index.get(noteId);
+        return entry == null ? null : entry.header.copy();
+    }
+
+    // Read-only view of the note's UTF-8 content inside the segment mapping
+    public synchronized ByteBuffer getContentSlice(String noteId) throws IOException {
+        PackEntry entry = index.get(noteId);
+        if (entry == null || entry.contentLength < 0) {
+            return null;
+        }
+        ByteBuffer mapping = segments.get(entry.segment).mapping(entry.contentOffset + entry.contentLength);
+        ByteBuffer slice = mapping.duplicate();
+        slice.position((int) entry.contentOffset);
+        slice.limit((int) (entry.contentOffset + entry.contentLength));
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    public String readContent(String noteId) throws IOException {
+        ByteBuffer slice = getContentSlice(noteId);
+        return slice == null ? null : StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    public synchronized void put(Note note) throws IOException {
+        Note header = note.copy();
+        header.setContent(null);
+        header.setContentLoader(null);
+
+        String content = note.getContent();
+        byte[] headerBytes = objectMapper.writeValueAsBytes(header);
+        byte[] contentBytes = content == null ? null : content.getBytes(StandardCharsets.UTF_8);
+        append(TYPE_PUT, note.getId(), headerBytes, contentBytes, header);
+    }
+
+    public synchronized void delete(String noteId) throws IOException {
+        if (!index.containsKey(noteId)) return;
+        append(TYPE_DELETE, noteId, new byte[0], null, null);
+    }
+
+    // Make every record appended so far durable. A no-op unless durability is PER_BATCH,
+    // since PER_WRITE already forced each append.
+    public void sync() throws IOException {
+        if (durability != Durability.PER_BATCH) return;
+
+        FileChannel channel;
+        long target;
+        synchronized (this) {
+            if (syncedSequence >= appendedSequence || closed) return;
+            target = appendedSequence;
+            channel = segments.lastEntry().getValue().channel;
+        }
+        // Forced outside the lock so concurrent savers can keep appending
+        channel.force(false);
+        synchronized (this) {
+            syncedSequence = Math.max(syncedSequence, target);
+        }
+    }
+
+    public synchronized String getStatistics() {
+        long total = 0;
+        long live = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.size;
+            live += segment.liveBytes;
+        }
+        return String.format("%d notes in %d segments (%d KB, %d KB live), %d appends, %d compactions (%d KB reclaimed)",
+                index.size(), segments.size(), total / 1024, live / 1024, appendCount, compactionCount, reclaimedBytes / 1024);
+    }
+
+    public void close() {
+        compactor.shutdown();
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            for (Segment segment : segments.values()) {
+                try {
+                    if (durability != Durability.NONE) {
+                        segment.channel.force(false);
+                    }
+                    segment.channel.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing pack segment " + segment.path + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void append(byte type, String noteId, byte[] headerBytes, byte[] contentBytes, Note header) throws IOException {
+        if (closed) {
+            throw new IOException("Note pack store is closed");
+        }
+        byte[] idBytes = noteId.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 1 + 2 + idBytes.length + 4 + headerBytes.length + 4
+                + (contentBytes == null ? 0 : contentBytes.length);
+
+        ByteBuffer record = ByteBuffer.allocate(8 + payloadLength);
+        record.putInt(4 + payloadLength);
+        record.putInt(0); // crc, filled in below
+        record.put(type);
+        record.putShort((short) idBytes.length);
+        record.put(idBytes);
+        record.putInt(headerBytes.length);
+        record.put(headerBytes);
+        record.putInt(contentBytes == null ? -1 : contentBytes.length);
+        if (contentBytes != null) {
+            record.put(contentBytes);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, payloadLength);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+
+        Segment segment = activeSegment(record.remaining());
+        long offset = segment.size;
+        while (record.hasRemaining()) {
+            segment.channel.write(record, offset + record.position());
+        }
+        segment.size += 8 + payloadLength;
+        appendCount++;
+        appendedSequence++;
+
+        if (durability == Durability.PER_WRITE) {
+            segment.channel.force(false);
+            syncedSequence = appendedSequence;
+        }
+
+        long contentOffset = offset + 8 + payloadLength - (contentBytes == null ? 0 : contentBytes.length);
+        applyToIndex(type, noteId, header, segment, offset, 8 + payloadLength,
+                contentOffset, contentBytes == null ? -1 : contentBytes.length);
+        scheduleCompactionIfNeeded();
+    }
+
+    private void applyToIndex(byte type, String noteId, Note header, Segment segment, long offset, int length,
+                              long contentOffset, int contentLength) {
+        PackEntry previous = index.remove(noteId);
+        if (previous != null) {
+            segments.get(previous.segment).liveBytes -= previous.recordLength;
+        }
+        if (type == TYPE_PUT) {
+            index.put(noteId, new PackEntry(segment.number, offset, length, contentOffset, contentLength, header));
+            segment.liveBytes += length;
+            tombstones.remove(noteId);
+        } else {
+            tombstones.put(noteId, segment.number);
+        }
+    }
+
+    private Segment activeSegment(int recordLength) throws IOException {
+        Segment active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (active == null || (active.size > 0 && active.size + recordLength > SEGMENT_SIZE)) {
+            if (active != null && durability != Durability.NONE) {
+                // Records in the sealed segment must not depend on a later sync of another file
+                active.channel.force(false);
+            }
+            int number = active == null ? 1 : active.number + 1;
+            active = Segment.open(directory.toPath().resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX), number);
+            segments.put(number, active);
+        }
+        return active;
+    }
+
+    // Rebuild the index by replaying every segment in order. Only the active segment can
+    // end in a torn record (from a crash mid-append), so only there is a bad record cut
+    // off; sealed segments were synced before the next one was started, so a bad record
+    // there is damage and is skipped, or the store refuses to open if it cannot be.
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(number, Segment.open(file.toPath(), number));
+                } catch (NumberFormatException e) {
+                    System.out.println("Warning: Ignoring unexpected file in note pack: " + name);
+                }
+            }
+        }
+
+        for (Segment segment : segments.values()) {
+            boolean sealed = segment.number != segments.lastKey();
+            ByteBuffer mapping = segment.mapping(segment.size);
+            long offset = 0;
+            while (offset + 8 <= segment.size) {
+                int length = mapping.getInt((int) offset);
+                if (length < 4 + 1 + 2 + 4 + 4 || offset + 4 + length > segment.size) {
+                    if (sealed) {
+                        // Without a valid length the next record cannot be found
+                        closeSegments();
+                        throw new IOException("Damaged record length in sealed note pack segment "
+                                + segment.path + " at offset " + offset);
+                    }
+                    break;
+                }
+
+                ByteBuffer payload = mapping.duplicate();
+                payload.position((int) offset + 8);
+                payload.limit((int) offset + 4 + length);
+                payload = payload.slice();
+                CRC32 crc = new CRC32();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != mapping.getInt((int) offset + 4)) {
+                    if (!sealed) break;
+                    System.err.println("Warning: Skipping damaged note pack record in " + segment.path
+                            + " at offset " + offset);
+                    offset += 4 + length;
+                    continue;
+                }
+
+                byte type = payload.get();
+                byte[] idBytes = new byte[payload.getShort()];
+                payload.get(idBytes);
+                byte[] headerBytes = new byte[payload.getInt()];
+                payload.get(headerBytes);
+                int contentLength = payload.getInt();
+                long contentOffset = offset + 8 + payload.position();
+
+                Note header = type == TYPE_PUT ? objectMapper.readValue(headerBytes, Note.class) : null;
+                applyToIndex(type, new String(idBytes, StandardCharsets.UTF_8), header, segment,
+                        offset, 4 + length, contentOffset, contentLength);
+                offset += 4 + length;
+            }
+
+            if (offset < segment.size && sealed) {
+                System.err.println("Warning: Ignoring " + (segment.size - offset) + " trailing bytes in sealed note pack segment "
+                        + segment.path);
+            } else if (offset < segment.size) {
+                System.out.println("Warning: Truncating torn note pack record in " + segment.path + " at offset " + offset);
+                segment.channel.truncate(offset);
+                segment.size = offset;
+                segment.map = null;
+            }
+        }
+        System.out.println("Loaded note pack: " + index.size() + " notes in " + segments.size() + " segments");
+    }
+
+    private void closeSegments() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing pack segment " + segment.path + ": " + e.getMessage());
+            }
+        }
+        compactor.shutdown();
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (compactionScheduled || closed || findCompactionCandidate() == null) return;
+        compactionScheduled = true;
+        compactor.execute(this::compact);
+    }
+
+    // The sealed segment with the highest share of dead records, if it is over the threshold
+    private Segment findCompactionCandidate() {
+        Segment candidate = null;
+        double worst = COMPACTION_THRESHOLD;
+        for (Segment segment : segments.headMap(segments.lastKey()).values()) {
+            double dead = segment.size == 0 ? 1 : 1 - (double) segment.liveBytes / segment.size;
+            if (dead >= worst) {
+                worst = dead;
+                candidate = segment;
+            }
+        }
+        return candidate;
+    }
+
+    private synchronized void compact() {
+        compactionScheduled = false;
+        Segment segment;
+        while (!closed && (segment = findCompactionCandidate()) != null) {
+            try {
+                compactSegment(segment);
+            } catch (IOException e) {
+                System.err.println("Error compacting note pack segment " + segment.path + ": " + e.getMessage());
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    private void compactSegment(Segment segment) throws IOException {
+        long before = segment.size;
+
+        // Copy the live records as they are into the active segment. If we crash before
+        // the old segment is deleted, replay finds both copies and keeps the later one.
+        List<Map.Entry<String, PackEntry>> live = new ArrayList<>();
+        for (Map.Entry<String, PackEntry> entry : index.entrySet()) {
+            if (entry.getValue().segment == segment.number) {
+                live.add(entry);
+            }
+        }
+        for (Map.Entry<String, PackEntry> entry : live) {
+            PackEntry old = entry.getValue();
+            ByteBuffer record = segment.mapping(old.recordOffset + old.recordLength).duplicate();
+            record.position((int) old.recordOffset);
+            record.limit((int) (old.recordOffset + old.recordLength));
+
+            Segment active = activeSegment(old.recordLength);
+            long offset = active.size;
+            while (record.hasRemaining()) {
+                active.channel.write(record, offset + record.position() - old.recordOffset);
+            }
+            active.size += old.recordLength;
+            applyToIndex(TYPE_PUT, entry.getKey(), old.header, active, offset, old.recordLength,
+                    offset + (old.contentOffset - old.recordOffset), old.contentLength);
+        }
+
+        // A tombstone is still needed while an earlier segment may hold the deleted note
+        List<String> deleted = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : tombstones.entrySet()) {
+            if (entry.getValue() == segment.number) {
+                deleted.add(entry.getKey());
+            }
+        }
+        boolean olderSegments = segments.firstKey() < segment.number;
+        for (String noteId : deleted) {
+            if (olderSegments) {
+                append(TYPE_DELETE, noteId, new byte[0], null, null);
+            } else {
+                tombstones.remove(noteId);
+            }
+        }
+        segments.lastEntry().getValue().channel.force(false);
+
+        segments.remove(segment.number);
+        segment.map = null;
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+
+        compactionCount++;
+        reclaimedBytes += before - segment.liveBytes;
+        System.out.println("Compacted note pack segment " + segment.number + ": moved " + live.size() + " live notes");
+    }
+
+    private static class Segment {
+        private final int number;
+        private final Path path;
+        private final FileChannel channel;
+        private long size;
+        private long liveBytes;
+        private MappedByteBuffer map;
+
+        private Segment(int number, Path path, FileChannel channel, long size) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        static Segment open(Path path, int number) throws IOException {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(number, path, channel, channel.size());
+        }
+
+        // Mapping covering at least the first requiredSize bytes; the active segment
+        // grows after it was mapped, so it is remapped when a read goes past the end
+        ByteBuffer mapping(long requiredSize) throws IOException {
+            if (map == null || map.capacity() < requiredSize) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            return map;
+        }
+    }
+
+    private static class PackEntry {
+        private final int segment;
+        private final long recordOffset;
+        private final int recordLength;
+        private final long contentOffset;
+        private final int contentLength;
+        private final Note header;
+
+        PackEntry(int segment, long recordOffset, int recordLength, long contentOffset, int contentLength, Note header) {
+            this.segment = segment;
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+            this.contentOffset = contentOffset;
+            this.contentLength = contentLength;
+            this.header = header;
+        }
+    }
+}
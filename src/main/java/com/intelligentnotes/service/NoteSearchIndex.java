@@ -0,0 +1,451 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Inverted index over note titles, plain-text content and summaries, kept in
+ * memory and updated as notes are saved and deleted. Postings record each
+ * term's positions, so phrases can be matched without reading the notes.
+ *
+ * Every indexed version of a note is a document with an increasing number.
+ * Re-indexing a note retires its old document and appends a new one, so
+ * posting lists stay sorted just by appending. Queries skip retired
+ * documents, and they are purged once they make up half of the index.
+ *
+ * The journal backend uses this as its whole index; FileSystemStorageService
+ * uses it as the delta segment in front of its persisted segments.
+ */
+class NoteSearchIndex implements SearchSegment {
+    static final int FIELD_TITLE = 0;
+    static final int FIELD_CONTENT = 1;
+    static final int FIELD_SUMMARY = 2;
+    static final int FIELD_COUNT = 3;
+
+    // A position packs the field into the top bits and the term's offset within the field below
+    private static final int POSITION_FIELD_SHIFT = 28;
+
+    private static final int PURGE_MIN_RETIRED = 1000;
+
+    private final Map<String, PostingList> postings = new HashMap<>();
+    // The same terms in sorted order, for prefix lookups
+    private final TreeSet<String> sortedTerms = new TreeSet<>();
+    private final Map<String, Integer> documentsByNoteId = new HashMap<>();
+    // Document number -> note, null once retired
+    private final List<Note> documents = new ArrayList<>();
+    // Kept after retirement, so a segment writer can still read a retired document
+    private final List<String> noteIds = new ArrayList<>();
+    private long[] stamps = new long[16];
+    private int[] fieldLengths = new int[16 * FIELD_COUNT];
+    private final long[] totalFieldLengths = new long[FIELD_COUNT];
+    private int retiredCount;
+    // Bumped on every change so callers can tell whether earlier results are still current
+    private long generation;
+
+    // Replace the whole index with the notes of the given tree
+    void rebuild(List<Folder> rootFolders) {
+        postings.clear();
+        sortedTerms.clear();
+        documentsByNoteId.clear();
+        documents.clear();
+        noteIds.clear();
+        Arrays.fill(totalFieldLengths, 0);
+        retiredCount = 0;
+
+        for (Folder folder : rootFolders) {
+            addFolder(folder);
+        }
+        generation++;
+    }
+
+    void update(Note note) {
+        if (note == null || note.getId() == null) return;
+        retire(note.getId());
+        addDocument(note);
+        generation++;
+        purgeIfNeeded();
+    }
+
+    void remove(String noteId) {
+        if (retire(noteId)) {
+            generation++;
+            purgeIfNeeded();
+        }
+    }
+
+    // Drop the notes of a folder and all its subfolders
+    void removeFolder(Folder folder) {
+        for (Note note : folder.getNotes()) {
+            retire(note.getId());
+        }
+        for (Folder subFolder : folder.getSubFolders()) {
+            removeFolder(subFolder);
+        }
+        generation++;
+        purgeIfNeeded();
+    }
+
+    // Notes matching the query, best matches first
+    List<SearchHit> search(String query, int limit) {
+        return search(query, limit, null);
+    }
+
+    // The page of matches ranked below the given hit
+    List<SearchHit> search(String query, int limit, SearchHit after) {
+        return search(query, limit, after, null);
+    }
+
+    // Date filters in the query are checked against the timestamp index, or ignored without one
+    List<SearchHit> search(String query, int limit, SearchHit after, NoteTimestampIndex times) {
+        return Bm25Scorer.topK(Collections.singletonList(this), query, limit, after, times);
+    }
+
+    // Only notes in the scope, if there is one
+    List<SearchHit> search(String query, int limit, SearchHit after, NoteTimestampIndex times,
+                           FolderTreeIndex.Subtree scope) {
+        return Bm25Scorer.topK(Collections.singletonList(this), query, limit, after, times, scope);
+    }
+
+    // Like search, but the last word of the query may be incomplete
+    List<SearchHit> searchPrefix(String query, int limit) {
+        return searchPrefix(query, limit, null);
+    }
+
+    List<SearchHit> searchPrefix(String query, int limit, NoteTimestampIndex times) {
+        return Bm25Scorer.topKPrefix(Collections.singletonList(this), query, limit, times);
+    }
+
+    List<SearchHit> searchPrefix(String query, int limit, NoteTimestampIndex times,
+                                 FolderTreeIndex.Subtree scope) {
+        return Bm25Scorer.topKPrefix(Collections.singletonList(this), query, limit, times, scope);
+    }
+
+    int size() {
+        return documentsByNoteId.size();
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    // Document number of the note's indexed version, or -1
+    int documentOf(String noteId) {
+        Integer document = documentsByNoteId.get(noteId);
+        return document == null ? -1 : document;
+    }
+
+    // Retire a single document without purging, for callers that track documents themselves
+    @Override
+    public void retire(int document) {
+        Note note = documents.get(document);
+        if (note != null && Integer.valueOf(document).equals(documentsByNoteId.get(note.getId()))) {
+            documentsByNoteId.remove(note.getId());
+            documents.set(document, null);
+            subtractFieldLengths(document);
+            retiredCount++;
+            generation++;
+        }
+    }
+
+    String getStatistics() {
+        long postingCount = 0;
+        for (PostingList list : postings.values()) {
+            postingCount += list.size;
+        }
+        return String.format("%d notes, %d terms, %d postings, %d retired documents",
+                size(), postings.size(), postingCount, retiredCount);
+    }
+
+    @Override
+    public int documentCount() {
+        return documents.size();
+    }
+
+    @Override
+    public int liveCount() {
+        return documentsByNoteId.size();
+    }
+
+    @Override
+    public String noteId(int document) {
+        return noteIds.get(document);
+    }
+
+    @Override
+    public long stamp(int document) {
+        return stamps[document];
+    }
+
+    @Override
+    public int fieldLength(int document, int field) {
+        return fieldLengths[document * FIELD_COUNT + field];
+    }
+
+    @Override
+    public long totalFieldLength(int field) {
+        return totalFieldLengths[field];
+    }
+
+    @Override
+    public boolean isLive(int document) {
+        return documents.get(document) != null;
+    }
+
+    @Override
+    public Postings postings(String term) {
+        return postings.get(term);
+    }
+
+    @Override
+    public Collection<String> terms() {
+        return postings.keySet();
+    }
+
+    @Override
+    public String ceilingTerm(String term) {
+        return sortedTerms.ceiling(term);
+    }
+
+    @Override
+    public void collectPrefixTerms(String prefix, int limit, Map<String, Integer> frequencies) {
+        int added = 0;
+        for (String term : sortedTerms.tailSet(prefix)) {
+            if (added == limit || !term.startsWith(prefix)) break;
+            frequencies.merge(term, postings.get(term).size, Integer::sum);
+            added++;
+        }
+    }
+
+    private void addFolder(Folder folder) {
+        for (Note note : folder.getNotes()) {
+            retire(note.getId());
+            addDocument(note);
+        }
+        for (Folder subFolder : folder.getSubFolders()) {
+            addFolder(subFolder);
+        }
+    }
+
+    private void addDocument(Note note) {
+        int document = documents.size();
+        documents.add(note);
+        noteIds.add(note.getId());
+        documentsByNoteId.put(note.getId(), document);
+
+        if (document == stamps.length) {
+            stamps = Arrays.copyOf(stamps, document * 2);
+            fieldLengths = Arrays.copyOf(fieldLengths, document * 2 * FIELD_COUNT);
+        }
+        stamps[document] = SearchSegment.stamp(note);
+
+        // Fields are added in order, so every term's positions come out ascending
+        Map<String, Occurrences> occurrences = new HashMap<>();
+        int base = document * FIELD_COUNT;
+        fieldLengths[base + FIELD_TITLE] = addTerms(occurrences, note.getTitle(), FIELD_TITLE);
+        fieldLengths[base + FIELD_CONTENT] = addTerms(occurrences, NoteText.plainText(note), FIELD_CONTENT);
+        fieldLengths[base + FIELD_SUMMARY] = addTerms(occurrences, note.getSummary(), FIELD_SUMMARY);
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            totalFieldLengths[field] += fieldLengths[base + field];
+        }
+
+        for (Map.Entry<String, Occurrences> entry : occurrences.entrySet()) {
+            PostingList list = postings.get(entry.getKey());
+            if (list == null) {
+                list = new PostingList();
+                postings.put(entry.getKey(), list);
+                sortedTerms.add(entry.getKey());
+            }
+            Occurrences term = entry.getValue();
+            list.add(document, packFrequencies(term.frequencies), term.positions, term.count);
+        }
+    }
+
+    private static int addTerms(Map<String, Occurrences> occurrences, String text, int field) {
+        List<String> terms = SearchTokenizer.tokenize(text);
+        for (int offset = 0; offset < terms.size(); offset++) {
+            occurrences.computeIfAbsent(terms.get(offset), t -> new Occurrences()).add(field, offset);
+        }
+        return terms.size();
+    }
+
+    private boolean retire(String noteId) {
+        Integer document = documentsByNoteId.remove(noteId);
+        if (document == null) {
+            return false;
+        }
+        documents.set(document, null);
+        subtractFieldLengths(document);
+        retiredCount++;
+        return true;
+    }
+
+    private void subtractFieldLengths(int document) {
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            totalFieldLengths[field] -= fieldLengths[document * FIELD_COUNT + field];
+        }
+    }
+
+    // Renumber the live documents and drop retired ones from every posting list
+    private void purgeIfNeeded() {
+        if (retiredCount < PURGE_MIN_RETIRED || retiredCount < documentsByNoteId.size()) return;
+
+        int[] renumbered = new int[documents.size()];
+        List<Note> live = new ArrayList<>(documentsByNoteId.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Note note = documents.get(i);
+            if (note == null) {
+                renumbered[i] = -1;
+            } else {
+                int document = live.size();
+                renumbered[i] = document;
+                documentsByNoteId.put(note.getId(), document);
+                stamps[document] = stamps[i];
+                System.arraycopy(fieldLengths, i * FIELD_COUNT, fieldLengths, document * FIELD_COUNT, FIELD_COUNT);
+                live.add(note);
+            }
+        }
+        documents.clear();
+        documents.addAll(live);
+        noteIds.clear();
+        for (Note note : live) {
+            noteIds.add(note.getId());
+        }
+        retiredCount = 0;
+
+        postings.entrySet().removeIf(entry -> {
+            if (entry.getValue().renumber(renumbered) > 0) {
+                return false;
+            }
+            sortedTerms.remove(entry.getKey());
+            return true;
+        });
+    }
+
+    // Title and summary counts are capped; they only need to tell a few occurrences apart
+    static int packFrequencies(int[] frequencies) {
+        return Math.min(frequencies[FIELD_TITLE], 0x3F) << 26
+                | Math.min(frequencies[FIELD_SUMMARY], 0x3F) << 20
+                | Math.min(frequencies[FIELD_CONTENT], 0xFFFFF);
+    }
+
+    static int frequency(int packed, int field) {
+        switch (field) {
+            case FIELD_TITLE:
+                return packed >>> 26;
+            case FIELD_SUMMARY:
+                return (packed >>> 20) & 0x3F;
+            default:
+                return packed & 0xFFFFF;
+        }
+    }
+
+    static int position(int field, int offset) {
+        return field << POSITION_FIELD_SHIFT | Math.min(offset, (1 << POSITION_FIELD_SHIFT) - 1);
+    }
+
+    static int positionField(int position) {
+        return position >>> POSITION_FIELD_SHIFT;
+    }
+
+    // Where one term occurs in the document being added
+    private static class Occurrences {
+        final int[] frequencies = new int[FIELD_COUNT];
+        int[] positions = new int[2];
+        int count;
+
+        void add(int field, int offset) {
+            frequencies[field]++;
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = position(field, offset);
+        }
+    }
+
+    static class PostingList implements Postings {
+        int[] documents = new int[4];
+        int[] frequencies = new int[4];
+        // Positions of posting i are positions[positionStarts[i]] up to positionStarts[i + 1]
+        int[] positionStarts = new int[5];
+        int[] positions = new int[4];
+        int size;
+
+        void add(int document, int packedFrequencies, int[] termPositions, int count) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+                positionStarts = Arrays.copyOf(positionStarts, size * 2 + 1);
+            }
+            int start = positionStarts[size];
+            if (start + count > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(positions.length * 2, start + count));
+            }
+            System.arraycopy(termPositions, 0, positions, start, count);
+            documents[size] = document;
+            frequencies[size] = packedFrequencies;
+            size++;
+            positionStarts[size] = start + count;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int document(int index) {
+            return documents[index];
+        }
+
+        @Override
+        public int frequencies(int index) {
+            return frequencies[index];
+        }
+
+        @Override
+        public int positionCount(int index) {
+            return positionStarts[index + 1] - positionStarts[index];
+        }
+
+        @Override
+        public int position(int index, int n) {
+            return positions[positionStarts[index] + n];
+        }
+
+        @Override
+        public int indexOf(int document) {
+            int position = Arrays.binarySearch(documents, 0, size, document);
+            return position >= 0 ? position : -1;
+        }
+
+        int renumber(int[] renumbered) {
+            int kept = 0;
+            int keptPositions = 0;
+            for (int i = 0; i < size; i++) {
+                int document = renumbered[documents[i]];
+                if (document >= 0) {
+                    int start = positionStarts[i];
+                    int count = positionStarts[i + 1] - start;
+                    System.arraycopy(positions, start, positions, keptPositions, count);
+                    documents[kept] = document;
+                    frequencies[kept] = frequencies[i];
+                    positionStarts[kept] = keptPositions;
+                    keptPositions += count;
+                    kept++;
+                }
+            }
+            positionStarts[kept] = keptPositions;
+            size = kept;
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Note;
+import com.intelligentnotes.model.NoteContentLoader;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Plain text of note bodies, for search, previews and summaries.
+ *
+ * The HTML is read in one pass: tags, comments and script or style bodies
+ * become word breaks, entities are decoded and whitespace runs collapse to a
+ * single space. A note keeps its extracted text until its content changes,
+ * and a note whose body is loaded on demand leaves it with its loader (next
+ * to the cached body), so each body is only stripped once.
+ */
+final class NoteText {
+    private static final Map<String, Character> ENTITIES = new HashMap<>();
+
+    static {
+        String[] names = {"amp", "lt", "gt", "quot", "apos", "nbsp", "ndash", "mdash", "hellip",
+                "lsquo", "rsquo", "ldquo", "rdquo", "laquo", "raquo", "bull", "middot", "copy",
+                "reg", "trade", "euro", "pound", "deg", "times", "shy"};
+        char[] values = {'&', '<', '>', '"', '\'', '\u00A0', '\u2013', '\u2014', '\u2026',
+                '\u2018', '\u2019', '\u201C', '\u201D', '\u00AB', '\u00BB', '\u2022', '\u00B7', '\u00A9',
+                '\u00AE', '\u2122', '\u20AC', '\u00A3', '\u00B0', '\u00D7', '\u00AD'};
+        for (int i = 0; i < names.length; i++) {
+            ENTITIES.put(names[i], values[i]);
+        }
+    }
+
+    private static final char NBSP = '\u00A0';
+    private static final char SOFT_HYPHEN = '\u00AD';
+    // Longest entity worth looking for, "&#x10FFFF;" included
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    private NoteText() {
+    }
+
+    // The note's content as plain text, empty if it has none
+    static String plainText(Note note) {
+        String text = note.getPlainText();
+        if (text != null) {
+            return text;
+        }
+        NoteContentLoader loader = note.isContentLoaded() ? null : note.getContentLoader();
+        if (loader != null) {
+            text = loader.loadPlainText(note);
+            if (text != null) {
+                return text;
+            }
+        }
+        int version = note.getContentVersion();
+        String content = note.getContent();
+        if (content == null) {
+            return "";
+        }
+        text = extract(content);
+        note.setPlainText(version, text);
+        if (loader != null) {
+            loader.storePlainText(note, content, text);
+        }
+        return text;
+    }
+
+    static String extract(String html) {
+        if (html == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder(html.length());
+        boolean space = false;
+        int length = html.length();
+        int i = 0;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<' && i + 1 < length && isTagStart(html.charAt(i + 1))) {
+                i = skipTag(html, i);
+                space = true;
+                continue;
+            }
+            if (c == '&') {
+                int end = html.indexOf(';', i + 1);
+                int decoded = end > i + 1 && end - i <= MAX_ENTITY_LENGTH ? decode(html, i + 1, end) : -1;
+                if (decoded >= 0) {
+                    i = end + 1;
+                    if (decoded == SOFT_HYPHEN) continue;
+                    if (decoded == NBSP || Character.isWhitespace(decoded)) {
+                        space = true;
+                        continue;
+                    }
+                    if (space && text.length() > 0) {
+                        text.append(' ');
+                    }
+                    space = false;
+                    text.appendCodePoint(decoded);
+                    continue;
+                }
+            }
+            if (Character.isWhitespace(c) || c == NBSP) {
+                space = true;
+                i++;
+                continue;
+            }
+            // Copy the run of ordinary characters in one go
+            int run = i + 1;
+            while (run < length && isOrdinary(html.charAt(run))) {
+                run++;
+            }
+            if (space && text.length() > 0) {
+                text.append(' ');
+            }
+            space = false;
+            text.append(html, i, run);
+            i = run;
+        }
+        return text.toString();
+    }
+
+    // Neither markup nor whitespace; no character between a space and U+1680 is whitespace
+    private static boolean isOrdinary(char c) {
+        if (c == '<' || c == '&' || c == NBSP) {
+            return false;
+        }
+        return c > ' ' && c < '\u1680' || !Character.isWhitespace(c);
+    }
+
+    private static boolean isTagStart(char c) {
+        return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+    }
+
+    // Index just past the tag starting at start; script and style elements are skipped whole
+    private static int skipTag(String html, int start) {
+        if (html.startsWith("<!--", start)) {
+            int end = html.indexOf("-->", start + 4);
+            return end < 0 ? html.length() : end + 3;
+        }
+        int end = tagEnd(html, start + 1);
+        String element = rawTextElement(html, start + 1);
+        if (element == null || end >= html.length()) {
+            return end;
+        }
+        // The body runs to the closing tag, whatever it contains
+        for (int close = html.indexOf("</", end); close >= 0; close = html.indexOf("</", close + 2)) {
+            if (html.regionMatches(true, close + 2, element, 0, element.length())) {
+                return tagEnd(html, close + 2);
+            }
+        }
+        return html.length();
+    }
+
+    // Index just past the closing '>', skipping any inside quoted attribute values
+    private static int tagEnd(String html, int from) {
+        char quote = 0;
+        for (int i = from; i < html.length(); i++) {
+            char c = html.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i + 1;
+            }
+        }
+        return html.length();
+    }
+
+    private static String rawTextElement(String html, int nameStart) {
+        for (String element : new String[]{"script", "style"}) {
+            int end = nameStart + element.length();
+            if (html.regionMatches(true, nameStart, element, 0, element.length())
+                    && end < html.length() && !Character.isLetterOrDigit(html.charAt(end))) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    // The code point of the entity between & and ;, or -1 if it is not one
+    private static int decode(String html, int start, int end) {
+        if (html.charAt(start) != '#') {
+            Character named = ENTITIES.get(html.substring(start, end));
+            return named == null ? -1 : named;
+        }
+        boolean hex = start + 1 < end && (html.charAt(start + 1) == 'x' || html.charAt(start + 1) == 'X');
+        int digits = hex ? start + 2 : start + 1;
+        if (digits == end) {
+            return -1;
+        }
+        try {
+            int codePoint = Integer.parseInt(html.substring(digits, end), hex ? 16 : 10);
+            return Character.isValidCodePoint(codePoint) && codePoint != 0 ? codePoint : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // SHA-256 of the string in hex
+    static String hash(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Note;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Sorted indexes of the notes' creation and update times, kept by
+ * FolderTreeIndex alongside its note map, so that date filters and the
+ * recently modified feed read a range of entries instead of every note.
+ *
+ * Times are wall-clock times as stored on the notes, counted in milliseconds
+ * as if they were UTC; a note without a time sorts as the oldest. Entries are
+ * ordered newest first and, at equal times, by note id, the same order as
+ * search hits, so a hit whose score is the time can serve as the cursor.
+ */
+class NoteTimestampIndex {
+    static final int CREATED = 0;
+    static final int UPDATED = 1;
+
+    private static final long MISSING = Long.MIN_VALUE;
+
+    // Ascending by time, then descending by note id, so a descending walk is the rank order. An entry
+    // without a note id comes before every note at its time, for bounding ranges.
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int byTime = Long.compare(a.time, b.time);
+        if (byTime != 0 || a.noteId == b.noteId) {
+            return byTime;
+        }
+        if (a.noteId == null || b.noteId == null) {
+            return a.noteId == null ? -1 : 1;
+        }
+        return b.noteId.compareTo(a.noteId);
+    };
+
+    // One sorted set per field, at CREATED and UPDATED
+    private final List<NavigableSet<Entry>> byTime = Arrays.asList(new TreeSet<>(ORDER), new TreeSet<>(ORDER));
+    // The times each note is indexed under, to find its entries again once they change
+    private final Map<String, long[]> timesByNoteId = new HashMap<>();
+
+    private static final class Entry {
+        final long time;
+        final String noteId;
+
+        Entry(long time, String noteId) {
+            this.time = time;
+            this.noteId = noteId;
+        }
+    }
+
+    // Index the note's current times, replacing any it was indexed under before
+    void put(Note note) {
+        if (note.getId() == null) return;
+        long[] times = {millis(note.getCreatedAt()), millis(note.getUpdatedAt())};
+        long[] previous = timesByNoteId.put(note.getId(), times);
+        for (int field = CREATED; field <= UPDATED; field++) {
+            if (previous != null) {
+                if (previous[field] == times[field]) continue;
+                byTime.get(field).remove(new Entry(previous[field], note.getId()));
+            }
+            byTime.get(field).add(new Entry(times[field], note.getId()));
+        }
+    }
+
+    void remove(String noteId) {
+        long[] previous = timesByNoteId.remove(noteId);
+        if (previous == null) return;
+        for (int field = CREATED; field <= UPDATED; field++) {
+            byTime.get(field).remove(new Entry(previous[field], noteId));
+        }
+    }
+
+    void clear() {
+        timesByNoteId.clear();
+        byTime.get(CREATED).clear();
+        byTime.get(UPDATED).clear();
+    }
+
+    int size() {
+        return timesByNoteId.size();
+    }
+
+    // True if the note is indexed and its times fall in every range
+    boolean matches(String noteId, List<SearchQuery.DateRange> ranges) {
+        long[] times = timesByNoteId.get(noteId);
+        if (times == null) {
+            return false;
+        }
+        for (SearchQuery.DateRange range : ranges) {
+            if (!range.contains(times[range.field])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Up to limit notes in all the ranges (all of them if limit <= 0), newest first by the first
+    // range's field, each scored by that time. Only that field's range is walked; the other
+    // ranges are checked note by note. With a hit, only notes ranked below it.
+    List<SearchHit> newest(List<SearchQuery.DateRange> ranges, SearchHit after, int limit) {
+        return newest(ranges, null, after, limit);
+    }
+
+    // The same, only for notes in the scope if there is one
+    List<SearchHit> newest(List<SearchQuery.DateRange> ranges, FolderTreeIndex.Subtree scope, SearchHit after,
+                           int limit) {
+        int field = ranges.isEmpty() ? UPDATED : ranges.get(0).field;
+        long from = MISSING;
+        long to = Long.MAX_VALUE;
+        for (SearchQuery.DateRange range : ranges) {
+            if (range.field == field) {
+                from = Math.max(from, range.from);
+                to = Math.min(to, range.to);
+            }
+        }
+        Entry lower = new Entry(from, null);
+        Entry upper = new Entry(to, null);
+        if (after != null) {
+            Entry cursor = new Entry((long) after.getScore(), after.getNoteId());
+            if (ORDER.compare(cursor, upper) < 0) {
+                upper = cursor;
+            }
+        }
+        List<SearchHit> hits = new ArrayList<>();
+        if (ORDER.compare(lower, upper) >= 0) {
+            return hits;
+        }
+
+        NavigableSet<Entry> window = byTime.get(field).subSet(lower, true, upper, false);
+        for (Entry entry : window.descendingSet()) {
+            if (limit > 0 && hits.size() >= limit) break;
+            if (ranges.size() > 1 && !matches(entry.noteId, ranges)) continue;
+            if (scope != null && !scope.contains(entry.noteId)) continue;
+            hits.add(new SearchHit(entry.noteId, entry.time, null, true));
+        }
+        return hits;
+    }
+
+    static long millis(LocalDateTime time) {
+        return time == null ? MISSING : time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static long millis(LocalDate date) {
+        return millis(date.atStartOfDay());
+    }
+}
@@ -0,0 +1,232 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Semantic search index: one NoteEmbedder vector per note in an HnswGraph,
+ * so a query is answered by visiting a few hundred notes however large the
+ * vault is.
+ *
+ * Saving a note replaces its node and deleting it marks the node deleted;
+ * once deleted nodes outnumber the live ones the graph is rebuilt from the
+ * live vectors. The graph can be written to a file with each node's note id
+ * and stamp (updatedAt), and on open only notes whose stamp changed are
+ * embedded again, as PersistentSearchIndex does for the term index.
+ */
+class NoteVectorIndex {
+    private static final int MAGIC = 0x4E535658; // "NSVX"
+    private static final int MAX_LINKS = 16;
+    private static final int EF_CONSTRUCTION = 64;
+    // Nodes kept while exploring level 0 for a query; short queries sit far from every note, so
+    // the search needs a wider beam than the graph was built with
+    private static final int EF_SEARCH = 256;
+    // Below this the notes share little more than hash collisions
+    static final float MIN_SIMILARITY = 0.1f;
+
+    private HnswGraph graph = newGraph();
+    // Parallel to the graph's nodes; null once a node is deleted
+    private List<String> noteIds = new ArrayList<>();
+    private List<Long> stamps = new ArrayList<>();
+    private final Map<String, Integer> nodesByNoteId = new HashMap<>();
+
+    private static HnswGraph newGraph() {
+        return new HnswGraph(NoteEmbedder.DIMENSIONS, MAX_LINKS, EF_CONSTRUCTION);
+    }
+
+    // The index written to the file, or an empty one if it is missing or unreadable
+    static NoteVectorIndex open(File file) {
+        NoteVectorIndex index = new NoteVectorIndex();
+        if (!file.exists()) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a vector index: " + file);
+            }
+            HnswGraph graph = HnswGraph.read(in);
+            List<String> noteIds = new ArrayList<>(graph.size());
+            List<Long> stamps = new ArrayList<>(graph.size());
+            Map<String, Integer> nodes = new HashMap<>();
+            for (int node = 0; node < graph.size(); node++) {
+                String noteId = in.readUTF();
+                long stamp = in.readLong();
+                boolean live = !graph.isDeleted(node);
+                noteIds.add(live ? noteId : null);
+                stamps.add(stamp);
+                if (live) {
+                    nodes.put(noteId, node);
+                }
+            }
+            index.graph = graph;
+            index.noteIds = noteIds;
+            index.stamps = stamps;
+            index.nodesByNoteId.putAll(nodes);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading vector index, rebuilding: " + e.getMessage());
+        }
+        return index;
+    }
+
+    // Embed notes that are new or changed since the index was written and drop those no longer in the tree
+    synchronized void validate(List<Folder> rootFolders) {
+        long start = System.nanoTime();
+        int reused = nodesByNoteId.size();
+        Set<String> seen = new HashSet<>();
+        int embedded = 0;
+        for (Folder folder : rootFolders) {
+            embedded += validateFolder(folder, seen);
+        }
+        int dropped = 0;
+        Iterator<Map.Entry<String, Integer>> entries = nodesByNoteId.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Integer> entry = entries.next();
+            if (!seen.contains(entry.getKey())) {
+                deleteNode(entry.getValue());
+                entries.remove();
+                dropped++;
+            }
+        }
+        compactIfNeeded();
+        System.out.println("Opened vector index: " + (reused - dropped) + " notes, " + embedded + " embedded, "
+                + dropped + " dropped in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private int validateFolder(Folder folder, Set<String> seen) {
+        int embedded = 0;
+        for (Note note : folder.getNotes()) {
+            seen.add(note.getId());
+            Integer node = nodesByNoteId.get(note.getId());
+            if (node == null || stamps.get(node) != SearchSegment.stamp(note)) {
+                // Reads the body through the note's content loader
+                update(note);
+                embedded++;
+            }
+        }
+        for (Folder subFolder : folder.getSubFolders()) {
+            embedded += validateFolder(subFolder, seen);
+        }
+        return embedded;
+    }
+
+    synchronized void update(Note note) {
+        if (note == null || note.getId() == null) return;
+        Integer old = nodesByNoteId.remove(note.getId());
+        if (old != null) {
+            deleteNode(old);
+        }
+        float[] vector = NoteEmbedder.embed(note);
+        if (vector != null) {
+            addNode(note.getId(), SearchSegment.stamp(note), vector);
+        }
+        compactIfNeeded();
+    }
+
+    synchronized void remove(String noteId) {
+        Integer old = nodesByNoteId.remove(noteId);
+        if (old != null) {
+            deleteNode(old);
+            compactIfNeeded();
+        }
+    }
+
+    // Drop the notes of a folder and all its subfolders
+    synchronized void removeFolder(Folder folder) {
+        for (Note note : folder.getNotes()) {
+            remove(note.getId());
+        }
+        for (Folder subFolder : folder.getSubFolders()) {
+            removeFolder(subFolder);
+        }
+    }
+
+    // Up to limit notes closest in meaning to the query, closest first, each scored by its
+    // cosine similarity and carrying the query's words for highlighting
+    synchronized List<SearchHit> search(String query, int limit) {
+        List<SearchHit> hits = new ArrayList<>();
+        float[] vector = NoteEmbedder.embed(query);
+        if (vector == null || limit <= 0) {
+            return hits;
+        }
+        String[] terms = NoteEmbedder.queryTerms(query);
+        for (HnswGraph.Neighbor neighbor : graph.search(vector, limit, EF_SEARCH)) {
+            if (neighbor.similarity < MIN_SIMILARITY) break;
+            hits.add(new SearchHit(noteIds.get(neighbor.node), neighbor.similarity, null, true, terms));
+        }
+        return hits;
+    }
+
+    synchronized int size() {
+        return nodesByNoteId.size();
+    }
+
+    // Written to a temporary file and renamed into place, so a crash keeps the previous index
+    synchronized void save(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            graph.write(out);
+            for (int node = 0; node < graph.size(); node++) {
+                String noteId = noteIds.get(node);
+                out.writeUTF(noteId == null ? "" : noteId);
+                out.writeLong(stamps.get(node));
+            }
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    synchronized String getStatistics() {
+        return String.format("%d notes, %d nodes (%d deleted), %d dimensions",
+                nodesByNoteId.size(), graph.size(), graph.deletedCount(), NoteEmbedder.DIMENSIONS);
+    }
+
+    private void addNode(String noteId, long stamp, float[] vector) {
+        int node = graph.add(vector);
+        noteIds.add(noteId);
+        stamps.add(stamp);
+        nodesByNoteId.put(noteId, node);
+    }
+
+    private void deleteNode(int node) {
+        graph.delete(node);
+        noteIds.set(node, null);
+    }
+
+    // Deleted nodes slow searches down without adding results; rebuild from the live vectors
+    private void compactIfNeeded() {
+        if (graph.deletedCount() < 64 || graph.deletedCount() < graph.liveCount()) return;
+        long start = System.nanoTime();
+        HnswGraph old = graph;
+        List<String> oldNoteIds = noteIds;
+        List<Long> oldStamps = stamps;
+        graph = newGraph();
+        noteIds = new ArrayList<>(old.liveCount());
+        stamps = new ArrayList<>(old.liveCount());
+        nodesByNoteId.clear();
+        for (int node = 0; node < old.size(); node++) {
+            if (!old.isDeleted(node)) {
+                addNode(oldNoteIds.get(node), oldStamps.get(node), old.vector(node));
+            }
+        }
+        System.out.println("Rebuilt vector index: " + graph.size() + " notes in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
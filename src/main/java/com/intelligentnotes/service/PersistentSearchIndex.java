@@ -0,0 +1,450 @@
+package com.intelligentnotes.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search index for the file system backend that survives restarts.
+ *
+ * Indexed notes live in immutable MappedSearchSegment files listed in
+ * manifest.json, plus an in-memory NoteSearchIndex delta for recent saves.
+ * A full delta is frozen and written out as a new segment by a background
+ * thread, which also merges segments once there are too many of them.
+ * Replaced and deleted notes are retired in memory; their segment entries
+ * are dropped by the next merge.
+ *
+ * On open, every note of the tree is checked against the stamp (updatedAt)
+ * of its indexed version, and only missing or stale notes are re-tokenized.
+ * Unreadable or corrupt segments are dropped and their notes reindexed the
+ * same way.
+ */
+class PersistentSearchIndex {
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    // Notes in the delta before it is written out as a segment
+    private static final int FLUSH_THRESHOLD = 1000;
+    // More segments than this are merged in the background
+    private static final int MERGE_THRESHOLD = 8;
+
+    private final File directory;
+    private final ObjectMapper objectMapper;
+    private final AtomicFileWriter manifestWriter = new AtomicFileWriter(Durability.NONE);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-index-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<MappedSearchSegment> segments = new ArrayList<>();
+    // Full deltas waiting to be written; still searched until their segment replaces them
+    private final List<NoteSearchIndex> frozen = new ArrayList<>();
+    private NoteSearchIndex delta = new NoteSearchIndex();
+    // Note id -> its live document in a segment or frozen delta; notes in the current delta are tracked there
+    private final Map<String, Location> locations = new HashMap<>();
+    private int nextSegmentNumber;
+    private boolean merging;
+    private boolean closed;
+    private long generation;
+
+    PersistentSearchIndex(File directory, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        load();
+    }
+
+    // Bring the index in line with the tree, reindexing only notes that changed since it was written
+    synchronized void validate(List<Folder> rootFolders) {
+        long start = System.nanoTime();
+        int reused = locations.size();
+        Set<String> noteIds = new HashSet<>();
+        int reindexed = 0;
+        for (Folder folder : rootFolders) {
+            reindexed += validateFolder(folder, noteIds);
+        }
+
+        int dropped = 0;
+        Iterator<Map.Entry<String, Location>> entries = locations.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Location> entry = entries.next();
+            if (!noteIds.contains(entry.getKey())) {
+                entry.getValue().retire();
+                entries.remove();
+                dropped++;
+            }
+        }
+        generation++;
+        System.out.println("Opened search index: " + (reused - dropped) + " notes from " + segments.size()
+                + " segments, " + reindexed + " reindexed, " + dropped + " dropped in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        scheduleMerge();
+    }
+
+    synchronized void update(Note note) {
+        if (note == null || note.getId() == null) return;
+        Location old = locations.remove(note.getId());
+        if (old != null) {
+            old.retire();
+        }
+        delta.update(note);
+        generation++;
+
+        if (delta.size() >= FLUSH_THRESHOLD && !closed) {
+            NoteSearchIndex full = freezeDelta();
+            writer.execute(() -> writeSegment(Collections.singletonList(full)));
+        }
+    }
+
+    synchronized void remove(String noteId) {
+        Location old = locations.remove(noteId);
+        if (old != null) {
+            old.retire();
+        }
+        delta.remove(noteId);
+        generation++;
+    }
+
+    // Drop the notes of a folder and all its subfolders
+    synchronized void removeFolder(Folder folder) {
+        for (Note note : folder.getNotes()) {
+            remove(note.getId());
+        }
+        for (Folder subFolder : folder.getSubFolders()) {
+            removeFolder(subFolder);
+        }
+    }
+
+    // Notes matching the query, best matches first
+    synchronized List<SearchHit> search(String query, int limit) {
+        return search(query, limit, null);
+    }
+
+    // The page of matches ranked below the given hit
+    synchronized List<SearchHit> search(String query, int limit, SearchHit after) {
+        return search(query, limit, after, null);
+    }
+
+    // Date filters in the query are checked against the timestamp index, or ignored without one
+    synchronized List<SearchHit> search(String query, int limit, SearchHit after, NoteTimestampIndex times) {
+        return Bm25Scorer.topK(allSegments(), query, limit, after, times);
+    }
+
+    // Only notes in the scope, if there is one
+    synchronized List<SearchHit> search(String query, int limit, SearchHit after, NoteTimestampIndex times,
+                                        FolderTreeIndex.Subtree scope) {
+        return Bm25Scorer.topK(allSegments(), query, limit, after, times, scope);
+    }
+
+    // Like search, but the last word of the query may be incomplete
+    synchronized List<SearchHit> searchPrefix(String query, int limit) {
+        return searchPrefix(query, limit, null);
+    }
+
+    synchronized List<SearchHit> searchPrefix(String query, int limit, NoteTimestampIndex times) {
+        return Bm25Scorer.topKPrefix(allSegments(), query, limit, times);
+    }
+
+    synchronized List<SearchHit> searchPrefix(String query, int limit, NoteTimestampIndex times,
+                                              FolderTreeIndex.Subtree scope) {
+        return Bm25Scorer.topKPrefix(allSegments(), query, limit, times, scope);
+    }
+
+    private List<SearchSegment> allSegments() {
+        List<SearchSegment> all = new ArrayList<>(segments);
+        all.addAll(frozen);
+        all.add(delta);
+        return all;
+    }
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    synchronized String getStatistics() {
+        long bytes = 0;
+        for (MappedSearchSegment segment : segments) {
+            bytes += segment.getFileLength();
+        }
+        return String.format("%d notes, %d segments (%d KB), %d frozen, delta %s",
+                locations.size() + delta.size(), segments.size(), bytes / 1024, frozen.size(), delta.getStatistics());
+    }
+
+    // Finish background work and write out whatever is still only in memory
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<NoteSearchIndex> pending;
+        synchronized (this) {
+            if (delta.size() > 0) {
+                freezeDelta();
+            }
+            pending = new ArrayList<>(frozen);
+        }
+        if (!pending.isEmpty()) {
+            writeSegment(pending);
+        }
+    }
+
+    private void load() {
+        File manifestFile = new File(directory, MANIFEST_FILE);
+        SearchIndexManifest manifest = null;
+        if (manifestFile.exists()) {
+            try {
+                manifest = objectMapper.readValue(manifestFile, SearchIndexManifest.class);
+                if (manifest.getVersion() != MappedSearchSegment.VERSION) {
+                    System.out.println("Search index format changed, rebuilding");
+                    manifest = null;
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading search index manifest, rebuilding: " + e.getMessage());
+            }
+        }
+
+        boolean changed = manifest == null;
+        Set<String> kept = new HashSet<>();
+        if (manifest != null) {
+            nextSegmentNumber = manifest.getNextSegment();
+            for (String name : manifest.getSegments()) {
+                try {
+                    MappedSearchSegment segment = MappedSearchSegment.open(new File(directory, name).toPath());
+                    locateDocuments(segment);
+                    segments.add(segment);
+                    kept.add(name);
+                } catch (IOException e) {
+                    System.err.println("Dropping search index segment: " + e.getMessage());
+                    changed = true;
+                }
+            }
+        }
+
+        // Anything not in the manifest is left over from an interrupted flush or merge
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().equals(MANIFEST_FILE) && !kept.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+        if (changed) {
+            writeManifest();
+        }
+    }
+
+    // Newest stamp wins when a note was indexed in more than one segment
+    private void locateDocuments(MappedSearchSegment segment) {
+        for (int document = 0; document < segment.documentCount(); document++) {
+            String noteId = segment.noteId(document);
+            Location existing = locations.get(noteId);
+            if (existing == null || segment.stamp(document) >= existing.stamp()) {
+                if (existing != null) {
+                    existing.retire();
+                }
+                locations.put(noteId, new Location(segment, document));
+            } else {
+                segment.retire(document);
+            }
+        }
+    }
+
+    private int validateFolder(Folder folder, Set<String> noteIds) {
+        int reindexed = 0;
+        for (Note note : folder.getNotes()) {
+            noteIds.add(note.getId());
+            Location location = locations.get(note.getId());
+            boolean current = location != null
+                    ? location.stamp() == SearchSegment.stamp(note)
+                    : delta.documentOf(note.getId()) >= 0;
+            if (!current) {
+                // Reads the body through the note's content loader
+                update(note);
+                reindexed++;
+            }
+        }
+        for (Folder subFolder : folder.getSubFolders()) {
+            reindexed += validateFolder(subFolder, noteIds);
+        }
+        return reindexed;
+    }
+
+    private NoteSearchIndex freezeDelta() {
+        NoteSearchIndex full = delta;
+        delta = new NoteSearchIndex();
+        frozen.add(full);
+        for (int document = 0; document < full.documentCount(); document++) {
+            if (full.isLive(document)) {
+                locations.put(full.noteId(document), new Location(full, document));
+            }
+        }
+        return full;
+    }
+
+    // Write the live documents of the sources into one new segment and swap it in for them
+    private void writeSegment(List<? extends SearchSegment> sources) {
+        String name;
+        synchronized (this) {
+            name = SEGMENT_PREFIX + nextSegmentNumber++ + SEGMENT_SUFFIX;
+        }
+        Path path = new File(directory, name).toPath();
+
+        try {
+            long start = System.nanoTime();
+            int[][] renumbered = SearchSegmentWriter.write(sources, path);
+            MappedSearchSegment segment = MappedSearchSegment.open(path);
+
+            synchronized (this) {
+                // Documents replaced or deleted while the segment was written are retired in it right away
+                for (int s = 0; s < sources.size(); s++) {
+                    SearchSegment source = sources.get(s);
+                    for (int document = 0; document < renumbered[s].length; document++) {
+                        int target = renumbered[s][document];
+                        if (target < 0) continue;
+
+                        String noteId = source.noteId(document);
+                        Location location = locations.get(noteId);
+                        if (location != null && location.segment == source && location.document == document) {
+                            locations.put(noteId, new Location(segment, target));
+                        } else {
+                            segment.retire(target);
+                        }
+                    }
+                }
+                segments.removeAll(sources);
+                frozen.removeAll(sources);
+                segments.add(segment);
+                generation++;
+                writeManifest();
+            }
+
+            for (SearchSegment source : sources) {
+                if (source instanceof MappedSearchSegment) {
+                    Files.deleteIfExists(((MappedSearchSegment) source).getPath());
+                }
+            }
+            System.out.println("Wrote search index " + segment + " from " + sources.size() + " source(s) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            // The sources stay in place; frozen deltas are retried on close
+            System.err.println("Error writing search index segment: " + e.getMessage());
+            e.printStackTrace();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // Removed as an orphan on the next open
+            }
+        }
+        scheduleMerge();
+    }
+
+    // Merge the smallest segments so that about half the threshold remain
+    private synchronized void scheduleMerge() {
+        if (merging || closed || segments.size() <= MERGE_THRESHOLD) return;
+
+        List<MappedSearchSegment> bySize = new ArrayList<>(segments);
+        bySize.sort(Comparator.comparingInt(MappedSearchSegment::liveCount));
+        List<MappedSearchSegment> sources = new ArrayList<>(bySize.subList(0, segments.size() - MERGE_THRESHOLD / 2 + 1));
+        merging = true;
+        writer.execute(() -> {
+            try {
+                writeSegment(sources);
+            } finally {
+                synchronized (this) {
+                    merging = false;
+                }
+            }
+        });
+    }
+
+    private void writeManifest() {
+        SearchIndexManifest manifest = new SearchIndexManifest();
+        manifest.setVersion(MappedSearchSegment.VERSION);
+        manifest.setNextSegment(nextSegmentNumber);
+        for (MappedSearchSegment segment : segments) {
+            manifest.getSegments().add(segment.getPath().getFileName().toString());
+        }
+        try {
+            manifestWriter.writeValue(objectMapper, new File(directory, MANIFEST_FILE), manifest);
+        } catch (IOException e) {
+            System.err.println("Error writing search index manifest: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static class Location {
+        final SearchSegment segment;
+        final int document;
+
+        Location(SearchSegment segment, int document) {
+            this.segment = segment;
+            this.document = document;
+        }
+
+        long stamp() {
+            return segment.stamp(document);
+        }
+
+        void retire() {
+            segment.retire(document);
+        }
+    }
+
+    // Segment files that make up the index, in the order they were written
+    public static class SearchIndexManifest {
+        private int version;
+        private int nextSegment;
+        private List<String> segments = new ArrayList<>();
+
+        public int getVersion() {
+            return version;
+        }
+
+        public void setVersion(int version) {
+            this.version = version;
+        }
+
+        public int getNextSegment() {
+            return nextSegment;
+        }
+
+        public void setNextSegment(int nextSegment) {
+            this.nextSegment = nextSegment;
+        }
+
+        public List<String> getSegments() {
+            return segments;
+        }
+
+        public void setSegments(List<String> segments) {
+            this.segments = segments;
+        }
+    }
+}
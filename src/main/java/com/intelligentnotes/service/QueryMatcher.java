@@ -0,0 +1,384 @@
+package com.intelligentnotes.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Walks the documents of one segment that match a query node, in document
+ * order. Terms and phrases read their posting lists, skipping ahead with
+ * Postings.advance; AND leapfrogs its parts, cheapest first, and drops
+ * excluded documents; OR merges. Matchers are built once per segment and
+ * allocate nothing per document.
+ */
+abstract class QueryMatcher {
+    static final int NO_MORE_DOCUMENTS = Integer.MAX_VALUE;
+
+    private static final Comparator<QueryMatcher> BY_COST = Comparator.comparingLong(QueryMatcher::cost);
+
+    // Current document, -1 before the first advance
+    int document = -1;
+
+    // Move to the first match not less than target and return it; never moves backwards
+    abstract int advance(int target);
+
+    // Upper bound on the number of matches, used to order intersections
+    abstract long cost();
+
+    // Add the current document's score
+    abstract void score(Bm25Scorer.DocumentScore score);
+
+    // Null if the node cannot match anything in the segment
+    static QueryMatcher create(SearchQuery.Node node, SearchSegment segment) {
+        if (node instanceof SearchQuery.Term) {
+            SearchQuery.Term term = (SearchQuery.Term) node;
+            SearchSegment.Postings[] lists = new SearchSegment.Postings[term.alternatives.length];
+            boolean any = false;
+            for (int t = 0; t < lists.length; t++) {
+                lists[t] = segment.postings(term.alternatives[t]);
+                any |= lists[t] != null;
+            }
+            return any ? new TermMatcher(term, lists) : null;
+        }
+
+        if (node instanceof SearchQuery.Phrase) {
+            SearchQuery.Phrase phrase = (SearchQuery.Phrase) node;
+            SearchSegment.Postings[] lists = new SearchSegment.Postings[phrase.terms.length];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = segment.postings(phrase.terms[i]);
+                if (lists[i] == null) {
+                    return null;
+                }
+            }
+            return new PhraseMatcher(phrase, lists);
+        }
+
+        if (node instanceof SearchQuery.And) {
+            SearchQuery.And and = (SearchQuery.And) node;
+            List<QueryMatcher> required = new ArrayList<>(and.required.size());
+            for (SearchQuery.Node part : and.required) {
+                QueryMatcher matcher = create(part, segment);
+                if (matcher == null) {
+                    return null;
+                }
+                required.add(matcher);
+            }
+            List<QueryMatcher> excluded = new ArrayList<>(and.excluded.size());
+            for (SearchQuery.Node part : and.excluded) {
+                QueryMatcher matcher = create(part, segment);
+                if (matcher != null) {
+                    excluded.add(matcher);
+                }
+            }
+            if (required.isEmpty()) {
+                required.add(new AllMatcher(segment.documentCount()));
+            }
+            if (required.size() == 1 && excluded.isEmpty()) {
+                return required.get(0);
+            }
+            required.sort(BY_COST);
+            return new AndMatcher(required.toArray(new QueryMatcher[0]), excluded.toArray(new QueryMatcher[0]));
+        }
+
+        SearchQuery.Or or = (SearchQuery.Or) node;
+        List<QueryMatcher> clauses = new ArrayList<>(or.clauses.size());
+        for (SearchQuery.Node clause : or.clauses) {
+            QueryMatcher matcher = create(clause, segment);
+            if (matcher != null) {
+                clauses.add(matcher);
+            }
+        }
+        if (clauses.size() <= 1) {
+            return clauses.isEmpty() ? null : clauses.get(0);
+        }
+        return new OrMatcher(clauses.toArray(new QueryMatcher[0]));
+    }
+
+    // A word and the indexed terms standing in for it (prefix completions, typo corrections)
+    private static final class TermMatcher extends QueryMatcher {
+        private final SearchQuery.Term term;
+        private final SearchSegment.Postings[] lists;
+        private final int[] cursors;
+
+        TermMatcher(SearchQuery.Term term, SearchSegment.Postings[] lists) {
+            this.term = term;
+            this.lists = lists;
+            cursors = new int[lists.length];
+        }
+
+        @Override
+        int advance(int target) {
+            if (document >= target) {
+                return document;
+            }
+            while (true) {
+                int next = NO_MORE_DOCUMENTS;
+                for (int t = 0; t < lists.length; t++) {
+                    if (lists[t] == null) continue;
+                    if (cursors[t] < lists[t].size() && lists[t].document(cursors[t]) < target) {
+                        cursors[t] = lists[t].advance(cursors[t], target);
+                    }
+                    if (cursors[t] < lists[t].size()) {
+                        next = Math.min(next, lists[t].document(cursors[t]));
+                    }
+                }
+                if (next == NO_MORE_DOCUMENTS || term.fields == SearchQuery.ALL_FIELDS || inFields(next)) {
+                    return document = next;
+                }
+                target = next + 1;
+            }
+        }
+
+        @Override
+        long cost() {
+            long cost = 0;
+            for (SearchSegment.Postings list : lists) {
+                if (list != null) {
+                    cost += list.size();
+                }
+            }
+            return cost;
+        }
+
+        @Override
+        void score(Bm25Scorer.DocumentScore score) {
+            boolean exact = false;
+            for (int t = 0; t < lists.length; t++) {
+                if (!at(t, document)) continue;
+                int packed = lists[t].frequencies(cursors[t]);
+                if (score.add(term.idf[t], packed, term.fields)) {
+                    exact |= !term.fuzzy[t];
+                    score.addMatchedTerm(term.alternatives[t]);
+                }
+            }
+            if (!exact) {
+                score.markFuzzy();
+            }
+        }
+
+        private boolean at(int t, int target) {
+            return lists[t] != null && cursors[t] < lists[t].size() && lists[t].document(cursors[t]) == target;
+        }
+
+        private boolean inFields(int target) {
+            for (int t = 0; t < lists.length; t++) {
+                if (at(t, target) && Bm25Scorer.inFields(lists[t].frequencies(cursors[t]), term.fields)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Documents containing every term of the phrase, checked for adjacent positions
+    private static final class PhraseMatcher extends QueryMatcher {
+        private final SearchQuery.Phrase phrase;
+        // Rarest term first, with each term's offset within the phrase
+        private final SearchSegment.Postings[] lists;
+        private final int[] offsets;
+        private final int[] cursors;
+        private final int[] pointers;
+        private final int[] counts = new int[NoteSearchIndex.FIELD_COUNT];
+
+        PhraseMatcher(SearchQuery.Phrase phrase, SearchSegment.Postings[] byOffset) {
+            this.phrase = phrase;
+            Integer[] order = new Integer[byOffset.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingInt(i -> byOffset[i].size()));
+            lists = new SearchSegment.Postings[byOffset.length];
+            offsets = new int[byOffset.length];
+            for (int i = 0; i < order.length; i++) {
+                lists[i] = byOffset[order[i]];
+                offsets[i] = order[i];
+            }
+            cursors = new int[lists.length];
+            pointers = new int[lists.length];
+        }
+
+        @Override
+        int advance(int target) {
+            if (document >= target) {
+                return document;
+            }
+            int candidate = target;
+            candidates:
+            while (true) {
+                for (int i = 0; i < lists.length; i++) {
+                    cursors[i] = lists[i].advance(cursors[i], candidate);
+                    if (cursors[i] == lists[i].size()) {
+                        return document = NO_MORE_DOCUMENTS;
+                    }
+                    int found = lists[i].document(cursors[i]);
+                    if (found > candidate) {
+                        candidate = found;
+                        continue candidates;
+                    }
+                }
+                if (countOccurrences()) {
+                    return document = candidate;
+                }
+                candidate++;
+            }
+        }
+
+        // Fill counts with the phrase's occurrences per field in the document all cursors are on
+        private boolean countOccurrences() {
+            Arrays.fill(counts, 0);
+            Arrays.fill(pointers, 0);
+            boolean found = false;
+            SearchSegment.Postings first = lists[0];
+            int firstCount = first.positionCount(cursors[0]);
+            occurrences:
+            for (int n = 0; n < firstCount; n++) {
+                int position = first.position(cursors[0], n);
+                int start = position - offsets[0];
+                int field = NoteSearchIndex.positionField(position);
+                if (NoteSearchIndex.positionField(start) != field || (phrase.fields & (1 << field)) == 0) continue;
+                for (int i = 1; i < lists.length; i++) {
+                    int wanted = start + offsets[i];
+                    int count = lists[i].positionCount(cursors[i]);
+                    while (pointers[i] < count && lists[i].position(cursors[i], pointers[i]) < wanted) {
+                        pointers[i]++;
+                    }
+                    if (pointers[i] == count) break occurrences;
+                    if (lists[i].position(cursors[i], pointers[i]) != wanted) continue occurrences;
+                }
+                counts[field]++;
+                found = true;
+            }
+            return found;
+        }
+
+        @Override
+        long cost() {
+            return lists[0].size();
+        }
+
+        @Override
+        void score(Bm25Scorer.DocumentScore score) {
+            if (score.add(phrase.idf, NoteSearchIndex.packFrequencies(counts), phrase.fields)) {
+                for (String term : phrase.terms) {
+                    score.addMatchedTerm(term);
+                }
+            }
+        }
+    }
+
+    private static final class AndMatcher extends QueryMatcher {
+        private final QueryMatcher[] required;
+        private final QueryMatcher[] excluded;
+
+        AndMatcher(QueryMatcher[] required, QueryMatcher[] excluded) {
+            this.required = required;
+            this.excluded = excluded;
+        }
+
+        @Override
+        int advance(int target) {
+            if (document >= target) {
+                return document;
+            }
+            int candidate = target;
+            candidates:
+            while (true) {
+                candidate = required[0].advance(candidate);
+                if (candidate == NO_MORE_DOCUMENTS) {
+                    return document = NO_MORE_DOCUMENTS;
+                }
+                for (int i = 1; i < required.length; i++) {
+                    int found = required[i].advance(candidate);
+                    if (found > candidate) {
+                        candidate = found;
+                        continue candidates;
+                    }
+                }
+                for (QueryMatcher matcher : excluded) {
+                    if (matcher.advance(candidate) == candidate) {
+                        candidate++;
+                        continue candidates;
+                    }
+                }
+                return document = candidate;
+            }
+        }
+
+        @Override
+        long cost() {
+            return required[0].cost();
+        }
+
+        @Override
+        void score(Bm25Scorer.DocumentScore score) {
+            for (QueryMatcher matcher : required) {
+                matcher.score(score);
+            }
+        }
+    }
+
+    private static final class OrMatcher extends QueryMatcher {
+        private final QueryMatcher[] clauses;
+
+        OrMatcher(QueryMatcher[] clauses) {
+            this.clauses = clauses;
+        }
+
+        @Override
+        int advance(int target) {
+            if (document >= target) {
+                return document;
+            }
+            int next = NO_MORE_DOCUMENTS;
+            for (QueryMatcher clause : clauses) {
+                next = Math.min(next, clause.advance(target));
+            }
+            return document = next;
+        }
+
+        @Override
+        long cost() {
+            long cost = 0;
+            for (QueryMatcher clause : clauses) {
+                cost += clause.cost();
+            }
+            return cost;
+        }
+
+        @Override
+        void score(Bm25Scorer.DocumentScore score) {
+            for (QueryMatcher clause : clauses) {
+                if (clause.document == document) {
+                    clause.score(score);
+                }
+            }
+        }
+    }
+
+    // Every document, for a query made only of exclusions
+    private static final class AllMatcher extends QueryMatcher {
+        private final int documentCount;
+
+        AllMatcher(int documentCount) {
+            this.documentCount = documentCount;
+        }
+
+        @Override
+        int advance(int target) {
+            if (document >= target) {
+                return document;
+            }
+            return document = target < documentCount ? target : NO_MORE_DOCUMENTS;
+        }
+
+        @Override
+        long cost() {
+            return documentCount;
+        }
+
+        @Override
+        void score(Bm25Scorer.DocumentScore score) {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.intelligentnotes.service;
+
+/**
+ * A scored search match: the note id, its relevance score, the field
+ * that contributed most to the score, whether every query term matched
+ * as typed rather than through a fuzzy correction, and the indexed terms
+ * that matched, from which previews are highlighted.
+ *
+ * Hits are ranked exact first, then by score, then by note id, so any hit
+ * can serve as a pagination cursor: the next page is everything ranked
+ * below it.
+ */
+final class SearchHit {
+    private final String noteId;
+    private final double score;
+    private final String matchField;
+    private final boolean exact;
+    private final String[] terms;
+
+    SearchHit(String noteId, double score, String matchField, boolean exact) {
+        this(noteId, score, matchField, exact, new String[0]);
+    }
+
+    SearchHit(String noteId, double score, String matchField, boolean exact, String[] terms) {
+        this.noteId = noteId;
+        this.score = score;
+        this.matchField = matchField;
+        this.exact = exact;
+        this.terms = terms;
+    }
+
+    String getNoteId() {
+        return noteId;
+    }
+
+    double getScore() {
+        return score;
+    }
+
+    String getMatchField() {
+        return matchField;
+    }
+
+    boolean isExact() {
+        return exact;
+    }
+
+    String[] getTerms() {
+        return terms;
+    }
+
+    // Opaque cursor for the results ranked below this hit
+    String toCursor() {
+        return (exact ? "e" : "f") + Long.toHexString(Double.doubleToLongBits(score)) + ":" + noteId;
+    }
+
+    static SearchHit fromCursor(String cursor) {
+        int colon = cursor.indexOf(':');
+        if (colon < 2 || (cursor.charAt(0) != 'e' && cursor.charAt(0) != 'f')) {
+            throw new IllegalArgumentException("Invalid search cursor: " + cursor);
+        }
+        double score = Double.longBitsToDouble(Long.parseUnsignedLong(cursor.substring(1, colon), 16));
+        return new SearchHit(cursor.substring(colon + 1), score, null, cursor.charAt(0) == 'e');
+    }
+}
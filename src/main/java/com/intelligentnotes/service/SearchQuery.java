@@ -0,0 +1,452 @@
+package com.intelligentnotes.service;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed search query.
+ *
+ * Words are all required. OR between two parts makes either one enough, NOT
+ * or a leading minus excludes the next part, and parentheses group. Quoted
+ * words must appear next to each other, in order, in the same field. A
+ * title:, summary: or content: prefix limits the following word or phrase to
+ * that field. created: or updated: before a date keeps only notes created or
+ * last updated then: a day, month or year (2024-05-03, 2024-05, 2024), today,
+ * yesterday, week, month, year or a number of days (30d) counting today, a
+ * range of these (2024-01..2024-03, either end may be left open) or one
+ * after a comparison (&gt;2024, &lt;=yesterday). Date filters always apply to
+ * the whole query, wherever they appear in it; a value that is not a date is
+ * searched for as words. Operators are only recognized in upper case, so "this or that"
+ * is three ordinary words, and unbalanced quotes or parentheses are closed at
+ * the end of the query rather than rejected, since queries are parsed while
+ * they are being typed.
+ *
+ * Precedence, from tightest: NOT, then AND (explicit or implied), then OR.
+ */
+final class SearchQuery {
+    static final int ALL_FIELDS = (1 << NoteSearchIndex.FIELD_COUNT) - 1;
+
+    private static final String[] FIELD_NAMES = {"title", "content", "summary"};
+    // Indexed by NoteTimestampIndex field number
+    private static final String[] DATE_FIELD_NAMES = {"created", "updated"};
+
+    abstract static class Node {
+    }
+
+    // A single word; the scorer fills in the indexed terms that may stand in for it
+    static final class Term extends Node {
+        final String text;
+        final int fields;
+        // The last, unfinished word of a search-as-you-type query
+        final boolean prefix;
+        // Quoted, so typo correction does not apply
+        final boolean literal;
+
+        String[] alternatives;
+        boolean[] fuzzy;
+        double[] idf;
+
+        Term(String text, int fields, boolean prefix, boolean literal) {
+            this.text = text;
+            this.fields = fields;
+            this.prefix = prefix;
+            this.literal = literal;
+        }
+    }
+
+    // Two or more words in sequence; the scorer fills in the summed idf of its terms
+    static final class Phrase extends Node {
+        final String[] terms;
+        final int fields;
+
+        double idf;
+
+        Phrase(String[] terms, int fields) {
+            this.terms = terms;
+            this.fields = fields;
+        }
+    }
+
+    // Every required part and none of the excluded ones; no required parts means every document
+    static final class And extends Node {
+        final List<Node> required;
+        final List<Node> excluded;
+
+        And(List<Node> required, List<Node> excluded) {
+            this.required = required;
+            this.excluded = excluded;
+        }
+    }
+
+    static final class Or extends Node {
+        final List<Node> clauses;
+
+        Or(List<Node> clauses) {
+            this.clauses = clauses;
+        }
+    }
+
+    // Times a note's creation or update time must fall between, as NoteTimestampIndex counts them
+    static final class DateRange {
+        private static final Pattern YEAR = Pattern.compile("(\\d{4})");
+        private static final Pattern MONTH = Pattern.compile("(\\d{4})-(\\d{1,2})");
+        private static final Pattern DAY = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+        private static final Pattern DAYS = Pattern.compile("(\\d{1,5})d");
+
+        final int field;
+        // Inclusive start and exclusive end, Long.MIN_VALUE and Long.MAX_VALUE when open
+        final long from;
+        final long to;
+
+        DateRange(int field, long from, long to) {
+            this.field = field;
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean contains(long time) {
+            return time >= from && time < to;
+        }
+
+        // Null if the value is not a date, a comparison with one or a range of them
+        static DateRange parse(int field, String value, LocalDate today) {
+            try {
+                int dots = value.indexOf("..");
+                if (dots >= 0) {
+                    String first = value.substring(0, dots);
+                    String last = value.substring(dots + 2);
+                    if (first.isEmpty() && last.isEmpty()) {
+                        return null;
+                    }
+                    return new DateRange(field, first.isEmpty() ? Long.MIN_VALUE : start(first, today),
+                            last.isEmpty() ? Long.MAX_VALUE : end(last, today));
+                }
+                if (value.startsWith(">=")) {
+                    return new DateRange(field, start(value.substring(2), today), Long.MAX_VALUE);
+                }
+                if (value.startsWith(">")) {
+                    return new DateRange(field, end(value.substring(1), today), Long.MAX_VALUE);
+                }
+                if (value.startsWith("<=")) {
+                    return new DateRange(field, Long.MIN_VALUE, end(value.substring(2), today));
+                }
+                if (value.startsWith("<")) {
+                    return new DateRange(field, Long.MIN_VALUE, start(value.substring(1), today));
+                }
+                return new DateRange(field, start(value, today), end(value, today));
+            } catch (DateTimeException | NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static long start(String value, LocalDate today) {
+            return NoteTimestampIndex.millis(period(value, today)[0]);
+        }
+
+        private static long end(String value, LocalDate today) {
+            return NoteTimestampIndex.millis(period(value, today)[1]);
+        }
+
+        // First day of the period and the day after it
+        private static LocalDate[] period(String value, LocalDate today) {
+            switch (value.toLowerCase(Locale.ROOT)) {
+                case "today":
+                    return new LocalDate[]{today, today.plusDays(1)};
+                case "yesterday":
+                    return new LocalDate[]{today.minusDays(1), today};
+                case "week":
+                    return lastDays(7, today);
+                case "month":
+                    return lastDays(30, today);
+                case "year":
+                    return lastDays(365, today);
+                default:
+                    break;
+            }
+            Matcher matcher = DAYS.matcher(value.toLowerCase(Locale.ROOT));
+            if (matcher.matches()) {
+                return lastDays(Integer.parseInt(matcher.group(1)), today);
+            }
+            if ((matcher = YEAR.matcher(value)).matches()) {
+                LocalDate first = LocalDate.of(Integer.parseInt(matcher.group(1)), 1, 1);
+                return new LocalDate[]{first, first.plusYears(1)};
+            }
+            if ((matcher = MONTH.matcher(value)).matches()) {
+                LocalDate first = LocalDate.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), 1);
+                return new LocalDate[]{first, first.plusMonths(1)};
+            }
+            if (DAY.matcher(value).matches()) {
+                LocalDate day = LocalDate.parse(value);
+                return new LocalDate[]{day, day.plusDays(1)};
+            }
+            throw new DateTimeException("Not a date: " + value);
+        }
+
+        // The given number of days up to and including today
+        private static LocalDate[] lastDays(int days, LocalDate today) {
+            if (days < 1) {
+                throw new DateTimeException("Not a number of days: " + days);
+            }
+            return new LocalDate[]{today.minusDays(days - 1), today.plusDays(1)};
+        }
+    }
+
+    private final String text;
+    private final boolean prefix;
+    private final LocalDate today = LocalDate.now();
+    private final List<Term> terms = new ArrayList<>();
+    private final List<Phrase> phrases = new ArrayList<>();
+    private final List<DateRange> dateRanges = new ArrayList<>(0);
+    private final Node root;
+    private int position;
+
+    private SearchQuery(String text, boolean prefix) {
+        this.text = text;
+        this.prefix = prefix;
+        root = parseTopLevel();
+    }
+
+    // With prefix set, a word that ends the query is matched as the start of a longer word
+    static SearchQuery parse(String query, boolean prefix) {
+        return new SearchQuery(query == null ? "" : query, prefix);
+    }
+
+    // Null if the query has nothing to search for, though it may still have date filters
+    Node getRoot() {
+        return root;
+    }
+
+    // Every date filter; a note must fall in all of them
+    List<DateRange> getDateRanges() {
+        return Collections.unmodifiableList(dateRanges);
+    }
+
+    // Every word outside phrases, excluded ones included
+    List<Term> getTerms() {
+        return Collections.unmodifiableList(terms);
+    }
+
+    List<Phrase> getPhrases() {
+        return Collections.unmodifiableList(phrases);
+    }
+
+    private Node parseTopLevel() {
+        // A stray closing parenthesis ends parseOr early; skip it and keep going
+        List<Node> parts = new ArrayList<>(1);
+        while (true) {
+            Node part = parseOr();
+            if (part != null) {
+                parts.add(part);
+            }
+            if (position >= text.length()) break;
+            position++;
+        }
+        return parts.size() <= 1 ? (parts.isEmpty() ? null : parts.get(0)) : new And(parts, new ArrayList<>(0));
+    }
+
+    private Node parseOr() {
+        List<Node> clauses = new ArrayList<>(2);
+        do {
+            Node clause = parseAnd();
+            if (clause != null) {
+                clauses.add(clause);
+            }
+        } while (skipOperator("OR"));
+        if (clauses.size() <= 1) {
+            return clauses.isEmpty() ? null : clauses.get(0);
+        }
+        return new Or(clauses);
+    }
+
+    private Node parseAnd() {
+        List<Node> required = new ArrayList<>(4);
+        List<Node> excluded = new ArrayList<>(0);
+        while (true) {
+            skipWhitespace();
+            if (position >= text.length() || text.charAt(position) == ')' || atOperator("OR")) break;
+            if (skipOperator("AND")) continue;
+
+            boolean negated = false;
+            while (true) {
+                if (skipOperator("NOT")) {
+                    negated = !negated;
+                } else if (text.charAt(position) == '-' && position + 1 < text.length()
+                        && !Character.isWhitespace(text.charAt(position + 1))) {
+                    position++;
+                    negated = !negated;
+                } else {
+                    break;
+                }
+                skipWhitespace();
+                if (position >= text.length()) break;
+            }
+            if (position >= text.length()) break;
+
+            Node part = parsePrimary();
+            if (part == null) continue;
+            if (negated) {
+                excluded.add(part);
+            } else if (part instanceof And && ((And) part).excluded.isEmpty()) {
+                for (Node word : ((And) part).required) {
+                    addRequired(required, word);
+                }
+            } else {
+                addRequired(required, part);
+            }
+        }
+        if (required.size() == 1 && excluded.isEmpty()) {
+            return required.get(0);
+        }
+        return required.isEmpty() && excluded.isEmpty() ? null : new And(required, excluded);
+    }
+
+    // A repeated word would only count twice towards the score
+    private void addRequired(List<Node> required, Node part) {
+        if (part instanceof Term) {
+            Term term = (Term) part;
+            for (Node other : required) {
+                if (other instanceof Term && ((Term) other).text.equals(term.text)
+                        && ((Term) other).fields == term.fields && ((Term) other).prefix == term.prefix) {
+                    terms.remove(term);
+                    return;
+                }
+            }
+        }
+        required.add(part);
+    }
+
+    private Node parsePrimary() {
+        char c = text.charAt(position);
+        if (c == '(') {
+            position++;
+            Node group = parseOr();
+            if (position < text.length() && text.charAt(position) == ')') {
+                position++;
+            }
+            return group;
+        }
+        if (c == '"') {
+            return parsePhrase(ALL_FIELDS);
+        }
+
+        int start = position;
+        while (position < text.length() && !isDelimiter(text.charAt(position))) {
+            position++;
+        }
+        int colon = start;
+        while (colon < position && text.charAt(colon) != ':') {
+            colon++;
+        }
+        if (colon > start && colon < position) {
+            int field = fieldNamed(start, colon);
+            if (field >= 0) {
+                if (colon + 1 == position && position < text.length() && text.charAt(position) == '"') {
+                    return parsePhrase(1 << field);
+                }
+                return words(colon + 1, position, 1 << field);
+            }
+            int dateField = dateFieldNamed(start, colon);
+            DateRange range = dateField < 0 ? null : DateRange.parse(dateField, text.substring(colon + 1, position), today);
+            if (range != null) {
+                dateRanges.add(range);
+                return null;
+            }
+        }
+        return words(start, position, ALL_FIELDS);
+    }
+
+    // A word may split into several terms ("e-mail"); they are all required, but need not be adjacent
+    private Node words(int start, int end, int fields) {
+        List<String> tokens = SearchTokenizer.tokenize(text.substring(start, end));
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        boolean endsQuery = prefix && end == text.length() && Character.isLetterOrDigit(text.charAt(end - 1));
+        if (tokens.size() == 1) {
+            return term(tokens.get(0), fields, endsQuery, false);
+        }
+        List<Node> parts = new ArrayList<>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            parts.add(term(tokens.get(i), fields, endsQuery && i == tokens.size() - 1, false));
+        }
+        return new And(parts, new ArrayList<>(0));
+    }
+
+    private Node parsePhrase(int fields) {
+        int start = ++position;
+        int end = text.indexOf('"', start);
+        if (end < 0) {
+            end = text.length();
+        }
+        position = Math.min(end + 1, text.length());
+
+        List<String> tokens = SearchTokenizer.tokenize(text.substring(start, end));
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        if (tokens.size() == 1) {
+            return term(tokens.get(0), fields, false, true);
+        }
+        Phrase phrase = new Phrase(tokens.toArray(new String[0]), fields);
+        phrases.add(phrase);
+        return phrase;
+    }
+
+    private Term term(String word, int fields, boolean prefix, boolean literal) {
+        Term term = new Term(word, fields, prefix, literal);
+        terms.add(term);
+        return term;
+    }
+
+    private int fieldNamed(int start, int end) {
+        for (int field = 0; field < FIELD_NAMES.length; field++) {
+            String name = FIELD_NAMES[field];
+            if (end - start == name.length() && text.regionMatches(true, start, name, 0, name.length())) {
+                return field;
+            }
+        }
+        return -1;
+    }
+
+    private int dateFieldNamed(int start, int end) {
+        for (int field = 0; field < DATE_FIELD_NAMES.length; field++) {
+            String name = DATE_FIELD_NAMES[field];
+            if (end - start == name.length() && text.regionMatches(true, start, name, 0, name.length())) {
+                return field;
+            }
+        }
+        return -1;
+    }
+
+    private boolean atOperator(String operator) {
+        int end = position + operator.length();
+        return text.startsWith(operator, position)
+                && (end == text.length() || Character.isWhitespace(text.charAt(end))
+                || text.charAt(end) == '(' || text.charAt(end) == '"');
+    }
+
+    private boolean skipOperator(String operator) {
+        skipWhitespace();
+        if (!atOperator(operator)) {
+            return false;
+        }
+        position += operator.length();
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private boolean isDelimiter(char c) {
+        return Character.isWhitespace(c) || c == '"' || c == '(' || c == ')';
+    }
+}
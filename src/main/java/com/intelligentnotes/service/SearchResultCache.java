@@ -0,0 +1,112 @@
+package com.intelligentnotes.service;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Least-recently-used cache of ranked search hits, so that re-running a
+ * search (going back to the results, paging back and forth) skips the
+ * scoring. Entries are keyed by the kind of search, its limit and cursor, the
+ * folder it is scoped to, the query with whitespace normalized and the date,
+ * since date filters such as "updated:today" are relative to it, and are only
+ * valid for the index generation they were computed at: the first lookup at a
+ * newer generation drops them all, so no hit is served after a note is saved,
+ * deleted or, as storage services count their tree's version in, moved.
+ *
+ * Hits are cached rather than results, since results hold the tree's note
+ * instances and previews, which are cheap to rebuild from the hits.
+ */
+class SearchResultCache {
+    static final String FULL = "full";
+    static final String PREFIX = "prefix";
+
+    private static final int DEFAULT_MAX_ENTRIES = 256;
+    // A search returning every match of a common word can hold the whole vault
+    private static final int DEFAULT_MAX_HITS = 100_000;
+
+    private final int maxEntries;
+    private final int maxHits;
+    private final LinkedHashMap<String, List<SearchHit>> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long generation = -1;
+    private long heldHits;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    SearchResultCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_HITS);
+    }
+
+    SearchResultCache(int maxEntries, int maxHits) {
+        this.maxEntries = maxEntries;
+        this.maxHits = maxHits;
+    }
+
+    // The cached hits of the search at this index generation, or else the search's, cached.
+    // Callers hold the index steady (the storage service's lock) while this runs.
+    List<SearchHit> get(String kind, String query, int limit, SearchHit after, long indexGeneration,
+                        Supplier<List<SearchHit>> search) {
+        return get(kind, query, null, limit, after, indexGeneration, search);
+    }
+
+    // The same for a search scoped to the folder with the given id (none if null)
+    List<SearchHit> get(String kind, String query, String scopeFolderId, int limit, SearchHit after,
+                        long indexGeneration, Supplier<List<SearchHit>> search) {
+        String key = key(kind, query, scopeFolderId, limit, after);
+        synchronized (this) {
+            if (indexGeneration > generation) {
+                invalidations += entries.size();
+                entries.clear();
+                heldHits = 0;
+                generation = indexGeneration;
+            }
+            List<SearchHit> cached = indexGeneration == generation ? entries.get(key) : null;
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        List<SearchHit> found = Collections.unmodifiableList(search.get());
+        synchronized (this) {
+            if (indexGeneration == generation && found.size() <= maxHits) {
+                List<SearchHit> previous = entries.put(key, found);
+                if (previous != null) {
+                    heldHits -= previous.size();
+                }
+                heldHits += found.size();
+
+                Iterator<Map.Entry<String, List<SearchHit>>> eldest = entries.entrySet().iterator();
+                while ((entries.size() > maxEntries || heldHits > maxHits) && eldest.hasNext()) {
+                    heldHits -= eldest.next().getValue().size();
+                    eldest.remove();
+                    evictions++;
+                }
+            }
+        }
+        return found;
+    }
+
+    // Runs of whitespace do not change a query's meaning; case does (AND, OR, NOT)
+    private static String key(String kind, String query, String scopeFolderId, int limit, SearchHit after) {
+        String normalized = query == null ? "" : query.trim().replaceAll("\\s+", " ");
+        return kind + '\u0000' + limit + '\u0000' + (after == null ? "" : after.toCursor()) + '\u0000'
+                + (scopeFolderId == null ? "" : scopeFolderId) + '\u0000' + LocalDate.now() + '\u0000' + normalized;
+    }
+
+    synchronized String getStatistics() {
+        long lookups = hits + misses;
+        double hitRate = lookups == 0 ? 0 : 100.0 * hits / lookups;
+        return String.format("%d searches (%d results held), %d hits, %d misses (%.1f%% hit rate), "
+                        + "%d evictions, %d invalidated by edits",
+                entries.size(), heldHits, hits, misses, hitRate, evictions, invalidations);
+    }
+}
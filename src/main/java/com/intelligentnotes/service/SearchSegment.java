@@ -0,0 +1,113 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Note;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * One part of the search index: a set of documents (indexed note versions)
+ * with a posting list per term. Document numbers are local to the segment.
+ * Implemented by the in-memory NoteSearchIndex and by MappedSearchSegment
+ * files on disk.
+ */
+interface SearchSegment {
+
+    int documentCount();
+
+    // Documents that have not been retired
+    int liveCount();
+
+    String noteId(int document);
+
+    // updatedAt of the indexed note version, used to detect stale entries
+    long stamp(int document);
+
+    // Number of terms in the given field of the document
+    int fieldLength(int document, int field);
+
+    // Sum of the field's length over the live documents, for length normalization
+    long totalFieldLength(int field);
+
+    boolean isLive(int document);
+
+    // Mark a document as superseded or deleted; segments themselves never change
+    void retire(int document);
+
+    // Posting list of a term, or null if no document contains it
+    Postings postings(String term);
+
+    // Every term with a posting list, in no particular order
+    Collection<String> terms();
+
+    // Smallest indexed term not less than the given one, or null
+    String ceilingTerm(String term);
+
+    // Add the document frequencies of up to limit indexed terms that start with the prefix
+    void collectPrefixTerms(String prefix, int limit, Map<String, Integer> frequencies);
+
+    // Document numbers in ascending order with their packed field frequencies and term positions
+    interface Postings {
+        int size();
+
+        int document(int index);
+
+        int frequencies(int index);
+
+        // Occurrences of the term in the document at index, over all fields
+        int positionCount(int index);
+
+        // The n-th position, as packed by NoteSearchIndex.position; ascending within a document
+        int position(int index, int n);
+
+        // Index of the first posting at or after from whose document is not less than the given one, or size()
+        default int advance(int from, int document) {
+            int size = size();
+            int low = from;
+            int bound = 1;
+            // Gallop ahead, then binary search the last step
+            while (low + bound - 1 < size && document(low + bound - 1) < document) {
+                low += bound;
+                bound <<= 1;
+            }
+            int high = Math.min(size, low + bound - 1);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (document(middle) < document) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // Position of the document in the list, or -1
+        default int indexOf(int document) {
+            int low = 0;
+            int high = size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int value = document(middle);
+                if (value < document) {
+                    low = middle + 1;
+                } else if (value > document) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+    }
+
+    static long stamp(Note note) {
+        LocalDateTime updatedAt = note.getUpdatedAt();
+        if (updatedAt == null) {
+            return 0;
+        }
+        return updatedAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + updatedAt.getNano();
+    }
+}
@@ -0,0 +1,244 @@
+package com.intelligentnotes.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes the live documents of one or more segments into a new
+ * MappedSearchSegment file. Used both to flush the in-memory delta and to
+ * merge small segments. The file is written next to the target and renamed
+ * into place, so a crash never leaves a half-written segment under its
+ * final name.
+ */
+final class SearchSegmentWriter {
+
+    private SearchSegmentWriter() {
+    }
+
+    /**
+     * Returns, per source, the new document number of each old document
+     * (-1 for documents that were not live when writing started).
+     */
+    static int[][] write(List<? extends SearchSegment> sources, Path target) throws IOException {
+        int[][] renumbered = new int[sources.size()][];
+        int capacity = 0;
+        for (SearchSegment source : sources) {
+            capacity += source.documentCount();
+        }
+        List<String> noteIds = new ArrayList<>(capacity);
+        long[] stamps = new long[capacity];
+        int[] lengths = new int[capacity * NoteSearchIndex.FIELD_COUNT];
+        for (int s = 0; s < sources.size(); s++) {
+            SearchSegment source = sources.get(s);
+            renumbered[s] = new int[source.documentCount()];
+            for (int document = 0; document < source.documentCount(); document++) {
+                if (!source.isLive(document)) {
+                    renumbered[s][document] = -1;
+                    continue;
+                }
+                int number = noteIds.size();
+                renumbered[s][document] = number;
+                noteIds.add(source.noteId(document));
+                stamps[number] = source.stamp(document);
+                for (int field = 0; field < NoteSearchIndex.FIELD_COUNT; field++) {
+                    lengths[number * NoteSearchIndex.FIELD_COUNT + field] = source.fieldLength(document, field);
+                }
+            }
+        }
+
+        // Terms sorted by unsigned UTF-8 bytes, with their posting counts over live documents
+        Set<String> termSet = new HashSet<>();
+        for (SearchSegment source : sources) {
+            termSet.addAll(source.terms());
+        }
+        List<byte[]> terms = new ArrayList<>();
+        List<Integer> postingCounts = new ArrayList<>();
+        List<Integer> positionCounts = new ArrayList<>();
+        int[] counts = new int[2];
+        byte[][] sorted = new byte[termSet.size()][];
+        int index = 0;
+        for (String term : termSet) {
+            sorted[index++] = term.getBytes(StandardCharsets.UTF_8);
+        }
+        Arrays.sort(sorted, Arrays::compareUnsigned);
+        for (byte[] term : sorted) {
+            countPostings(sources, renumbered, new String(term, StandardCharsets.UTF_8), counts);
+            if (counts[0] > 0) {
+                terms.add(term);
+                postingCounts.add(counts[0]);
+                positionCounts.add(counts[1]);
+            }
+        }
+
+        // Section offsets
+        int documentCount = noteIds.size();
+        List<byte[]> encodedIds = new ArrayList<>(documentCount);
+        long position = MappedSearchSegment.HEADER_SIZE + 4L * documentCount;
+        for (String noteId : noteIds) {
+            byte[] id = noteId.getBytes(StandardCharsets.UTF_8);
+            encodedIds.add(id);
+            position += MappedSearchSegment.DOCUMENT_FIXED_SIZE + id.length;
+        }
+        long termsOffset = position;
+        position += 4L * terms.size();
+        for (byte[] term : terms) {
+            position += 2 + term.length + 4 + 8;
+        }
+        long postingsOffset = position;
+        for (int i = 0; i < terms.size(); i++) {
+            position += postingsLength(postingCounts.get(i), positionCounts.get(i));
+        }
+        long fileLength = position;
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IOException("Search index segment too large: " + fileLength + " bytes");
+        }
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(MappedSearchSegment.HEADER_SIZE);
+            OutputStream raw = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+
+            long offset = MappedSearchSegment.HEADER_SIZE + 4L * documentCount;
+            for (byte[] id : encodedIds) {
+                out.writeInt((int) offset);
+                offset += MappedSearchSegment.DOCUMENT_FIXED_SIZE + id.length;
+            }
+            for (int document = 0; document < documentCount; document++) {
+                out.writeLong(stamps[document]);
+                for (int field = 0; field < NoteSearchIndex.FIELD_COUNT; field++) {
+                    out.writeInt(lengths[document * NoteSearchIndex.FIELD_COUNT + field]);
+                }
+                byte[] id = encodedIds.get(document);
+                out.writeShort(id.length);
+                out.write(id);
+            }
+
+            offset = termsOffset + 4L * terms.size();
+            for (byte[] term : terms) {
+                out.writeInt((int) offset);
+                offset += 2 + term.length + 4 + 8;
+            }
+            long postingsPosition = postingsOffset;
+            for (int i = 0; i < terms.size(); i++) {
+                byte[] term = terms.get(i);
+                out.writeShort(term.length);
+                out.write(term);
+                out.writeInt(postingCounts.get(i));
+                out.writeLong(postingsPosition);
+                postingsPosition += postingsLength(postingCounts.get(i), positionCounts.get(i));
+            }
+            out.flush();
+            int checksum = (int) crc.getValue();
+
+            // Postings are not checksummed; write them past the checked stream
+            DataOutputStream postingsOut = new DataOutputStream(raw);
+            for (int i = 0; i < terms.size(); i++) {
+                writePostings(postingsOut, sources, renumbered,
+                        new String(terms.get(i), StandardCharsets.UTF_8), postingCounts.get(i));
+            }
+            postingsOut.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(MappedSearchSegment.HEADER_SIZE);
+            header.putInt(MappedSearchSegment.MAGIC);
+            header.putInt(MappedSearchSegment.VERSION);
+            header.putInt(documentCount);
+            header.putInt(terms.size());
+            header.putLong(termsOffset);
+            header.putLong(postingsOffset);
+            header.putLong(fileLength);
+            header.putInt(checksum);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return renumbered;
+    }
+
+    // Documents, frequencies, position starts and positions
+    private static long postingsLength(int count, int positionCount) {
+        return 4L * (3 * count + 1) + 4L * positionCount;
+    }
+
+    // Fills counts with the term's live postings and their positions
+    private static void countPostings(List<? extends SearchSegment> sources, int[][] renumbered, String term,
+                                      int[] counts) {
+        counts[0] = 0;
+        counts[1] = 0;
+        for (int s = 0; s < sources.size(); s++) {
+            SearchSegment.Postings postings = sources.get(s).postings(term);
+            if (postings == null) continue;
+            for (int i = 0; i < postings.size(); i++) {
+                if (renumbered[s][postings.document(i)] >= 0) {
+                    counts[0]++;
+                    counts[1] += postings.positionCount(i);
+                }
+            }
+        }
+    }
+
+    // Sources are in document order, so concatenating their renumbered postings keeps them sorted
+    private static void writePostings(DataOutputStream out, List<? extends SearchSegment> sources,
+                                      int[][] renumbered, String term, int count) throws IOException {
+        SearchSegment.Postings[] lists = new SearchSegment.Postings[sources.size()];
+        int[] documents = new int[count];
+        int[] frequencies = new int[count];
+        int[] starts = new int[count + 1];
+        int written = 0;
+        for (int s = 0; s < sources.size(); s++) {
+            lists[s] = sources.get(s).postings(term);
+            if (lists[s] == null) continue;
+            for (int i = 0; i < lists[s].size(); i++) {
+                int document = renumbered[s][lists[s].document(i)];
+                if (document >= 0) {
+                    documents[written] = document;
+                    frequencies[written] = lists[s].frequencies(i);
+                    starts[written + 1] = starts[written] + lists[s].positionCount(i);
+                    written++;
+                }
+            }
+        }
+        for (int document : documents) {
+            out.writeInt(document);
+        }
+        for (int frequency : frequencies) {
+            out.writeInt(frequency);
+        }
+        for (int start : starts) {
+            out.writeInt(start);
+        }
+        for (int s = 0; s < sources.size(); s++) {
+            if (lists[s] == null) continue;
+            for (int i = 0; i < lists[s].size(); i++) {
+                if (renumbered[s][lists[s].document(i)] < 0) continue;
+                for (int n = 0; n < lists[s].positionCount(i); n++) {
+                    out.writeInt(lists[s].position(i, n));
+                }
+            }
+        }
+    }
+}
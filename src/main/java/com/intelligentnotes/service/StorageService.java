@@ -3,15 +3,30 @@
 package com.intelligentnotes.service;
 import com.intelligentnotes.model.Folder;
 import com.intelligentnotes.model.Note;
+import com.intelligentnotes.model.SearchPage;
 import com.intelligentnotes.model.SearchResult;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 public interface StorageService {
 
     void saveNote(Note note, Folder parent) throws IOException;
 
+    // Save without blocking the caller; the future completes once the note is written
+    default CompletableFuture<Void> saveNoteAsync(Note note, Folder parent) {
+        try {
+            saveNote(note, parent);
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     void saveFolder(Folder folder, Folder parent) throws IOException;
 
     void deleteNote(Note note, Folder parent);
@@ -22,5 +37,126 @@ public interface StorageService {
 
     void removeRootFolder(Folder folder);
 
+    // Queries may use "quoted phrases", AND / OR / NOT (or a leading -), parentheses and
+    // title:, summary: or content: before a word or phrase; plain words are all required.
+    // created: or updated: with a date, range or comparison (updated:week, created:2024-01..2024-03,
+    // updated:>2024-05-01) restricts the whole query; a query of date filters alone lists the notes
+    // in range newest first.
     List<SearchResult> searchNotes(String query);
+
+    // At most limit results (all of them if limit <= 0), best matches first. Backends
+    // with a ranked index override this so that only the returned results are built.
+    default List<SearchResult> searchNotes(String query, int limit) {
+        List<SearchResult> results = searchNotes(query);
+        return limit > 0 && results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    // For search-as-you-type: like searchNotes, but the last word of the query may be
+    // incomplete and matches any indexed word it starts. Backends without a term index
+    // fall back to a plain search.
+    default List<SearchResult> searchNotesByPrefix(String query, int limit) {
+        return searchNotes(query, limit);
+    }
+
+    // One page of searchNotes results: pass a null cursor for the first page, then each page's
+    // next cursor. Cursors are opaque; if notes change between pages, results may shift slightly.
+    // This fallback pages through a full search by offset.
+    default SearchPage searchNotesPage(String query, String cursor, int pageSize) {
+        List<SearchResult> results = searchNotes(query);
+        int from = cursor == null ? 0 : Integer.parseInt(cursor);
+        int to = Math.min(results.size(), from + pageSize);
+        return new SearchPage(new ArrayList<>(results.subList(Math.min(from, to), to)),
+                to < results.size() ? String.valueOf(to) : null);
+    }
+
+    // Like searchNotesByPrefix, but only notes in the folder or any folder below it (every note
+    // if the folder is null). This fallback filters a full search by walking the folder.
+    default List<SearchResult> searchNotesByPrefix(String query, Folder scope, int limit) {
+        if (scope == null) {
+            return searchNotesByPrefix(query, limit);
+        }
+        List<SearchResult> results = new FolderTreeSearcher().within(searchNotes(query), scope);
+        return limit > 0 && results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    // Like searchNotesPage, scoped like searchNotesByPrefix. Backends keeping a FolderTreeIndex
+    // check each match's folder against the scope's numbering instead of walking it.
+    default SearchPage searchNotesPage(String query, Folder scope, String cursor, int pageSize) {
+        if (scope == null) {
+            return searchNotesPage(query, cursor, pageSize);
+        }
+        List<SearchResult> results = new FolderTreeSearcher().within(searchNotes(query), scope);
+        int from = cursor == null ? 0 : Integer.parseInt(cursor);
+        int to = Math.min(results.size(), from + pageSize);
+        return new SearchPage(new ArrayList<>(results.subList(Math.min(from, to), to)),
+                to < results.size() ? String.valueOf(to) : null);
+    }
+
+    // Hand results to the consumer in rank order until it returns false or they run out.
+    // Only one page of results is built at a time.
+    default void streamSearchResults(String query, int pageSize, Predicate<SearchResult> consumer) {
+        String cursor = null;
+        do {
+            SearchPage page = searchNotesPage(query, cursor, pageSize);
+            for (SearchResult result : page.getResults()) {
+                if (!consumer.test(result)) return;
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
+
+    // One page of every note, most recently updated first, with cursors like searchNotesPage's.
+    // This fallback indexes the whole tree for each page; backends keeping their timestamp index
+    // resident read just the page from it.
+    default SearchPage recentNotes(String cursor, int pageSize) {
+        return new FolderTreeSearcher().recent(getRootFolders(), cursor, pageSize);
+    }
+
+    // Notes closest in meaning to the query rather than matching its words, closest first, at most
+    // limit of them. Runs offline on text vectors computed from the notes (see NoteEmbedder).
+    // This fallback compares the query with every note; backends keeping a NoteVectorIndex
+    // answer from its graph.
+    default List<SearchResult> semanticSearch(String query, int limit) {
+        return new FolderTreeSearcher().similar(getRootFolders(), query, limit);
+    }
+
+    // Linear scan for notes whose title or text contains a match of the pattern, for queries the
+    // term index cannot answer. Results come in tree order, unranked; scanning stops once limit
+    // matches are found (limit <= 0 finds all). The scan runs on a fork-join pool of the given
+    // parallelism, or on the common pool if it is zero or less.
+    default List<SearchResult> scanNotes(Pattern pattern, int limit, int parallelism) {
+        return new FolderTreeSearcher().scan(getRootFolders(), pattern, limit, parallelism);
+    }
+
+    // Write every dirty note and folder in the tree, children before the folders
+    // that list them. Backends that can batch the writes override this.
+    default void persistChanges() throws IOException {
+        for (Folder root : getRootFolders()) {
+            persistChanges(root, null);
+        }
+    }
+
+    private void persistChanges(Folder folder, Folder parent) throws IOException {
+        for (Note note : new ArrayList<>(folder.getNotes())) {
+            if (note.isDirty()) {
+                saveNote(note, folder);
+                note.clearDirty();
+            }
+        }
+        for (Folder subFolder : new ArrayList<>(folder.getSubFolders())) {
+            persistChanges(subFolder, folder);
+        }
+        if (folder.isDirty()) {
+            saveFolder(folder, parent);
+            folder.clearDirty();
+        }
+    }
+
+    // Block until every queued save has been written
+    default void flush() throws IOException {
+    }
+
+    // Called once on application exit so backends can flush pending state
+    default void close() {
+    }
 }
\ No newline at end of file
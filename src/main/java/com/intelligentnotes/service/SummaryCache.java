@@ -0,0 +1,109 @@
+package com.intelligentnotes.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of AI summaries, kept in a JSON file so that
+ * summarizing an unchanged note or folder again costs no API call, even
+ * after a restart.
+ *
+ * Entries are keyed by the SHA-256 of the model, the prompt variant and the
+ * exact prompt sent, which holds the note text with its markup stripped, so
+ * a summary is reused until the text, the prompt or the model changes.
+ * Formatting-only edits do not change the key. The file is rewritten after
+ * each new summary, least recently used first, and read again on first use.
+ */
+class SummaryCache {
+    static final int DEFAULT_MAX_ENTRIES = 500;
+
+    private final File file;
+    private final int maxEntries;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicFileWriter fileWriter = new AtomicFileWriter(Durability.NONE);
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private boolean loaded;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    SummaryCache(File file) {
+        this(file, DEFAULT_MAX_ENTRIES);
+    }
+
+    SummaryCache(File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+    }
+
+    static String key(String model, String variant, String prompt) {
+        return NoteText.hash(model + '\u0000' + variant + '\u0000' + prompt);
+    }
+
+    // Returns null (and counts a miss) if no summary is cached under the key
+    synchronized String get(String key) {
+        load();
+        String summary = entries.get(key);
+        if (summary == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return summary;
+    }
+
+    synchronized void put(String key, String summary) {
+        if (key == null || summary == null) return;
+        load();
+        entries.put(key, summary);
+        Iterator<Map.Entry<String, String>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+        try {
+            File directory = file.getParentFile();
+            if (directory != null && !directory.exists()) {
+                directory.mkdirs();
+            }
+            fileWriter.writeValue(objectMapper, file, entries);
+        } catch (IOException e) {
+            System.err.println("Error writing summary cache: " + e.getMessage());
+        }
+    }
+
+    synchronized int size() {
+        load();
+        return entries.size();
+    }
+
+    synchronized String getStatistics() {
+        long lookups = hits + misses;
+        double hitRate = lookups == 0 ? 0 : 100.0 * hits / lookups;
+        return String.format("%d summaries, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                entries.size(), hits, misses, hitRate, evictions);
+    }
+
+    // The file lists entries least recently used first, so reading them in order restores the LRU order
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        if (!file.exists()) return;
+        try {
+            Map<String, String> stored = objectMapper.readValue(file, new TypeReference<LinkedHashMap<String, String>>() {
+            });
+            entries.putAll(stored);
+            System.out.println("Loaded summary cache: " + entries.size() + " summaries");
+        } catch (IOException e) {
+            System.err.println("Error reading summary cache, starting empty: " + e.getMessage());
+        }
+    }
+}
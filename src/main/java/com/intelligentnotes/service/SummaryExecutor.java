@@ -0,0 +1,87 @@
+package com.intelligentnotes.service;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The one pool every summary runs on, so that summarizing never starts a
+ * thread of its own: a few daemon threads and a short queue, beyond which
+ * requests are refused rather than piling up behind a slow API.
+ *
+ * Each summary's future fails with a TimeoutException once its time is up,
+ * counting the wait in the queue. Cancelling it, or timing out, stops the
+ * work: a queued summary never starts, a running one is interrupted and
+ * whatever it registered with onCancel (an HTTP call) is cancelled.
+ */
+final class SummaryExecutor {
+    static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(2);
+
+    private static final int THREADS = 2;
+    private static final int QUEUE_CAPACITY = 16;
+
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+        Thread thread = new Thread(runnable, "summary-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The future of the summary running on the current pool thread
+    private static final ThreadLocal<CompletableFuture<?>> current = new ThreadLocal<>();
+
+    private SummaryExecutor() {
+    }
+
+    static <T> CompletableFuture<T> submit(Callable<T> work, Duration timeout) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = EXECUTOR.submit(() -> {
+                if (result.isDone()) return;
+                current.set(result);
+                try {
+                    result.complete(work.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    current.remove();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new RejectedExecutionException("Too many summaries pending", e));
+            return result;
+        }
+        result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        result.whenComplete((value, error) -> {
+            if (error != null) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // True on a pool thread whose summary was cancelled or timed out; its result would go unused
+    static boolean isAbandoned() {
+        CompletableFuture<?> future = current.get();
+        return future != null && future.isCompletedExceptionally();
+    }
+
+    // Run the hook if the summary running on this thread is cancelled or times out (at once if it
+    // already was); does nothing off the pool. For blocking calls an interrupt cannot stop.
+    static void onCancel(Runnable hook) {
+        CompletableFuture<?> future = current.get();
+        if (future == null) return;
+        future.whenComplete((value, error) -> {
+            if (error != null) {
+                hook.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,313 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import com.intelligentnotes.model.SearchPage;
+import com.intelligentnotes.model.SearchResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Write-behind layer in front of another StorageService.
+ *
+ * Note saves are queued and coalesced per note ID, so only the latest version
+ * of a note is written, and a single background thread writes them. Folder
+ * and delete operations stay synchronous but first flush the queue, so
+ * operations still reach the underlying storage in the order they were issued.
+ * A JVM shutdown hook flushes anything still queued.
+ */
+public class WriteBehindStorageService implements StorageService {
+    private final StorageService delegate;
+    private final ExecutorService writer;
+    private final Map<String, PendingSave> pending = new LinkedHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final Thread shutdownHook;
+
+    private final AtomicLong requestedSaves = new AtomicLong();
+    private final AtomicLong writtenSaves = new AtomicLong();
+
+    public WriteBehindStorageService(StorageService delegate) {
+        this.delegate = delegate;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "note-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Nothing queued may be lost if the JVM exits without close()
+        this.shutdownHook = new Thread(this::close, "note-write-behind-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    @Override
+    public void saveNote(Note note, Folder parent) throws IOException {
+        try {
+            saveNoteAsync(note, parent).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving note", e);
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> saveNoteAsync(Note note, Folder parent) {
+        if (note == null) {
+            throw new IllegalArgumentException("Cannot save null note");
+        }
+        if (closed.get()) {
+            return delegate.saveNoteAsync(note, parent);
+        }
+
+        // New notes change the folder structure, which must not happen off the calling thread
+        if (note.getId() == null || (parent != null && !parent.getNotes().contains(note))) {
+            try {
+                flush();
+                delegate.saveNote(note, parent);
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        requestedSaves.incrementAndGet();
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        // Read before copying, so an edit made in between keeps the note dirty
+        int version = note.getChangeVersion();
+        Note snapshot = note.copy();
+        boolean scheduleDrain;
+        synchronized (pending) {
+            PendingSave previous = pending.get(note.getId());
+            if (previous != null) {
+                // Coalesce: the newer snapshot replaces the queued one, and both callers
+                // are told about the write that actually happens
+                previous.note = note;
+                previous.snapshot = snapshot;
+                previous.version = version;
+                previous.parent = parent;
+                previous.futures.add(future);
+                scheduleDrain = false;
+            } else {
+                pending.put(note.getId(), new PendingSave(note, snapshot, version, parent, future));
+                scheduleDrain = pending.size() == 1;
+            }
+        }
+        if (scheduleDrain) {
+            writer.execute(this::drain);
+        }
+        return future;
+    }
+
+    @Override
+    public void saveFolder(Folder folder, Folder parent) throws IOException {
+        flush();
+        delegate.saveFolder(folder, parent);
+    }
+
+    @Override
+    public void deleteNote(Note note, Folder parent) {
+        // A queued save must not resurrect the note after it is deleted
+        PendingSave dropped;
+        synchronized (pending) {
+            dropped = pending.remove(note.getId());
+        }
+        if (dropped != null) {
+            dropped.complete(null);
+        }
+        flushQuietly();
+        delegate.deleteNote(note, parent);
+    }
+
+    @Override
+    public void deleteFolder(Folder folder, Folder parent) {
+        flushQuietly();
+        delegate.deleteFolder(folder, parent);
+    }
+
+    @Override
+    public List<Folder> getRootFolders() {
+        return delegate.getRootFolders();
+    }
+
+    @Override
+    public void removeRootFolder(Folder folder) {
+        flushQuietly();
+        delegate.removeRootFolder(folder);
+    }
+
+    @Override
+    public List<SearchResult> searchNotes(String query) {
+        return delegate.searchNotes(query);
+    }
+
+    @Override
+    public List<SearchResult> searchNotes(String query, int limit) {
+        return delegate.searchNotes(query, limit);
+    }
+
+    @Override
+    public List<SearchResult> searchNotesByPrefix(String query, int limit) {
+        return delegate.searchNotesByPrefix(query, limit);
+    }
+
+    @Override
+    public SearchPage searchNotesPage(String query, String cursor, int pageSize) {
+        return delegate.searchNotesPage(query, cursor, pageSize);
+    }
+
+    @Override
+    public List<SearchResult> searchNotesByPrefix(String query, Folder scope, int limit) {
+        return delegate.searchNotesByPrefix(query, scope, limit);
+    }
+
+    @Override
+    public SearchPage searchNotesPage(String query, Folder scope, String cursor, int pageSize) {
+        return delegate.searchNotesPage(query, scope, cursor, pageSize);
+    }
+
+    @Override
+    public SearchPage recentNotes(String cursor, int pageSize) {
+        return delegate.recentNotes(cursor, pageSize);
+    }
+
+    @Override
+    public List<SearchResult> semanticSearch(String query, int limit) {
+        return delegate.semanticSearch(query, limit);
+    }
+
+    @Override
+    public List<SearchResult> scanNotes(Pattern pattern, int limit, int parallelism) {
+        return delegate.scanNotes(pattern, limit, parallelism);
+    }
+
+    @Override
+    public void persistChanges() throws IOException {
+        flush();
+        delegate.persistChanges();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (writer.isShutdown()) {
+            drain();
+            return;
+        }
+        try {
+            // The writer is single-threaded, so this runs after every drain already scheduled
+            writer.submit(this::drain).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing queued saves", e);
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+
+        flushQuietly();
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything enqueued while shutting down is written on this thread
+        drain();
+
+        System.out.println("Write-behind: " + requestedSaves.get() + " saves requested, "
+                + writtenSaves.get() + " written");
+        delegate.close();
+
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Already shutting down
+            }
+        }
+    }
+
+    // Write everything queued so far, oldest first
+    private void drain() {
+        List<PendingSave> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        for (PendingSave save : batch) {
+            try {
+                delegate.saveNote(save.snapshot, save.parent);
+                save.written();
+                writtenSaves.incrementAndGet();
+                save.complete(null);
+            } catch (Exception e) {
+                System.err.println("Error writing queued note " + save.snapshot.getId() + ": " + e.getMessage());
+                save.complete(e);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Error flushing queued saves: " + e.getMessage());
+        }
+    }
+
+    private static IOException asIOException(Throwable cause) {
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+
+    private static class PendingSave {
+        // The note being edited and the copy of it that is written
+        private Note note;
+        private Note snapshot;
+        private int version;
+        private Folder parent;
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        PendingSave(Note note, Note snapshot, int version, Folder parent, CompletableFuture<Void> future) {
+            this.note = note;
+            this.snapshot = snapshot;
+            this.version = version;
+            this.parent = parent;
+            this.futures.add(future);
+        }
+
+        // The storage stamped its save times on the snapshot; the note shown to the user
+        // gets them too, and is clean unless it was edited after the snapshot was taken
+        void written() {
+            note.setCreatedAt(snapshot.getCreatedAt());
+            note.setUpdatedAt(snapshot.getUpdatedAt());
+            note.clearDirty(version);
+        }
+
+        void complete(Exception failure) {
+            for (CompletableFuture<Void> future : futures) {
+                if (failure == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            }
+        }
+    }
+}
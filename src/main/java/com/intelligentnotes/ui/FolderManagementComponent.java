@@ -4,6 +4,7 @@ import com.intelligentnotes.model.Folder;
 import com.intelligentnotes.model.Note;
 import com.intelligentnotes.service.AISummaryService;
 import com.intelligentnotes.service.StorageService;
+import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -20,6 +21,9 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 public class FolderManagementComponent extends VBox {
     private TreeView<String> folderTreeView;
@@ -31,6 +35,8 @@ public class FolderManagementComponent extends VBox {
     private Label emptyLabel;
 
     private BorderPane mainLayout;
+    // Restricts the search bar to a folder, from the folder's context menu
+    private Consumer<Folder> onSearchInFolder;
 
     public FolderManagementComponent(StorageService storageService, NoteEditorComponent noteEditor) {
         this.storageService = storageService;
@@ -109,17 +115,46 @@ public class FolderManagementComponent extends VBox {
         }
     }
 
+    public void setOnSearchInFolder(Consumer<Folder> callback) {
+        this.onSearchInFolder = callback;
+    }
+
     public void setAiService(AISummaryService aiService) {
         this.aiService = aiService;
     }
 
+    // Reads the folder tree on a background thread; the sidebar is filled in once it is assembled
     public void loadFolders() {
+        long start = System.nanoTime();
+        Task<List<Folder>> loadTask = new Task<>() {
+            @Override
+            protected List<Folder> call() throws Exception {
+                return storageService.getRootFolders();
+            }
+        };
+
+        loadTask.setOnSucceeded(e -> {
+            showFolders(loadTask.getValue());
+            System.out.println("Folder tree ready in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        });
+
+        loadTask.setOnFailed(e -> {
+            System.err.println("Loading folders failed with exception: " + loadTask.getException());
+            loadTask.getException().printStackTrace();
+            showErrorAlert("Error Loading Folders",
+                    "Could not load folders: " + loadTask.getException().getMessage());
+        });
+
+        Thread loader = new Thread(loadTask, "folder-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void showFolders(List<Folder> rootFolders) {
         TreeItem<String> root = folderTreeView.getRoot();
         root.getChildren().clear();
         itemsMap.clear();
 
-        List<Folder> rootFolders = storageService.getRootFolders();
-
         if (rootFolders.isEmpty()) {
             // Show empty state
             if (!this.getChildren().contains(emptyLabel)) {
@@ -462,37 +497,36 @@ public class FolderManagementComponent extends VBox {
         Folder sourceParent = findParentFolder(sourceItem);
 
         try {
-            // Update data model
+            // Update data model; only the folders whose child lists change are marked dirty
             if (sourceObj instanceof Folder) {
                 Folder sourceFolder = (Folder) sourceObj;
 
                 // Remove from old parent
                 if (sourceParent != null) {
-                    sourceParent.getSubFolders().remove(sourceFolder);
-                    storageService.saveFolder(sourceParent, findParentFolder(sourceItem.getParent()));
+                    sourceParent.removeSubFolder(sourceFolder);
                 } else {
                     // This was a root folder, special handling
                     storageService.removeRootFolder(sourceFolder);
                 }
 
                 // Add to new parent
-                targetFolder.getSubFolders().add(sourceFolder);
-                storageService.saveFolder(targetFolder, findParentFolder(targetItem));
+                targetFolder.addSubFolder(sourceFolder);
 
             } else if (sourceObj instanceof Note) {
                 Note sourceNote = (Note) sourceObj;
 
                 // Remove from old parent
                 if (sourceParent != null) {
-                    sourceParent.getNotes().remove(sourceNote);
-                    storageService.saveFolder(sourceParent, findParentFolder(sourceItem.getParent()));
+                    sourceParent.removeNote(sourceNote);
                 }
 
                 // Add to new parent
-                targetFolder.getNotes().add(sourceNote);
-                storageService.saveFolder(targetFolder, findParentFolder(targetItem));
+                targetFolder.addNote(sourceNote);
             }
 
+            // Writes the two changed folders in one batch instead of saving each up the tree
+            storageService.persistChanges();
+
             // Update UI
             sourceItem.getParent().getChildren().remove(sourceItem);
             targetItem.getChildren().add(sourceItem);
@@ -649,14 +683,20 @@ public class FolderManagementComponent extends VBox {
                 MenuItem rename = new MenuItem("Rename");
                 MenuItem delete = new MenuItem("Delete");
                 MenuItem summarize = new MenuItem("Summarize Contents");
+                MenuItem search = new MenuItem("Search in Folder");
 
                 newNote.setOnAction(e -> createNewNote());
                 newFolder.setOnAction(e -> createNewFolder());
                 rename.setOnAction(e -> startEdit());
                 delete.setOnAction(e -> deleteSelected());
                 summarize.setOnAction(e -> summarizeFolder((Folder) item));
+                search.setOnAction(e -> {
+                    if (onSearchInFolder != null) {
+                        onSearchInFolder.accept((Folder) item);
+                    }
+                });
 
-                menu.getItems().addAll(newNote, newFolder, rename, delete, summarize);
+                menu.getItems().addAll(newNote, newFolder, rename, delete, summarize, search);
             } else if (item instanceof Note) {
                 MenuItem open = new MenuItem("Open");
                 MenuItem rename = new MenuItem("Rename");
@@ -701,59 +741,56 @@ public class FolderManagementComponent extends VBox {
             progress.setPrefSize(20, 20);
             setGraphic(new HBox(5, getTreeItem().getGraphic(), progress));
 
-            // Run summarization in background thread
-            Task<String> summarizeTask = new Task<>() {
-                @Override
-                protected String call() throws Exception {
-                    return aiService.summarizeFolderContent(folder.getNotes());
-                }
-            };
-
-            summarizeTask.setOnSucceeded(e -> {
-                String summary = summarizeTask.getValue();
-                folder.setSummary(summary);
-
-                // Save the updated folder
-                Folder parentFolder = findParentFolder(getTreeItem());
-                try {
-                    storageService.saveFolder(folder, parentFolder);
-
-                    // Reset graphic
-                    setGraphic(getTreeItem().getGraphic());
-
-                    // Show summary dialog
-                    Alert summaryDialog = new Alert(Alert.AlertType.INFORMATION);
-                    summaryDialog.setTitle("Folder Summary");
-                    summaryDialog.setHeaderText("Summary of \"" + folder.getName() + "\"");
+            // Runs on the summary service's shared pool; the results arrive back on the FX thread
+            TreeItem<String> treeItem = getTreeItem();
+            aiService.summarizeFolderContentAsync(folder.getNotes()).whenComplete((summary, error) ->
+                    Platform.runLater(() -> {
+                        // Unless the cell has been reused for another item since
+                        if (getTreeItem() == treeItem) {
+                            setGraphic(treeItem.getGraphic());
+                        }
+                        if (error == null) {
+                            onFolderSummaryReady(folder, treeItem, summary);
+                        } else {
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error;
+                            Alert errorAlert = new Alert(Alert.AlertType.ERROR);
+                            errorAlert.setTitle("Summarization Error");
+                            errorAlert.setContentText("Failed to generate summary: "
+                                    + (cause instanceof TimeoutException
+                                    ? "the summary service did not answer in time." : cause.getMessage()));
+                            errorAlert.showAndWait();
+                        }
+                    }));
+        }
 
-                    TextArea textArea = new TextArea(summary);
-                    textArea.setEditable(false);
-                    textArea.setWrapText(true);
-                    textArea.setPrefHeight(150);
+        private void onFolderSummaryReady(Folder folder, TreeItem<String> treeItem, String summary) {
+            folder.setSummary(summary);
 
-                    summaryDialog.getDialogPane().setContent(textArea);
-                    summaryDialog.showAndWait();
-                } catch (IOException e2) {
-                    setGraphic(getTreeItem().getGraphic());
+            // Save the updated folder
+            Folder parentFolder = findParentFolder(treeItem);
+            try {
+                storageService.saveFolder(folder, parentFolder);
 
-                    Alert errorAlert = new Alert(Alert.AlertType.ERROR);
-                    errorAlert.setTitle("Save Error");
-                    errorAlert.setContentText("Summary was generated but could not be saved: " + e2.getMessage());
-                    errorAlert.showAndWait();
-                    e2.printStackTrace();
-                }
-            });
+                // Show summary dialog
+                Alert summaryDialog = new Alert(Alert.AlertType.INFORMATION);
+                summaryDialog.setTitle("Folder Summary");
+                summaryDialog.setHeaderText("Summary of \"" + folder.getName() + "\"");
 
-            summarizeTask.setOnFailed(e -> {
-                setGraphic(getTreeItem().getGraphic());
+                TextArea textArea = new TextArea(summary);
+                textArea.setEditable(false);
+                textArea.setWrapText(true);
+                textArea.setPrefHeight(150);
 
+                summaryDialog.getDialogPane().setContent(textArea);
+                summaryDialog.showAndWait();
+            } catch (IOException e) {
                 Alert errorAlert = new Alert(Alert.AlertType.ERROR);
-                errorAlert.setTitle("Summarization Error");
-                errorAlert.setContentText("Failed to generate summary: " + summarizeTask.getException().getMessage());
+                errorAlert.setTitle("Save Error");
+                errorAlert.setContentText("Summary was generated but could not be saved: " + e.getMessage());
                 errorAlert.showAndWait();
-            });
-
-            new Thread(summarizeTask).start();
+                e.printStackTrace();
+            }
         }
     }
 
@@ -1,9 +1,16 @@
 package com.intelligentnotes.ui;
 
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.HighlightSpan;
+import com.intelligentnotes.model.SearchPage;
 import com.intelligentnotes.model.SearchResult;
 import com.intelligentnotes.service.ClaudeAISummaryService;
+import com.intelligentnotes.service.Durability;
 import com.intelligentnotes.service.FileSystemStorageService;
+import com.intelligentnotes.service.JournalStorageService;
 import com.intelligentnotes.service.StorageService;
+import com.intelligentnotes.service.WriteBehindStorageService;
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.concurrent.Task;
 import javafx.geometry.Insets;
@@ -19,25 +26,64 @@ import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 import java.util.prefs.Preferences;
+import java.util.regex.Pattern;
 
 public class IntelligentNotesApp extends Application {
+    private static final String STORAGE_BACKEND_PREF = "storage.backend";
+    private static final String BACKEND_FILESYSTEM = "filesystem";
+    private static final String BACKEND_JOURNAL = "journal";
+    private static final String BACKEND_PACKED = "packed";
+    private static final String STORAGE_DURABILITY_PREF = "storage.durability";
+    private static final String GROUP_COMMIT_WINDOW_PREF = "storage.groupCommitWindowMs";
+    private static final int MAX_GROUP_COMMIT_WINDOW_MS = 100;
+    // Results are built and shown a page at a time; scrolling to the end fetches the next page
+    private static final int SEARCH_PAGE_SIZE = 50;
+    // A /pattern/ query is answered by scanning every note, stopping at this many matches
+    private static final int SCAN_RESULT_LIMIT = 200;
+    // Notes listed for a search by meaning ("~query")
+    private static final int SEMANTIC_RESULT_LIMIT = 50;
+    // Search as you type starts once typing pauses for this long
+    private static final int SEARCH_DEBOUNCE_MS = 150;
+
     private BorderPane mainLayout;
     private StorageService storageService;
     private ClaudeAISummaryService summaryService;
     private FolderManagementComponent folderManager;
     private NoteEditorComponent noteEditor;
 
+    // Searches run one at a time on this thread; only the latest one's results are shown
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Task<SearchPage> currentSearch;
+    // The search progress or results view while it is showing
+    private Node searchView;
+    // Keyword searches only look in this folder and below it while it is set
+    private Folder searchScope;
+
     @Override
     public void start(Stage primaryStage) {
-        // Initialize file system storage
-        storageService = new FileSystemStorageService();
+        Preferences prefs = Preferences.userNodeForPackage(IntelligentNotesApp.class);
+
+        // Initialize storage (file system by default, append-only journal if selected),
+        // behind a write-behind queue so autosaves never block the FX thread
+        storageService = new WriteBehindStorageService(
+                createStorageService(prefs.get(STORAGE_BACKEND_PREF, BACKEND_FILESYSTEM),
+                        Durability.fromPreference(prefs.get(STORAGE_DURABILITY_PREF, null)),
+                        prefs.getInt(GROUP_COMMIT_WINDOW_PREF, 0)));
 
         // Load Claude API key from preferences
-        Preferences prefs = Preferences.userNodeForPackage(IntelligentNotesApp.class);
         String claudeApiKey = prefs.get("summarization.claudeApiKey", "");
 
         // Initialize summary service with Claude (falls back to local if API key is empty)
@@ -92,6 +138,33 @@ public class IntelligentNotesApp extends Application {
         folderManager.loadFolders();
     }
 
+    @Override
+    public void stop() {
+        // Write out queued saves and let the backend flush before the JVM exits
+        if (storageService != null) {
+            storageService.close();
+        }
+        if (summaryService != null) {
+            System.out.println("Summary cache: " + summaryService.getCacheStatistics());
+        }
+    }
+
+    // The group commit window only applies to the file system backends; the journal syncs its log
+    private StorageService createStorageService(String backend, Durability durability, int groupCommitWindowMs) {
+        int windowMs = Math.max(0, Math.min(groupCommitWindowMs, MAX_GROUP_COMMIT_WINDOW_MS));
+        System.out.println("Storage durability: " + durability.toPreference()
+                + ", group commit window " + windowMs + " ms");
+        if (BACKEND_JOURNAL.equals(backend)) {
+            System.out.println("Using journal storage backend");
+            return new JournalStorageService(durability);
+        }
+        if (BACKEND_PACKED.equals(backend)) {
+            System.out.println("Using file system storage with packed note files");
+            return new FileSystemStorageService(durability, true, windowMs);
+        }
+        return new FileSystemStorageService(durability, false, windowMs);
+    }
+
     private void loadPreferences() {
         Preferences prefs = Preferences.userNodeForPackage(IntelligentNotesApp.class);
         String apiKey = prefs.get("summarization.claudeApiKey", "");
@@ -135,6 +208,12 @@ public class IntelligentNotesApp extends Application {
         createNewBtn.setStyle("-fx-background-color: #0078d7; -fx-text-fill: white;");
         createNewBtn.setOnAction(e -> handleCreateNew());
 
+        // Recently modified notes, newest first
+        Button recentBtn = new Button("Recently Modified");
+        recentBtn.setPrefWidth(220);
+        recentBtn.setStyle("-fx-background-color: #f0f0f0;");
+        recentBtn.setOnAction(e -> showRecentNotes());
+
         // Add the folder manager component
         VBox.setVgrow(folderManager, Priority.ALWAYS);
 
@@ -159,7 +238,7 @@ public class IntelligentNotesApp extends Application {
         settingsBtn.setOnAction(e -> showSettingsDialog());
 
         // Add all elements to sidebar
-        sidebar.getChildren().addAll(titleBox, createNewBtn, new Separator(), folderManager, userBox, settingsBtn);
+        sidebar.getChildren().addAll(titleBox, createNewBtn, recentBtn, new Separator(), folderManager, userBox, settingsBtn);
 
         return sidebar;
     }
@@ -223,37 +302,78 @@ public class IntelligentNotesApp extends Application {
             clearButton.setVisible(false);
         });
 
+        // Search as you type: every keystroke restarts the delay, so only the last text is searched
+        PauseTransition searchDelay = new PauseTransition(Duration.millis(SEARCH_DEBOUNCE_MS));
+        searchDelay.setOnFinished(e -> {
+            // Leading spaces are dropped; a trailing one means the last word is complete
+            String query = searchField.getText().stripLeading();
+            if (!query.isEmpty()) {
+                searchNotes(query, true);
+            }
+        });
+
         // Search button
         Button searchButton = new Button("Search");
         searchButton.setStyle("-fx-background-color: #0078d7; -fx-text-fill: white;");
         searchButton.setOnAction(e -> {
             String query = searchField.getText().trim();
             if (!query.isEmpty()) {
-                searchNotes(query);
+                searchDelay.stop();
+                searchNotes(query, false);
             }
         });
 
         // Make the clear button appear/disappear based on text content
         searchField.textProperty().addListener((obs, oldVal, newVal) -> {
             clearButton.setVisible(!newVal.isEmpty());
+            if (newVal.trim().isEmpty()) {
+                searchDelay.stop();
+                closeSearchView();
+            } else {
+                searchDelay.playFromStart();
+            }
         });
 
+        // Shows the folder searches are restricted to; clicking it searches everything again
+        Button scopeButton = new Button();
+        scopeButton.setStyle("-fx-background-color: #e8f0fe; -fx-text-fill: #0b57d0; -fx-background-radius: 12;");
+        scopeButton.setVisible(false);
+        scopeButton.setManaged(false);
+        scopeButton.setOnAction(e -> setSearchScope(null, scopeButton, searchField));
+        folderManager.setOnSearchInFolder(folder -> setSearchScope(folder, scopeButton, searchField));
+
         // Add search functionality on Enter key
         searchField.setOnKeyPressed(e -> {
             if (e.getCode() == KeyCode.ENTER) {
                 String query = searchField.getText().trim();
                 if (!query.isEmpty()) {
-                    searchNotes(query);
+                    searchDelay.stop();
+                    searchNotes(query, false);
                 }
             }
         });
 
         // Add all components to the search bar
-        searchBar.getChildren().addAll(searchIcon, searchField, clearButton, searchButton);
+        searchBar.getChildren().addAll(searchIcon, scopeButton, searchField, clearButton, searchButton);
 
         return searchBar;
     }
 
+    // Restrict searches to the folder's subtree (or lift the restriction if null) and search again
+    private void setSearchScope(Folder folder, Button scopeButton, TextField searchField) {
+        searchScope = folder;
+        scopeButton.setText(folder == null ? "" : "In: " + folder.getName() + "  ✕");
+        scopeButton.setVisible(folder != null);
+        scopeButton.setManaged(folder != null);
+        searchField.setPromptText(folder == null ? "Search notes by keywords..." : "Search in " + folder.getName() + "...");
+        searchField.requestFocus();
+
+        String query = searchField.getText().trim();
+        if (!query.isEmpty()) {
+            searchNotes(query, false);
+        }
+    }
+
     private void handleCreateNew() {
         // Show dropdown menu for creating a new note or folder
         ContextMenu createMenu = new ContextMenu();
@@ -279,33 +399,67 @@ public class IntelligentNotesApp extends Application {
         }
     }
 
-    private void searchNotes(String query) {
+    // asYouType searches treat the last word as a prefix and keep the current view until results arrive
+    private void searchNotes(String query, boolean asYouType) {
+        // A half-typed pattern is not worth a scan of every note, nor a half-typed phrase a search
+        // by meaning, which may first have to embed every note; they run when Enter is pressed
+        if (asYouType && (query.startsWith("/") || query.startsWith("~"))) return;
         System.out.println("Searching for: " + query);
+        // Taken now, so that later pages stay in the folder the search started in
+        Folder scope = searchScope;
 
-        // Show loading indicator in the center area
-        ProgressIndicator progressIndicator = new ProgressIndicator();
-        progressIndicator.setPrefSize(100, 100);
-        VBox loadingBox = new VBox(progressIndicator, new Label("Searching..."));
-        loadingBox.setAlignment(Pos.CENTER);
-        loadingBox.setSpacing(20);
-        mainLayout.setCenter(loadingBox);
+        // A superseded search that has not started is dropped; one already running is ignored when it ends
+        if (currentSearch != null) {
+            currentSearch.cancel(false);
+        }
+
+        if (!asYouType) {
+            // Show loading indicator in the center area
+            ProgressIndicator progressIndicator = new ProgressIndicator();
+            progressIndicator.setPrefSize(100, 100);
+            VBox loadingBox = new VBox(progressIndicator, new Label("Searching..."));
+            loadingBox.setAlignment(Pos.CENTER);
+            loadingBox.setSpacing(20);
+            mainLayout.setCenter(loadingBox);
+            searchView = loadingBox;
+        }
 
-        Task<List<SearchResult>> searchTask = new Task<>() {
+        // Typing shows the best prefix matches only; pressing Enter gives the full, paged results.
+        // A query between slashes is a regular expression, which the term index cannot answer, and
+        // one starting with a tilde finds notes by meaning rather than by their words. Only keyword
+        // searches are restricted to the scope folder.
+        Task<SearchPage> searchTask = new Task<>() {
             @Override
-            protected List<SearchResult> call() throws Exception {
-                return storageService.searchNotes(query);
+            protected SearchPage call() throws Exception {
+                if (isPatternQuery(query)) {
+                    Pattern pattern = Pattern.compile(query.substring(1, query.length() - 1),
+                            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+                    return new SearchPage(storageService.scanNotes(pattern, SCAN_RESULT_LIMIT, 0), null);
+                }
+                if (query.startsWith("~")) {
+                    return new SearchPage(storageService.semanticSearch(query.substring(1), SEMANTIC_RESULT_LIMIT), null);
+                }
+                return asYouType
+                        ? new SearchPage(storageService.searchNotesByPrefix(query, scope, SEARCH_PAGE_SIZE), null)
+                        : storageService.searchNotesPage(query, scope, null, SEARCH_PAGE_SIZE);
             }
         };
+        currentSearch = searchTask;
 
         searchTask.setOnSucceeded(e -> {
-            List<SearchResult> results = searchTask.getValue();
-            System.out.println("Search completed. Found " + results.size() + " results.");
-            showSearchResults(results, query);
+            if (searchTask != currentSearch) return;
+            SearchPage page = searchTask.getValue();
+            System.out.println("Search completed. Showing " + page.getResults().size() + " results.");
+            boolean scoped = scope != null && !isPatternQuery(query) && !query.startsWith("~");
+            String heading = "Search Results for \"" + query + "\"" + (scoped ? " in " + scope.getName() : "");
+            showSearchResults(page, heading, asYouType,
+                    cursor -> storageService.searchNotesPage(query, scope, cursor, SEARCH_PAGE_SIZE));
         });
 
         searchTask.setOnFailed(e -> {
             System.err.println("Search failed with exception: " + searchTask.getException());
             searchTask.getException().printStackTrace();
+            if (searchTask != currentSearch || asYouType) return;
 
             // Show error message
             Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -322,15 +476,63 @@ public class IntelligentNotesApp extends Application {
             }
         });
 
-        new Thread(searchTask).start();
+        searchExecutor.execute(searchTask);
     }
 
-    private void showSearchResults(List<SearchResult> results, String query) {
+    // Pages through every note by update time, read from the storage's timestamp index
+    private void showRecentNotes() {
+        if (currentSearch != null) {
+            currentSearch.cancel(false);
+        }
+        Task<SearchPage> recentTask = new Task<>() {
+            @Override
+            protected SearchPage call() throws Exception {
+                return storageService.recentNotes(null, SEARCH_PAGE_SIZE);
+            }
+        };
+        currentSearch = recentTask;
+
+        recentTask.setOnSucceeded(e -> {
+            if (recentTask != currentSearch) return;
+            showSearchResults(recentTask.getValue(), "Recently Modified", false,
+                    cursor -> storageService.recentNotes(cursor, SEARCH_PAGE_SIZE));
+        });
+        recentTask.setOnFailed(e -> {
+            System.err.println("Loading recent notes failed: " + recentTask.getException());
+            recentTask.getException().printStackTrace();
+        });
+        searchExecutor.execute(recentTask);
+    }
+
+    private static boolean isPatternQuery(String query) {
+        return query.length() > 2 && query.startsWith("/") && query.endsWith("/");
+    }
+
+    // Called when the search field is cleared
+    private void closeSearchView() {
+        if (currentSearch != null) {
+            currentSearch.cancel(false);
+            currentSearch = null;
+        }
+        if (searchView != null && mainLayout.getCenter() == searchView) {
+            if (noteEditor.isNoteLoaded()) {
+                mainLayout.setCenter(noteEditor);
+            } else {
+                mainLayout.setCenter(createEmptyState());
+            }
+        }
+        searchView = null;
+    }
+
+    // nextPage fetches the page after a cursor, for the "Show more results" button
+    private void showSearchResults(SearchPage page, String heading, boolean asYouType,
+                                   Function<String, SearchPage> nextPage) {
+        List<SearchResult> results = page.getResults();
         // Create search results view
         VBox resultsView = new VBox(10);
         resultsView.setPadding(new Insets(15));
 
-        Label headerLabel = new Label("Search Results for \"" + query + "\"");
+        Label headerLabel = new Label(heading);
         headerLabel.setStyle("-fx-font-size: 18px; -fx-font-weight: bold;");
 
         Button backButton = new Button("Back");
@@ -351,60 +553,138 @@ public class IntelligentNotesApp extends Application {
 
         resultsView.getChildren().addAll(topBar, new Separator());
 
+        Label resultCountLabel = new Label();
+        VBox resultList = new VBox(10);
+        Button moreButton = new Button("Show more results");
         if (results.isEmpty()) {
             Label noResultsLabel = new Label("No results found.");
             noResultsLabel.setStyle("-fx-font-size: 14px; -fx-padding: 20px 0;");
             resultsView.getChildren().add(noResultsLabel);
         } else {
-            Label resultCountLabel = new Label("Found " + results.size() + " results");
             resultCountLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #707070; -fx-padding: 0 0 10px 0;");
             resultsView.getChildren().add(resultCountLabel);
+            updateResultCount(resultCountLabel, results.size(), page.hasMore(), asYouType);
 
-            for (SearchResult result : results) {
-                VBox resultBox = new VBox(5);
-                resultBox.setPadding(new Insets(10));
-                resultBox.setStyle("-fx-background-color: white; -fx-border-color: #e0e0e0; -fx-border-radius: 5; -fx-padding: 10; -fx-margin: 5 0;");
-
-                Label titleLabel = new Label(result.getNote().getTitle());
-                titleLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14px;");
-
-                Label pathLabel = new Label("In: " + result.getPath());
-                pathLabel.setStyle("-fx-text-fill: #505050; -fx-font-size: 12px;");
-
-                // Format preview text
-                String previewText = result.getPreviewText();
-                Label previewLabel = new Label(previewText);
-                previewLabel.setWrapText(true);
-                previewLabel.setMaxWidth(Double.MAX_VALUE);
-                previewLabel.setStyle("-fx-text-fill: #303030;");
-
-                resultBox.getChildren().addAll(titleLabel, pathLabel, previewLabel);
-
-                // Make result clickable
-                resultBox.setOnMouseClicked(event -> {
-                    System.out.println("Clicked on search result: " + result.getNote().getTitle());
-                    noteEditor.loadNote(result.getNote(), result.getParentFolder());
-                    mainLayout.setCenter(noteEditor);
-                });
-
-                // Add hover effect
-                resultBox.setOnMouseEntered(event ->
-                        resultBox.setStyle("-fx-background-color: #f8f8f8; -fx-border-color: #d0d0d0; -fx-border-radius: 5; -fx-padding: 10; -fx-margin: 5 0;")
-                );
-                resultBox.setOnMouseExited(event ->
-                        resultBox.setStyle("-fx-background-color: white; -fx-border-color: #e0e0e0; -fx-border-radius: 5; -fx-padding: 10; -fx-margin: 5 0;")
-                );
-
-                resultsView.getChildren().add(resultBox);
-            }
+            addResultBoxes(resultList, results);
+            resultsView.getChildren().add(resultList);
         }
 
         ScrollPane scrollPane = new ScrollPane(resultsView);
         scrollPane.setFitToWidth(true);
         scrollPane.setStyle("-fx-background-color: transparent;");
 
+        if (page.hasMore() && !asYouType) {
+            moreButton.setUserData(page.getNextCursor());
+            moreButton.setOnAction(e -> loadMoreResults(nextPage, moreButton, resultList, resultCountLabel));
+            resultsView.getChildren().add(moreButton);
+            // Reaching the end of the list fetches the next page
+            scrollPane.vvalueProperty().addListener((observable, oldValue, newValue) -> {
+                if (newValue.doubleValue() >= scrollPane.getVmax() * 0.95) {
+                    loadMoreResults(nextPage, moreButton, resultList, resultCountLabel);
+                }
+            });
+        }
+
         // Replace the editor with search results
         mainLayout.setCenter(scrollPane);
+        searchView = scrollPane;
+    }
+
+    // Fetch the page after the one the button's cursor points at and append it; the button is disabled while loading
+    private void loadMoreResults(Function<String, SearchPage> nextPage, Button moreButton, VBox resultList,
+                                 Label countLabel) {
+        String cursor = (String) moreButton.getUserData();
+        if (cursor == null || moreButton.isDisabled()) return;
+        moreButton.setDisable(true);
+        moreButton.setText("Loading...");
+
+        Node view = searchView;
+        Task<SearchPage> pageTask = new Task<>() {
+            @Override
+            protected SearchPage call() throws Exception {
+                return nextPage.apply(cursor);
+            }
+        };
+        pageTask.setOnSucceeded(e -> {
+            if (searchView != view) return;
+            SearchPage page = pageTask.getValue();
+            addResultBoxes(resultList, page.getResults());
+            updateResultCount(countLabel, resultList.getChildren().size(), page.hasMore(), false);
+            moreButton.setUserData(page.getNextCursor());
+            moreButton.setText("Show more results");
+            moreButton.setDisable(false);
+            moreButton.setVisible(page.hasMore());
+            moreButton.setManaged(page.hasMore());
+        });
+        pageTask.setOnFailed(e -> {
+            System.err.println("Loading more search results failed: " + pageTask.getException());
+            pageTask.getException().printStackTrace();
+            moreButton.setText("Show more results");
+            moreButton.setDisable(false);
+        });
+        searchExecutor.execute(pageTask);
+    }
+
+    private void updateResultCount(Label countLabel, int shown, boolean hasMore, boolean asYouType) {
+        if (!hasMore) {
+            countLabel.setText("Found " + shown + " results");
+        } else if (asYouType) {
+            countLabel.setText("Showing the " + shown + " best matches, press Enter for all results");
+        } else {
+            countLabel.setText("Showing the " + shown + " best matches");
+        }
+    }
+
+    private void addResultBoxes(VBox resultList, List<SearchResult> results) {
+        for (SearchResult result : results) {
+            VBox resultBox = new VBox(5);
+            resultBox.setPadding(new Insets(10));
+            resultBox.setStyle("-fx-background-color: white; -fx-border-color: #e0e0e0; -fx-border-radius: 5; -fx-padding: 10; -fx-margin: 5 0;");
+
+            Label titleLabel = new Label(result.getNote().getTitle());
+            titleLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14px;");
+
+            String matchedIn = result.getMatchField() == null ? "" : "  ·  matched in " + result.getMatchField();
+            Label pathLabel = new Label("In: " + result.getPath() + matchedIn);
+            pathLabel.setStyle("-fx-text-fill: #505050; -fx-font-size: 12px;");
+
+            // Preview text, with the words that matched in bold
+            TextFlow previewFlow = new TextFlow();
+            previewFlow.setMaxWidth(Double.MAX_VALUE);
+            String previewText = result.getPreviewText();
+            int shown = 0;
+            for (HighlightSpan span : result.getHighlights()) {
+                previewFlow.getChildren().add(previewRun(previewText.substring(shown, span.getStart()), false));
+                previewFlow.getChildren().add(previewRun(previewText.substring(span.getStart(), span.getEnd()), true));
+                shown = span.getEnd();
+            }
+            previewFlow.getChildren().add(previewRun(previewText.substring(shown), false));
+
+            resultBox.getChildren().addAll(titleLabel, pathLabel, previewFlow);
+
+            // Make result clickable
+            resultBox.setOnMouseClicked(event -> {
+                System.out.println("Clicked on search result: " + result.getNote().getTitle());
+                noteEditor.loadNote(result.getNote(), result.getParentFolder());
+                mainLayout.setCenter(noteEditor);
+            });
+
+            // Add hover effect
+            resultBox.setOnMouseEntered(event ->
+                    resultBox.setStyle("-fx-background-color: #f8f8f8; -fx-border-color: #d0d0d0; -fx-border-radius: 5; -fx-padding: 10; -fx-margin: 5 0;")
+            );
+            resultBox.setOnMouseExited(event ->
+                    resultBox.setStyle("-fx-background-color: white; -fx-border-color: #e0e0e0; -fx-border-radius: 5; -fx-padding: 10; -fx-margin: 5 0;")
+            );
+
+            resultList.getChildren().add(resultBox);
+        }
+    }
+
+    private Text previewRun(String text, boolean highlighted) {
+        Text node = new Text(text);
+        node.setStyle(highlighted ? "-fx-fill: #000000; -fx-font-weight: bold;" : "-fx-fill: #303030;");
+        return node;
     }
 
     private void showSettingsDialog() {
@@ -436,6 +716,36 @@ public class IntelligentNotesApp extends Application {
         infoLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #707070;");
         grid.add(infoLabel, 1, 1);
 
+        // Storage backend selection (takes effect on the next start)
+        ComboBox<String> backendBox = new ComboBox<>();
+        backendBox.getItems().addAll(BACKEND_FILESYSTEM, BACKEND_PACKED, BACKEND_JOURNAL);
+        backendBox.setValue(prefs.get(STORAGE_BACKEND_PREF, BACKEND_FILESYSTEM));
+
+        grid.add(new Label("Storage Backend:"), 0, 2);
+        grid.add(backendBox, 1, 2);
+
+        // Durability: trade save latency against crash safety
+        ComboBox<String> durabilityBox = new ComboBox<>();
+        for (Durability durability : Durability.values()) {
+            durabilityBox.getItems().add(durability.toPreference());
+        }
+        durabilityBox.setValue(Durability.fromPreference(prefs.get(STORAGE_DURABILITY_PREF, null)).toPreference());
+
+        grid.add(new Label("Save Durability:"), 0, 3);
+        grid.add(durabilityBox, 1, 3);
+
+        // How long a batched save waits for others to share its sync
+        Spinner<Integer> windowSpinner = new Spinner<>(0, MAX_GROUP_COMMIT_WINDOW_MS,
+                prefs.getInt(GROUP_COMMIT_WINDOW_PREF, 0), 5);
+        windowSpinner.setEditable(true);
+
+        grid.add(new Label("Group Commit Window (ms):"), 0, 4);
+        grid.add(windowSpinner, 1, 4);
+
+        Label backendInfoLabel = new Label("Changing storage settings requires a restart.");
+        backendInfoLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #707070;");
+        grid.add(backendInfoLabel, 1, 5);
+
         dialog.getDialogPane().setContent(grid);
 
         // Convert the result when the save button is clicked
@@ -452,6 +762,9 @@ public class IntelligentNotesApp extends Application {
             // Save the API key
             Preferences prefs2 = Preferences.userNodeForPackage(IntelligentNotesApp.class);
             prefs2.put("summarization.claudeApiKey", apiKey);
+            prefs2.put(STORAGE_BACKEND_PREF, backendBox.getValue());
+            prefs2.put(STORAGE_DURABILITY_PREF, durabilityBox.getValue());
+            prefs2.putInt(GROUP_COMMIT_WINDOW_PREF, windowSpinner.getValue());
 
             // Create a new summary service with the API key (or empty for local only)
             summaryService = new ClaudeAISummaryService(apiKey);
@@ -7,7 +7,7 @@ import com.intelligentnotes.service.StorageService;
 import javafx.animation.KeyFrame;
 import javafx.animation.PauseTransition;
 import javafx.animation.Timeline;
-import javafx.concurrent.Task;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
@@ -28,6 +28,9 @@ import java.time.LocalDateTime;
 import java.util.Base64;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
 public class NoteEditorComponent extends VBox {
     private Note currentNote;
@@ -41,6 +44,8 @@ public class NoteEditorComponent extends VBox {
     private Runnable onTitleChangeCallback;
     private Timeline autoSaveTimer;
     private Label autoSaveStatus;
+    // The summary being generated for the open note, if any
+    private CompletableFuture<String> pendingSummary;
     private static final int AUTOSAVE_DELAY_MS = 2000; // saves 2 seconds after typing stops
 
     public NoteEditorComponent(StorageService storageService, AISummaryService aiService) {
@@ -127,6 +132,7 @@ public class NoteEditorComponent extends VBox {
 
     // autosave when a new note is created
     public void createNewNote(Folder parent) {
+    cancelPendingSummary();
     this.parentFolder = parent;
     currentNote = new Note();
     currentNote.setId(UUID.randomUUID().toString());
@@ -158,6 +164,7 @@ public class NoteEditorComponent extends VBox {
 
 
     public void loadNote(Note note, Folder parent) {
+        cancelPendingSummary();
         this.currentNote = note;
         this.parentFolder = parent;
 
@@ -178,53 +185,70 @@ public class NoteEditorComponent extends VBox {
             return;
         }
 
-        try {
-            // Update note data from the UI
-            currentNote.setTitle(titleField.getText());
-            currentNote.setContent(contentEditor.getHtmlText());
-            currentNote.setUpdatedAt(LocalDateTime.now());
+        // Update note data from the UI
+        Note savedNote = currentNote;
+        savedNote.setTitle(titleField.getText());
+        savedNote.setContent(contentEditor.getHtmlText());
+        savedNote.setUpdatedAt(LocalDateTime.now());
 
-            // Save to storage
-            storageService.saveNote(currentNote, parentFolder);
+        autoSaveStatus.setText("Autosave: Saving...");
+        autoSaveStatus.setStyle("-fx-font-size: 12px; -fx-text-fill: #f0ad4e;");
 
-            // Format timestamp for display
-            String timestamp = currentNote.getUpdatedAt().format(
-                    java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss"));
+        // Save to storage in the background; the status reflects the actual write
+        storageService.saveNoteAsync(savedNote, parentFolder).whenComplete((ignored, error) ->
+                Platform.runLater(() -> {
+                    if (error == null) {
+                        onSaveCompleted(savedNote);
+                    } else {
+                        onSaveFailed(error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error);
+                    }
+                }));
+    }
 
-            // Update the status to show successful save
-            autoSaveStatus.setText("Autosave: Saved at " + timestamp);
-            autoSaveStatus.setStyle("-fx-font-size: 12px; -fx-text-fill: green;");
+    private void onSaveCompleted(Note savedNote) {
+        // A save for a note that is no longer open must not touch the status
+        if (savedNote != currentNote) return;
 
-            System.out.println("Note autosaved: " + currentNote.getTitle());
+        // Format timestamp for display
+        String timestamp = LocalDateTime.now().format(
+                java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss"));
 
-            // Reset status after a few seconds
-            PauseTransition statusReset = new PauseTransition(Duration.seconds(3));
-            statusReset.setOnFinished(e -> {
-                autoSaveStatus.setText("Autosave: Ready");
-                autoSaveStatus.setStyle("-fx-font-size: 12px; -fx-text-fill: #707070;");
-            });
-            statusReset.play();
+        // Update the status to show successful save
+        autoSaveStatus.setText("Autosave: Saved at " + timestamp);
+        autoSaveStatus.setStyle("-fx-font-size: 12px; -fx-text-fill: green;");
 
-        } catch (IOException e) {
-            System.err.println("Error saving note: " + e.getMessage());
-            e.printStackTrace();
+        System.out.println("Note autosaved: " + savedNote.getTitle());
 
-            // Show error in status
-            autoSaveStatus.setText("Autosave: Error! " + e.getMessage());
-            autoSaveStatus.setStyle("-fx-font-size: 12px; -fx-text-fill: red;");
+        // Reset status after a few seconds
+        PauseTransition statusReset = new PauseTransition(Duration.seconds(3));
+        statusReset.setOnFinished(e -> {
+            autoSaveStatus.setText("Autosave: Ready");
+            autoSaveStatus.setStyle("-fx-font-size: 12px; -fx-text-fill: #707070;");
+        });
+        statusReset.play();
+    }
 
-            // Show error dialog for critical errors
-            if (e.getMessage().contains("Permission denied") ||
-                    e.getMessage().contains("disk full") ||
-                    e.getMessage().contains("Failed to create directory")) {
+    private void onSaveFailed(Throwable e) {
+        System.err.println("Error saving note: " + e.getMessage());
+        e.printStackTrace();
 
-                Alert errorAlert = new Alert(Alert.AlertType.ERROR);
-                errorAlert.setTitle("Save Error");
-                errorAlert.setHeaderText("Could not save your note");
-                errorAlert.setContentText("An error occurred: " + e.getMessage() +
-                        "\n\nPlease make sure the application has write permissions and sufficient disk space.");
-                errorAlert.showAndWait();
-            }
+        // Show error in status
+        String message = String.valueOf(e.getMessage());
+        autoSaveStatus.setText("Autosave: Error! " + message);
+        autoSaveStatus.setStyle("-fx-font-size: 12px; -fx-text-fill: red;");
+
+        // Show error dialog for critical errors
+        if (message.contains("Permission denied") ||
+                message.contains("disk full") ||
+                message.contains("Failed to create directory")) {
+
+            Alert errorAlert = new Alert(Alert.AlertType.ERROR);
+            errorAlert.setTitle("Save Error");
+            errorAlert.setHeaderText("Could not save your note");
+            errorAlert.setContentText("An error occurred: " + message +
+                    "\n\nPlease make sure the application has write permissions and sufficient disk space.");
+            errorAlert.showAndWait();
         }
     }
 
@@ -246,59 +270,75 @@ public class NoteEditorComponent extends VBox {
                         .anyMatch(child -> child instanceof Label &&
                                 ((Label) child).getText().equals("Summarizing...")));
 
+        // Runs on the summary service's shared pool; Cancel abandons the request
+        Note summarizedNote = currentNote;
+        CompletableFuture<String> summary = aiService.summarizeNoteContentAsync(content);
+        pendingSummary = summary;
+        summarizeButton.setDisable(true);
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setOnAction(e -> summary.cancel(true));
+        loadingBox.getChildren().add(cancelButton);
         this.getChildren().add(loadingBox);
 
-        // Run summarization in background thread
-        Task<String> summarizeTask = new Task<>() {
-            @Override
-            protected String call() throws Exception {
-                return aiService.summarizeNoteContent(content);
+        summary.whenComplete((result, error) -> Platform.runLater(() -> {
+            this.getChildren().remove(loadingBox);
+            if (pendingSummary == summary) {
+                pendingSummary = null;
+                summarizeButton.setDisable(currentNote == null);
             }
-        };
-
-        summarizeTask.setOnSucceeded(e -> {
-            String summary = summarizeTask.getValue();
-            currentNote.setSummary(summary);
-
-            try {
-                saveNote();
+            // Cancelled, or the note was closed while it ran
+            if (summary.isCancelled() || summarizedNote != currentNote) return;
+
+            if (error == null) {
+                onSummaryReady(result);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                Alert errorAlert = new Alert(Alert.AlertType.ERROR);
+                errorAlert.setTitle("Summarization Error");
+                errorAlert.setContentText("Failed to generate summary: " + (cause instanceof TimeoutException
+                        ? "the summary service did not answer in time." : cause.getMessage()));
+                errorAlert.showAndWait();
+            }
+        }));
+    }
 
-                // Show summary dialog
-                Alert summaryDialog = new Alert(Alert.AlertType.INFORMATION);
-                summaryDialog.setTitle("Note Summary");
-                summaryDialog.setHeaderText("Summary of \"" + currentNote.getTitle() + "\"");
+    private void onSummaryReady(String summary) {
+        currentNote.setSummary(summary);
 
-                TextArea textArea = new TextArea(summary);
-                textArea.setEditable(false);
-                textArea.setWrapText(true);
-                textArea.setPrefHeight(150);
+        try {
+            saveNote();
 
-                summaryDialog.getDialogPane().setContent(textArea);
-                summaryDialog.showAndWait();
-            } catch (Exception ex) {
-                System.err.println("Error saving summary: " + ex.getMessage());
-                ex.printStackTrace();
+            // Show summary dialog
+            Alert summaryDialog = new Alert(Alert.AlertType.INFORMATION);
+            summaryDialog.setTitle("Note Summary");
+            summaryDialog.setHeaderText("Summary of \"" + currentNote.getTitle() + "\"");
 
-                Alert errorAlert = new Alert(Alert.AlertType.ERROR);
-                errorAlert.setTitle("Save Error");
-                errorAlert.setHeaderText("Summary was generated but could not be saved");
-                errorAlert.setContentText("An error occurred: " + ex.getMessage());
-                errorAlert.showAndWait();
-            }
+            TextArea textArea = new TextArea(summary);
+            textArea.setEditable(false);
+            textArea.setWrapText(true);
+            textArea.setPrefHeight(150);
 
-            this.getChildren().remove(loadingBox);
-        });
+            summaryDialog.getDialogPane().setContent(textArea);
+            summaryDialog.showAndWait();
+        } catch (Exception ex) {
+            System.err.println("Error saving summary: " + ex.getMessage());
+            ex.printStackTrace();
 
-        summarizeTask.setOnFailed(e -> {
             Alert errorAlert = new Alert(Alert.AlertType.ERROR);
-            errorAlert.setTitle("Summarization Error");
-            errorAlert.setContentText("Failed to generate summary: " + summarizeTask.getException().getMessage());
+            errorAlert.setTitle("Save Error");
+            errorAlert.setHeaderText("Summary was generated but could not be saved");
+            errorAlert.setContentText("An error occurred: " + ex.getMessage());
             errorAlert.showAndWait();
+        }
+    }
 
-            this.getChildren().remove(loadingBox);
-        });
-
-        new Thread(summarizeTask).start();
+    // A summary still running for the note being closed is no longer wanted
+    private void cancelPendingSummary() {
+        if (pendingSummary != null) {
+            pendingSummary.cancel(true);
+            pendingSummary = null;
+        }
     }
 
     private void setEditorEnabled(boolean enabled) {
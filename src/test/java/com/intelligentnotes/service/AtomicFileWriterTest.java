@@ -0,0 +1,100 @@
+package com.intelligentnotes.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AtomicFileWriterTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void batchedWriteAppearsOnlyOnceCommitted() throws IOException {
+        AtomicFileWriter writer = new AtomicFileWriter(Durability.PER_BATCH);
+        File target = directory.resolve("note.json").toFile();
+
+        writer.write(target, bytes("saved"));
+        assertFalse(target.exists());
+        writer.awaitDurable();
+
+        assertArrayEquals(bytes("saved"), Files.readAllBytes(target.toPath()));
+        assertEquals(1, writer.getBatchCount());
+    }
+
+    @Test
+    void failedBatchIsReportedToTheThreadThatStagedIt() throws IOException {
+        AtomicFileWriter writer = new AtomicFileWriter(Durability.PER_BATCH);
+        writer.write(blockedTarget("a"), bytes("lost"));
+
+        assertThrows(IOException.class, writer::awaitDurable);
+
+        // The failure is reported once; later writes commit normally
+        File target = directory.resolve("later.json").toFile();
+        writer.write(target, bytes("kept"));
+        writer.awaitDurable();
+        assertTrue(target.exists());
+    }
+
+    @Test
+    void earlierFailedBatchIsNotHiddenByALaterOne() throws Exception {
+        AtomicFileWriter writer = new AtomicFileWriter(Durability.PER_BATCH);
+
+        // This thread's write fails in a batch committed by someone else
+        writer.write(blockedTarget("first"), bytes("lost"));
+        assertThrows(IOException.class, writer::flush);
+
+        // Another thread's write then fails in a batch of its own
+        AtomicReference<IOException> otherFailure = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            try {
+                writer.write(blockedTarget("second"), bytes("lost too"));
+                writer.awaitDurable();
+            } catch (IOException e) {
+                otherFailure.set(e);
+            }
+        });
+        other.start();
+        other.join();
+
+        assertNotNull(otherFailure.get());
+        assertThrows(IOException.class, writer::awaitDurable);
+    }
+
+    @Test
+    void tempFilesLeftByACrashAreDeleted() throws IOException {
+        Path folder = Files.createDirectories(directory.resolve("folder_1"));
+        Files.write(folder.resolve("note_1.json.123456789.tmp"), bytes("partial"));
+        Files.write(folder.resolve("note_1.json"), bytes("saved"));
+        Files.write(directory.resolve("segment_0.idx.tmp"), bytes("not ours"));
+
+        assertEquals(1, AtomicFileWriter.deleteTempFiles(directory.toFile()));
+
+        assertFalse(Files.exists(folder.resolve("note_1.json.123456789.tmp")));
+        assertTrue(Files.exists(folder.resolve("note_1.json")));
+        assertTrue(Files.exists(directory.resolve("segment_0.idx.tmp")));
+    }
+
+    // A target the rename cannot replace: a directory that is not empty
+    private File blockedTarget(String name) throws IOException {
+        Path target = Files.createDirectories(directory.resolve(name));
+        Files.write(target.resolve("inside"), bytes("x"));
+        return target.toFile();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,111 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Bm25ScorerTest {
+    private static final String[] WORDS = {"river", "stone", "maple", "copper", "lantern", "orbit", "meadow", "quartz"};
+
+    @Test
+    void topKIsTheHeadOfTheFullRanking() {
+        NoteSearchIndex index = index(randomNotes(0, 400));
+
+        List<SearchHit> all = Bm25Scorer.topK(Collections.singletonList(index), "river lantern", 0);
+        List<SearchHit> top = Bm25Scorer.topK(Collections.singletonList(index), "river lantern", 10);
+
+        assertTrue(all.size() > 10);
+        assertEquals(ids(all.subList(0, 10)), ids(top));
+        for (int i = 1; i < all.size(); i++) {
+            SearchHit before = all.get(i - 1);
+            SearchHit hit = all.get(i);
+            assertTrue(before.getScore() > hit.getScore()
+                    || (before.getScore() == hit.getScore() && before.getNoteId().compareTo(hit.getNoteId()) < 0));
+        }
+    }
+
+    @Test
+    void segmentsScoreAsOneIndexWould() {
+        List<Note> notes = randomNotes(0, 300);
+        NoteSearchIndex whole = index(notes);
+        NoteSearchIndex first = index(notes.subList(0, 120));
+        NoteSearchIndex second = index(notes.subList(120, 300));
+
+        List<SearchHit> expected = Bm25Scorer.topK(Collections.singletonList(whole), "maple quartz", 25);
+        List<SearchHit> actual = Bm25Scorer.topK(Arrays.asList(first, second), "maple quartz", 25);
+
+        assertEquals(ids(expected), ids(actual));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-9);
+        }
+    }
+
+    @Test
+    void titleMatchOutranksTheSameWordInTheBody() {
+        NoteSearchIndex index = index(Arrays.asList(
+                new Note("body", "Weekly notes", "<p>The orbit of the moon and other things</p>"),
+                new Note("title", "Orbit", "<p>The moon and other things we saw</p>"),
+                new Note("none", "Garden", "<p>Nothing about space</p>")));
+
+        List<SearchHit> hits = Bm25Scorer.topK(Collections.singletonList(index), "orbit", 10);
+
+        assertEquals(Arrays.asList("title", "body"), ids(hits));
+        assertEquals("title", hits.get(0).getMatchField());
+    }
+
+    @Test
+    void rarerWordCountsForMore() {
+        List<Note> notes = new ArrayList<>();
+        notes.add(new Note("rare", "One", "<p>copper stone</p>"));
+        notes.add(new Note("common", "Two", "<p>meadow stone</p>"));
+        for (int i = 0; i < 20; i++) {
+            notes.add(new Note("filler" + i, "Filler", "<p>stone stone meadow</p>"));
+        }
+
+        List<SearchHit> hits = Bm25Scorer.topK(Collections.singletonList(index(notes)), "copper OR meadow", 2);
+
+        assertEquals("rare", hits.get(0).getNoteId());
+    }
+
+    private static List<Note> randomNotes(long seed, int count) {
+        Random random = new Random(seed);
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder content = new StringBuilder("<p>");
+            int length = 5 + random.nextInt(40);
+            for (int w = 0; w < length; w++) {
+                content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            notes.add(new Note(String.format("n%04d", i), WORDS[random.nextInt(WORDS.length)],
+                    content.append("</p>").toString()));
+        }
+        return notes;
+    }
+
+    private static NoteSearchIndex index(List<Note> notes) {
+        Folder folder = new Folder("folder", "Folder");
+        for (Note note : notes) {
+            folder.getNotes().add(note);
+        }
+        NoteSearchIndex index = new NoteSearchIndex();
+        index.rebuild(Collections.singletonList(folder));
+        return index;
+    }
+
+    private static List<String> ids(List<SearchHit> hits) {
+        List<String> ids = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            ids.add(hit.getNoteId());
+        }
+        return ids;
+    }
+}
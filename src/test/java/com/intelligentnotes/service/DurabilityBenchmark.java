@@ -0,0 +1,69 @@
+package com.intelligentnotes.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures save throughput of AtomicFileWriter for every Durability level.
+ * Not a test; after mvn test-compile, run with:
+ * java -cp target/classes:target/test-classes com.intelligentnotes.service.DurabilityBenchmark [threads] [savesPerThread]
+ */
+public class DurabilityBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int savesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        // Roughly the size of a short note file
+        byte[] payload = new byte[2048];
+        Arrays.fill(payload, (byte) 'x');
+
+        for (Durability durability : Durability.values()) {
+            File directory = Files.createTempDirectory("intelligentnotes-bench").toFile();
+            AtomicFileWriter writer = new AtomicFileWriter(durability);
+
+            List<Thread> workers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int worker = t;
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < savesPerThread; i++) {
+                            // Each save replaces one of a small set of files, like repeated autosaves
+                            writer.write(new File(directory, "note_" + worker + "_" + (i % 10) + ".json"), payload);
+                            writer.awaitDurable();
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                });
+                workers.add(thread);
+                thread.start();
+            }
+            for (Thread thread : workers) {
+                thread.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+            long saves = (long) threads * savesPerThread;
+            System.out.printf("%-10s %8.0f saves/s  %6.3f ms/save  (%s)%n",
+                    durability, saves / seconds, seconds * 1000 / saves * threads, writer.getStatistics());
+
+            deleteRecursively(directory);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,10 @@
+package com.intelligentnotes.service;
+
+import java.nio.file.Path;
+
+class FileSystemStorageServiceTest extends StorageServiceContractTest {
+    @Override
+    StorageService open(Path directory) {
+        return new FileSystemStorageService(directory.toFile(), Durability.PER_BATCH, false, 0);
+    }
+}
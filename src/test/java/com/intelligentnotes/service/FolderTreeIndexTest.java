@@ -0,0 +1,171 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FolderTreeIndexTest {
+    // work { plan, projects { spec, archive { old } } }, home { list }
+    private final Folder work = folder("work", "plan");
+    private final Folder projects = folder("projects", "spec");
+    private final Folder archive = folder("archive", "old");
+    private final Folder home = folder("home", "list");
+    private final FolderTreeIndex index = new FolderTreeIndex();
+
+    @BeforeEach
+    void buildTree() {
+        work.addSubFolder(projects);
+        projects.addSubFolder(archive);
+        index.rebuild(Arrays.asList(work, home));
+    }
+
+    @Test
+    void parentsAndNoteFoldersAreLookedUpWithoutWalkingTheTree() {
+        assertNull(index.getParent(work));
+        assertSame(work, index.getParent(projects));
+        assertSame(projects, index.getParent(archive));
+        assertSame(archive, index.getNoteFolder("old"));
+        assertSame(home, index.getNoteFolder("list"));
+        assertEquals("work > projects > archive", index.getPath(archive));
+        assertTrue(index.isRootFolder(home));
+        assertFalse(index.isRootFolder(projects));
+    }
+
+    @Test
+    void newFolderAndNoteAreFoundUnderTheirParent() {
+        Folder drafts = folder("drafts", "idea");
+        home.addSubFolder(drafts);
+        index.putFolder(drafts, home);
+        Note later = new Note("later", "later", "");
+        drafts.addNote(later);
+        index.putNote(later, drafts);
+
+        assertSame(home, index.getParent(drafts));
+        assertSame(drafts, index.getNoteFolder("idea"));
+        assertSame(drafts, index.getNoteFolder("later"));
+        assertSame(later, index.getNote("later"));
+    }
+
+    @Test
+    void removedFolderTakesEverythingBelowItOutOfTheIndex() {
+        work.removeSubFolder(projects);
+        index.removeFolder(projects);
+
+        assertFalse(index.containsFolder("projects"));
+        assertFalse(index.containsFolder("archive"));
+        assertNull(index.getNote("spec"));
+        assertNull(index.getNoteFolder("old"));
+        assertSame(work, index.getNoteFolder("plan"));
+    }
+
+    @Test
+    void subtreeHoldsTheNotesOfTheFolderAndEverythingBelowIt() {
+        FolderTreeIndex.Subtree subtree = index.subtree(work);
+        assertTrue(subtree.contains("plan"));
+        assertTrue(subtree.contains("spec"));
+        assertTrue(subtree.contains("old"));
+        assertFalse(subtree.contains("list"));
+
+        FolderTreeIndex.Subtree inner = index.subtree(projects);
+        assertTrue(inner.contains("spec"));
+        assertTrue(inner.contains("old"));
+        assertFalse(inner.contains("plan"));
+        assertFalse(inner.contains("list"));
+
+        FolderTreeIndex.Subtree leaf = index.subtree(archive);
+        assertTrue(leaf.contains("old"));
+        assertFalse(leaf.contains("spec"));
+    }
+
+    @Test
+    void unknownFoldersHaveNoSubtree() {
+        assertNull(index.subtree(null));
+        assertNull(index.subtree(new Folder("elsewhere", "Elsewhere")));
+    }
+
+    @Test
+    void movedFolderTakesItsNotesToItsNewSubtree() {
+        projects.removeSubFolder(archive);
+        home.addSubFolder(archive);
+        index.reindexChildren(projects);
+        index.reindexChildren(home);
+
+        assertFalse(index.subtree(work).contains("old"));
+        assertFalse(index.subtree(projects).contains("old"));
+        assertTrue(index.subtree(home).contains("old"));
+        assertTrue(index.subtree(work).contains("spec"));
+    }
+
+    @Test
+    void movedNoteLeavesItsOldSubtree() {
+        Note spec = index.getNote("spec");
+        projects.removeNote(spec);
+        home.addNote(spec);
+        index.putNote(spec, home);
+
+        assertFalse(index.subtree(work).contains("spec"));
+        assertTrue(index.subtree(home).contains("spec"));
+    }
+
+    @Test
+    void scopedSearchOnlyRanksNotesInTheSubtree() {
+        NoteSearchIndex searchIndex = new NoteSearchIndex();
+        searchIndex.rebuild(Arrays.asList(work, home));
+        String everyNote = "plan OR spec OR old OR list";
+        FolderTreeIndex.Subtree subtree = index.subtree(projects);
+
+        List<String> found = ids(searchIndex.search(everyNote, 10, null, index.getTimestamps(), subtree));
+        Collections.sort(found);
+
+        assertEquals(Arrays.asList("old", "spec"), found);
+        assertEquals(List.of("old"), ids(searchIndex.searchPrefix("ol", 10, index.getTimestamps(), subtree)));
+        assertTrue(searchIndex.search("list", 10, null, index.getTimestamps(), subtree).isEmpty());
+    }
+
+    @Test
+    void savedCopyIsIndexedAsTheInstanceTheFolderLists() {
+        Note listed = index.getNote("plan");
+        index.putNote(listed.copy(), work);
+
+        assertSame(listed, index.getNote("plan"));
+    }
+
+    @Test
+    void savedCopyIsIndexedWithTheTimesItWasSavedWith() {
+        Note copy = index.getNote("plan").copy();
+        LocalDateTime saved = LocalDateTime.now().plusDays(1);
+        copy.setUpdatedAt(saved);
+        index.putNote(copy, work);
+
+        List<SearchHit> newest = index.getTimestamps().newest(Collections.emptyList(), null, 1);
+        assertEquals("plan", newest.get(0).getNoteId());
+        assertEquals(NoteTimestampIndex.millis(saved), (long) newest.get(0).getScore());
+    }
+
+    private static List<String> ids(List<SearchHit> hits) {
+        List<String> ids = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            ids.add(hit.getNoteId());
+        }
+        return ids;
+    }
+
+    private static Folder folder(String id, String noteId) {
+        Folder folder = new Folder(id, id);
+        folder.addNote(new Note(noteId, noteId, "<p>" + noteId + "</p>"));
+        return folder;
+    }
+}
@@ -0,0 +1,147 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.HighlightSpan;
+import com.intelligentnotes.model.Note;
+import com.intelligentnotes.model.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FolderTreeSearcherTest {
+    private static final String[] WORDS = {"river", "stone", "maple", "copper", "lantern", "orbit"};
+
+    private final FolderTreeSearcher searcher = new FolderTreeSearcher();
+    private final Random random = new Random(5);
+
+    @Test
+    void parallelScanFindsWhatAWalkOfTheTreeFinds() {
+        // Folders large enough to be split into chunks, nested a few levels deep
+        List<Folder> roots = Arrays.asList(randomFolder("a", 3), randomFolder("b", 2), randomFolder("c", 1));
+        Pattern pattern = Pattern.compile("copper\\s+lantern|^orbit", Pattern.CASE_INSENSITIVE);
+        List<String> expected = new ArrayList<>();
+        walk(roots, pattern, expected);
+
+        assertTrue(expected.size() > 100);
+        for (int parallelism : new int[]{0, 1, 4}) {
+            assertEquals(expected, ids(searcher.scan(roots, pattern, 0, parallelism)));
+        }
+    }
+
+    @Test
+    void scanStopsAtTheLimit() {
+        List<Folder> roots = Arrays.asList(randomFolder("a", 3), randomFolder("b", 2));
+        Pattern pattern = Pattern.compile("river");
+        List<String> all = ids(searcher.scan(roots, pattern, 0, 4));
+
+        List<String> limited = ids(searcher.scan(roots, pattern, 25, 4));
+
+        assertEquals(25, limited.size());
+        assertTrue(all.containsAll(limited));
+    }
+
+    @Test
+    void scanMatchesTitlesAndGivesEachResultItsFolderPath() {
+        Folder work = new Folder("work", "Work");
+        Folder plans = new Folder("plans", "Plans");
+        work.addSubFolder(plans);
+        plans.addNote(new Note("title", "Quarterly review", "<p>numbers</p>"));
+        plans.addNote(new Note("body", "Notes", "<p>the quarterly numbers</p>"));
+        plans.addNote(new Note("neither", "Other", "<p>nothing</p>"));
+
+        List<SearchResult> results = searcher.search(List.of(work), "QUARTERLY");
+
+        assertEquals(Arrays.asList("title", "body"), ids(results));
+        assertEquals("Work > Plans", results.get(0).getPath());
+        assertEquals(plans, results.get(1).getParentFolder());
+    }
+
+    @Test
+    void highlightsMarkTheMatchedWordsInThePreview() {
+        Folder folder = new Folder("inbox", "Inbox");
+        String filler = "word ".repeat(20);
+        folder.addNote(new Note("n", "Title", "<p>" + filler + "the <b>Harbour</b> lights, harbours and a harbour " + filler + "</p>"));
+        FolderTreeIndex treeIndex = new FolderTreeIndex();
+        treeIndex.rebuild(List.of(folder));
+
+        SearchResult result = searcher.toResults(
+                List.of(new SearchHit("n", 1, "content", true, new String[]{"harbour"})), treeIndex).get(0);
+
+        String preview = result.getPreviewText();
+        assertTrue(preview.startsWith("..."));
+        assertTrue(preview.endsWith("..."));
+        assertEquals(2, result.getHighlights().size());
+        assertEquals("Harbour", highlighted(preview, result.getHighlights().get(0)));
+        assertEquals("harbour", highlighted(preview, result.getHighlights().get(1)));
+    }
+
+    @Test
+    void scanHighlightsThePatternsMatches() {
+        Folder folder = new Folder("inbox", "Inbox");
+        folder.addNote(new Note("n", "Title", "<p>Order 1234 and order 56</p>"));
+
+        SearchResult result = searcher.scan(List.of(folder), Pattern.compile("\\d+"), 0, 1).get(0);
+
+        assertEquals("Order 1234 and order 56", result.getPreviewText());
+        assertEquals("1234", highlighted(result.getPreviewText(), result.getHighlights().get(0)));
+        assertEquals("56", highlighted(result.getPreviewText(), result.getHighlights().get(1)));
+    }
+
+    @Test
+    void noteMatchedOnlyByItsTitleShowsTheStartOfItsText() {
+        Folder folder = new Folder("inbox", "Inbox");
+        folder.addNote(new Note("n", "Harbour", "<p>Nothing about it here</p>"));
+
+        SearchResult result = searcher.search(List.of(folder), "harbour").get(0);
+
+        assertEquals("Nothing about it here...", result.getPreviewText());
+        assertTrue(result.getHighlights().isEmpty());
+    }
+
+    private static String highlighted(String preview, HighlightSpan span) {
+        return preview.substring(span.getStart(), span.getEnd());
+    }
+
+    private Folder randomFolder(String name, int depth) {
+        Folder folder = new Folder(name, name);
+        for (int i = 0; i < 150; i++) {
+            StringBuilder content = new StringBuilder("<p>");
+            for (int w = 0; w < 8; w++) {
+                content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            folder.addNote(new Note(name + i, "Note " + i, content.append("</p>").toString()));
+        }
+        for (int i = 0; depth > 1 && i < 2; i++) {
+            folder.addSubFolder(randomFolder(name + "/" + i, depth - 1));
+        }
+        return folder;
+    }
+
+    // Each folder's notes, then its subfolders, one note at a time
+    private static void walk(List<Folder> folders, Pattern pattern, List<String> found) {
+        for (Folder folder : folders) {
+            for (Note note : folder.getNotes()) {
+                if (pattern.matcher(NoteText.extract(note.getContent())).find()
+                        || pattern.matcher(note.getTitle()).find()) {
+                    found.add(note.getId());
+                }
+            }
+            walk(folder.getSubFolders(), pattern, found);
+        }
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>();
+        for (SearchResult result : results) {
+            ids.add(result.getNote().getId());
+        }
+        return ids;
+    }
+}
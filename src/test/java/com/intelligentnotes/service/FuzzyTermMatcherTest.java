@@ -0,0 +1,130 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FuzzyTermMatcherTest {
+    private final Random random = new Random(11);
+
+    @Test
+    void findsExactlyTheTermsABruteForceComparisonFinds() {
+        // A small alphabet, so that most terms have near neighbours
+        Folder folder = new Folder("folder", "Folder");
+        for (int i = 0; i < 200; i++) {
+            StringBuilder content = new StringBuilder("<p>");
+            for (int w = 0; w < 10; w++) {
+                content.append(randomWord()).append(' ');
+            }
+            folder.getNotes().add(new Note("n" + i, "", content.append("</p>").toString()));
+        }
+        NoteSearchIndex index = new NoteSearchIndex();
+        index.rebuild(Collections.singletonList(folder));
+
+        for (int i = 0; i < 300; i++) {
+            String target = randomWord();
+            int maxEdits = 1 + i % 2;
+            Map<String, Integer> expected = new HashMap<>();
+            for (String term : index.terms()) {
+                int distance = osaDistance(term, target);
+                if (distance <= maxEdits) {
+                    expected.put(term, distance);
+                }
+            }
+
+            Map<String, Integer> actual = new HashMap<>();
+            FuzzyTermMatcher.collect(index, target, maxEdits, actual);
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void transposedLettersAreOneEdit() {
+        assertEquals(1, osaDistance("lantren", "lantern"));
+        NoteSearchIndex index = new NoteSearchIndex();
+        Folder folder = new Folder("folder", "Folder");
+        folder.getNotes().add(new Note("n", "", "<p>lantern</p>"));
+        index.rebuild(Collections.singletonList(folder));
+
+        Map<String, Integer> found = new HashMap<>();
+        FuzzyTermMatcher.collect(index, "lantren", 1, found);
+
+        assertEquals(Integer.valueOf(1), found.get("lantern"));
+    }
+
+    @Test
+    void shortTermsAndTermsWithDigitsAreNotCorrected() {
+        assertEquals(0, FuzzyTermMatcher.maxEdits("ox"));
+        assertEquals(0, FuzzyTermMatcher.maxEdits("v2024"));
+        assertEquals(1, FuzzyTermMatcher.maxEdits("tent"));
+        assertEquals(2, FuzzyTermMatcher.maxEdits("lantern"));
+    }
+
+    @Test
+    void typoMatchesRankBelowMatchesAsTyped() {
+        Folder folder = new Folder("folder", "Folder");
+        folder.getNotes().add(new Note("typo", "Lanterns", "<p>lanterns lanterns lanterns</p>"));
+        folder.getNotes().add(new Note("exact", "Misc", "<p>a lantern among many other words here</p>"));
+        NoteSearchIndex index = new NoteSearchIndex();
+        index.rebuild(Collections.singletonList(folder));
+
+        List<SearchHit> hits = index.search("lantern", 10);
+
+        assertEquals(Arrays.asList("exact", "typo"), ids(hits));
+        assertTrue(hits.get(0).isExact());
+        assertFalse(hits.get(1).isExact());
+        // Quoted words are taken as typed
+        assertEquals(List.of("exact"), ids(index.search("\"lantern\"", 10)));
+    }
+
+    private String randomWord() {
+        int length = 2 + random.nextInt(6);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(4)));
+        }
+        return word.toString();
+    }
+
+    // Optimal string alignment distance, computed in full
+    private static int osaDistance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private static List<String> ids(List<SearchHit> hits) {
+        List<String> ids = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            ids.add(hit.getNoteId());
+        }
+        return ids;
+    }
+}
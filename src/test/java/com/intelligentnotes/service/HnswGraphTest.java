@@ -0,0 +1,150 @@
+package com.intelligentnotes.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswGraphTest {
+    private static final int DIMENSIONS = 16;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void graphReadBackAnswersSearchesExactlyAsWritten() throws IOException {
+        HnswGraph graph = new HnswGraph(DIMENSIONS, 8, 40);
+        for (int i = 0; i < 300; i++) {
+            graph.add(randomUnitVector());
+        }
+        for (int node = 0; node < 300; node += 7) {
+            graph.delete(node);
+        }
+
+        HnswGraph read = roundTrip(graph);
+
+        assertEquals(graph.size(), read.size());
+        assertEquals(graph.liveCount(), read.liveCount());
+        assertEquals(graph.deletedCount(), read.deletedCount());
+        for (int node = 0; node < graph.size(); node++) {
+            assertEquals(graph.isDeleted(node), read.isDeleted(node));
+            assertArrayEquals(graph.vector(node), read.vector(node));
+        }
+        for (int i = 0; i < 20; i++) {
+            float[] query = randomUnitVector();
+            List<HnswGraph.Neighbor> expected = graph.search(query, 10, 50);
+            List<HnswGraph.Neighbor> actual = read.search(query, 10, 50);
+            assertEquals(expected.size(), actual.size());
+            for (int k = 0; k < expected.size(); k++) {
+                assertEquals(expected.get(k).node, actual.get(k).node);
+                assertEquals(expected.get(k).similarity, actual.get(k).similarity);
+                assertFalse(read.isDeleted(actual.get(k).node));
+            }
+        }
+    }
+
+    @Test
+    void graphReadBackKeepsGrowing() throws IOException {
+        HnswGraph graph = new HnswGraph(DIMENSIONS, 8, 40);
+        for (int i = 0; i < 50; i++) {
+            graph.add(randomUnitVector());
+        }
+
+        HnswGraph read = roundTrip(graph);
+        float[] added = randomUnitVector();
+        int node = read.add(added);
+
+        List<HnswGraph.Neighbor> found = read.search(added, 1, 50);
+        assertEquals(node, found.get(0).node);
+        assertTrue(found.get(0).similarity > 0.999f);
+    }
+
+    @Test
+    void searchFindsMostOfTheTrueNearestNeighboursAndNoDeletedOnes() {
+        HnswGraph graph = new HnswGraph(DIMENSIONS, 8, 40);
+        for (int i = 0; i < 2000; i++) {
+            graph.add(randomUnitVector());
+        }
+        for (int node = 0; node < 2000; node += 5) {
+            graph.delete(node);
+        }
+
+        int found = 0;
+        int wanted = 0;
+        for (int i = 0; i < 50; i++) {
+            float[] query = randomUnitVector();
+            Set<Integer> nearest = bruteForce(graph, query, 10);
+            for (HnswGraph.Neighbor neighbor : graph.search(query, 10, 64)) {
+                assertFalse(graph.isDeleted(neighbor.node));
+                if (nearest.contains(neighbor.node)) found++;
+            }
+            wanted += nearest.size();
+        }
+
+        assertTrue(found >= 0.9 * wanted, "recall " + found + "/" + wanted);
+    }
+
+    @Test
+    void emptyGraphRoundTrips() throws IOException {
+        HnswGraph read = roundTrip(new HnswGraph(DIMENSIONS, 8, 40));
+
+        assertEquals(0, read.size());
+        assertTrue(read.search(randomUnitVector(), 5, 50).isEmpty());
+    }
+
+    @Test
+    void unknownFormatIsRejected() {
+        byte[] data = {0, 0, 0, 99};
+        assertThrows(IOException.class, () -> HnswGraph.read(new DataInputStream(new ByteArrayInputStream(data))));
+    }
+
+    // The k live nodes most similar to the query, compared one by one
+    private static Set<Integer> bruteForce(HnswGraph graph, float[] query, int k) {
+        List<HnswGraph.Neighbor> all = new ArrayList<>();
+        for (int node = 0; node < graph.size(); node++) {
+            if (!graph.isDeleted(node)) {
+                all.add(new HnswGraph.Neighbor(node, NoteEmbedder.dot(query, graph.vector(node))));
+            }
+        }
+        all.sort((a, b) -> Float.compare(b.similarity, a.similarity));
+        Set<Integer> nearest = new HashSet<>();
+        for (HnswGraph.Neighbor neighbor : all.subList(0, Math.min(k, all.size()))) {
+            nearest.add(neighbor.node);
+        }
+        return nearest;
+    }
+
+    private static HnswGraph roundTrip(HnswGraph graph) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            graph.write(out);
+        }
+        return HnswGraph.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private float[] randomUnitVector() {
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+}
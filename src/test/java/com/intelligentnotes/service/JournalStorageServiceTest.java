@@ -0,0 +1,134 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JournalStorageServiceTest extends StorageServiceContractTest {
+    @TempDir
+    Path crashDirectory;
+
+    @Override
+    StorageService open(Path directory) {
+        return new JournalStorageService(directory.toFile(), Durability.PER_BATCH);
+    }
+
+    @Test
+    void recoversTheRecordsBeforeATornTail() throws IOException {
+        Path live = crashDirectory.resolve("live");
+        JournalStorageService service = new JournalStorageService(live.toFile(), Durability.PER_BATCH);
+        Folder folder = new Folder(null, "Inbox");
+        service.saveFolder(folder, null);
+        service.saveNote(new Note(null, "First", "one"), folder);
+        long before = Files.size(live.resolve("journal.log"));
+        service.saveNote(new Note(null, "Second", "two"), folder);
+        long after = Files.size(live.resolve("journal.log"));
+
+        // The machine stopped halfway through writing the second save
+        Path crashed = crashImage(live, "crashed");
+        truncate(crashed.resolve("journal.log"), before + (after - before) / 2);
+        service.close();
+
+        JournalStorageService recovered = new JournalStorageService(crashed.toFile(), Durability.PER_BATCH);
+        try {
+            assertEquals(List.of("First"), titles(recovered.getRootFolders().get(0)));
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    void recordsAppendedAfterATornTailAreReplayed() throws IOException {
+        Path live = crashDirectory.resolve("live");
+        JournalStorageService service = new JournalStorageService(live.toFile(), Durability.PER_BATCH);
+        Folder folder = new Folder(null, "Inbox");
+        service.saveFolder(folder, null);
+        service.saveNote(new Note(null, "First", "one"), folder);
+
+        // The machine stopped while appending the next record
+        Path crashed = crashImage(live, "crashed");
+        Files.write(crashed.resolve("journal.log"), "{\"sequence\":99,\"ty".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        service.close();
+
+        // Recover, keep working, then crash again before any checkpoint
+        JournalStorageService recovered = new JournalStorageService(crashed.toFile(), Durability.PER_BATCH);
+        Folder recoveredFolder = recovered.getRootFolders().get(0);
+        recovered.saveNote(new Note(null, "Second", "two"), recoveredFolder);
+        Path crashedAgain = crashImage(crashed, "crashed-again");
+        recovered.close();
+
+        JournalStorageService reopened = new JournalStorageService(crashedAgain.toFile(), Durability.PER_BATCH);
+        try {
+            assertEquals(List.of("First", "Second"), titles(reopened.getRootFolders().get(0)));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void damagedRecordInTheMiddleOnlyLosesItself() throws IOException {
+        Path live = crashDirectory.resolve("live");
+        JournalStorageService service = new JournalStorageService(live.toFile(), Durability.PER_BATCH);
+        Folder folder = new Folder(null, "Inbox");
+        service.saveFolder(folder, null);
+        service.saveNote(new Note(null, "First", "one"), folder);
+        service.saveNote(new Note(null, "Second", "two"), folder);
+
+        // Garble the first note's record but leave its line ending alone
+        Path crashed = crashImage(live, "crashed");
+        Path log = crashed.resolve("journal.log");
+        String text = new String(Files.readAllBytes(log), StandardCharsets.UTF_8);
+        int start = text.indexOf("\"First\"");
+        Files.write(log, (text.substring(0, start) + "#".repeat(12) + text.substring(start + 12))
+                .getBytes(StandardCharsets.UTF_8));
+        long size = Files.size(log);
+        service.close();
+
+        JournalStorageService recovered = new JournalStorageService(crashed.toFile(), Durability.PER_BATCH);
+        try {
+            assertEquals(List.of("Second"), titles(recovered.getRootFolders().get(0)));
+            assertEquals(size, Files.size(log));
+        } finally {
+            recovered.close();
+        }
+    }
+
+    // A copy of the journal as a crash would leave it: whatever was synced, no checkpoint on close
+    private Path crashImage(Path journal, String name) throws IOException {
+        Path copy = crashDirectory.resolve(name);
+        Files.createDirectories(copy);
+        try (var files = Files.list(journal)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+        return copy;
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static List<String> titles(Folder folder) {
+        List<String> titles = new ArrayList<>();
+        for (Note note : folder.getNotes()) {
+            titles.add(note.getTitle());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,125 @@
+package com.intelligentnotes.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.intelligentnotes.model.Note;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NotePackStoreTest {
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    NotePackStoreTest() {
+        objectMapper.registerModule(new JavaTimeModule());
+    }
+
+    @Test
+    void tornRecordAtTheEndOfTheActiveSegmentIsCutOff() throws IOException {
+        Path pack = directory.resolve("pack");
+        write(pack, new Note("a", "A", "first"), new Note("b", "B", "second"));
+        Path segment = pack.resolve("segment_1.pack");
+        long size = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 1, 0, 7, 7}, StandardOpenOption.APPEND);
+
+        NotePackStore store = open(pack);
+        try {
+            assertEquals("first", store.readContent("a"));
+            assertEquals("second", store.readContent("b"));
+            assertEquals(size, Files.size(segment));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void damagedRecordInASealedSegmentIsSkippedNotCut() throws IOException {
+        Path pack = sealedAndActive();
+        Path sealed = pack.resolve("segment_1.pack");
+        long size = Files.size(sealed);
+        garble(sealed, "first");
+
+        NotePackStore store = open(pack);
+        try {
+            assertFalse(store.contains("a"));
+            assertEquals("second", store.readContent("b"));
+            assertEquals("third", store.readContent("c"));
+            assertEquals(size, Files.size(sealed));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void sealedSegmentWithADamagedLengthIsNotOpened() throws IOException {
+        Path pack = sealedAndActive();
+        Path sealed = pack.resolve("segment_1.pack");
+        byte[] bytes = Files.readAllBytes(sealed);
+        long size = bytes.length;
+        bytes[0] = 0x7f;
+        Files.write(sealed, bytes);
+
+        assertThrows(IOException.class, () -> open(pack));
+        assertEquals(size, Files.size(sealed));
+    }
+
+    // segment_1 holds notes a and b and is sealed; segment_2 holds note c and is active
+    private Path sealedAndActive() throws IOException {
+        Path pack = directory.resolve("pack");
+        write(pack, new Note("a", "A", "first"), new Note("b", "B", "second"));
+        Path other = directory.resolve("other");
+        write(other, new Note("c", "C", "third"));
+        Files.move(other.resolve("segment_1.pack"), pack.resolve("segment_2.pack"), StandardCopyOption.REPLACE_EXISTING);
+        assertTrue(Files.exists(pack.resolve("segment_1.pack")));
+        return pack;
+    }
+
+    private void write(Path pack, Note... notes) throws IOException {
+        NotePackStore store = open(pack);
+        try {
+            for (Note note : notes) {
+                store.put(note);
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    private NotePackStore open(Path pack) throws IOException {
+        return new NotePackStore(pack.toFile(), objectMapper, Durability.PER_WRITE);
+    }
+
+    // Flip the bytes of a note's content in place, as a bad sector would
+    private static void garble(Path segment, String content) throws IOException {
+        byte[] bytes = Files.readAllBytes(segment);
+        byte[] target = content.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + target.length <= bytes.length; i++) {
+            boolean match = true;
+            for (int k = 0; k < target.length && match; k++) {
+                match = bytes[i + k] == target[k];
+            }
+            if (match) {
+                for (int k = 0; k < target.length; k++) {
+                    bytes[i + k] ^= 0x20;
+                }
+                Files.write(segment, bytes);
+                return;
+            }
+        }
+        throw new AssertionError(content + " not found in " + segment);
+    }
+}
@@ -0,0 +1,168 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NoteSearchIndexTest {
+    private final Folder inbox = new Folder("inbox", "Inbox");
+    private final Folder archive = new Folder("archive", "Archive");
+    private final NoteSearchIndex index = new NoteSearchIndex();
+
+    @BeforeEach
+    void buildIndex() {
+        inbox.addNote(new Note("groceries", "Groceries", "<p>Buy <b>apples</b> and bread</p>"));
+        inbox.addNote(new Note("trip", "Trip plan", "<p>Pack the tent</p>"));
+        archive.addNote(new Note("old", "Old apples", "<p>Last year's harvest</p>"));
+        inbox.addSubFolder(archive);
+        index.rebuild(Collections.singletonList(inbox));
+    }
+
+    @Test
+    void findsNotesByTitleAndByTheTextOfTheirContent() {
+        assertEquals(Arrays.asList("groceries", "old"), sorted(ids(index.search("apples", 10))));
+        assertEquals(List.of("trip"), ids(index.search("tent", 10)));
+        // Markup is not text
+        assertTrue(index.search("b", 10).isEmpty());
+    }
+
+    @Test
+    void savedNoteIsFoundByWhatItSaysNow() {
+        long generation = index.getGeneration();
+        Note trip = inbox.getNotes().get(1);
+        trip.setContent("<p>Book the hotel</p>");
+        index.update(trip);
+
+        assertTrue(index.search("tent", 10).isEmpty());
+        assertEquals(List.of("trip"), ids(index.search("hotel", 10)));
+        assertEquals(3, index.size());
+        assertTrue(index.getGeneration() > generation);
+    }
+
+    @Test
+    void deletedNotesAndFoldersAreNoLongerFound() {
+        index.remove("groceries");
+        assertEquals(List.of("old"), ids(index.search("apples", 10)));
+
+        index.removeFolder(archive);
+        assertTrue(index.search("apples", 10).isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void manyRewritesOfOneNoteLeaveASingleDocument() {
+        Note trip = inbox.getNotes().get(1);
+        for (int i = 0; i < 3000; i++) {
+            trip.setContent("<p>Draft " + i + "</p>");
+            index.update(trip);
+        }
+
+        assertEquals(List.of("trip"), ids(index.search("2999", 10)));
+        assertTrue(index.search("1500", 10).isEmpty());
+        assertEquals(3, index.liveCount());
+        assertTrue(index.documentCount() < 3000);
+    }
+
+    @Test
+    void lastWordBeingTypedMatchesTheWordsItStarts() {
+        assertEquals(List.of("trip"), ids(index.searchPrefix("pack the te", 10)));
+        assertEquals(Arrays.asList("groceries", "old"), sorted(ids(index.searchPrefix("app", 10))));
+        // Earlier words are complete
+        assertTrue(index.searchPrefix("app te", 10).isEmpty());
+        // Nor is the last one once it is followed by a space
+        assertTrue(index.searchPrefix("te ", 10).isEmpty());
+        assertTrue(index.search("te", 10).isEmpty());
+    }
+
+    @Test
+    void prefixTermsAreCountedByTheNotesTheyAreIn() {
+        Map<String, Integer> frequencies = new HashMap<>();
+        index.collectPrefixTerms("a", 10, frequencies);
+
+        assertEquals(Integer.valueOf(2), frequencies.get("apples"));
+        assertEquals(Integer.valueOf(1), frequencies.get("and"));
+        for (String term : frequencies.keySet()) {
+            assertTrue(term.startsWith("a"));
+        }
+
+        Map<String, Integer> limited = new HashMap<>();
+        index.collectPrefixTerms("a", 1, limited);
+        assertEquals(1, limited.size());
+    }
+
+    @Test
+    void phraseMatchesOnlyWordsNextToEachOtherInOrder() {
+        assertEquals(List.of("trip"), ids(index.search("\"pack the tent\"", 10)));
+        assertTrue(index.search("\"pack tent\"", 10).isEmpty());
+        assertTrue(index.search("\"tent the pack\"", 10).isEmpty());
+        // Words of a phrase do not run on from the title into the content
+        assertTrue(index.search("\"plan pack\"", 10).isEmpty());
+    }
+
+    @Test
+    void operatorsAndFieldsSelectTheNotes() {
+        assertEquals(List.of("old"), ids(index.search("title:apples", 10)));
+        assertEquals(List.of("groceries"), ids(index.search("content:apples", 10)));
+        assertEquals(List.of("groceries"), ids(index.search("apples -harvest", 10)));
+        assertEquals(Arrays.asList("groceries", "old", "trip"), sorted(ids(index.search("apples OR tent", 10))));
+        assertTrue(index.search("apples tent", 10).isEmpty());
+    }
+
+    @Test
+    void pageAfterACursorContinuesTheRanking() {
+        for (int i = 0; i < 30; i++) {
+            inbox.addNote(new Note("tent" + i, "Tent " + i, "<p>tent" + " pegs".repeat(i % 7) + "</p>"));
+        }
+        index.rebuild(Collections.singletonList(inbox));
+        List<String> all = ids(index.search("tent", 0));
+
+        List<String> paged = new ArrayList<>();
+        SearchHit after = null;
+        List<SearchHit> page;
+        while (!(page = index.search("tent", 8, after)).isEmpty()) {
+            paged.addAll(ids(page));
+            after = SearchHit.fromCursor(page.get(page.size() - 1).toCursor());
+        }
+
+        assertEquals(31, all.size());
+        assertEquals(all, paged);
+    }
+
+    @Test
+    void cursorsOutliveTheirHitAndRejectAnythingElse() {
+        SearchHit hit = new SearchHit("trip", 1.25, "title", false);
+        SearchHit restored = SearchHit.fromCursor(hit.toCursor());
+
+        assertEquals("trip", restored.getNoteId());
+        assertEquals(1.25, restored.getScore());
+        assertFalse(restored.isExact());
+        assertThrows(IllegalArgumentException.class, () -> SearchHit.fromCursor("trip"));
+        assertThrows(IllegalArgumentException.class, () -> SearchHit.fromCursor("x1:trip"));
+    }
+
+    private static List<String> ids(List<SearchHit> hits) {
+        List<String> ids = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            ids.add(hit.getNoteId());
+        }
+        return ids;
+    }
+
+    private static List<String> sorted(List<String> ids) {
+        Collections.sort(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,88 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Note;
+import com.intelligentnotes.model.NoteContentLoader;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NoteTextTest {
+    @Test
+    void tagsBecomeWordBreaksAndWhitespaceCollapses() {
+        assertEquals("Buy apples and bread", NoteText.extract("<p>Buy <b>apples</b> and bread</p>"));
+        assertEquals("one two", NoteText.extract("<p>one</p><p>two</p>"));
+        assertEquals("spaced out", NoteText.extract("  \n spaced \t out  "));
+        assertEquals("", NoteText.extract(null));
+    }
+
+    @Test
+    void entitiesAreDecodedAndUnknownOnesKept() {
+        assertEquals("Fish & chips <3 \u00E9t\u00E9", NoteText.extract("Fish &amp; chips &lt;3 &#233;t&#xE9;"));
+        assertEquals("a b", NoteText.extract("a&nbsp;b"));
+        assertEquals("cooperate", NoteText.extract("co&shy;operate"));
+        assertEquals("&bogus; &#0; & so", NoteText.extract("&bogus; &#0; & so"));
+    }
+
+    @Test
+    void scriptsStylesAndCommentsAreNotText() {
+        assertEquals("shown", NoteText.extract("<script>var x = '<p>hidden</p>';</script>shown"));
+        assertEquals("text more", NoteText.extract("<style>p { color: red }</style>text<!-- <b>x</b> -->more"));
+        assertEquals("link", NoteText.extract("<a title=\"a > b\">link</a>"));
+        // A less-than sign that starts no tag is text
+        assertEquals("1 < 2 and 3<4", NoteText.extract("1 < 2 and 3<4"));
+    }
+
+    @Test
+    void noteKeepsItsTextUntilItsContentChanges() {
+        Note note = new Note("n", "Title", "<p>first</p>");
+
+        assertEquals("first", NoteText.plainText(note));
+        assertEquals("first", note.getPlainText());
+
+        note.setContent("<p>second</p>");
+        assertNull(note.getPlainText());
+        assertEquals("second", NoteText.plainText(note));
+
+        // Text extracted from an older body is not kept
+        int version = note.getContentVersion();
+        note.setContent("<p>third</p>");
+        note.setPlainText(version, "second");
+        assertNull(note.getPlainText());
+    }
+
+    @Test
+    void bodyLoadedOnDemandIsOnlyStrippedOnce() {
+        Map<String, String> texts = new HashMap<>();
+        int[] loads = new int[1];
+        NoteContentLoader loader = new NoteContentLoader() {
+            @Override
+            public String loadContent(Note note) {
+                loads[0]++;
+                return "<p>from disk</p>";
+            }
+
+            @Override
+            public String loadPlainText(Note note) {
+                return texts.get(note.getId());
+            }
+
+            @Override
+            public void storePlainText(Note note, String content, String plainText) {
+                texts.put(note.getId(), plainText);
+            }
+        };
+        Note note = new Note("n", "Title", null);
+        note.setContentLoader(loader);
+
+        assertEquals("from disk", NoteText.plainText(note));
+        assertEquals("from disk", NoteText.plainText(note));
+
+        assertEquals(1, loads[0]);
+        // Kept with the loader, not on the note
+        assertNull(note.getPlainText());
+    }
+}
@@ -0,0 +1,130 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NoteTimestampIndexTest {
+    private static final LocalDate TODAY = LocalDate.of(2026, 3, 15);
+
+    private final NoteTimestampIndex index = new NoteTimestampIndex();
+    private final List<Note> notes = new ArrayList<>();
+
+    @BeforeEach
+    void indexNotes() {
+        // Two notes share their times; jan was updated after feb although created before it
+        notes.add(note("jan", "2026-01-10T09:00", "2026-03-14T12:00"));
+        notes.add(note("feb", "2026-02-10T09:00", "2026-03-13T12:00"));
+        notes.add(note("mar", "2026-03-10T09:00", "2026-03-15T08:00"));
+        notes.add(note("twin", "2026-03-10T09:00", "2026-03-15T08:00"));
+        notes.add(note("old", "2025-06-01T09:00", "2025-06-01T09:00"));
+        for (Note note : notes) {
+            index.put(note);
+        }
+    }
+
+    @Test
+    void newestComesFirstAndEqualTimesGoByNoteId() {
+        assertEquals(Arrays.asList("mar", "twin", "jan", "feb", "old"),
+                ids(index.newest(Collections.emptyList(), null, 0)));
+        assertEquals(Arrays.asList("mar", "twin"), ids(index.newest(Collections.emptyList(), null, 2)));
+    }
+
+    @Test
+    void rangesKeepOnlyTheNotesInAllOfThem() {
+        SearchQuery.DateRange thisYear = range(NoteTimestampIndex.CREATED, "2026");
+        SearchQuery.DateRange updatedToday = range(NoteTimestampIndex.UPDATED, "today");
+
+        assertEquals(Arrays.asList("mar", "twin", "feb", "jan"), ids(index.newest(List.of(thisYear), null, 0)));
+        assertEquals(Arrays.asList("mar", "twin"), ids(index.newest(List.of(updatedToday), null, 0)));
+        assertEquals(Arrays.asList("mar", "twin"), ids(index.newest(List.of(thisYear, updatedToday), null, 0)));
+        // Ordered by the first range's field
+        assertEquals(Arrays.asList("jan", "feb"),
+                ids(index.newest(List.of(range(NoteTimestampIndex.UPDATED, "<today"), thisYear), null, 0)));
+        assertTrue(index.newest(List.of(range(NoteTimestampIndex.CREATED, "2024")), null, 0).isEmpty());
+    }
+
+    @Test
+    void pagesFollowOnFromTheirLastHit() {
+        List<String> paged = new ArrayList<>();
+        SearchHit after = null;
+        List<SearchHit> page;
+        while (!(page = index.newest(Collections.emptyList(), after, 2)).isEmpty()) {
+            paged.addAll(ids(page));
+            after = SearchHit.fromCursor(page.get(page.size() - 1).toCursor());
+        }
+
+        assertEquals(ids(index.newest(Collections.emptyList(), null, 0)), paged);
+    }
+
+    @Test
+    void changedAndRemovedNotesMoveOutOfTheirOldPlace() {
+        Note old = notes.get(4);
+        old.setUpdatedAt(LocalDateTime.parse("2026-03-15T10:00"));
+        index.put(old);
+        index.remove("mar");
+
+        assertEquals(Arrays.asList("old", "twin", "jan", "feb"), ids(index.newest(Collections.emptyList(), null, 0)));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void noteWithoutATimeSortsAsTheOldest() {
+        Note undated = note("undated", "2026-01-01T00:00", "2026-01-01T00:00");
+        undated.setUpdatedAt(null);
+        index.put(undated);
+
+        List<String> newest = ids(index.newest(Collections.emptyList(), null, 0));
+        assertEquals("undated", newest.get(newest.size() - 1));
+        assertEquals(Arrays.asList("old", "undated"),
+                ids(index.newest(List.of(range(NoteTimestampIndex.UPDATED, "<2026")), null, 0)));
+    }
+
+    @Test
+    void searchWithADateFilterOnlyRanksNotesInTheRange() {
+        Folder folder = new Folder("folder", "Folder");
+        for (Note note : notes) {
+            note.setContent("<p>harbour</p>");
+            folder.addNote(note);
+        }
+        NoteSearchIndex searchIndex = new NoteSearchIndex();
+        searchIndex.rebuild(Collections.singletonList(folder));
+
+        List<String> found = ids(searchIndex.search("harbour created:2026-03-10", 10, null, index));
+        Collections.sort(found);
+
+        assertEquals(Arrays.asList("mar", "twin"), found);
+        // A filter alone lists the notes in the range, newest first
+        assertEquals(Arrays.asList("feb", "jan"), ids(searchIndex.search("created:2026-01..2026-02", 10, null, index)));
+    }
+
+    private static Note note(String id, String created, String updated) {
+        Note note = new Note(id, id, "<p>" + id + "</p>");
+        note.setCreatedAt(LocalDateTime.parse(created));
+        note.setUpdatedAt(LocalDateTime.parse(updated));
+        return note;
+    }
+
+    private static SearchQuery.DateRange range(int field, String value) {
+        return SearchQuery.DateRange.parse(field, value, TODAY);
+    }
+
+    private static List<String> ids(List<SearchHit> hits) {
+        List<String> ids = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            ids.add(hit.getNoteId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,86 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NoteVectorIndexTest {
+    @TempDir
+    Path directory;
+
+    private final Folder folder = new Folder("folder", "Folder");
+
+    @BeforeEach
+    void addNotes() {
+        folder.addNote(new Note("garden", "Garden", "<p>Planted tomatoes and watered the seedlings in the greenhouse</p>"));
+        folder.addNote(new Note("car", "Car", "<p>The engine needs new spark plugs and an oil change</p>"));
+        folder.addNote(new Note("trip", "Trip", "<p>Booked flights and a hotel by the beach</p>"));
+    }
+
+    @Test
+    void closestNoteInMeaningComesFirst() {
+        NoteVectorIndex index = open();
+        index.validate(Collections.singletonList(folder));
+
+        assertEquals("garden", index.search("growing tomato plants", 3).get(0).getNoteId());
+        assertEquals("car", index.search("engine oil", 3).get(0).getNoteId());
+        assertTrue(index.search("the and a", 3).isEmpty());
+    }
+
+    @Test
+    void savedIndexAnswersTheSameAfterReopening() throws IOException {
+        NoteVectorIndex index = open();
+        index.validate(Collections.singletonList(folder));
+        List<String> before = ids(index.search("beach hotel", 3));
+        index.save(file());
+
+        NoteVectorIndex reopened = open();
+        assertEquals(3, reopened.size());
+        assertEquals(before, ids(reopened.search("beach hotel", 3)));
+    }
+
+    @Test
+    void removedAndChangedNotesAreFoundByWhatTheySayNow() {
+        NoteVectorIndex index = open();
+        index.validate(Collections.singletonList(folder));
+
+        index.remove("car");
+        Note trip = folder.getNotes().get(2);
+        trip.setContent("<p>Repaired the engine of the old tractor</p>");
+        index.update(trip);
+
+        List<String> found = ids(index.search("engine repair", 3));
+        assertFalse(found.contains("car"));
+        assertEquals("trip", found.get(0));
+        assertEquals(2, index.size());
+    }
+
+    private NoteVectorIndex open() {
+        return NoteVectorIndex.open(file());
+    }
+
+    private File file() {
+        return directory.resolve("vectors.bin").toFile();
+    }
+
+    private static List<String> ids(List<SearchHit> hits) {
+        List<String> ids = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            ids.add(hit.getNoteId());
+        }
+        return ids;
+    }
+}
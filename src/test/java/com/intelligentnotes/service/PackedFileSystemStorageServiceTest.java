@@ -0,0 +1,10 @@
+package com.intelligentnotes.service;
+
+import java.nio.file.Path;
+
+class PackedFileSystemStorageServiceTest extends StorageServiceContractTest {
+    @Override
+    StorageService open(Path directory) {
+        return new FileSystemStorageService(directory.toFile(), Durability.PER_BATCH, true, 0);
+    }
+}
@@ -0,0 +1,150 @@
+package com.intelligentnotes.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import com.intelligentnotes.model.NoteContentLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentSearchIndexTest {
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void reopenedIndexOnlyReindexesNotesChangedSinceItWasWritten() {
+        Folder folder = new Folder("inbox", "Inbox");
+        folder.addNote(new Note("a", "Alpha", "<p>first harbour</p>"));
+        folder.addNote(new Note("b", "Beta", "<p>second lighthouse</p>"));
+        folder.addNote(new Note("c", "Gamma", "<p>third anchor</p>"));
+        PersistentSearchIndex index = open();
+        index.validate(Collections.singletonList(folder));
+        index.close();
+
+        // Reload the tree with bodies read on demand, as the storage does, and change one note
+        Map<String, String> bodies = new HashMap<>();
+        List<String> loaded = new ArrayList<>();
+        NoteContentLoader loader = note -> {
+            loaded.add(note.getId());
+            return bodies.get(note.getId());
+        };
+        Folder reloaded = new Folder("inbox", "Inbox");
+        for (Note note : folder.getNotes()) {
+            bodies.put(note.getId(), note.getContent());
+            Note lazy = note.copy();
+            lazy.setContent(null);
+            lazy.setContentLoader(loader);
+            reloaded.addNote(lazy);
+        }
+        Note changed = reloaded.getNotes().get(1);
+        bodies.put("b", "<p>second beacon</p>");
+        changed.setUpdatedAt(changed.getUpdatedAt().plusSeconds(1));
+
+        PersistentSearchIndex reopened = open();
+        try {
+            reopened.validate(Collections.singletonList(reloaded));
+
+            assertEquals(List.of("b"), loaded);
+            assertEquals(List.of("a"), ids(reopened.search("harbour", 10)));
+            assertEquals(List.of("b"), ids(reopened.search("beacon", 10)));
+            assertTrue(reopened.search("lighthouse", 10).isEmpty());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void notesDeletedWhileClosedAreDroppedOnOpen() {
+        Folder folder = new Folder("inbox", "Inbox");
+        folder.addNote(new Note("a", "Alpha", "<p>kept harbour</p>"));
+        folder.addNote(new Note("b", "Beta", "<p>deleted harbour</p>"));
+        PersistentSearchIndex index = open();
+        index.validate(Collections.singletonList(folder));
+        index.close();
+
+        folder.getNotes().remove(1);
+        PersistentSearchIndex reopened = open();
+        try {
+            reopened.validate(Collections.singletonList(folder));
+            assertEquals(List.of("a"), ids(reopened.search("harbour", 10)));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void mergedSegmentsStillFindEveryNote() {
+        Folder folder = new Folder("inbox", "Inbox");
+        // Each session saves one note and writes it out as a segment on close
+        for (int i = 0; i < 12; i++) {
+            PersistentSearchIndex index = open();
+            index.validate(Collections.singletonList(folder));
+            Note note = new Note("note" + i, "Note " + i, "<p>shared word" + i + "</p>");
+            folder.addNote(note);
+            index.update(note);
+            index.close();
+        }
+
+        PersistentSearchIndex reopened = open();
+        try {
+            reopened.validate(Collections.singletonList(folder));
+            assertEquals(12, reopened.search("shared", 20).size());
+            assertEquals(List.of("note7"), ids(reopened.search("word7", 20)));
+        } finally {
+            reopened.close();
+        }
+        File[] segments = directory.toFile().listFiles((dir, name) -> name.endsWith(".idx"));
+        assertTrue(segments.length < 12);
+    }
+
+    @Test
+    void prefixSearchReadsTermsFromWrittenSegmentsAndTheDelta() {
+        Folder folder = new Folder("inbox", "Inbox");
+        folder.addNote(new Note("a", "Alpha", "<p>lantern festival</p>"));
+        folder.addNote(new Note("b", "Beta", "<p>lanterns everywhere</p>"));
+        PersistentSearchIndex index = open();
+        index.validate(Collections.singletonList(folder));
+        index.close();
+
+        PersistentSearchIndex reopened = open();
+        try {
+            reopened.validate(Collections.singletonList(folder));
+            Note added = new Note("c", "Gamma", "<p>a lanternfish</p>");
+            folder.addNote(added);
+            reopened.update(added);
+
+            List<String> found = ids(reopened.searchPrefix("lant", 10));
+            Collections.sort(found);
+            assertEquals(List.of("a", "b", "c"), found);
+            // The whole word ranks its own notes first
+            assertEquals("a", reopened.searchPrefix("lantern", 10).get(0).getNoteId());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private PersistentSearchIndex open() {
+        return new PersistentSearchIndex(directory.toFile(), objectMapper);
+    }
+
+    private static List<String> ids(List<SearchHit> hits) {
+        List<String> ids = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            ids.add(hit.getNoteId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,170 @@
+package com.intelligentnotes.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchQueryTest {
+    @Test
+    void wordsAreAllRequired() {
+        assertEquals("(AND plan release)", parse("plan release"));
+        assertEquals("(AND plan release)", parse("plan AND release"));
+        assertEquals("plan", parse("plan plan"));
+    }
+
+    @Test
+    void orBindsLooserThanAnd() {
+        assertEquals("(OR (AND ship release) draft)", parse("ship release OR draft"));
+        assertEquals("(AND ship (OR release draft))", parse("ship (release OR draft)"));
+    }
+
+    @Test
+    void notAndMinusExcludeTheNextPart() {
+        assertEquals("(AND plan -draft)", parse("plan NOT draft"));
+        assertEquals("(AND plan -draft)", parse("plan -draft"));
+        assertEquals("(AND plan -(OR draft old))", parse("plan -(draft OR old)"));
+        // A lone minus is not an operator
+        assertEquals("plan", parse("plan -"));
+    }
+
+    @Test
+    void operatorsAreOnlyRecognizedInUpperCase() {
+        assertEquals("(AND this or that)", parse("this or that"));
+        assertEquals("(AND this not that)", parse("this not that"));
+    }
+
+    @Test
+    void quotedWordsFormAPhrase() {
+        assertEquals("(AND \"ship the release\" today)", parse("\"ship the release\" today"));
+        // A single quoted word is taken as typed
+        assertEquals("=plan", parse("\"plan\""));
+    }
+
+    @Test
+    void fieldPrefixLimitsTheNextWordOrPhrase() {
+        assertEquals("(AND title:plan release)", parse("title:plan release"));
+        assertEquals("summary:\"next steps\"", parse("summary:\"next steps\""));
+        // An unknown field name is part of the word
+        assertEquals("(AND author plan)", parse("author:plan"));
+    }
+
+    @Test
+    void unbalancedQuotesAndParenthesesAreClosedAtTheEnd() {
+        assertEquals("(AND plan \"ship the\")", parse("plan \"ship the"));
+        assertEquals("(AND plan (OR ship draft))", parse("plan (ship OR draft"));
+        assertEquals("(AND plan ship)", parse("plan) ship"));
+        assertEquals("plan", parse("((plan"));
+    }
+
+    @Test
+    void emptyQueriesHaveNothingToSearchFor() {
+        assertNull(SearchQuery.parse("", false).getRoot());
+        assertNull(SearchQuery.parse("  \"\" () ", false).getRoot());
+        assertNull(SearchQuery.parse(null, false).getRoot());
+    }
+
+    @Test
+    void onlyTheWordEndingAPrefixQueryIsAPrefix() {
+        assertEquals("(AND plan rel*)", describe(SearchQuery.parse("plan rel", true).getRoot()));
+        assertEquals("(AND plan rel)", describe(SearchQuery.parse("plan rel ", true).getRoot()));
+        assertEquals("(AND plan \"rel ease\")", describe(SearchQuery.parse("plan \"rel ease\"", true).getRoot()));
+    }
+
+    @Test
+    void datesNamePeriodsOfWholeDays() {
+        LocalDate today = LocalDate.of(2026, 3, 15);
+
+        assertRange("2026-03-15", "2026-03-16", "today", today);
+        assertRange("2026-03-14", "2026-03-15", "yesterday", today);
+        assertRange("2026-03-09", "2026-03-16", "week", today);
+        assertRange("2026-03-06", "2026-03-16", "10d", today);
+        assertRange("2025-01-01", "2026-01-01", "2025", today);
+        assertRange("2026-02-01", "2026-03-01", "2026-2", today);
+        assertRange("2026-02-28", "2026-03-01", "2026-02-28", today);
+    }
+
+    @Test
+    void rangesAndComparisonsMayBeOpenAtEitherEnd() {
+        LocalDate today = LocalDate.of(2026, 3, 15);
+
+        assertRange("2025-01-01", "2026-03-01", "2025..2026-02", today);
+        assertRange("2026-01-01", null, "2026..", today);
+        assertRange(null, "2026-03-15", "..yesterday", today);
+        assertRange("2026-01-01", null, ">2025", today);
+        assertRange("2025-01-01", null, ">=2025", today);
+        assertRange(null, "2025-01-01", "<2025", today);
+        assertRange(null, "2026-01-01", "<=2025", today);
+    }
+
+    @Test
+    void valuesThatAreNotDatesAreSearchedAsWords() {
+        LocalDate today = LocalDate.of(2026, 3, 15);
+        for (String value : new String[]{"soon", "..", "0d", "2026-13", "2026-02-30", "2026-2-3"}) {
+            assertNull(SearchQuery.DateRange.parse(NoteTimestampIndex.CREATED, value, today), value);
+        }
+
+        SearchQuery filtered = SearchQuery.parse("plan updated:2026-02", false);
+        assertEquals("plan", describe(filtered.getRoot()));
+        assertEquals(1, filtered.getDateRanges().size());
+        assertEquals(NoteTimestampIndex.UPDATED, filtered.getDateRanges().get(0).field);
+
+        SearchQuery unfiltered = SearchQuery.parse("plan created:soon", false);
+        assertEquals("(AND plan created soon)", describe(unfiltered.getRoot()));
+        assertTrue(unfiltered.getDateRanges().isEmpty());
+    }
+
+    private static void assertRange(String from, String to, String value, LocalDate today) {
+        SearchQuery.DateRange range = SearchQuery.DateRange.parse(NoteTimestampIndex.UPDATED, value, today);
+        assertEquals(from == null ? Long.MIN_VALUE : NoteTimestampIndex.millis(LocalDate.parse(from)), range.from);
+        assertEquals(to == null ? Long.MAX_VALUE : NoteTimestampIndex.millis(LocalDate.parse(to)), range.to);
+    }
+
+    private static String parse(String query) {
+        return describe(SearchQuery.parse(query, false).getRoot());
+    }
+
+    // A compact rendering of the parsed tree: fields before words, = for literal words, * for prefixes
+    private static String describe(SearchQuery.Node node) {
+        if (node instanceof SearchQuery.Term) {
+            SearchQuery.Term term = (SearchQuery.Term) node;
+            return field(term.fields) + (term.literal ? "=" : "") + term.text + (term.prefix ? "*" : "");
+        }
+        if (node instanceof SearchQuery.Phrase) {
+            SearchQuery.Phrase phrase = (SearchQuery.Phrase) node;
+            return field(phrase.fields) + "\"" + String.join(" ", phrase.terms) + "\"";
+        }
+        StringBuilder out = new StringBuilder();
+        if (node instanceof SearchQuery.And) {
+            out.append("(AND");
+            for (SearchQuery.Node part : ((SearchQuery.And) node).required) {
+                out.append(' ').append(describe(part));
+            }
+            for (SearchQuery.Node part : ((SearchQuery.And) node).excluded) {
+                out.append(" -").append(describe(part));
+            }
+        } else {
+            out.append("(OR");
+            for (SearchQuery.Node part : ((SearchQuery.Or) node).clauses) {
+                out.append(' ').append(describe(part));
+            }
+        }
+        return out.append(')').toString();
+    }
+
+    private static String field(int fields) {
+        switch (fields) {
+            case 1 << NoteSearchIndex.FIELD_TITLE:
+                return "title:";
+            case 1 << NoteSearchIndex.FIELD_CONTENT:
+                return "content:";
+            case 1 << NoteSearchIndex.FIELD_SUMMARY:
+                return "summary:";
+            default:
+                return "";
+        }
+    }
+}
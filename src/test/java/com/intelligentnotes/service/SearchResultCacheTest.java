@@ -0,0 +1,103 @@
+package com.intelligentnotes.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SearchResultCacheTest {
+    private final List<String> searched = new ArrayList<>();
+
+    @Test
+    void repeatedSearchIsServedFromTheCache() {
+        SearchResultCache cache = new SearchResultCache();
+
+        List<SearchHit> first = cache.get(SearchResultCache.FULL, "harbour", 10, null, 1, search("harbour"));
+        List<SearchHit> again = cache.get(SearchResultCache.FULL, "  harbour ", 10, null, 1, search("harbour"));
+
+        assertSame(first, again);
+        assertEquals(List.of("harbour"), searched);
+    }
+
+    @Test
+    void newerGenerationDropsEveryEntry() {
+        SearchResultCache cache = new SearchResultCache();
+        cache.get(SearchResultCache.FULL, "harbour", 10, null, 1, search("harbour"));
+        cache.get(SearchResultCache.FULL, "lighthouse", 10, null, 1, search("lighthouse"));
+
+        cache.get(SearchResultCache.FULL, "harbour", 10, null, 2, search("harbour"));
+        cache.get(SearchResultCache.FULL, "lighthouse", 10, null, 2, search("lighthouse"));
+
+        assertEquals(List.of("harbour", "lighthouse", "harbour", "lighthouse"), searched);
+    }
+
+    @Test
+    void searchFromAnOlderGenerationIsNotCached() {
+        SearchResultCache cache = new SearchResultCache();
+        cache.get(SearchResultCache.FULL, "harbour", 10, null, 2, search("harbour"));
+
+        // A search that started before the latest edit must not replace what the newer one found
+        cache.get(SearchResultCache.FULL, "lighthouse", 10, null, 1, search("lighthouse"));
+        cache.get(SearchResultCache.FULL, "lighthouse", 10, null, 2, search("lighthouse"));
+
+        assertEquals(List.of("harbour", "lighthouse", "lighthouse"), searched);
+    }
+
+    @Test
+    void searchesDifferingInAnythingButSpacingAreCachedApart() {
+        SearchResultCache cache = new SearchResultCache();
+        SearchHit after = new SearchHit("n", 1, null, true);
+        cache.get(SearchResultCache.FULL, "a OR b", 10, null, 1, search("full"));
+        cache.get(SearchResultCache.PREFIX, "a OR b", 10, null, 1, search("prefix"));
+        cache.get(SearchResultCache.FULL, "a or b", 10, null, 1, search("lower case"));
+        cache.get(SearchResultCache.FULL, "a OR b", 20, null, 1, search("limit"));
+        cache.get(SearchResultCache.FULL, "a OR b", 10, after, 1, search("cursor"));
+        cache.get(SearchResultCache.FULL, "a OR b", "folder", 10, null, 1, search("scope"));
+        cache.get(SearchResultCache.FULL, "a  OR\tb", 10, null, 1, search("spacing"));
+
+        assertEquals(List.of("full", "prefix", "lower case", "limit", "cursor", "scope"), searched);
+    }
+
+    @Test
+    void leastRecentlyUsedSearchesAreEvictedFirst() {
+        SearchResultCache cache = new SearchResultCache(2, 100);
+        cache.get(SearchResultCache.FULL, "a", 10, null, 1, search("a"));
+        cache.get(SearchResultCache.FULL, "b", 10, null, 1, search("b"));
+        cache.get(SearchResultCache.FULL, "a", 10, null, 1, search("a"));
+        cache.get(SearchResultCache.FULL, "c", 10, null, 1, search("c"));
+
+        cache.get(SearchResultCache.FULL, "a", 10, null, 1, search("a"));
+        cache.get(SearchResultCache.FULL, "b", 10, null, 1, search("b"));
+
+        assertEquals(List.of("a", "b", "c", "b"), searched);
+    }
+
+    @Test
+    void resultsLargerThanTheCacheAreNotKept() {
+        SearchResultCache cache = new SearchResultCache(10, 3);
+        cache.get(SearchResultCache.FULL, "common", 0, null, 1, search("common", 5));
+        cache.get(SearchResultCache.FULL, "common", 0, null, 1, search("common", 5));
+
+        assertEquals(List.of("common", "common"), searched);
+    }
+
+    private Supplier<List<SearchHit>> search(String name) {
+        return search(name, 1);
+    }
+
+    // Records that the search ran and finds the given number of hits
+    private Supplier<List<SearchHit>> search(String name, int count) {
+        return () -> {
+            searched.add(name);
+            List<SearchHit> hits = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                hits.add(new SearchHit(name + i, count - i, null, true));
+            }
+            return hits;
+        };
+    }
+}
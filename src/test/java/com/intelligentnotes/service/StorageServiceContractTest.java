@@ -0,0 +1,297 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import com.intelligentnotes.model.SearchPage;
+import com.intelligentnotes.model.SearchResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * What every storage backend must do the same way: whatever was saved,
+ * deleted or moved is found exactly so by a fresh service over the same
+ * directory. Each backend runs these through a subclass.
+ */
+abstract class StorageServiceContractTest {
+    @TempDir
+    Path directory;
+
+    private StorageService service;
+
+    // A new service over the given directory, reading whatever an earlier one left there
+    abstract StorageService open(Path directory);
+
+    @BeforeEach
+    void openService() {
+        service = open(directory);
+    }
+
+    @AfterEach
+    void closeService() {
+        service.close();
+    }
+
+    // Close the service and open another over the same directory
+    private StorageService reopen() {
+        service.close();
+        service = open(directory);
+        return service;
+    }
+
+    // Open another service over the directory as after a crash: the old one is never closed
+    private StorageService crashAndReopen() {
+        service = open(directory);
+        return service;
+    }
+
+    @Test
+    void savedNotesAndFoldersSurviveReload() throws IOException {
+        Folder work = new Folder(null, "Work");
+        service.saveFolder(work, null);
+        Folder projects = new Folder(null, "Projects");
+        service.saveFolder(projects, work);
+        Note note = new Note(null, "Plan", "<p>Ship the release</p>");
+        service.saveNote(note, projects);
+
+        List<Folder> roots = reopen().getRootFolders();
+
+        assertEquals(1, roots.size());
+        Folder reloadedWork = roots.get(0);
+        assertEquals(work.getId(), reloadedWork.getId());
+        assertEquals("Work", reloadedWork.getName());
+        Folder reloadedProjects = find(reloadedWork.getSubFolders(), projects.getId());
+        assertNotNull(reloadedProjects);
+        assertEquals(1, reloadedProjects.getNotes().size());
+        Note reloaded = reloadedProjects.getNotes().get(0);
+        assertEquals(note.getId(), reloaded.getId());
+        assertEquals("Plan", reloaded.getTitle());
+        assertEquals("<p>Ship the release</p>", reloaded.getContent());
+    }
+
+    @Test
+    void latestSaveOfANoteWins() throws IOException {
+        Folder folder = new Folder(null, "Inbox");
+        service.saveFolder(folder, null);
+        Note note = new Note(null, "Draft", "first");
+        service.saveNote(note, folder);
+        note.setTitle("Final");
+        note.setContent("second");
+        service.saveNote(note, folder);
+
+        Folder reloaded = reopen().getRootFolders().get(0);
+
+        assertEquals(1, reloaded.getNotes().size());
+        assertEquals("Final", reloaded.getNotes().get(0).getTitle());
+        assertEquals("second", reloaded.getNotes().get(0).getContent());
+    }
+
+    @Test
+    void deletedNoteIsGoneAfterReload() throws IOException {
+        Folder folder = new Folder(null, "Inbox");
+        service.saveFolder(folder, null);
+        Note kept = new Note(null, "Kept", "stays");
+        Note deleted = new Note(null, "Deleted", "goes");
+        service.saveNote(kept, folder);
+        service.saveNote(deleted, folder);
+
+        service.deleteNote(deleted, folder);
+        Folder reloaded = reopen().getRootFolders().get(0);
+
+        assertEquals(1, reloaded.getNotes().size());
+        assertEquals(kept.getId(), reloaded.getNotes().get(0).getId());
+    }
+
+    @Test
+    void deletedFolderIsGoneWithItsNotesAfterReload() throws IOException {
+        Folder root = new Folder(null, "Root");
+        service.saveFolder(root, null);
+        Folder child = new Folder(null, "Child");
+        service.saveFolder(child, root);
+        service.saveNote(new Note(null, "Inside", "text"), child);
+
+        service.deleteFolder(child, root);
+        List<Folder> roots = reopen().getRootFolders();
+
+        assertEquals(1, roots.size());
+        assertTrue(roots.get(0).getSubFolders().isEmpty());
+    }
+
+    @Test
+    void movedNoteIsInItsNewFolderAfterReload() throws IOException {
+        Folder from = new Folder(null, "From");
+        Folder to = new Folder(null, "To");
+        service.saveFolder(from, null);
+        service.saveFolder(to, null);
+        Note note = new Note(null, "Travelling", "body");
+        service.saveNote(note, from);
+
+        // As the folder tree does on a drag and drop
+        from.removeNote(note);
+        to.addNote(note);
+        service.persistChanges();
+        List<Folder> roots = reopen().getRootFolders();
+
+        Folder reloadedFrom = find(roots, from.getId());
+        Folder reloadedTo = find(roots, to.getId());
+        assertTrue(reloadedFrom.getNotes().isEmpty());
+        assertEquals(1, reloadedTo.getNotes().size());
+        assertEquals("body", reloadedTo.getNotes().get(0).getContent());
+    }
+
+    @Test
+    void movedFolderIsUnderItsNewParentAfterReload() throws IOException {
+        Folder first = new Folder(null, "First");
+        Folder second = new Folder(null, "Second");
+        service.saveFolder(first, null);
+        service.saveFolder(second, null);
+        Folder moving = new Folder(null, "Moving");
+        service.saveFolder(moving, first);
+        service.saveNote(new Note(null, "Carried", "along"), moving);
+
+        first.removeSubFolder(moving);
+        second.addSubFolder(moving);
+        service.persistChanges();
+        List<Folder> roots = reopen().getRootFolders();
+
+        assertTrue(find(roots, first.getId()).getSubFolders().isEmpty());
+        Folder reloadedMoving = find(find(roots, second.getId()).getSubFolders(), moving.getId());
+        assertNotNull(reloadedMoving);
+        assertEquals("Carried", reloadedMoving.getNotes().get(0).getTitle());
+    }
+
+    @Test
+    void removedRootFolderIsNoLongerARootAfterReload() throws IOException {
+        Folder kept = new Folder(null, "Kept");
+        Folder removed = new Folder(null, "Removed");
+        service.saveFolder(kept, null);
+        service.saveFolder(removed, null);
+
+        service.removeRootFolder(removed);
+        List<Folder> roots = reopen().getRootFolders();
+
+        assertEquals(1, roots.size());
+        assertNull(find(roots, removed.getId()));
+    }
+
+    @Test
+    void everythingAcknowledgedSurvivesACrash() throws IOException {
+        Folder folder = new Folder(null, "Inbox");
+        service.saveFolder(folder, null);
+
+        // Past the journal's checkpoint interval, with the crash before the next checkpoint
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < JournalStorageService.CHECKPOINT_INTERVAL / 2 + 50; i++) {
+            Note note = new Note(null, "Note " + i, "text " + i);
+            service.saveNote(note, folder);
+            expected.add(note.getId());
+        }
+        List<Folder> roots = crashAndReopen().getRootFolders();
+
+        assertEquals(1, roots.size());
+        List<String> noteIds = new ArrayList<>();
+        for (Note note : roots.get(0).getNotes()) {
+            noteIds.add(note.getId());
+        }
+        assertEquals(expected.size(), noteIds.size());
+        assertEquals(expected, noteIds);
+    }
+
+    @Test
+    void searchResultsComeInPagesThatCoverEveryMatchOnce() throws IOException {
+        Folder folder = new Folder(null, "Inbox");
+        service.saveFolder(folder, null);
+        for (int i = 0; i < 23; i++) {
+            // Varying lengths, so the matches do not all score the same
+            service.saveNote(new Note(null, "Note " + i, "<p>harbour" + " word".repeat(i % 5) + "</p>"), folder);
+        }
+        service.saveNote(new Note(null, "Other", "<p>lighthouse</p>"), folder);
+
+        List<String> paged = new ArrayList<>();
+        int pages = 0;
+        String cursor = null;
+        do {
+            SearchPage page = service.searchNotesPage("harbour", cursor, 10);
+            assertTrue(page.getResults().size() <= 10);
+            for (SearchResult result : page.getResults()) {
+                paged.add(result.getNote().getId());
+            }
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(ids(service.searchNotes("harbour")), paged);
+    }
+
+    @Test
+    void streamedResultsStopWhenTheConsumerDeclinesMore() throws IOException {
+        Folder folder = new Folder(null, "Inbox");
+        service.saveFolder(folder, null);
+        for (int i = 0; i < 12; i++) {
+            service.saveNote(new Note(null, "Note " + i, "<p>harbour</p>"), folder);
+        }
+
+        List<String> streamed = new ArrayList<>();
+        service.streamSearchResults("harbour", 5, result -> {
+            streamed.add(result.getNote().getId());
+            return streamed.size() < 7;
+        });
+
+        assertEquals(7, streamed.size());
+        assertEquals(ids(service.searchNotes("harbour")).subList(0, 7), streamed);
+    }
+
+    @Test
+    void repeatedSearchesSeeEverySaveDeleteAndMove() throws IOException {
+        Folder from = new Folder(null, "From");
+        Folder to = new Folder(null, "To");
+        service.saveFolder(from, null);
+        service.saveFolder(to, null);
+        Note first = new Note(null, "First", "<p>harbour</p>");
+        service.saveNote(first, from);
+        assertEquals(List.of(first.getId()), ids(service.searchNotes("harbour")));
+
+        Note second = new Note(null, "Second", "<p>harbour</p>");
+        service.saveNote(second, from);
+        assertEquals(2, service.searchNotes("harbour").size());
+
+        service.deleteNote(second, from);
+        assertEquals(List.of(first.getId()), ids(service.searchNotes("harbour")));
+
+        assertEquals(1, service.searchNotesPage("harbour", from, null, 10).getResults().size());
+        from.removeNote(first);
+        to.addNote(first);
+        service.persistChanges();
+        assertTrue(service.searchNotesPage("harbour", from, null, 10).getResults().isEmpty());
+        assertEquals(1, service.searchNotesPage("harbour", to, null, 10).getResults().size());
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>();
+        for (SearchResult result : results) {
+            ids.add(result.getNote().getId());
+        }
+        return ids;
+    }
+
+    private static Folder find(List<Folder> folders, String id) {
+        for (Folder folder : folders) {
+            if (folder.getId().equals(id)) {
+                return folder;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,79 @@
+package com.intelligentnotes.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SummaryCacheTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void summariesSurviveARestart() {
+        SummaryCache cache = new SummaryCache(file());
+        cache.put("a", "Summary of a");
+        cache.put("b", "Summary of b");
+
+        SummaryCache reopened = new SummaryCache(file());
+
+        assertEquals(2, reopened.size());
+        assertEquals("Summary of a", reopened.get("a"));
+        assertNull(reopened.get("c"));
+    }
+
+    @Test
+    void leastRecentlyUsedSummaryIsEvictedAndTheOrderIsKeptOnDisk() {
+        SummaryCache cache = new SummaryCache(file(), 3);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        cache.put("d", "4");
+
+        assertNull(cache.get("b"));
+
+        // Least recently used first on disk is c, a, d, so c goes next
+        SummaryCache reopened = new SummaryCache(file(), 3);
+        reopened.put("e", "5");
+        assertNull(reopened.get("c"));
+        assertEquals("1", reopened.get("a"));
+        assertEquals("4", reopened.get("d"));
+        assertEquals("5", reopened.get("e"));
+    }
+
+    @Test
+    void keyChangesWithTheModelTheVariantAndThePrompt() {
+        String key = SummaryCache.key("model", "note", "Summarize: text");
+
+        assertEquals(key, SummaryCache.key("model", "note", "Summarize: text"));
+        assertFalse(key.equals(SummaryCache.key("other", "note", "Summarize: text")));
+        assertFalse(key.equals(SummaryCache.key("model", "folder", "Summarize: text")));
+        assertFalse(key.equals(SummaryCache.key("model", "note", "Summarize: text!")));
+        // The parts cannot run into each other
+        assertFalse(SummaryCache.key("ab", "c", "d").equals(SummaryCache.key("a", "bc", "d")));
+    }
+
+    @Test
+    void unreadableFileStartsAnEmptyCache() throws IOException {
+        Files.write(file().toPath(), "{not json".getBytes(StandardCharsets.UTF_8));
+
+        SummaryCache cache = new SummaryCache(file());
+        assertEquals(0, cache.size());
+
+        cache.put("a", "Summary of a");
+        assertEquals("Summary of a", new SummaryCache(file()).get("a"));
+    }
+
+    private File file() {
+        return directory.resolve("summary_cache.json").toFile();
+    }
+}
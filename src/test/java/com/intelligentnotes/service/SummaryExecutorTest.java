@@ -0,0 +1,154 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Note;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SummaryExecutorTest {
+    private static final Duration LONG = Duration.ofMinutes(1);
+
+    @Test
+    void summaryRunsOnThePoolWithTheNotesAsTheyWereWhenAsked() throws Exception {
+        AISummaryService service = new AISummaryService() {
+            @Override
+            public String summarizeNoteContent(String content) {
+                return Thread.currentThread().getName() + ": " + content;
+            }
+
+            @Override
+            public String summarizeFolderContent(List<Note> notes) {
+                return notes.size() + " notes";
+            }
+        };
+        List<Note> notes = new ArrayList<>(List.of(new Note("a", "A", ""), new Note("b", "B", "")));
+
+        CompletableFuture<String> folder = service.summarizeFolderContentAsync(notes);
+        notes.clear();
+
+        assertTrue(service.summarizeNoteContentAsync("text").get(10, TimeUnit.SECONDS).startsWith("summary-"));
+        assertEquals("2 notes", folder.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void summaryOutOfTimeFailsAndIsStopped() throws Exception {
+        Blocker blocker = new Blocker();
+
+        CompletableFuture<String> summary = SummaryExecutor.submit(blocker, Duration.ofMillis(100));
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> summary.get(10, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof TimeoutException);
+        assertTrue(blocker.stopped.await(10, TimeUnit.SECONDS));
+        assertTrue(blocker.interrupted.get());
+        assertTrue(blocker.hookRun.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancelledSummaryIsInterruptedAndItsCallCancelled() throws Exception {
+        Blocker blocker = new Blocker();
+
+        CompletableFuture<String> summary = SummaryExecutor.submit(blocker, LONG);
+        assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+        summary.cancel(true);
+
+        assertThrows(CancellationException.class, summary::join);
+        assertTrue(blocker.stopped.await(10, TimeUnit.SECONDS));
+        assertTrue(blocker.interrupted.get());
+        assertTrue(blocker.hookRun.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void queuedSummaryCancelledBeforeItStartsNeverRuns() throws Exception {
+        Blocker first = new Blocker();
+        Blocker second = new Blocker();
+        List<CompletableFuture<String>> running = List.of(SummaryExecutor.submit(first, LONG),
+                SummaryExecutor.submit(second, LONG));
+        AtomicBoolean ran = new AtomicBoolean();
+        try {
+            assertTrue(first.started.await(10, TimeUnit.SECONDS));
+            assertTrue(second.started.await(10, TimeUnit.SECONDS));
+            CompletableFuture<String> queued = SummaryExecutor.submit(() -> {
+                ran.set(true);
+                return "ran";
+            }, LONG);
+            queued.cancel(true);
+        } finally {
+            first.release.countDown();
+            second.release.countDown();
+        }
+
+        for (CompletableFuture<String> summary : running) {
+            assertEquals("released", summary.get(10, TimeUnit.SECONDS));
+        }
+        // Anything queued behind the cancelled summary has had its turn
+        assertEquals("after", SummaryExecutor.submit(() -> "after", LONG).get(10, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void summariesBeyondTheQueueAreRefused() throws Exception {
+        Blocker first = new Blocker();
+        Blocker second = new Blocker();
+        List<CompletableFuture<String>> accepted = new ArrayList<>();
+        CompletableFuture<String> refused;
+        try {
+            accepted.add(SummaryExecutor.submit(first, LONG));
+            accepted.add(SummaryExecutor.submit(second, LONG));
+            assertTrue(first.started.await(10, TimeUnit.SECONDS));
+            assertTrue(second.started.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 16; i++) {
+                accepted.add(SummaryExecutor.submit(() -> "queued", LONG));
+            }
+            refused = SummaryExecutor.submit(() -> "refused", LONG);
+        } finally {
+            first.release.countDown();
+            second.release.countDown();
+        }
+
+        ExecutionException failure = assertThrows(ExecutionException.class, refused::get);
+        assertTrue(failure.getCause() instanceof RejectedExecutionException);
+        for (CompletableFuture<String> summary : accepted) {
+            summary.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    // Work that waits to be released, recording whether it was interrupted or its cancel hook run
+    private static final class Blocker implements Callable<String> {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final CountDownLatch hookRun = new CountDownLatch(1);
+
+        @Override
+        public String call() {
+            SummaryExecutor.onCancel(hookRun::countDown);
+            started.countDown();
+            try {
+                release.await();
+                return "released";
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                return "interrupted";
+            } finally {
+                stopped.countDown();
+            }
+        }
+    }
+}
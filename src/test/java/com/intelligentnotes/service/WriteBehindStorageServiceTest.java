@@ -0,0 +1,145 @@
+package com.intelligentnotes.service;
+
+import com.intelligentnotes.model.Folder;
+import com.intelligentnotes.model.Note;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindStorageServiceTest extends StorageServiceContractTest {
+    @TempDir
+    Path queueDirectory;
+
+    @Override
+    StorageService open(Path directory) {
+        return new WriteBehindStorageService(
+                new FileSystemStorageService(directory.toFile(), Durability.PER_BATCH, false, 0));
+    }
+
+    @Test
+    void queuedSavesAreAllWrittenByClose() throws IOException {
+        StorageService service = open(queueDirectory);
+        Folder folder = new Folder(null, "Inbox");
+        service.saveFolder(folder, null);
+        Note note = new Note(null, "Typing", "");
+        service.saveNote(note, folder);
+
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            note.setContent("version " + i);
+            saves.add(service.saveNoteAsync(note, folder));
+        }
+        service.close();
+
+        for (CompletableFuture<Void> save : saves) {
+            assertTrue(save.isDone() && !save.isCompletedExceptionally());
+        }
+        StorageService reopened = open(queueDirectory);
+        try {
+            assertEquals("version 50", reopened.getRootFolders().get(0).getNotes().get(0).getContent());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void writtenNoteGetsTheSaveTimesAndIsClean() throws IOException {
+        StorageService service = open(queueDirectory);
+        Note note = new Note(null, "Draft", "first");
+        try {
+            Folder folder = new Folder(null, "Inbox");
+            service.saveFolder(folder, null);
+            service.saveNote(note, folder);
+            LocalDateTime created = note.getCreatedAt();
+            LocalDateTime stale = LocalDateTime.of(2000, 1, 1, 0, 0);
+            note.setUpdatedAt(stale);
+
+            note.setContent("second");
+            service.saveNote(note, folder);
+
+            assertFalse(note.isDirty());
+            assertEquals(created, note.getCreatedAt());
+            assertTrue(note.getUpdatedAt().isAfter(stale));
+        } finally {
+            service.close();
+        }
+        StorageService reopened = open(queueDirectory);
+        try {
+            Note reloaded = reopened.getRootFolders().get(0).getNotes().get(0);
+            assertEquals(note.getUpdatedAt(), reloaded.getUpdatedAt());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void noteEditedWhileItsSaveIsQueuedStaysDirty() throws IOException {
+        StorageService service = open(queueDirectory);
+        try {
+            Folder folder = new Folder(null, "Inbox");
+            service.saveFolder(folder, null);
+            Note note = new Note(null, "Typing", "first");
+            service.saveNote(note, folder);
+
+            note.setContent("second");
+            CompletableFuture<Void> save = service.saveNoteAsync(note, folder);
+            note.setContent("third");
+            service.flush();
+
+            assertTrue(save.isDone());
+            assertTrue(note.isDirty());
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    void noteWhoseSaveFailedStaysDirty() throws IOException {
+        FailingStorage storage = new FailingStorage(queueDirectory);
+        StorageService service = new WriteBehindStorageService(storage);
+        try {
+            Folder folder = new Folder(null, "Inbox");
+            service.saveFolder(folder, null);
+            Note note = new Note(null, "Typing", "first");
+            service.saveNote(note, folder);
+
+            storage.failing = true;
+            note.setContent("second");
+            CompletableFuture<Void> save = service.saveNoteAsync(note, folder);
+            service.flush();
+
+            assertTrue(save.isCompletedExceptionally());
+            assertTrue(note.isDirty());
+        } finally {
+            storage.failing = false;
+            service.close();
+        }
+    }
+
+    // Fails every note save once told to, as a full disk would
+    private static class FailingStorage extends FileSystemStorageService {
+        volatile boolean failing;
+
+        FailingStorage(Path directory) {
+            super(directory.toFile(), Durability.PER_BATCH, false, 0);
+        }
+
+        @Override
+        public void saveNote(Note note, Folder parent) throws IOException {
+            if (failing) {
+                throw new IOException("No space left on device");
+            }
+            super.saveNote(note, parent);
+        }
+    }
+}